@@ -5,6 +5,7 @@ All Rights Reserved.
 package gov.nasa.worldwind;
 
 import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.ValueAnimator;
 import android.graphics.Point;
 import gov.nasa.worldwind.animation.AngleEvaluator;
@@ -19,6 +20,7 @@ import gov.nasa.worldwind.util.WWMath;
 import gov.nasa.worldwind.view.BasicOrbitViewLimits;
 import gov.nasa.worldwind.view.OrbitViewCollisionSupport;
 import gov.nasa.worldwind.view.OrbitViewLimits;
+import gov.nasa.worldwind.view.ViewMotionPredictor;
 import gov.nasa.worldwind.view.ViewPropertyLimits;
 
 import java.util.HashMap;
@@ -68,6 +70,7 @@ public class BasicView extends WWObjectImpl implements View {
 	protected boolean hadCollisions;
 	protected float farDistanceMultiplier = 1f;
 	protected ViewPropertyLimits viewLimits = new BasicOrbitViewLimits();
+	protected ViewMotionPredictor motionPredictor = new ViewMotionPredictor();
 	// Temporary property used to avoid constant allocation of Line objects during repeated calls to
 	// computePositionFromScreenPoint.
 	protected Line line = new Line();
@@ -297,6 +300,7 @@ public class BasicView extends WWObjectImpl implements View {
 		this.applyModelviewMatrix(dc);
 		this.modelviewInv.invertTransformMatrix(this.modelview);
 		this.modelviewTranspose.transpose(this.modelview);
+		this.motionPredictor.update(dc.getFrameTimeStamp(), this.lookAtPosition, this.range);
 
 		// Compute current eye position in both cartesian coordinates and geographic coordinates. This must be done
 		// before computing the clip distances, since they depend on eye position. The eye point is computed by
@@ -536,6 +540,16 @@ public class BasicView extends WWObjectImpl implements View {
 	 *
 	 * @return the <code>OrbitViewLimits</code> that apply to this <code>OrbitView</code>
 	 */
+	/**
+	 * Returns the predictor that extrapolates this view's recent motion, used to request tiles before the view needs
+	 * them.
+	 *
+	 * @return this view's motion predictor.
+	 */
+	public ViewMotionPredictor getMotionPredictor() {
+		return this.motionPredictor;
+	}
+
 	public OrbitViewLimits getOrbitViewLimits()
 	{
 		return (OrbitViewLimits) viewLimits;
@@ -715,6 +729,7 @@ public class BasicView extends WWObjectImpl implements View {
 			a.cancel();
 		}
 		goToAnimations.clear();
+		motionPredictor.clearTargets();
 	}
 
 	public ValueAnimator createTiltAnimator(final WorldWindowGLTextureView wwd, Angle tilt) {
@@ -753,7 +768,7 @@ public class BasicView extends WWObjectImpl implements View {
 		return headingAnimator;
 	}
 
-	public ValueAnimator createRangeAnimator(final WorldWindowGLTextureView wwd, double range) {
+	public ValueAnimator createRangeAnimator(final WorldWindowGLTextureView wwd, final double range) {
 		final ValueAnimator rangeAnimator = ValueAnimator
 				.ofObject(new DoubleEvaluator(), this.range, range);
 		rangeAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
@@ -768,10 +783,21 @@ public class BasicView extends WWObjectImpl implements View {
 				firePropertyChange(AVKey.VIEW, null, BasicView.this);
 			}
 		});
+		rangeAnimator.addListener(new AnimatorListenerAdapter() {
+			@Override
+			public void onAnimationStart(Animator animation) {
+				motionPredictor.setTargetRange(range);
+			}
+
+			@Override
+			public void onAnimationEnd(Animator animation) {
+				motionPredictor.setTargetRange(-1);
+			}
+		});
 		return rangeAnimator;
 	}
 
-	private ValueAnimator createLookAtAnimator(final WorldWindowGLTextureView wwd, Position position) {
+	private ValueAnimator createLookAtAnimator(final WorldWindowGLTextureView wwd, final Position position) {
 		final ValueAnimator lookAtAnimator = ValueAnimator.ofObject(
 						new PositionEvaluator(), this.lookAtPosition, position);
 		lookAtAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
@@ -786,6 +812,17 @@ public class BasicView extends WWObjectImpl implements View {
 				firePropertyChange(AVKey.VIEW, null, BasicView.this);
 			}
 		});
+		lookAtAnimator.addListener(new AnimatorListenerAdapter() {
+			@Override
+			public void onAnimationStart(Animator animation) {
+				motionPredictor.setTargetPosition(position);
+			}
+
+			@Override
+			public void onAnimationEnd(Animator animation) {
+				motionPredictor.setTargetPosition(null);
+			}
+		});
 		return lookAtAnimator;
 	}
 
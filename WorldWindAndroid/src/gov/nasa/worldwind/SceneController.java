@@ -12,17 +12,22 @@ import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.cache.GpuResourceCache;
 import gov.nasa.worldwind.layers.Layer;
 import gov.nasa.worldwind.pick.DepthBufferSupport;
+import gov.nasa.worldwind.pick.GeometryPickSupport;
+import gov.nasa.worldwind.pick.GeometryPickable;
 import gov.nasa.worldwind.pick.PickSupport;
 import gov.nasa.worldwind.pick.PickedObject;
 import gov.nasa.worldwind.pick.PickedObjectList;
 import gov.nasa.worldwind.render.*;
+import gov.nasa.worldwind.retrieve.PriorityRetrievalService;
 import gov.nasa.worldwind.terrain.ElevationModel;
 import gov.nasa.worldwind.terrain.SectorGeometry;
 import gov.nasa.worldwind.terrain.SectorGeometryList;
+import gov.nasa.worldwind.util.ByteBufferPool;
 import gov.nasa.worldwind.util.GLRuntimeCapabilities;
 import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.OGLStackHandler;
 import gov.nasa.worldwind.util.PerformanceStatistic;
+import gov.nasa.worldwind.util.TilePrefetcher;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -47,6 +52,8 @@ public class SceneController extends WWObjectImpl {
 	protected DepthBufferSupport mDepthSupport = new DepthBufferSupport();
 	protected boolean deepPick;
 	protected PickSupport pickSupport = new PickSupport();
+	protected boolean geometryPickingEnabled = true;
+	protected GeometryPickSupport geometryPickSupport = new GeometryPickSupport();
 	protected Point pickPoint;
 	protected PickedObjectList objectsAtPickPoint = new PickedObjectList();
 
@@ -190,6 +197,50 @@ public class SceneController extends WWObjectImpl {
 		this.deepPick = tf;
 	}
 
+	/**
+	 * Indicates whether objects are picked by testing their geometry on the CPU rather than by drawing them in pick
+	 * colors. When enabled, the scene is drawn in pick colors only if a layer holds an object that cannot be picked
+	 * geometrically.
+	 *
+	 * @return true if objects are picked geometrically, otherwise false.
+	 * @see GeometryPickable
+	 */
+	public boolean isGeometryPickingEnabled() {
+		return this.geometryPickingEnabled;
+	}
+
+	/**
+	 * Specifies whether objects are picked by testing their geometry on the CPU rather than by drawing them in pick
+	 * colors.
+	 *
+	 * @param tf
+	 *            true to pick objects geometrically, otherwise false.
+	 */
+	public void setGeometryPickingEnabled(boolean tf) {
+		this.geometryPickingEnabled = tf;
+	}
+
+	/**
+	 * Indicates the distance from the pick point within which objects are picked geometrically.
+	 *
+	 * @return the pick tolerance, in screen pixels.
+	 */
+	public double getPickTolerance() {
+		return this.geometryPickSupport.getTolerance();
+	}
+
+	/**
+	 * Specifies the distance from the pick point within which objects are picked geometrically.
+	 *
+	 * @param tolerance
+	 *            the pick tolerance, in screen pixels.
+	 * @throws IllegalArgumentException
+	 *             if the tolerance is less than 0.
+	 */
+	public void setPickTolerance(double tolerance) {
+		this.geometryPickSupport.setTolerance(tolerance);
+	}
+
 	/**
 	 * Returns the current pick point in AWT screen coordinates.
 	 *
@@ -286,6 +337,13 @@ public class SceneController extends WWObjectImpl {
 			this.dc.setPerFrameStatistics(WorldWind.getMemoryCacheSet().getPerformanceStatistics());
 		}
 
+		if (perfKeys.contains(PerformanceStatistic.RETRIEVAL_QUEUE) || perfKeys.contains(PerformanceStatistic.ALL))
+		{
+			if (WorldWind.getRetrievalService() instanceof PriorityRetrievalService)
+				this.dc.setPerFrameStatistics(
+						((PriorityRetrievalService) WorldWind.getRetrievalService()).getPerformanceStatistics());
+		}
+
 		if (perfKeys.contains(PerformanceStatistic.TEXTURE_CACHE) || perfKeys.contains(PerformanceStatistic.ALL))
 		{
 			if (dc.getTextureCache() != null)
@@ -302,6 +360,23 @@ public class SceneController extends WWObjectImpl {
 			this.dc.setPerFrameStatistic(PerformanceStatistic.JVM_HEAP_USED,
 					"JVM used memory (Kb)", (totalMemory - Runtime.getRuntime().freeMemory()) / 1000);
 		}
+
+		if (perfKeys.contains(PerformanceStatistic.HORIZON_CULLED_TILE_COUNT) || perfKeys.contains(PerformanceStatistic.ALL))
+		{
+			this.dc.setPerFrameStatistic(PerformanceStatistic.HORIZON_CULLED_TILE_COUNT,
+					"Tiles culled by horizon", this.dc.getHorizonCulling().getCulledCount());
+		}
+
+		if (perfKeys.contains(PerformanceStatistic.PREFETCH_HIT_RATE) || perfKeys.contains(PerformanceStatistic.ALL))
+		{
+			this.dc.setPerFrameStatistic(PerformanceStatistic.PREFETCH_HIT_RATE,
+					"Prefetch hit rate (%)", (int) (100 * TilePrefetcher.getTotalHitRate()));
+		}
+
+		if (perfKeys.contains(PerformanceStatistic.BUFFER_POOL) || perfKeys.contains(PerformanceStatistic.ALL))
+		{
+			this.dc.setPerFrameStatistics(ByteBufferPool.getDefault().getPerformanceStatistics());
+		}
 	}
 
 	protected void doDrawFrame(DrawContext dc) {
@@ -315,6 +390,7 @@ public class SceneController extends WWObjectImpl {
 //			this.pick(dc);
 			this.clearFrame(dc);
 			this.draw(dc);
+			this.pickGeometry(dc);
 		} finally {
 			this.finalizeFrame(dc);
 		}
@@ -515,6 +591,59 @@ public class SceneController extends WWObjectImpl {
 		}
 	}
 
+	/**
+	 * Picks the objects at the pick point by testing the geometry drawn in the current frame, and falls back to
+	 * drawing the scene in pick colors if a layer holds an object that cannot be picked this way. This does nothing if
+	 * geometry picking is disabled.
+	 *
+	 * @param dc
+	 *            the current draw context.
+	 */
+	protected void pickGeometry(DrawContext dc) {
+		if (!this.isGeometryPickingEnabled()) return;
+
+		if (dc.getPickPoint() == null) {
+			this.objectsAtPickPoint.clear();
+			return;
+		}
+
+		GeometryPickSupport pickSupport = this.geometryPickSupport;
+		try {
+			pickSupport.beginPicking(dc, dc.getPickPoint());
+			this.pickLayersGeometry(dc, pickSupport);
+
+			if (pickSupport.isFallbackRequired()) {
+				// Resolve the whole scene in pick colors, so that the top object is chosen among all objects alike.
+				this.pick(dc);
+				return;
+			}
+
+			pickSupport.resolvePick(dc, this.isDeepPickEnabled());
+			this.objectsAtPickPoint.set(dc.getObjectsAtPickPoint());
+		} finally {
+			pickSupport.endPicking();
+		}
+	}
+
+	protected void pickLayersGeometry(DrawContext dc, GeometryPickSupport pickSupport) {
+		if (dc.getLayers() == null) return;
+
+		for (Layer layer : dc.getLayers()) {
+			try {
+				if (layer instanceof GeometryPickable) {
+					dc.setCurrentLayer(layer);
+					if (!((GeometryPickable) layer).pickGeometry(dc, pickSupport)) pickSupport.setFallbackRequired(true);
+				}
+			} catch (Exception e) {
+				String msg = Logging.getMessage("generic.ExceptionPickingLayer", (layer != null ? layer.getName() : Logging.getMessage("term.Unknown")));
+				Logging.error(msg, e);
+				// Don't abort; continue on to the next layer.
+			}
+		}
+
+		dc.setCurrentLayer(null);
+	}
+
 	protected void createPickFrustum(DrawContext dc)
 	{
 		dc.addPickPointFrustum();
@@ -40,6 +40,7 @@ public interface AVKey {
 	final String DATA_CACHE_NAME = "gov.nasa.worldwind.avkey.DataCacheName";
 	final String DATA_FILE_STORE_CLASS_NAME = "gov.nasa.worldwind.avkey.DataFileStoreClassName";
 	final String DATA_FILE_STORE_CONFIGURATION_FILE_NAME = "gov.nasa.worldwind.avkey.DataFileStoreConfigurationFileName";
+	final String DATA_FILE_STORE_SEGMENT_SIZE = "gov.nasa.worldwind.avkey.DataFileStoreSegmentSize";
 	final String DATASET_NAME = "gov.nasa.worldwind.avkey.DatasetNameKey";
 	/**
 	 * Indicates the primitive data type of a dataset or a buffer of data. When used as a key, the corresponding value
@@ -128,6 +129,7 @@ public interface AVKey {
 	final String MAX_ABSENT_TILE_ATTEMPTS = "gov.nasa.worldwind.avkey.MaxAbsentTileAttempts";
 	final String MAX_ACTIVE_ALTITUDE = "gov.nasa.worldwind.avkey.MaxActiveAltitude";
 	final String MAX_MESSAGE_REPEAT = "gov.nasa.worldwind.avkey.MaxMessageRepeat";
+	final String MEMORY_CACHE_CLASS_NAME = "gov.nasa.worldwind.avkey.MemoryCacheClassName";
 	final String MEMORY_CACHE_SET_CLASS_NAME = "gov.nasa.worldwind.avkey.MemoryCacheSetClassName";
 	final String MIN_ACTIVE_ALTITUDE = "gov.nasa.worldwind.avkey.MinActiveAltitude";
 	/**
@@ -163,6 +165,8 @@ public interface AVKey {
 	final String POSITION = "gov.nasa.worldwind.avkey.Position";
 	final String PROGRESS = "gov.nasa.worldwind.avkey.Progress";
 
+	final String QUANTIZE_VERTICES = "gov.nasa.worldwind.avkey.QuantizeVertices";
+
 	/** Altitude mode constant indicating that altitude values are interpreted as being relative to ground level. */
 	final String RELATIVE_TO_GROUND = "gov.nasa.worldwind.avkey.RelativeToGround";
 	final String REPAINT = "gov.nasa.worldwind.avkey.Repaint";
@@ -177,8 +181,10 @@ public interface AVKey {
 	final String RESIZE_SHRINK_ONLY = "gov.nasa.worldwind.CompassLayer.ResizeShrinkOnly";
 	/** Does not modify the item size when the window changes size. */
 	final String RESIZE_KEEP_FIXED_SIZE = "gov.nasa.worldwind.CompassLayer.ResizeKeepFixedSize";
+	final String RETRIEVAL_HOST_CONNECTION_LIMIT = "gov.nasa.worldwind.avkey.RetrievalHostConnectionLimit";
 	final String RETRIEVAL_POOL_SIZE = "gov.nasa.worldwind.avkey.RetrievalPoolSize";
 	final String RETRIEVE_PROPERTIES_FROM_SERVICE = "gov.nasa.worldwind.avkey.RetrievePropertiesFromService";
+	final String RETRIEVAL_QUEUE_IDLE_REQUEST_LIMIT = "gov.nasa.worldwind.avkey.RetrievalIdleRequestLimit";
 	final String RETRIEVAL_QUEUE_SIZE = "gov.nasa.worldwind.avkey.RetrievalQueueSize";
 	final String RETRIEVAL_QUEUE_STALE_REQUEST_LIMIT = "gov.nasa.worldwind.avkey.RetrievalStaleRequestLimit";
 	final String RETRIEVAL_SERVICE_CLASS_NAME = "gov.nasa.worldwind.avkey.RetrievalServiceClassName";
@@ -215,6 +221,7 @@ public interface AVKey {
 	final String TASK_SERVICE_QUEUE_SIZE = "gov.nasa.worldwind.avkey.TaskServiceQueueSize";
 	final String TILE_DELTA = "gov.nasa.worldwind.avkey.TileDelta";
 	final String TILE_HEIGHT = "gov.nasa.worldwind.avkey.TileHeight";
+	final String TILE_MEMORY_CACHE_CLASS_NAME = "gov.nasa.worldwind.avkey.TileMemoryCacheClassName";
 	final String TILE_ORIGIN = "gov.nasa.worldwind.avkey.TileOrigin";
 	final String TILE_URL_BUILDER = "gov.nasa.worldwind.avkey.TileURLBuilder";
 	final String TILE_WIDTH = "gov.nasa.worldwind.avkey.TileWidth";
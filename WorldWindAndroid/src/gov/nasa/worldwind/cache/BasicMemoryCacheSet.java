@@ -5,6 +5,8 @@
  */
 package gov.nasa.worldwind.cache;
 
+import gov.nasa.worldwind.Configuration;
+import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.PerformanceStatistic;
 
@@ -81,6 +83,53 @@ public class BasicMemoryCacheSet implements MemoryCacheSet
         this.caches.clear();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The cache class is read from the configuration key {@link AVKey#MEMORY_CACHE_CLASS_NAME} and must provide a
+     * public constructor taking the low water and capacity as <code>long</code> arguments. If the key is not set, or
+     * the class cannot be created, this returns a {@link BasicMemoryCache}.
+     */
+    public MemoryCache createMemoryCache(long loWater, long capacity)
+    {
+        MemoryCache cache = this.createConfiguredCache(AVKey.MEMORY_CACHE_CLASS_NAME, loWater, capacity);
+
+        return cache != null ? cache : new BasicMemoryCache(loWater, capacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The cache class is read from the configuration key {@link AVKey#TILE_MEMORY_CACHE_CLASS_NAME}, typically {@link
+     * BasicTileMemoryCache}. If the key is not set, or the class cannot be created, this returns the result of {@link
+     * #createMemoryCache(long, long)}.
+     */
+    public MemoryCache createTileMemoryCache(long loWater, long capacity)
+    {
+        MemoryCache cache = this.createConfiguredCache(AVKey.TILE_MEMORY_CACHE_CLASS_NAME, loWater, capacity);
+
+        return cache != null ? cache : this.createMemoryCache(loWater, capacity);
+    }
+
+    protected MemoryCache createConfiguredCache(String classNameKey, long loWater, long capacity)
+    {
+        String className = Configuration.getStringValue(classNameKey);
+        if (className == null || className.trim().length() == 0)
+            return null;
+
+        try
+        {
+            Class<?> c = Class.forName(className.trim());
+            return (MemoryCache) c.getConstructor(long.class, long.class).newInstance(loWater, capacity);
+        }
+        catch (Throwable t)
+        {
+            String msg = Logging.getMessage("WorldWind.UnableToCreateClass", className);
+            Logging.error(msg, t);
+            return null;
+        }
+    }
+
 	public Collection<PerformanceStatistic> getPerformanceStatistics()
 	{
 		ArrayList<PerformanceStatistic> stats = new ArrayList<PerformanceStatistic>();
@@ -0,0 +1,639 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.util.TileKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link TileMemoryCache} backed by primitive, open-addressed hash tables. Tile keys are stored as the
+ * <code>long</code> returned by {@link TileKey#getPackedKey()}, so {@link #get(long)} neither allocates nor calls
+ * <code>hashCode</code> or <code>equals</code>. Keys that cannot be packed, including keys that are not
+ * <code>TileKey</code>s, are stored under a negative hash of the key object and compared with <code>equals</code>;
+ * they work correctly but do not get the allocation-free lookup.
+ * <p/>
+ * Capacity, low water and <code>CacheListener</code> semantics match {@link BasicMemoryCache}. Least recently used
+ * entries are evicted first.
+ */
+public class BasicTileMemoryCache implements TileMemoryCache
+{
+    protected static final int INITIAL_TABLE_SIZE = 64;
+    protected static final float MAX_LOAD_FACTOR = 0.75f;
+
+    protected String name;
+    protected CopyOnWriteArrayList<CacheListener> listeners;
+    protected long capacity;
+    protected long usedCapacity;
+    protected long lowWater;
+    protected final Object lock = new Object();
+
+    // Parallel arrays indexed by table slot. A slot is empty when its key object is null. All are guarded by lock.
+    protected long[] keys;
+    protected Object[] keyObjects;
+    protected Object[] values;
+    protected long[] sizes;
+    protected long[] lastUsed;
+    protected int mask;
+    protected int count;
+    protected long tick;
+
+    /**
+     * Constructs a new cache using <code>capacity</code> for maximum size, and <code>loWater</code> for the low water.
+     *
+     * @param loWater  the low water level.
+     * @param capacity the maximum capacity.
+     */
+    public BasicTileMemoryCache(long loWater, long capacity)
+    {
+        this.listeners = new CopyOnWriteArrayList<CacheListener>();
+        this.capacity = capacity;
+        this.lowWater = loWater;
+        this.allocateTable(INITIAL_TABLE_SIZE);
+    }
+
+    /** {@inheritDoc} */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /** {@inheritDoc} */
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    /** {@inheritDoc} */
+    public Object get(long packedKey)
+    {
+        if (packedKey < 0)
+            return null;
+
+        synchronized (this.lock)
+        {
+            int slot = this.findSlot(packedKey, null);
+            if (slot < 0)
+                return null;
+
+            this.lastUsed[slot] = this.nextTick();
+            return this.values[slot];
+        }
+    }
+
+    /** {@inheritDoc} */
+    public Object get(Object key)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        long hashKey = this.hashKeyFor(key);
+
+        synchronized (this.lock)
+        {
+            int slot = this.findSlot(hashKey, key);
+            if (slot < 0)
+                return null;
+
+            this.lastUsed[slot] = this.nextTick();
+            return this.values[slot];
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void put(Object key, Object value, long size)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (value == null)
+        {
+            String msg = Logging.getMessage("nullValue.ValueIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (size < 1)
+        {
+            String msg = Logging.getMessage("MemoryCache.SizeIsLessThanOne", size);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        long hashKey = this.hashKeyFor(key);
+        ArrayList<Object> removed = null;
+
+        synchronized (this.lock)
+        {
+            if (size > this.capacity)
+            {
+                String msg = Logging.getMessage("MemoryCache.SizeIsLargerThanCapacity", size, this.capacity);
+                Logging.error(msg);
+                throw new IllegalArgumentException(msg);
+            }
+
+            int slot = this.findSlot(hashKey, key);
+            if (slot >= 0) // replacing
+            {
+                removed = new ArrayList<Object>();
+                this.removeSlot(slot, removed);
+            }
+
+            if (this.usedCapacity + size > this.capacity)
+            {
+                if (removed == null)
+                    removed = new ArrayList<Object>();
+                this.makeSpace(size, removed);
+            }
+
+            if (this.count + 1 > MAX_LOAD_FACTOR * this.keys.length)
+                this.resizeTable(this.keys.length * 2);
+
+            slot = this.homeSlot(hashKey);
+            while (this.keyObjects[slot] != null)
+            {
+                slot = (slot + 1) & this.mask;
+            }
+
+            this.keys[slot] = hashKey;
+            this.keyObjects[slot] = key;
+            this.values[slot] = value;
+            this.sizes[slot] = size;
+            this.lastUsed[slot] = this.nextTick();
+            this.count++;
+            this.usedCapacity += size;
+        }
+
+        if (removed != null)
+            this.notifyRemoved(removed);
+    }
+
+    /** {@inheritDoc} */
+    public void put(Object key, Cacheable value)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (value == null)
+        {
+            String msg = Logging.getMessage("nullValue.ValueIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.put(key, value, value.getSizeInBytes());
+    }
+
+    /** {@inheritDoc} */
+    public boolean contains(long packedKey)
+    {
+        if (packedKey < 0)
+            return false;
+
+        synchronized (this.lock)
+        {
+            return this.findSlot(packedKey, null) >= 0;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean contains(Object key)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        long hashKey = this.hashKeyFor(key);
+
+        synchronized (this.lock)
+        {
+            return this.findSlot(hashKey, key) >= 0;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void remove(long packedKey)
+    {
+        if (packedKey < 0)
+            return;
+
+        ArrayList<Object> removed = new ArrayList<Object>(2);
+
+        synchronized (this.lock)
+        {
+            int slot = this.findSlot(packedKey, null);
+            if (slot >= 0)
+                this.removeSlot(slot, removed);
+        }
+
+        this.notifyRemoved(removed);
+    }
+
+    /** {@inheritDoc} */
+    public void remove(Object key)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        long hashKey = this.hashKeyFor(key);
+        ArrayList<Object> removed = new ArrayList<Object>(2);
+
+        synchronized (this.lock)
+        {
+            int slot = this.findSlot(hashKey, key);
+            if (slot >= 0)
+                this.removeSlot(slot, removed);
+        }
+
+        this.notifyRemoved(removed);
+    }
+
+    /** {@inheritDoc} */
+    public void clear()
+    {
+        ArrayList<Object> removed;
+
+        synchronized (this.lock)
+        {
+            removed = new ArrayList<Object>(2 * this.count);
+            for (int i = 0; i < this.keyObjects.length; i++)
+            {
+                if (this.keyObjects[i] != null)
+                {
+                    removed.add(this.keyObjects[i]);
+                    removed.add(this.values[i]);
+                }
+            }
+
+            this.allocateTable(INITIAL_TABLE_SIZE);
+            this.usedCapacity = 0;
+            this.tick = 0;
+        }
+
+        this.notifyRemoved(removed);
+    }
+
+    /** {@inheritDoc} */
+    public int getNumObjects()
+    {
+        synchronized (this.lock)
+        {
+            return this.count;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public long getCapacity()
+    {
+        synchronized (this.lock)
+        {
+            return this.capacity;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public long getUsedCapacity()
+    {
+        synchronized (this.lock)
+        {
+            return this.usedCapacity;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public long getFreeCapacity()
+    {
+        synchronized (this.lock)
+        {
+            return Math.max(this.capacity - this.usedCapacity, 0);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void setCapacity(long newCapacity)
+    {
+        synchronized (this.lock)
+        {
+            this.capacity = newCapacity;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public long getLowWater()
+    {
+        synchronized (this.lock)
+        {
+            return this.lowWater;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void setLowWater(long loWater)
+    {
+        synchronized (this.lock)
+        {
+            if (loWater < this.capacity && loWater >= 0)
+            {
+                this.lowWater = loWater;
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void addCacheListener(CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String msg = Logging.getMessage("nullValue.ListenerIsNull");
+            Logging.warning(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.listeners.add(listener);
+    }
+
+    /** {@inheritDoc} */
+    public void removeCacheListener(CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String msg = Logging.getMessage("nullValue.ListenerIsNull");
+            Logging.warning(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Returns the table key for a key object: the packed key for a packable <code>TileKey</code>, otherwise a negative
+     * value derived from the object's hash code.
+     *
+     * @param key the key object.
+     *
+     * @return the key's table key.
+     */
+    protected long hashKeyFor(Object key)
+    {
+        if (key instanceof TileKey)
+        {
+            long packedKey = ((TileKey) key).getPackedKey();
+            if (packedKey >= 0)
+                return packedKey;
+        }
+
+        return Long.MIN_VALUE | (key.hashCode() & 0xFFFFFFFFL);
+    }
+
+    protected int homeSlot(long hashKey)
+    {
+        // Finalization mix from MurmurHash3 to spread the packed row and column bits across the table.
+        long h = hashKey;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return (int) h & this.mask;
+    }
+
+    /**
+     * Returns the slot holding the specified key, or -1 if the key is not in the table. MUST BE CALLED WITHIN
+     * SYNCHRONIZED.
+     *
+     * @param hashKey   the key's table key.
+     * @param keyObject the key object, used to resolve collisions between negative table keys. May be null when
+     *                  <code>hashKey</code> is a packed key.
+     *
+     * @return the key's slot, or -1.
+     */
+    protected int findSlot(long hashKey, Object keyObject)
+    {
+        int slot = this.homeSlot(hashKey);
+        while (this.keyObjects[slot] != null)
+        {
+            if (this.keys[slot] == hashKey && (hashKey >= 0 || this.keyObjects[slot].equals(keyObject)))
+                return slot;
+
+            slot = (slot + 1) & this.mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Removes the entry in <code>slot</code>, shifting later entries of the same probe sequence back so that no
+     * tombstones are needed. The removed key and value are appended to <code>removed</code>. MUST BE CALLED WITHIN
+     * SYNCHRONIZED.
+     *
+     * @param slot    the slot to remove.
+     * @param removed the list that receives the removed key and value.
+     */
+    protected void removeSlot(int slot, ArrayList<Object> removed)
+    {
+        removed.add(this.keyObjects[slot]);
+        removed.add(this.values[slot]);
+        this.usedCapacity -= this.sizes[slot];
+        this.count--;
+
+        int hole = slot;
+        int next = slot;
+        while (true)
+        {
+            next = (next + 1) & this.mask;
+            if (this.keyObjects[next] == null)
+                break;
+
+            // Move the entry at next into the hole unless its home slot lies cyclically within (hole, next].
+            int home = this.homeSlot(this.keys[next]);
+            boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+            if (!stays)
+            {
+                this.keys[hole] = this.keys[next];
+                this.keyObjects[hole] = this.keyObjects[next];
+                this.values[hole] = this.values[next];
+                this.sizes[hole] = this.sizes[next];
+                this.lastUsed[hole] = this.lastUsed[next];
+                hole = next;
+            }
+        }
+
+        this.keyObjects[hole] = null;
+        this.values[hole] = null;
+    }
+
+    /**
+     * Makes at least <code>spaceRequired</code> space in the cache. If spaceRequired is less than (capacity-lowWater),
+     * makes more space. Does nothing if capacity is less than spaceRequired. MUST BE CALLED WITHIN SYNCHRONIZED.
+     *
+     * @param spaceRequired the amount of space required.
+     * @param removed       the list that receives the keys and values of evicted entries.
+     */
+    protected void makeSpace(long spaceRequired, ArrayList<Object> removed)
+    {
+        if (spaceRequired > this.capacity || spaceRequired < 0)
+            return;
+
+        // Order occupied slots by last use. The access ticks are kept below 2^31 by renumbering, so the tick and the
+        // slot index fit together in one sortable long.
+        long[] order = this.collectAccessOrder();
+
+        long used = this.usedCapacity;
+        int numVictims = 0;
+        while (numVictims < order.length && (this.capacity - used < spaceRequired || used > this.lowWater))
+        {
+            used -= this.sizes[(int) order[numVictims++]];
+        }
+
+        // Removal shifts entries between slots, so resolve the victims' key objects before removing any of them.
+        Object[] victims = new Object[numVictims];
+        for (int i = 0; i < numVictims; i++)
+        {
+            victims[i] = this.keyObjects[(int) order[i]];
+        }
+
+        for (Object victim : victims)
+        {
+            int slot = this.findSlot(this.hashKeyFor(victim), victim);
+            if (slot >= 0)
+                this.removeSlot(slot, removed);
+        }
+
+        this.renumberAccessTicks();
+    }
+
+    protected long nextTick() // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        if (this.tick >= Integer.MAX_VALUE)
+            this.renumberAccessTicks();
+
+        return ++this.tick;
+    }
+
+    /**
+     * Returns the occupied slots ordered from least to most recently used, each encoded as the slot's access tick in
+     * the high 32 bits and the slot index in the low 32 bits. MUST BE CALLED WITHIN SYNCHRONIZED.
+     *
+     * @return the occupied slots in access order.
+     */
+    protected long[] collectAccessOrder()
+    {
+        long[] order = new long[this.count];
+        int n = 0;
+        for (int i = 0; i < this.keyObjects.length; i++)
+        {
+            if (this.keyObjects[i] != null)
+                order[n++] = (this.lastUsed[i] << 32) | i;
+        }
+
+        Arrays.sort(order);
+        return order;
+    }
+
+    /** Replaces every entry's access tick with its rank in access order, preserving the order. */
+    protected void renumberAccessTicks() // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        long[] order = this.collectAccessOrder();
+        for (int i = 0; i < order.length; i++)
+        {
+            this.lastUsed[(int) order[i]] = i + 1;
+        }
+
+        this.tick = order.length;
+    }
+
+    protected void allocateTable(int size) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        this.keys = new long[size];
+        this.keyObjects = new Object[size];
+        this.values = new Object[size];
+        this.sizes = new long[size];
+        this.lastUsed = new long[size];
+        this.mask = size - 1;
+        this.count = 0;
+    }
+
+    protected void resizeTable(int newSize) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        long[] oldKeys = this.keys;
+        Object[] oldKeyObjects = this.keyObjects;
+        Object[] oldValues = this.values;
+        long[] oldSizes = this.sizes;
+        long[] oldLastUsed = this.lastUsed;
+        int oldCount = this.count;
+
+        this.allocateTable(newSize);
+
+        for (int i = 0; i < oldKeyObjects.length; i++)
+        {
+            if (oldKeyObjects[i] == null)
+                continue;
+
+            int slot = this.homeSlot(oldKeys[i]);
+            while (this.keyObjects[slot] != null)
+            {
+                slot = (slot + 1) & this.mask;
+            }
+
+            this.keys[slot] = oldKeys[i];
+            this.keyObjects[slot] = oldKeyObjects[i];
+            this.values[slot] = oldValues[i];
+            this.sizes[slot] = oldSizes[i];
+            this.lastUsed[slot] = oldLastUsed[i];
+        }
+
+        this.count = oldCount;
+    }
+
+    /**
+     * Notifies listeners of removed entries. Called outside the lock.
+     *
+     * @param removed alternating keys and values of the removed entries.
+     */
+    protected void notifyRemoved(ArrayList<Object> removed)
+    {
+        for (int i = 0; i < removed.size(); i += 2)
+        {
+            Object key = removed.get(i);
+            Object value = removed.get(i + 1);
+
+            for (MemoryCache.CacheListener listener : this.listeners)
+            {
+                try
+                {
+                    listener.entryRemoved(key, value);
+                }
+                catch (Exception e)
+                {
+                    listener.removalException(e, key, value);
+                }
+            }
+        }
+    }
+}
@@ -23,5 +23,30 @@ public interface MemoryCacheSet
 
     void clear();
 
+    /**
+     * Creates a new <code>MemoryCache</code> with the specified low water and capacity. The implementation class is
+     * chosen by the memory cache set; callers that create caches through this method can switch cache implementations
+     * without code changes.
+     *
+     * @param loWater  the low water level.
+     * @param capacity the maximum capacity.
+     *
+     * @return a new, empty memory cache.
+     */
+    MemoryCache createMemoryCache(long loWater, long capacity);
+
+    /**
+     * Creates a new <code>MemoryCache</code> for caches keyed by {@link gov.nasa.worldwind.util.TileKey}. If the memory
+     * cache set is configured to use a {@link TileMemoryCache}, the returned cache implements that interface and
+     * supports allocation-free lookups by packed tile key. Otherwise this is equivalent to {@link
+     * #createMemoryCache(long, long)}.
+     *
+     * @param loWater  the low water level.
+     * @param capacity the maximum capacity.
+     *
+     * @return a new, empty memory cache for tiles.
+     */
+    MemoryCache createTileMemoryCache(long loWater, long capacity);
+
 	Collection<PerformanceStatistic> getPerformanceStatistics();
 }
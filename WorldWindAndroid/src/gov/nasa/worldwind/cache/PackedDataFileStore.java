@@ -0,0 +1,1042 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.Configuration;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.util.TileKey;
+import gov.nasa.worldwind.util.WWIO;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link BasicDataFileStore} that packs tiles into large append-only segment files instead of keeping one file per
+ * tile. Every file whose store path has the tile form <code>dataset/level/row/row_column.suffix</code> is eligible;
+ * all other files are stored exactly as {@link BasicDataFileStore} stores them.
+ * <p/>
+ * Packed tiles are indexed in memory by dataset, level, row and column, so {@link #findFile(String, boolean)} answers
+ * for a packed tile without touching the file system. The URL it returns uses the {@link #PROTOCOL} protocol and can
+ * be read like any other URL; {@link #getBuffer(java.net.URL)} returns the tile's content as a read-only slice of the
+ * memory-mapped segment, without copying it.
+ * <p/>
+ * New tiles are written as ordinary files by retrieval post-processors, then imported into the current segment by a
+ * background thread once they've been written. The same thread imports any one-file-per-tile cache found in the write
+ * location the first time the store is used, and compacts segments in which most of the records have been replaced
+ * or removed.
+ * <p/>
+ * Segments are written under the <code>packed</code> directory of the write location. Each record holds the tile's
+ * store path, its modification time and its content. The index is rebuilt by reading the record headers when the
+ * store is created. A record with a negative content length removes the path from the index.
+ */
+public class PackedDataFileStore extends BasicDataFileStore
+{
+    /** The URL protocol of packed tiles returned by {@link #findFile(String, boolean)}. */
+    public static final String PROTOCOL = "wwpack";
+
+    protected static final String SEGMENT_DIRECTORY = "packed";
+    protected static final String SEGMENT_PREFIX = "segment-";
+    protected static final String SEGMENT_SUFFIX = ".pack";
+    protected static final String IMPORT_COMPLETE_FILE = "import.complete";
+    protected static final int RECORD_MAGIC = 0x57575054;
+    /** The size of a record header without its path: magic, path length, modification time and content length. */
+    protected static final int RECORD_HEADER_SIZE = 4 + 2 + 8 + 4;
+    protected static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+    /** The number of distinct datasets that can be packed. This is the number of cache ids {@link TileKey} packs. */
+    protected static final int MAX_DATASETS = 512;
+    /** The fraction of a segment's bytes that must be dead before the segment is compacted. */
+    protected static final double COMPACTION_THRESHOLD = 0.5;
+    /** The time a new file is left alone after it's created, so that it's imported only after it's been written. */
+    protected static final long SETTLE_TIME = 5000;
+    /** The time a staged name is kept when no file is written for it. */
+    protected static final long STAGE_EXPIRY_TIME = 60000;
+    protected static final long MAINTENANCE_INTERVAL = 10000;
+
+    protected static class Segment
+    {
+        protected final int number;
+        protected final File file;
+        protected final RandomAccessFile raf;
+        protected final FileChannel channel;
+        // Guarded by the store's writeLock.
+        protected long length;
+        protected long deadBytes;
+        // Guarded by this segment.
+        protected MappedByteBuffer mapped;
+
+        protected Segment(int number, File file) throws IOException
+        {
+            this.number = number;
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = this.raf.getChannel();
+            this.length = this.channel.size();
+        }
+
+        /**
+         * Returns a read-only mapping of the segment that includes at least the first <code>length</code> bytes.
+         * The segment is remapped only when it has grown past the current mapping.
+         */
+        protected synchronized MappedByteBuffer map(long length) throws IOException
+        {
+            if (this.mapped == null || this.mapped.capacity() < length)
+                this.mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+
+            return this.mapped;
+        }
+
+        protected void close()
+        {
+            WWIO.closeStream(this.raf, this.file.getPath());
+        }
+    }
+
+    protected static class Entry
+    {
+        protected final String path;
+        protected final Segment segment;
+        protected final long recordOffset;
+        protected final long contentOffset;
+        protected final int contentLength;
+        protected final long lastModified;
+
+        protected Entry(String path, Segment segment, long recordOffset, long contentOffset, int contentLength,
+            long lastModified)
+        {
+            this.path = path;
+            this.segment = segment;
+            this.recordOffset = recordOffset;
+            this.contentOffset = contentOffset;
+            this.contentLength = contentLength;
+            this.lastModified = lastModified;
+        }
+
+        protected long getRecordSize()
+        {
+            return this.contentOffset - this.recordOffset + this.contentLength;
+        }
+    }
+
+    /** A record header read from a segment. */
+    protected static class Record
+    {
+        protected String path;
+        protected long offset;
+        protected long contentOffset;
+        protected int contentLength;
+        protected long lastModified;
+
+        protected long getEnd()
+        {
+            return this.contentOffset + Math.max(this.contentLength, 0);
+        }
+    }
+
+    protected final File segmentDirectory;
+    protected final long segmentSize;
+    protected final ConcurrentHashMap<Long, Entry> index = new ConcurrentHashMap<Long, Entry>();
+    /** Tile names given to {@link #newFile(String)} whose files have not yet been imported, and when. */
+    protected final ConcurrentHashMap<String, Long> stagedNames = new ConcurrentHashMap<String, Long>();
+    protected final URLStreamHandler urlHandler = new PackedURLStreamHandler();
+    protected final Object writeLock = new Object();
+    // Guarded by writeLock.
+    protected final ArrayList<Segment> segments = new ArrayList<Segment>();
+    protected Segment activeSegment;
+    // Guarded by datasetIds.
+    protected final HashMap<String, Integer> datasetIds = new HashMap<String, Integer>();
+    protected Thread maintenanceThread;
+
+    /**
+     * Create an instance. Packing is disabled, and the store behaves as a {@link BasicDataFileStore}, if the store has
+     * no write location or the segment directory cannot be created.
+     *
+     * @throws IllegalStateException if the configuration file name cannot be determined from {@link
+     *                               gov.nasa.worldwind.Configuration} or the configuration file cannot be found.
+     */
+    public PackedDataFileStore()
+    {
+        long size = Configuration.getLongValue(AVKey.DATA_FILE_STORE_SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE);
+        // Segments are mapped in a single buffer, which can't exceed Integer.MAX_VALUE bytes.
+        this.segmentSize = size > 0 && size < Integer.MAX_VALUE ? size : DEFAULT_SEGMENT_SIZE;
+
+        File dir = this.getWriteLocation() != null ? new File(this.getWriteLocation(), SEGMENT_DIRECTORY) : null;
+        if (dir != null && (dir.isDirectory() || dir.mkdirs()) && this.openSegments(dir))
+        {
+            this.segmentDirectory = dir;
+            this.startMaintenance();
+        }
+        else
+        {
+            this.segmentDirectory = null;
+        }
+    }
+
+    // **************************************************************//
+    // ******************** File Store Contents *******************//
+    // **************************************************************//
+
+    @Override
+    public boolean containsFile(String fileName)
+    {
+        if (fileName != null && this.getEntry(normalizePath(fileName)) != null)
+            return true;
+
+        return super.containsFile(fileName);
+    }
+
+    /** {@inheritDoc} Packed tiles are found without querying the file system. */
+    @Override
+    public URL findFile(String fileName, boolean checkClassPath)
+    {
+        if (fileName == null || checkClassPath || this.segmentDirectory == null)
+            return super.findFile(fileName, checkClassPath);
+
+        String path = normalizePath(fileName);
+
+        // A tile that's been written since it was packed is newer than its packed copy.
+        boolean staged = this.stagedNames.containsKey(path);
+        if (staged)
+        {
+            URL url = super.findFile(fileName, false);
+            if (url != null)
+                return url;
+        }
+
+        Entry entry = this.getEntry(path);
+        if (entry != null)
+            return this.makeURL(entry);
+
+        return staged ? null : super.findFile(fileName, false);
+    }
+
+    /**
+     * {@inheritDoc} The file is imported into the store's segments by a background thread some time after it's
+     * written.
+     */
+    @Override
+    public File newFile(String fileName)
+    {
+        File file = super.newFile(fileName);
+
+        if (file != null && this.segmentDirectory != null)
+        {
+            String path = normalizePath(fileName);
+            if (this.computeKey(path) != TileKey.INVALID_PACKED_KEY)
+                this.stagedNames.put(path, System.currentTimeMillis());
+        }
+
+        return file;
+    }
+
+    @Override
+    public void removeFile(URL url)
+    {
+        if (url != null && PROTOCOL.equals(url.getProtocol()))
+        {
+            this.removeEntry(normalizePath(url.getPath()));
+            return;
+        }
+
+        super.removeFile(url);
+    }
+
+    /**
+     * Returns the content of a packed tile as a read-only slice of its memory-mapped segment. The content is not
+     * copied.
+     *
+     * @param url a URL returned by {@link #findFile(String, boolean)}.
+     *
+     * @return the tile's content, or null if the URL does not identify a packed tile in this store.
+     *
+     * @throws IllegalArgumentException if the URL is null.
+     * @throws IOException              if the segment cannot be mapped.
+     */
+    public ByteBuffer getBuffer(URL url) throws IOException
+    {
+        if (url == null)
+        {
+            String msg = Logging.getMessage("nullValue.URLIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (!PROTOCOL.equals(url.getProtocol()))
+            return null;
+
+        Entry entry = this.getEntry(normalizePath(url.getPath()));
+        return entry != null ? this.getContent(entry) : null;
+    }
+
+    /**
+     * Sets the modification time of a packed tile, as {@link File#setLastModified(long)} does for a file. The tile's
+     * content is appended to the active segment again with the new time, and its previous record is left for
+     * compaction.
+     *
+     * @param url  a URL returned by {@link #findFile(String, boolean)}.
+     * @param time the new modification time, in milliseconds since the epoch.
+     *
+     * @return true if the modification time is set, or false if the URL does not identify a packed tile in this store
+     *         or the tile cannot be written.
+     *
+     * @throws IllegalArgumentException if the URL is null.
+     */
+    public boolean setLastModified(URL url, long time)
+    {
+        if (url == null)
+        {
+            String msg = Logging.getMessage("nullValue.URLIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (!PROTOCOL.equals(url.getProtocol()))
+            return false;
+
+        String path = normalizePath(url.getPath());
+        long key = this.computeKey(path);
+        if (key == TileKey.INVALID_PACKED_KEY)
+            return false;
+
+        synchronized (this.writeLock)
+        {
+            Entry entry = this.index.get(key);
+            if (entry == null || !entry.path.equals(path))
+                return false;
+
+            try
+            {
+                this.index.put(key, this.appendRecord(path, time, this.getContent(entry)));
+                this.releaseEntry(entry);
+                return true;
+            }
+            catch (IOException e)
+            {
+                Logging.error(Logging.getMessage("PackedDataFileStore.ExceptionUpdatingFile", path), e);
+                return false;
+            }
+        }
+    }
+
+    protected static String normalizePath(String fileName)
+    {
+        String path = fileName.replace('\\', '/');
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    protected Entry getEntry(String path)
+    {
+        long key = this.computeKey(path);
+        if (key == TileKey.INVALID_PACKED_KEY)
+            return null;
+
+        Entry entry = this.index.get(key);
+        return entry != null && entry.path.equals(path) ? entry : null;
+    }
+
+    protected ByteBuffer getContent(Entry entry) throws IOException
+    {
+        ByteBuffer buffer = entry.segment.map(entry.contentOffset + entry.contentLength).duplicate();
+        buffer.limit((int) (entry.contentOffset + entry.contentLength));
+        buffer.position((int) entry.contentOffset);
+        return buffer.slice();
+    }
+
+    protected URL makeURL(Entry entry)
+    {
+        try
+        {
+            return new URL(PROTOCOL, null, -1, "/" + entry.path, this.urlHandler);
+        }
+        catch (MalformedURLException e)
+        {
+            Logging.error(Logging.getMessage("FileStore.ExceptionCreatingURLForFile", entry.path), e);
+            return null;
+        }
+    }
+
+    /**
+     * Computes the index key of a store path. Only paths of the form <code>dataset/level/row/row_column.suffix</code>
+     * have keys. The suffix is not part of the key; the path of the indexed entry is compared to tell tiles apart that
+     * differ only by their suffix.
+     *
+     * @param path the normalized store path.
+     *
+     * @return the key, or {@link TileKey#INVALID_PACKED_KEY} if the path is not a packable tile path.
+     */
+    protected long computeKey(String path)
+    {
+        int nameStart = path.lastIndexOf('/');
+        int rowStart = nameStart > 0 ? path.lastIndexOf('/', nameStart - 1) : -1;
+        int levelStart = rowStart > 0 ? path.lastIndexOf('/', rowStart - 1) : -1;
+        if (levelStart <= 0)
+            return TileKey.INVALID_PACKED_KEY;
+
+        int nameEnd = path.indexOf('.', nameStart);
+        if (nameEnd < 0)
+            nameEnd = path.length();
+        // Files kept beside a tile, such as entity tags, have a second suffix. ETC1 textures are read together with
+        // companion alpha and mipmap files, which are found by file name.
+        else if (path.indexOf('.', nameEnd + 1) >= 0 || path.endsWith(".pkm"))
+            return TileKey.INVALID_PACKED_KEY;
+
+        int separator = path.indexOf('_', nameStart);
+        if (separator < 0 || separator > nameEnd)
+            return TileKey.INVALID_PACKED_KEY;
+
+        int level = parseIndex(path, levelStart + 1, rowStart);
+        int row = parseIndex(path, rowStart + 1, nameStart);
+        int column = parseIndex(path, separator + 1, nameEnd);
+        if (level < 0 || row < 0 || column < 0 || parseIndex(path, nameStart + 1, separator) != row)
+            return TileKey.INVALID_PACKED_KEY;
+
+        int datasetId = this.getDatasetId(path.substring(0, levelStart));
+        if (datasetId < 0)
+            return TileKey.INVALID_PACKED_KEY;
+
+        return TileKey.pack(datasetId, level, row, column);
+    }
+
+    /** Parses the non-negative decimal integer in the specified range, or returns -1 if there isn't one. */
+    protected static int parseIndex(String s, int start, int end)
+    {
+        if (start >= end || end - start > 9)
+            return -1;
+
+        int value = 0;
+        for (int i = start; i < end; i++)
+        {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    protected int getDatasetId(String dataset)
+    {
+        synchronized (this.datasetIds)
+        {
+            Integer id = this.datasetIds.get(dataset);
+            if (id != null)
+                return id;
+
+            if (this.datasetIds.size() >= MAX_DATASETS)
+                return -1;
+
+            id = this.datasetIds.size();
+            this.datasetIds.put(dataset, id);
+            return id;
+        }
+    }
+
+    // **************************************************************//
+    // ******************** Segments  *******************************//
+    // **************************************************************//
+
+    /** Opens the existing segments in order and rebuilds the index from their records. */
+    protected boolean openSegments(File dir)
+    {
+        File[] files = dir.listFiles();
+        TreeMap<Integer, File> ordered = new TreeMap<Integer, File>();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                {
+                    int number = parseIndex(name, SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                    if (number >= 0)
+                        ordered.put(number, file);
+                }
+            }
+        }
+
+        synchronized (this.writeLock)
+        {
+            try
+            {
+                for (Map.Entry<Integer, File> e : ordered.entrySet())
+                {
+                    Segment segment = new Segment(e.getKey(), e.getValue());
+                    this.segments.add(segment);
+                    this.loadSegment(segment);
+                }
+
+                if (this.segments.isEmpty() || this.getLastSegment().length >= this.segmentSize)
+                    this.activeSegment = this.addSegment();
+                else
+                    this.activeSegment = this.getLastSegment();
+            }
+            catch (IOException e)
+            {
+                Logging.error(Logging.getMessage("PackedDataFileStore.ExceptionOpeningSegment", dir), e);
+                for (Segment segment : this.segments)
+                {
+                    segment.close();
+                }
+                this.segments.clear();
+                this.index.clear();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected void loadSegment(Segment segment) throws IOException
+    {
+        if (segment.length == 0)
+            return;
+
+        ByteBuffer buffer = segment.map(segment.length);
+        Record record = new Record();
+        long offset = 0;
+
+        while (offset < segment.length)
+        {
+            if (!readRecord(buffer, offset, segment.length, record))
+            {
+                // Anything after the last complete record was being written when the application stopped.
+                Logging.warning(Logging.getMessage("PackedDataFileStore.SegmentTruncated", segment.file, offset));
+                segment.channel.truncate(offset);
+                segment.length = offset;
+                segment.mapped = null;
+                break;
+            }
+
+            long key = this.computeKey(record.path);
+            if (key == TileKey.INVALID_PACKED_KEY)
+            {
+                segment.deadBytes += record.getEnd() - record.offset;
+            }
+            else if (record.contentLength < 0)
+            {
+                this.releaseEntry(this.index.remove(key));
+                segment.deadBytes += record.getEnd() - record.offset;
+            }
+            else
+            {
+                this.releaseEntry(this.index.put(key, new Entry(record.path, segment, record.offset,
+                    record.contentOffset, record.contentLength, record.lastModified)));
+            }
+
+            offset = record.getEnd();
+        }
+    }
+
+    /** Reads the record header at the specified offset. Returns false if there is no complete record there. */
+    protected static boolean readRecord(ByteBuffer buffer, long offset, long limit, Record record)
+    {
+        if (offset + RECORD_HEADER_SIZE > limit)
+            return false;
+
+        int pos = (int) offset;
+        if (buffer.getInt(pos) != RECORD_MAGIC)
+            return false;
+
+        int pathLength = buffer.getShort(pos + 4) & 0xFFFF;
+        long pathEnd = offset + 6 + pathLength;
+        if (pathEnd + 12 > limit)
+            return false;
+
+        byte[] pathBytes = new byte[pathLength];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(pos + 6);
+        dup.get(pathBytes);
+
+        record.offset = offset;
+        record.lastModified = buffer.getLong((int) pathEnd);
+        record.contentLength = buffer.getInt((int) pathEnd + 8);
+        record.contentOffset = pathEnd + 12;
+        if (record.getEnd() > limit)
+            return false;
+
+        try
+        {
+            record.path = new String(pathBytes, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            return false;
+        }
+
+        return true;
+    }
+
+    // Must be called with writeLock held.
+    protected void releaseEntry(Entry entry)
+    {
+        if (entry != null)
+            entry.segment.deadBytes += entry.getRecordSize();
+    }
+
+    // Must be called with writeLock held.
+    protected Segment getLastSegment()
+    {
+        return this.segments.get(this.segments.size() - 1);
+    }
+
+    // Must be called with writeLock held.
+    protected Segment addSegment() throws IOException
+    {
+        int number = this.segments.isEmpty() ? 0 : this.getLastSegment().number + 1;
+        String name = String.format("%s%05d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+        Segment segment = new Segment(number, new File(this.getSegmentDirectory(), name));
+        this.segments.add(segment);
+        return segment;
+    }
+
+    protected File getSegmentDirectory()
+    {
+        // During construction the segment directory has not been assigned yet.
+        return this.segmentDirectory != null ? this.segmentDirectory
+            : new File(this.getWriteLocation(), SEGMENT_DIRECTORY);
+    }
+
+    /**
+     * Appends a record to the active segment, starting a new segment if the active segment is full. A null content
+     * appends a record that removes the path. Must be called with writeLock held.
+     */
+    protected Entry appendRecord(String path, long lastModified, ByteBuffer content) throws IOException
+    {
+        byte[] pathBytes = path.getBytes("UTF-8");
+        int contentLength = content != null ? content.remaining() : -1;
+        long recordSize = RECORD_HEADER_SIZE + pathBytes.length + Math.max(contentLength, 0);
+
+        Segment segment = this.activeSegment;
+        if (segment.length > 0 && segment.length + recordSize > this.segmentSize)
+            segment = this.activeSegment = this.addSegment();
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + pathBytes.length);
+        header.putInt(RECORD_MAGIC);
+        header.putShort((short) pathBytes.length);
+        header.put(pathBytes);
+        header.putLong(lastModified);
+        header.putInt(contentLength);
+        header.flip();
+
+        long offset = segment.length;
+        long position = offset;
+        while (header.hasRemaining())
+        {
+            position += segment.channel.write(header, position);
+        }
+        long contentOffset = position;
+        while (content != null && content.hasRemaining())
+        {
+            position += segment.channel.write(content, position);
+        }
+        segment.length = position;
+
+        if (contentLength < 0)
+        {
+            segment.deadBytes += recordSize;
+            return null;
+        }
+
+        return new Entry(path, segment, offset, contentOffset, contentLength, lastModified);
+    }
+
+    protected void removeEntry(String path)
+    {
+        long key = this.computeKey(path);
+        if (key == TileKey.INVALID_PACKED_KEY)
+            return;
+
+        synchronized (this.writeLock)
+        {
+            Entry entry = this.index.get(key);
+            if (entry == null || !entry.path.equals(path))
+                return;
+
+            try
+            {
+                this.appendRecord(path, System.currentTimeMillis(), null);
+                this.index.remove(key);
+                this.releaseEntry(entry);
+            }
+            catch (IOException e)
+            {
+                Logging.error(Logging.getMessage("FileStore.ExceptionRemovingFile", path), e);
+            }
+        }
+    }
+
+    // **************************************************************//
+    // ******************** Import and Compaction ******************//
+    // **************************************************************//
+
+    protected void startMaintenance()
+    {
+        this.maintenanceThread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                performMaintenance();
+            }
+        });
+        this.maintenanceThread.setName("World Wind Packed File Store");
+        this.maintenanceThread.setDaemon(true);
+        this.maintenanceThread.setPriority(Thread.MIN_PRIORITY);
+        this.maintenanceThread.start();
+    }
+
+    protected void performMaintenance()
+    {
+        File importComplete = new File(this.segmentDirectory, IMPORT_COMPLETE_FILE);
+        if (!importComplete.exists())
+        {
+            this.importDirectory(this.getWriteLocation());
+            try
+            {
+                //noinspection ResultOfMethodCallIgnored
+                importComplete.createNewFile();
+            }
+            catch (IOException e)
+            {
+                Logging.warning(Logging.getMessage("generic.CannotCreateFile", importComplete), e);
+            }
+        }
+
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                Thread.sleep(MAINTENANCE_INTERVAL);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            this.importStagedFiles();
+            this.compactSegments();
+        }
+    }
+
+    /**
+     * Imports the tile files found under a directory into the store's segments and deletes them. Files that are not
+     * tiles are left in place. This is how a one-file-per-tile cache is converted; it may take a long time for a large
+     * cache and should not be called on a thread that renders.
+     *
+     * @param directory the directory to search. Its path relative to the write location is the store path of the files
+     *                  it contains.
+     *
+     * @throws IllegalArgumentException if the directory is null.
+     */
+    public void importDirectory(File directory)
+    {
+        if (directory == null)
+        {
+            String msg = Logging.getMessage("nullValue.FileIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (this.segmentDirectory == null)
+            return;
+
+        String root = this.getWriteLocation().getAbsolutePath();
+        long settled = System.currentTimeMillis() - SETTLE_TIME;
+
+        ArrayList<File> pending = new ArrayList<File>();
+        pending.add(directory);
+        while (!pending.isEmpty() && !Thread.currentThread().isInterrupted())
+        {
+            File dir = pending.remove(pending.size() - 1);
+            File[] files = dir.listFiles();
+            if (files == null)
+                continue;
+
+            for (File file : files)
+            {
+                if (file.isDirectory())
+                {
+                    if (!file.equals(this.segmentDirectory))
+                        pending.add(file);
+                    continue;
+                }
+
+                String absolutePath = file.getAbsolutePath();
+                if (!absolutePath.startsWith(root) || file.lastModified() > settled)
+                    continue;
+
+                String path = normalizePath(absolutePath.substring(root.length()));
+                if (this.computeKey(path) != TileKey.INVALID_PACKED_KEY)
+                    this.importFile(path, file);
+            }
+        }
+    }
+
+    protected void importStagedFiles()
+    {
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<String, Long> staged : this.stagedNames.entrySet())
+        {
+            String path = staged.getKey();
+            Long time = staged.getValue();
+            if (now - time < SETTLE_TIME)
+                continue;
+
+            File file = new File(this.getWriteLocation(), path);
+            boolean imported = file.exists() ? now - file.lastModified() >= SETTLE_TIME && this.importFile(path, file)
+                : now - time >= STAGE_EXPIRY_TIME;
+
+            // Leave the name staged if it was given out again while its file was imported.
+            if (imported)
+                this.stagedNames.remove(path, time);
+        }
+    }
+
+    /**
+     * Imports a file into the active segment and deletes it. The file is kept if it changes while it's being
+     * imported.
+     *
+     * @return true if the file was imported.
+     */
+    protected boolean importFile(String path, File file)
+    {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if (length <= 0 || length > Integer.MAX_VALUE)
+            return false;
+
+        try
+        {
+            ByteBuffer content = ByteBuffer.allocate((int) length);
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                raf.readFully(content.array());
+            }
+            finally
+            {
+                WWIO.closeStream(raf, file.getPath());
+            }
+
+            synchronized (this.writeLock)
+            {
+                Entry entry = this.appendRecord(path, lastModified, content);
+                this.releaseEntry(this.index.put(this.computeKey(path), entry));
+            }
+        }
+        catch (IOException e)
+        {
+            Logging.error(Logging.getMessage("PackedDataFileStore.ExceptionImportingFile", file), e);
+            return false;
+        }
+
+        if (file.lastModified() != lastModified || file.length() != length)
+            return false;
+
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        return true;
+    }
+
+    /** Copies the live records of mostly dead segments to the active segment and deletes the old segments. */
+    protected void compactSegments()
+    {
+        ArrayList<Segment> candidates = new ArrayList<Segment>();
+        synchronized (this.writeLock)
+        {
+            for (Segment segment : this.segments)
+            {
+                if (segment != this.activeSegment && segment.deadBytes > segment.length * COMPACTION_THRESHOLD)
+                    candidates.add(segment);
+            }
+        }
+
+        for (Segment segment : candidates)
+        {
+            if (Thread.currentThread().isInterrupted())
+                return;
+
+            try
+            {
+                this.compactSegment(segment);
+            }
+            catch (IOException e)
+            {
+                Logging.error(Logging.getMessage("PackedDataFileStore.ExceptionCompactingSegment", segment.file), e);
+            }
+        }
+    }
+
+    protected void compactSegment(Segment segment) throws IOException
+    {
+        ByteBuffer buffer = segment.map(segment.length);
+        Record record = new Record();
+        long offset = 0;
+
+        while (offset < segment.length && readRecord(buffer, offset, segment.length, record))
+        {
+            long key = this.computeKey(record.path);
+            if (key != TileKey.INVALID_PACKED_KEY)
+            {
+                synchronized (this.writeLock)
+                {
+                    Entry entry = this.index.get(key);
+                    if (record.contentLength >= 0 && entry != null && entry.segment == segment
+                        && entry.recordOffset == record.offset)
+                    {
+                        ByteBuffer content = this.getContent(entry);
+                        this.index.put(key, this.appendRecord(record.path, record.lastModified, content));
+                    }
+                    else if (record.contentLength < 0 && entry == null && this.segments.get(0) != segment)
+                    {
+                        // The removal must outlive this segment while an older segment may hold the removed record.
+                        this.appendRecord(record.path, record.lastModified, null);
+                    }
+                }
+            }
+
+            offset = record.getEnd();
+        }
+
+        synchronized (this.writeLock)
+        {
+            this.segments.remove(segment);
+        }
+
+        // Buffers already handed out keep their mapping after the file is closed and deleted.
+        segment.close();
+        //noinspection ResultOfMethodCallIgnored
+        segment.file.delete();
+    }
+
+    // **************************************************************//
+    // ******************** URL Support ****************************//
+    // **************************************************************//
+
+    protected class PackedURLStreamHandler extends URLStreamHandler
+    {
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException
+        {
+            return new PackedURLConnection(url);
+        }
+    }
+
+    protected class PackedURLConnection extends URLConnection
+    {
+        protected Entry entry;
+
+        protected PackedURLConnection(URL url)
+        {
+            super(url);
+        }
+
+        @Override
+        public void connect() throws IOException
+        {
+            if (this.connected)
+                return;
+
+            this.entry = PackedDataFileStore.this.getEntry(normalizePath(this.url.getPath()));
+            if (this.entry == null)
+                throw new FileNotFoundException(this.url.toString());
+
+            this.connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            this.connect();
+            return new ByteBufferInputStream(PackedDataFileStore.this.getContent(this.entry));
+        }
+
+        @Override
+        public int getContentLength()
+        {
+            try
+            {
+                this.connect();
+                return this.entry.contentLength;
+            }
+            catch (IOException e)
+            {
+                return -1;
+            }
+        }
+
+        @Override
+        public String getContentType()
+        {
+            return WWIO.makeMimeTypeForSuffix(WWIO.getSuffix(this.url.getPath()));
+        }
+
+        @Override
+        public long getLastModified()
+        {
+            try
+            {
+                this.connect();
+                return this.entry.lastModified;
+            }
+            catch (IOException e)
+            {
+                return 0;
+            }
+        }
+    }
+
+    /** Reads a buffer's remaining bytes without copying them to the heap first. */
+    protected static class ByteBufferInputStream extends InputStream
+    {
+        protected final ByteBuffer buffer;
+
+        protected ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if (length == 0)
+                return 0;
+
+            if (!this.buffer.hasRemaining())
+                return -1;
+
+            int count = Math.min(length, this.buffer.remaining());
+            this.buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            int count = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+            this.buffer.position(this.buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available()
+        {
+            return this.buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,565 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A <code>MemoryCache</code> that serves lookups without taking a lock. Entries are held in a concurrent map and
+ * ordered for eviction by a segmented LRU policy: new entries enter a probationary segment and are promoted to a
+ * protected segment when accessed again. Recency is tracked approximately; <code>get</code> records the access in a
+ * striped, bounded buffer which is drained in batches by whichever thread next holds the eviction lock. When an access
+ * buffer is full the access is dropped rather than waiting, so <code>get</code> and <code>contains</code> never
+ * block.
+ * <p/>
+ * Capacity, low water and <code>CacheListener</code> semantics match {@link BasicMemoryCache}: when an entry does not
+ * fit, entries are evicted until the used capacity falls below the low water, and listeners are notified of every
+ * removal.
+ */
+public class SegmentedMemoryCache implements MemoryCache
+{
+    protected static final int SEGMENT_NONE = 0;
+    protected static final int SEGMENT_PROBATION = 1;
+    protected static final int SEGMENT_PROTECTED = 2;
+
+    /** The number of access buffers. Must be a power of two. */
+    protected static final int NUM_BUFFERS = 4;
+    /** The capacity of each access buffer. Must be a power of two. */
+    protected static final int BUFFER_SIZE = 128;
+    /** The number of pending accesses in a buffer that triggers an opportunistic drain. */
+    protected static final int DRAIN_THRESHOLD = BUFFER_SIZE / 4;
+    /** The fraction of the capacity reserved for the protected segment. */
+    protected static final double PROTECTED_FRACTION = 0.8;
+
+    protected static class CacheEntry
+    {
+        protected final Object key;
+        protected final Object value;
+        protected final long size;
+        // Guarded by evictionLock.
+        protected int segment;
+        protected CacheEntry prev;
+        protected CacheEntry next;
+
+        protected CacheEntry(Object key, Object value, long size)
+        {
+            this.key = key;
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    /** A doubly linked list of entries ordered from least recently used (head) to most recently used (tail). */
+    protected static class Segment
+    {
+        protected final int id;
+        protected CacheEntry head;
+        protected CacheEntry tail;
+        protected long size;
+
+        protected Segment(int id)
+        {
+            this.id = id;
+        }
+
+        protected void addLast(CacheEntry entry)
+        {
+            entry.segment = this.id;
+            entry.prev = this.tail;
+            entry.next = null;
+
+            if (this.tail != null)
+                this.tail.next = entry;
+            else
+                this.head = entry;
+
+            this.tail = entry;
+            this.size += entry.size;
+        }
+
+        protected void unlink(CacheEntry entry)
+        {
+            if (entry.prev != null)
+                entry.prev.next = entry.next;
+            else
+                this.head = entry.next;
+
+            if (entry.next != null)
+                entry.next.prev = entry.prev;
+            else
+                this.tail = entry.prev;
+
+            entry.segment = SEGMENT_NONE;
+            entry.prev = null;
+            entry.next = null;
+            this.size -= entry.size;
+        }
+
+        protected void clear()
+        {
+            this.head = null;
+            this.tail = null;
+            this.size = 0;
+        }
+    }
+
+    /** A bounded ring of entries that have been read but not yet reordered in their segment. */
+    protected static class AccessBuffer
+    {
+        protected final AtomicReferenceArray<CacheEntry> slots = new AtomicReferenceArray<CacheEntry>(BUFFER_SIZE);
+        protected final AtomicLong writeCount = new AtomicLong();
+        // Only modified while holding evictionLock.
+        protected volatile long readCount;
+
+        /**
+         * Records an access without blocking.
+         *
+         * @param entry the entry that was accessed.
+         *
+         * @return the number of pending accesses, or -1 if the buffer was full and the access was dropped.
+         */
+        protected long offer(CacheEntry entry)
+        {
+            long w = this.writeCount.get();
+            long pending = w - this.readCount;
+            if (pending >= BUFFER_SIZE)
+                return -1;
+
+            if (!this.writeCount.compareAndSet(w, w + 1))
+                return -1; // Lost the race to another reader; approximate recency tolerates the dropped access.
+
+            this.slots.lazySet((int) (w & (BUFFER_SIZE - 1)), entry);
+            return pending + 1;
+        }
+    }
+
+    protected String name;
+    protected ConcurrentHashMap<Object, CacheEntry> entries;
+    protected CopyOnWriteArrayList<CacheListener> listeners;
+    protected AtomicLong capacity = new AtomicLong();
+    protected AtomicLong usedCapacity = new AtomicLong();
+    protected AtomicLong lowWater = new AtomicLong();
+    protected final ReentrantLock evictionLock = new ReentrantLock();
+    protected final Segment probation = new Segment(SEGMENT_PROBATION);
+    protected final Segment protectedSegment = new Segment(SEGMENT_PROTECTED);
+    protected final AccessBuffer[] buffers;
+
+    /**
+     * Constructs a new cache using <code>capacity</code> for maximum size, and <code>loWater</code> for the low water.
+     *
+     * @param loWater  the low water level.
+     * @param capacity the maximum capacity.
+     */
+    public SegmentedMemoryCache(long loWater, long capacity)
+    {
+        this.entries = new ConcurrentHashMap<Object, CacheEntry>();
+        this.listeners = new CopyOnWriteArrayList<CacheListener>();
+        this.capacity.set(capacity);
+        this.usedCapacity.set(0L);
+        this.lowWater.set(loWater);
+
+        this.buffers = new AccessBuffer[NUM_BUFFERS];
+        for (int i = 0; i < NUM_BUFFERS; i++)
+        {
+            this.buffers[i] = new AccessBuffer();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /** {@inheritDoc} */
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    /** {@inheritDoc} */
+    public Object get(Object key)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        CacheEntry entry = this.entries.get(key);
+        if (entry == null)
+            return null;
+
+        this.recordAccess(entry);
+
+        return entry.value;
+    }
+
+    /** {@inheritDoc} */
+    public void put(Object key, Object value, long size)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (value == null)
+        {
+            String msg = Logging.getMessage("nullValue.ValueIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (size < 1)
+        {
+            String msg = Logging.getMessage("MemoryCache.SizeIsLessThanOne", size);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        long cap = this.capacity.get();
+
+        if (size > cap)
+        {
+            String msg = Logging.getMessage("MemoryCache.SizeIsLargerThanCapacity", size, cap);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        CacheEntry entry = new CacheEntry(key, value, size);
+        ArrayList<CacheEntry> removed = new ArrayList<CacheEntry>();
+
+        this.evictionLock.lock();
+        try
+        {
+            this.drainBuffers();
+
+            CacheEntry existing = this.entries.get(key);
+            if (existing != null) // replacing
+                this.removeEntry(existing, removed);
+
+            if (this.usedCapacity.get() + size > cap)
+                this.makeSpace(size, removed);
+
+            this.usedCapacity.addAndGet(size);
+            this.entries.put(entry.key, entry);
+            this.probation.addLast(entry);
+        }
+        finally
+        {
+            this.evictionLock.unlock();
+        }
+
+        this.notifyRemoved(removed);
+    }
+
+    /** {@inheritDoc} */
+    public void put(Object key, Cacheable value)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (value == null)
+        {
+            String msg = Logging.getMessage("nullValue.ValueIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.put(key, value, value.getSizeInBytes());
+    }
+
+    /** {@inheritDoc} */
+    public boolean contains(Object key)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        return this.entries.containsKey(key);
+    }
+
+    /** {@inheritDoc} */
+    public void remove(Object key)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (!this.entries.containsKey(key))
+            return;
+
+        ArrayList<CacheEntry> removed = new ArrayList<CacheEntry>(1);
+
+        this.evictionLock.lock();
+        try
+        {
+            CacheEntry entry = this.entries.get(key);
+            if (entry != null)
+                this.removeEntry(entry, removed);
+        }
+        finally
+        {
+            this.evictionLock.unlock();
+        }
+
+        this.notifyRemoved(removed);
+    }
+
+    /** {@inheritDoc} */
+    public void clear()
+    {
+        ArrayList<CacheEntry> removed = new ArrayList<CacheEntry>(this.entries.size());
+
+        this.evictionLock.lock();
+        try
+        {
+            this.drainBuffers();
+
+            for (CacheEntry entry : this.entries.values())
+            {
+                this.removeEntry(entry, removed);
+            }
+
+            this.probation.clear();
+            this.protectedSegment.clear();
+        }
+        finally
+        {
+            this.evictionLock.unlock();
+        }
+
+        this.notifyRemoved(removed);
+    }
+
+    /** {@inheritDoc} */
+    public int getNumObjects()
+    {
+        return this.entries.size();
+    }
+
+    /** {@inheritDoc} */
+    public long getCapacity()
+    {
+        return this.capacity.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getUsedCapacity()
+    {
+        return this.usedCapacity.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getFreeCapacity()
+    {
+        return Math.max(this.capacity.get() - this.usedCapacity.get(), 0);
+    }
+
+    /** {@inheritDoc} */
+    public void setCapacity(long newCapacity)
+    {
+        this.capacity.set(newCapacity);
+    }
+
+    /** {@inheritDoc} */
+    public long getLowWater()
+    {
+        return this.lowWater.get();
+    }
+
+    /** {@inheritDoc} */
+    public void setLowWater(long loWater)
+    {
+        if (loWater < this.capacity.get() && loWater >= 0)
+        {
+            this.lowWater.set(loWater);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void addCacheListener(CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String msg = Logging.getMessage("nullValue.ListenerIsNull");
+            Logging.warning(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.listeners.add(listener);
+    }
+
+    /** {@inheritDoc} */
+    public void removeCacheListener(CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String msg = Logging.getMessage("nullValue.ListenerIsNull");
+            Logging.warning(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Records an access to <code>entry</code> in the calling thread's access buffer, and drains the buffers if enough
+     * accesses are pending and the eviction lock is free. Never blocks.
+     *
+     * @param entry the entry that was accessed.
+     */
+    protected void recordAccess(CacheEntry entry)
+    {
+        int index = (int) (Thread.currentThread().getId() & (NUM_BUFFERS - 1));
+        long pending = this.buffers[index].offer(entry);
+
+        if ((pending < 0 || pending >= DRAIN_THRESHOLD) && this.evictionLock.tryLock())
+        {
+            try
+            {
+                this.drainBuffers();
+            }
+            finally
+            {
+                this.evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies all pending accesses to the segment order. An accessed probationary entry is promoted to the protected
+     * segment, and an accessed protected entry moves to the most recently used end. Entries the protected segment can
+     * no longer hold are demoted back to probation.
+     */
+    protected void drainBuffers() // MUST BE CALLED WHILE HOLDING evictionLock
+    {
+        for (AccessBuffer buffer : this.buffers)
+        {
+            long r = buffer.readCount;
+            long w = buffer.writeCount.get();
+
+            for (; r < w; r++)
+            {
+                int slot = (int) (r & (BUFFER_SIZE - 1));
+                CacheEntry entry = buffer.slots.getAndSet(slot, null);
+                if (entry == null)
+                    break; // The writer has claimed the slot but not yet published the entry; resume on next drain.
+
+                this.applyAccess(entry);
+            }
+
+            buffer.readCount = r;
+        }
+
+        long protectedCapacity = (long) (PROTECTED_FRACTION * this.capacity.get());
+        while (this.protectedSegment.size > protectedCapacity && this.protectedSegment.head != null)
+        {
+            CacheEntry demoted = this.protectedSegment.head;
+            this.protectedSegment.unlink(demoted);
+            this.probation.addLast(demoted);
+        }
+    }
+
+    protected void applyAccess(CacheEntry entry) // MUST BE CALLED WHILE HOLDING evictionLock
+    {
+        if (entry.segment == SEGMENT_PROBATION)
+        {
+            this.probation.unlink(entry);
+            this.protectedSegment.addLast(entry);
+        }
+        else if (entry.segment == SEGMENT_PROTECTED)
+        {
+            this.protectedSegment.unlink(entry);
+            this.protectedSegment.addLast(entry);
+        }
+        // Otherwise the entry was removed after the access was recorded.
+    }
+
+    /**
+     * Removes <code>entry</code> from the cache and its segment. Listeners are not notified here; the removed entry is
+     * added to <code>removed</code> so that notification can happen after the eviction lock is released.
+     *
+     * @param entry   the entry (as opposed to key) of the item to be removed.
+     * @param removed the list that receives the entry if it was removed.
+     */
+    protected void removeEntry(CacheEntry entry, ArrayList<CacheEntry> removed) // MUST BE CALLED WHILE HOLDING evictionLock
+    {
+        if (this.entries.remove(entry.key, entry))
+        {
+            if (entry.segment == SEGMENT_PROBATION)
+                this.probation.unlink(entry);
+            else if (entry.segment == SEGMENT_PROTECTED)
+                this.protectedSegment.unlink(entry);
+
+            this.usedCapacity.addAndGet(-entry.size);
+            removed.add(entry);
+        }
+    }
+
+    /**
+     * Makes at least <code>spaceRequired</code> space in the cache. If spaceRequired is less than (capacity-lowWater),
+     * makes more space. Victims are taken from the least recently used end of the probationary segment first, then
+     * from the protected segment. Does nothing if capacity is less than spaceRequired.
+     *
+     * @param spaceRequired the amount of space required.
+     * @param removed       the list that receives evicted entries.
+     */
+    protected void makeSpace(long spaceRequired, ArrayList<CacheEntry> removed) // MUST BE CALLED WHILE HOLDING evictionLock
+    {
+        if (spaceRequired > this.capacity.get() || spaceRequired < 0)
+            return;
+
+        while (this.getFreeCapacity() < spaceRequired || this.getUsedCapacity() > this.getLowWater())
+        {
+            CacheEntry victim = this.probation.head != null ? this.probation.head : this.protectedSegment.head;
+            if (victim == null)
+                break;
+
+            this.removeEntry(victim, removed);
+        }
+    }
+
+    protected void notifyRemoved(ArrayList<CacheEntry> removed)
+    {
+        for (int i = 0; i < removed.size(); i++)
+        {
+            CacheEntry entry = removed.get(i);
+
+            for (MemoryCache.CacheListener listener : this.listeners)
+            {
+                try
+                {
+                    listener.entryRemoved(entry.key, entry.value);
+                }
+                catch (Exception e)
+                {
+                    listener.removalException(e, entry.key, entry.value);
+                }
+            }
+        }
+    }
+}
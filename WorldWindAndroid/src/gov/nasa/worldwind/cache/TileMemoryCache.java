@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+/**
+ * A <code>MemoryCache</code> for tiles that also accepts tile addresses packed into a <code>long</code> by {@link
+ * gov.nasa.worldwind.util.TileKey#pack(int, int, int, int)}. Looking up a tile by its packed key does not allocate, so
+ * callers that probe many tiles per frame can avoid constructing a <code>TileKey</code> for each probe.
+ * <p/>
+ * Entries added through the <code>Object</code> methods must use {@link gov.nasa.worldwind.util.TileKey} keys. An
+ * entry added with a <code>TileKey</code> can be found with that key's packed form, and vice versa.
+ */
+public interface TileMemoryCache extends MemoryCache
+{
+    /**
+     * Retrieves the item with the specified packed tile key from the cache.
+     *
+     * @param packedKey the packed tile key.
+     *
+     * @return the requested <code>Object</code> if found, null otherwise.
+     */
+    Object get(long packedKey);
+
+    /**
+     * Returns true if the cache contains the item with the specified packed tile key. This does not mark the item as
+     * accessed.
+     *
+     * @param packedKey the packed tile key.
+     *
+     * @return true if the cache holds the item referenced by <code>packedKey</code>.
+     */
+    boolean contains(long packedKey);
+
+    /**
+     * Removes the item with the specified packed tile key from the cache. If no such item is found, this method returns
+     * immediately.
+     *
+     * @param packedKey the packed tile key.
+     */
+    void remove(long packedKey);
+}
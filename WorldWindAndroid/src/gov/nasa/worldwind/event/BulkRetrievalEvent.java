@@ -6,7 +6,7 @@
 
 package gov.nasa.worldwind.event;
 
-import gov.nasa.worldwind.retrieve.BulkRetrievable;
+import gov.nasa.worldwind.retrieve.*;
 
 /**
  * Notifies of bulk retrieval events.
@@ -29,6 +29,7 @@ public class BulkRetrievalEvent extends WWEvent {
 
 	protected String eventType;
 	protected String item;
+	protected Progress progress;
 
 	/**
 	 * Creates a new event.
@@ -48,6 +49,25 @@ public class BulkRetrievalEvent extends WWEvent {
 		this.item = item;
 	}
 
+	/**
+	 * Creates a new event that reports the progress of the retrieval.
+	 * 
+	 * @param source
+	 *            the event source, typically either a tiled image layer, elevation model or placename layer.
+	 * @param eventType
+	 *            indicates success or failure. One of {@link #RETRIEVAL_SUCCEEDED} or {@link #RETRIEVAL_FAILED}.
+	 * @param item
+	 *            the cache location of the item whose retrieval succeeded or failed.
+	 * @param progress
+	 *            the progress of the retrieval when the item's retrieval succeeded or failed. May be null.
+	 * @see gov.nasa.worldwind.retrieve.BulkRetrievable
+	 */
+	public BulkRetrievalEvent(BulkRetrievable source, String eventType, String item, Progress progress) {
+		this(source, eventType, item);
+
+		this.progress = progress;
+	}
+
 	/**
 	 * Returns the event source.
 	 * 
@@ -75,4 +95,13 @@ public class BulkRetrievalEvent extends WWEvent {
 	public String getItem() {
 		return item;
 	}
+
+	/**
+	 * Returns the progress of the retrieval when the item's retrieval succeeded or failed.
+	 * 
+	 * @return a snapshot of the retrieval's progress, or null if the event does not report progress.
+	 */
+	public Progress getProgress() {
+		return progress;
+	}
 }
@@ -27,6 +27,7 @@ import org.w3c.dom.Element;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.ByteBuffer;
@@ -52,6 +53,7 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 
 	public BasicTiledImageLayer(LevelSet levelSet) {
 		super(levelSet);
+		this.readAbsentTiles();
 	}
 
 	public BasicTiledImageLayer(AVList params) {
@@ -105,6 +107,7 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 		if (params.getValue(AVKey.TRANSPARENCY_COLORS) != null) this.setValue(AVKey.TRANSPARENCY_COLORS, params.getValue(AVKey.TRANSPARENCY_COLORS));
 
 		this.setValue(AVKey.CONSTRUCTION_PARAMETERS, params.copy());
+		this.readAbsentTiles();
 
 		// If any resources should be retrieved for this Layer, start a task to retrieve those resources, and initialize
 		// this Layer once those resources are retrieved.
@@ -121,6 +124,11 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 		this(getParamsFromDocument(domElement, params));
 	}
 
+	/** Restores the tiles found missing from this layer's dataset in earlier sessions, so they are not requested again. */
+	protected void readAbsentTiles() {
+		if (this.getDataFileStore() != null) this.getLevels().readAbsentTiles(this.getDataFileStore());
+	}
+
 	/** Overridden to cancel periodic non-tile resource retrieval tasks scheduled by this Layer. */
 	@Override
 	public void dispose() {
@@ -446,20 +454,41 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 		return new RequestTask(tile, this, priority);
 	}
 
+	protected RequestTask createPrefetchTask(DrawContext dc, GpuTextureTile tile, int generation) {
+		if (tile.getExtent() == null) tile.setExtent(this.computeTileExtent(dc, tile));
+
+		return new RequestTask(tile, this, this.computeTilePriority(dc, tile), this.prefetcher, generation);
+	}
+
 	protected static class RequestTask implements Runnable, Comparable<RequestTask> {
 		protected final BasicTiledImageLayer layer;
 		protected final GpuTextureTile tile;
 		protected double priority;
+		protected final TilePrefetcher prefetcher;
+		protected final int generation;
 
 		protected RequestTask(GpuTextureTile tile, BasicTiledImageLayer layer, double priority) {
+			this(tile, layer, priority, null, 0);
+		}
+
+		/**
+		 * Creates a task that loads a prefetched tile. The task runs after the tasks of visible tiles, and does nothing
+		 * if the prefetcher's generation has changed by the time it runs.
+		 */
+		protected RequestTask(GpuTextureTile tile, BasicTiledImageLayer layer, double priority, TilePrefetcher prefetcher,
+				int generation) {
 			this.layer = layer;
 			this.tile = tile;
 			this.priority = priority;
+			this.prefetcher = prefetcher;
+			this.generation = generation;
 		}
 
 		public void run() {
 			if (Thread.currentThread().isInterrupted()) return; // the task was cancelled because it's a duplicate or for some other reason
 
+			if (this.prefetcher != null && !this.prefetcher.isCurrent(this.generation)) return; // the prefetch was cancelled
+
 			this.layer.loadTile(this.tile);
 		}
 
@@ -473,6 +502,8 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 		public int compareTo(RequestTask that) {
 			if (that == null) return -1;
 
+			if ((this.prefetcher == null) != (that.prefetcher == null)) return this.prefetcher == null ? -1 : 1;
+
 			return this.priority < that.priority ? -1 : (this.priority > that.priority ? 1 : 0);
 		}
 
@@ -509,6 +540,18 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 		this.requestQ.add(task);
 	}
 
+	@Override
+	protected void requestPrefetchTile(DrawContext dc, GpuTextureTile tile, int generation) {
+		this.requestQ.add(this.createPrefetchTask(dc, tile, generation));
+	}
+
+	@Override
+	protected void requestDropped(Runnable task) {
+		// A prefetch request is made only once, so its tile must not stay marked as pending when the request is dropped.
+		if (task instanceof RequestTask && ((RequestTask) task).prefetcher != null)
+			((RequestTask) task).prefetcher.release(((RequestTask) task).tile.getTileKey());
+	}
+
 	/**
 	 * Compute the priority of loading this tile, based on distance from the eye to the tile's center point. Tiles
 	 * closer to the eye have higher priority than those far from the eye.
@@ -540,7 +583,13 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 	protected void loadTile(GpuTextureTile tile) {
 		URL textureURL = this.getDataFileStore().findFile(tile.getPath(), false);
 		if (textureURL != null) {
-			this.loadTexture(tile, textureURL);
+			// Load the tile's compressed copy if it has one. The tile's own file is loaded if the copy is corrupt.
+			URL transcodedURL = this.findTranscodedTexture(tile, textureURL);
+			boolean loaded = (transcodedURL != null && this.loadTexture(tile, transcodedURL)) || this.loadTexture(tile, textureURL);
+
+			// An expired texture is displayed until the server confirms or replaces it.
+			if (loaded && this.isTextureFileExpired(tile, textureURL, this.getDataFileStore()))
+				this.retrieveTexture(tile, this.createDownloadPostProcessor(tile));
 		} else {
 			this.retrieveTexture(tile, this.createDownloadPostProcessor(tile));
 		}
@@ -562,16 +611,7 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 		}
 
 		if (textureData != null) {
-			tile.setTextureData(textureData);
-
-			// The tile's size has changed, so update its size in the memory cache.
-			if (tile.getLevelNumber() != 0 || !this.isRetainLevelZeroTiles())
-				addTileToCache(tile);
-
-			// Mark the tile as not absent to ensure that it is used, and cause any World Windows containing this layer
-			// to repaint themselves.
-			this.levels.unmarkResourceAbsent(tile);
-			this.firePropertyChange(AVKey.LAYER, null, this);
+			this.applyTextureData(tile, textureData);
 			return true;
 		} else {
 			// Assume that something is wrong with the file and delete it.
@@ -582,10 +622,129 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 		}
 	}
 
+	/**
+	 * Gives a tile its texture and makes the tile available for display.
+	 *
+	 * @param tile
+	 *            the tile to update.
+	 * @param textureData
+	 *            the tile's texture.
+	 */
+	protected void applyTextureData(GpuTextureTile tile, GpuTextureData textureData) {
+		tile.setTextureData(textureData);
+
+		// The tile's size has changed, so update its size in the memory cache.
+		if (tile.getLevelNumber() != 0 || !this.isRetainLevelZeroTiles())
+			addTileToCache(tile);
+
+		// Mark the tile as not absent to ensure that it is used, and cause any World Windows containing this layer
+		// to repaint themselves.
+		this.levels.unmarkResourceAbsent(tile);
+		this.firePropertyChange(AVKey.LAYER, null, this);
+	}
+
 	protected GpuTextureData createTextureData(URL textureURL, String textureFormat) {
 		return GpuTextureData.createTextureData(textureURL, textureURL.toString(), textureFormat, isUseMipMaps());
 	}
 
+	/**
+	 * Returns the path of the file that holds a copy of a tile's image compressed to this layer's texture format. The
+	 * copy sits next to the tile's file and its name is the tile's name followed by the compressed format's suffix, for
+	 * example "0/0/0_0.png.dds", so it never shares a name with the tile itself. Loading the copy avoids compressing
+	 * the tile's image every time it's loaded.
+	 *
+	 * @param path
+	 *            path of the tile's file.
+	 * @return path of the compressed copy, or null if the texture format is not a compressed format or the tile's file
+	 *         is already in that format.
+	 */
+	protected String getTranscodedPath(String path) {
+		String suffix;
+		if ("image/dds".equalsIgnoreCase(this.getTextureFormat())) suffix = ".dds";
+		else if ("image/pkm".equalsIgnoreCase(this.getTextureFormat())) suffix = ".pkm";
+		else return null;
+
+		return path.toLowerCase().endsWith(suffix) ? null : path + suffix;
+	}
+
+	/**
+	 * Returns the compressed copy of a tile's texture, first creating it if it's missing or older than the tile's file.
+	 * The copy is created when the tile is loaded from a file written before compressed copies were kept, or when an
+	 * earlier attempt to create it failed.
+	 *
+	 * @param tile
+	 *            the tile to find the compressed texture of.
+	 * @param textureURL
+	 *            URL of the tile's file.
+	 * @return URL of the compressed copy, or null if the tile has no compressed copy and one cannot be created.
+	 */
+	protected URL findTranscodedTexture(GpuTextureTile tile, URL textureURL) {
+		String path = this.getTranscodedPath(tile.getPath());
+		if (path == null) return null;
+
+		URL transcodedURL = this.getDataFileStore().findFile(path, false);
+		if (transcodedURL != null && getLastModified(transcodedURL) >= getLastModified(textureURL)) return transcodedURL;
+
+		File transcodedFile = this.getDataFileStore().newFile(path);
+		if (transcodedFile == null || !this.transcodeTexture(textureURL, transcodedFile)) return null;
+
+		return WWIO.makeURL(transcodedFile);
+	}
+
+	/**
+	 * Compresses a tile's image to this layer's texture format and saves the result. The result is written to a
+	 * temporary file that is then renamed, so a reader never sees a partially written texture.
+	 *
+	 * @param textureURL
+	 *            URL of the tile's image.
+	 * @param transcodedFile
+	 *            file to save the compressed texture in.
+	 * @return true if the compressed texture is saved, otherwise false.
+	 */
+	protected boolean transcodeTexture(URL textureURL, File transcodedFile) {
+		ByteBuffer buffer;
+		InputStream stream = WWIO.openBufferedStream(textureURL);
+		if (stream == null) return false;
+		try {
+			buffer = GpuTextureData.compressTexture(stream, this.getTextureFormat(), this.isUseMipMaps());
+		} catch (Exception e) {
+			Logging.error(Logging.getMessage("layers.TextureLayer.ExceptionCompressingTexture", textureURL), e);
+			return false;
+		} finally {
+			WWIO.closeStream(stream, textureURL.toString());
+		}
+
+		if (buffer == null) return false;
+
+		File tempFile = new File(transcodedFile.getPath() + ".tmp");
+		try {
+			synchronized (this.fileLock) {
+				// The copy can be made again, so it's not forced to the storage device.
+				if (!WWIO.saveBuffer(buffer, tempFile, false)) return false;
+
+				if (!tempFile.renameTo(transcodedFile)) {
+					// noinspection ResultOfMethodCallIgnored
+					tempFile.delete();
+					Logging.error(Logging.getMessage("generic.CannotMoveFile", tempFile, transcodedFile));
+					return false;
+				}
+			}
+		} catch (IOException e) {
+			Logging.error(Logging.getMessage("layers.TextureLayer.ExceptionCompressingTexture", textureURL), e);
+			return false;
+		}
+
+		return true;
+	}
+
+	protected static long getLastModified(URL url) {
+		try {
+			return url.openConnection().getLastModified();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
 	/**
 	 * Create a post processor for a tile retrieval task.
 	 *
@@ -594,7 +753,10 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 	 * @return new post processor.
 	 */
 	protected DownloadPostProcessor createDownloadPostProcessor(GpuTextureTile tile) {
-		return new DownloadPostProcessor(tile, this, this.getDataFileStore());
+		DownloadPostProcessor postProcessor = new DownloadPostProcessor(tile, this, this.getDataFileStore());
+		// The tile is displayed from the downloaded data, so its file need not be written before it's shown.
+		postProcessor.setWriteBehind(true);
+		return postProcessor;
 	}
 
 	/**
@@ -610,32 +772,55 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 	}
 
 	protected void retrieveRemoteTexture(GpuTextureTile tile, DownloadPostProcessor postProcessor) {
+		Retriever retriever = this.createRemoteRetriever(tile, postProcessor);
+		if (retriever == null || !WorldWind.getRetrievalService().isAvailable()) return;
+
+		// Prefetch requests are submitted only once, so they must not be dropped for not being re-submitted. They're
+		// retrieved after every tile the view needs now.
+		RetrievalService service = WorldWind.getRetrievalService();
+		if (service instanceof PriorityRetrievalService && this.prefetcher != null && this.prefetcher.isPending(tile.getTileKey()))
+			((PriorityRetrievalService) service).runRetrieverOnce(retriever, TilePrefetcher.PREFETCH_PRIORITY);
+		else
+			service.runRetriever(retriever, tile.getPriority());
+	}
+
+	/**
+	 * Creates a retriever that retrieves a tile from the network, without running it. Marks the tile absent if network
+	 * retrieval is disabled or the tile's host is unavailable.
+	 *
+	 * @param tile
+	 *            tile to download.
+	 * @param postProcessor
+	 *            post processor to handle the retrieval.
+	 * @return the tile's retriever, or null if the tile cannot be retrieved.
+	 */
+	protected Retriever createRemoteRetriever(GpuTextureTile tile, DownloadPostProcessor postProcessor) {
 		if (!this.isNetworkRetrievalEnabled()) {
 			this.getLevels().markResourceAbsent(tile);
-			return;
+			return null;
 		}
 
-		if (!WorldWind.getRetrievalService().isAvailable()) return;
-
 		URL url;
 		try {
 			url = tile.getResourceURL();
 		} catch (MalformedURLException e) {
 			Logging.error(Logging.getMessage("layers.TextureLayer.ExceptionCreatingTextureUrl", tile), e);
-			return;
+			return null;
 		}
 
 		if (WorldWind.getNetworkStatus().isHostUnavailable(url)) {
 			this.getLevels().markResourceAbsent(tile);
-			return;
+			return null;
 		}
 
 		Retriever retriever = URLRetriever.createRetriever(url, postProcessor);
 		if (retriever == null) {
 			Logging.error(Logging.getMessage("layers.TextureLayer.UnknownRetrievalProtocol", url.toString()));
-			return;
+			return null;
 		}
 		retriever.setValue(URLRetriever.EXTRACT_ZIP_ENTRY, "true"); // supports legacy layers
+		if (retriever instanceof HTTPRetriever && postProcessor != null) // revalidates an expired file rather than refetching it
+			postProcessor.configureConditionalRequest((HTTPRetriever) retriever);
 
 		// Apply any overridden timeouts.
 		Integer connectTimeout = AVListImpl.getIntegerValue(this, AVKey.URL_CONNECT_TIMEOUT);
@@ -647,7 +832,7 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 		Integer staleRequestLimit = AVListImpl.getIntegerValue(this, AVKey.RETRIEVAL_QUEUE_STALE_REQUEST_LIMIT);
 		if (staleRequestLimit != null && staleRequestLimit > 0) retriever.setStaleRequestLimit(staleRequestLimit);
 
-		WorldWind.getRetrievalService().runRetriever(retriever, tile.getPriority());
+		return retriever;
 	}
 
 	protected static class DownloadPostProcessor extends AbstractRetrievalPostProcessor {
@@ -663,16 +848,29 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 			this.fileStore = fileStore;
 		}
 
+		@Override
+		protected boolean overwriteExistingFile() {
+			// A file exists at retrieval time only when it has expired, in which case new content replaces it.
+			return true;
+		}
+
 		@Override
 		protected void markResourceAbsent() {
 			this.layer.getLevels().markResourceAbsent(this.tile);
 		}
 
+		@Override
+		protected void markResourceNotFound() {
+			this.layer.getLevels().markResourceNotFound(this.tile);
+			this.layer.getLevels().scheduleAbsentTilesWrite(this.getFileStore());
+		}
+
 		@Override
 		protected Object getFileLock() {
 			return this.layer.fileLock;
 		}
 
+		@Override
 		protected FileStore getFileStore()
 		{
 			return this.fileStore != null ? this.fileStore : this.layer.getDataFileStore();
@@ -683,6 +881,11 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 			return layer.getDataFileStore().newFile(this.tile.getPath());
 		}
 
+		@Override
+		protected URL findOutputFile() {
+			return this.getFileStore().findFile(this.tile.getPath(), false);
+		}
+
 		@Override
 		protected ByteBuffer handleSuccessfulRetrieval() {
 			ByteBuffer buffer = super.handleSuccessfulRetrieval();
@@ -693,13 +896,124 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 				//TODO write configurationFile
 				this.layer.writeConfigurationFile(this.getFileStore());
 
-				// Fire a property change to denote that the layer's backing data has changed.
-				this.layer.firePropertyChange(AVKey.LAYER, null, this);
+				if (this.isWriteBehind()) {
+					// Display the tile from the data in memory. Otherwise wait for its file, which is still being
+					// written, before loading it.
+					if (this.savedBuffer == null || !this.loadSavedTexture()) {
+						WriteBehindWriter.getDefault().runAfterPendingWrites(new Runnable() {
+							public void run() {
+								reloadTexture();
+							}
+						});
+					}
+				} else {
+					this.reloadTexture();
+				}
 			}
 
 			return buffer;
 		}
 
+		/** Causes the tile to be loaded from its new file, first compressing the file's image if necessary. */
+		protected void reloadTexture() {
+			// Compress the new image once here, rather than each time the tile is loaded.
+			this.saveTranscodedTexture();
+
+			// Evict any expired copy of the tile so that the new texture is loaded on the next request.
+			GpuTextureTile.getMemoryCache().remove(this.tile.getTileKey());
+			// Fire a property change to denote that the layer's backing data has changed.
+			this.layer.firePropertyChange(AVKey.LAYER, null, this);
+		}
+
+		/**
+		 * Creates the tile's texture from the data saved to its file, without reading the file back. When the layer
+		 * keeps a compressed copy of the image, the image is compressed once, and the result both becomes the texture
+		 * and is written as the copy. The copy is written after the tile's file so that it is not considered stale.
+		 *
+		 * @return true if the tile's texture is created, otherwise false.
+		 */
+		protected boolean loadSavedTexture() {
+			File outFile = this.getOutputFile();
+			if (outFile == null) return false;
+
+			String textureFormat = this.layer.getTextureFormat();
+			boolean useMipMaps = this.layer.isUseMipMaps();
+			ByteBuffer textureBuffer = this.savedBuffer;
+			String texturePath = outFile.getPath();
+
+			File transcodedFile = this.getTranscodedFile();
+			if (transcodedFile != null) {
+				ByteBuffer compressed = null;
+				try {
+					compressed = GpuTextureData.compressTexture(
+						WWIO.getInputStreamFromByteBuffer(this.savedBuffer.duplicate()), textureFormat, useMipMaps);
+				} catch (Exception e) {
+					Logging.error(Logging.getMessage("layers.TextureLayer.ExceptionCompressingTexture", outFile), e);
+				}
+
+				if (compressed == null) return false;
+
+				WriteBehindWriter.getDefault().write(compressed, transcodedFile, this.getFileLock(), false);
+				textureBuffer = compressed;
+				texturePath = transcodedFile.getPath();
+			}
+
+			GpuTextureData textureData = GpuTextureData.createTextureData(
+				WWIO.getInputStreamFromByteBuffer(textureBuffer.duplicate()), texturePath, textureFormat, useMipMaps);
+			if (textureData == null) return false;
+
+			this.layer.applyTextureData(this.tile, textureData);
+			return true;
+		}
+
+		@Override
+		protected ByteBuffer handleNotModified() {
+			ByteBuffer buffer = super.handleNotModified();
+
+			// The file on disk is current again; there is nothing new to load.
+			this.layer.getLevels().unmarkResourceAbsent(this.tile);
+
+			// The compressed copy of the unchanged image is still current too.
+			File transcodedFile = this.getTranscodedFile();
+			if (transcodedFile != null && transcodedFile.exists()) {
+				synchronized (this.getFileLock()) {
+					// noinspection ResultOfMethodCallIgnored
+					transcodedFile.setLastModified(System.currentTimeMillis());
+				}
+			}
+
+			return buffer;
+		}
+
+		/**
+		 * Returns the file that holds the compressed copy of the retrieved image.
+		 *
+		 * @return the compressed copy's file, or null if the layer does not keep a compressed copy of the image.
+		 */
+		protected File getTranscodedFile() {
+			File outFile = this.getOutputFile();
+			String path = outFile != null ? this.layer.getTranscodedPath(outFile.getPath()) : null;
+
+			return path != null ? new File(path) : null;
+		}
+
+		/**
+		 * Replaces the compressed copy of the retrieved image. A copy of the image it replaces is deleted if the new
+		 * image cannot be compressed.
+		 */
+		protected void saveTranscodedTexture() {
+			File transcodedFile = this.getTranscodedFile();
+			if (transcodedFile == null) return;
+
+			URL textureURL = WWIO.makeURL(this.getOutputFile());
+			if (textureURL == null || !this.layer.transcodeTexture(textureURL, transcodedFile)) {
+				synchronized (this.getFileLock()) {
+					// noinspection ResultOfMethodCallIgnored
+					transcodedFile.delete();
+				}
+			}
+		}
+
 		@Override
 		protected ByteBuffer handleTextContent() throws IOException {
 			this.markResourceAbsent();
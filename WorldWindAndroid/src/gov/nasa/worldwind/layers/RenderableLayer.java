@@ -8,23 +8,47 @@ import android.graphics.Point;
 import gov.nasa.worldwind.Disposable;
 import gov.nasa.worldwind.avlist.AVList;
 import gov.nasa.worldwind.event.*;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.pick.GeometryPickSupport;
+import gov.nasa.worldwind.pick.GeometryPickable;
 import gov.nasa.worldwind.render.*;
 import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.util.SectorQuadTree;
 
-import java.util.Collection;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.beans.PropertyChangeEvent;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * The <code>RenderableLayer</code> class manages a collection of {@link gov.nasa.worldwind.render.Renderable} objects
  * for rendering, picking, and disposal.
+ * <p/>
+ * By default the layer visits every renderable in every frame and leaves culling to the renderables themselves. A
+ * layer holding many renderables, few of which are in view at once, can be made indexed with {@link
+ * #setIndexed(boolean)}. An indexed layer keeps its renderables in a {@link SectorQuadTree} keyed by their geographic
+ * bounds, and visits only the renderables whose bounds intersect the scene's visible sector. Renderables implementing
+ * {@link GeographicExtent} are keyed by their sector, surface objects are keyed by their bounding sectors, and any
+ * other renderable is visited in every frame. A renderable that moves is re-keyed when it fires a property change
+ * event, as {@link Path} and {@link AbstractSurfaceShape} do when their geometry changes, or when it is passed to
+ * {@link #updateRenderable(gov.nasa.worldwind.render.Renderable)}.
  *
  * @author tag
  * @version $Id: RenderableLayer.java 778 2012-09-19 17:52:20Z dcollins $
  * @see gov.nasa.worldwind.render.Renderable
  */
-public class RenderableLayer extends AbstractLayer
+public class RenderableLayer extends AbstractLayer implements GeometryPickable
 {
     protected Collection<Renderable> renderables = new ConcurrentLinkedQueue<Renderable>();
+    /** The spatial index of this layer's renderables, or null if the layer is not indexed. */
+    protected volatile SectorQuadTree<Renderable> renderableIndex;
+    /** Indexed renderables that were added or changed since they were last keyed. */
+    protected final Set<Renderable> changedRenderables =
+        Collections.newSetFromMap(new ConcurrentHashMap<Renderable, Boolean>());
+    /** The greatest altitude of any indexed renderable, used to widen the region of interest beyond the terrain. */
+    protected double indexedMaxAltitude;
+    protected final Sector indexRegion = new Sector();
+    protected final ArrayList<Renderable> visibleRenderables = new ArrayList<Renderable>();
+    protected long visibleRenderablesTimeStamp = -1;
 
     /** Creates a new <code>RenderableLayer</code> with an empty internal collection. */
     public RenderableLayer()
@@ -55,6 +79,87 @@ public class RenderableLayer extends AbstractLayer
         super.setOpacity(opacity);
     }
 
+    /**
+     * Indicates whether this layer keeps its renderables in a spatial index. See {@link #setIndexed(boolean)}.
+     *
+     * @return true if this layer is indexed, otherwise false.
+     */
+    public boolean isIndexed()
+    {
+        return this.renderableIndex != null;
+    }
+
+    /**
+     * Specifies whether this layer keeps its renderables in a spatial index and visits only those in view each frame,
+     * rather than visiting every renderable. Indexing pays off when the layer holds many renderables, few of which are
+     * in view at once. The layer's renderables are visited in the order they were added in either case.
+     *
+     * @param indexed true to index this layer's renderables, false to visit every renderable each frame.
+     */
+    public void setIndexed(boolean indexed)
+    {
+        if (indexed == this.isIndexed())
+            return;
+
+        this.changedRenderables.clear();
+        this.visibleRenderables.clear();
+        this.visibleRenderablesTimeStamp = -1;
+        this.indexedMaxAltitude = 0;
+
+        if (indexed)
+        {
+            SectorQuadTree<Renderable> index = new SectorQuadTree<Renderable>();
+            for (Renderable renderable : this.renderables)
+            {
+                this.addToIndex(index, renderable);
+            }
+
+            this.renderableIndex = index;
+        }
+        else
+        {
+            this.renderableIndex = null;
+        }
+    }
+
+    /**
+     * Informs this layer that a renderable's geographic bounds may have changed. An indexed layer keys the renderable
+     * by its new bounds at the start of the next frame. Renderables that fire a property change event when they move
+     * need not be passed to this method. Does nothing if the layer is not indexed or does not contain the renderable.
+     *
+     * @param renderable the renderable that changed.
+     *
+     * @throws IllegalArgumentException If <code>renderable</code> is null.
+     */
+    public void updateRenderable(Renderable renderable)
+    {
+        if (renderable == null)
+        {
+            String msg = Logging.getMessage("nullValue.RenderableIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        SectorQuadTree<Renderable> index = this.renderableIndex;
+        if (index != null && index.contains(renderable))
+            this.changedRenderables.add(renderable);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This implementation re-keys the event's source in the spatial index if the source is one of this layer's
+     * renderables and the layer is indexed.
+     */
+    @Override
+    public void propertyChange(PropertyChangeEvent event)
+    {
+        if (event != null && event.getSource() instanceof Renderable && this.renderableIndex != null)
+            this.updateRenderable((Renderable) event.getSource());
+
+        super.propertyChange(event);
+    }
+
     /**
      * Returns the number of elements in this layer's internal collection.
      *
@@ -102,6 +207,10 @@ public class RenderableLayer extends AbstractLayer
             // from the renderable to the SceneController.
             if (renderable instanceof AVList)
                 ((AVList) renderable).addPropertyChangeListener(this);
+
+            SectorQuadTree<Renderable> index = this.renderableIndex;
+            if (index != null)
+                this.addToIndex(index, renderable);
         }
     }
 
@@ -139,6 +248,10 @@ public class RenderableLayer extends AbstractLayer
                 // events from the renderable to the SceneController.
                 if (renderable instanceof AVList)
                     ((AVList) renderable).addPropertyChangeListener(this);
+
+                SectorQuadTree<Renderable> index = this.renderableIndex;
+                if (index != null)
+                    this.addToIndex(index, renderable);
             }
         }
     }
@@ -170,6 +283,13 @@ public class RenderableLayer extends AbstractLayer
             // keeping a dangling reference to the layer.
             if (renderable instanceof AVList)
                 ((AVList) renderable).removePropertyChangeListener(this);
+
+            SectorQuadTree<Renderable> index = this.renderableIndex;
+            if (index != null)
+            {
+                index.remove(renderable);
+                this.changedRenderables.remove(renderable);
+            }
         }
     }
 
@@ -192,6 +312,14 @@ public class RenderableLayer extends AbstractLayer
         }
 
         this.renderables.clear();
+
+        SectorQuadTree<Renderable> index = this.renderableIndex;
+        if (index != null)
+        {
+            index.clear();
+            this.changedRenderables.clear();
+            this.indexedMaxAltitude = 0;
+        }
     }
 
 	@Override
@@ -236,10 +364,50 @@ public class RenderableLayer extends AbstractLayer
         //}
     }
 
+    /**
+     * Picks this layer's renderables geometrically, visiting the same renderables as the most recent frame. Renderables
+     * that are not {@link GeometryPickable} cause the pick to fall back to pick colors, except for surface tiles, which
+     * are not pickable.
+     *
+     * @param dc          the current draw context.
+     * @param pickSupport the pick support holding the pick point.
+     *
+     * @return true.
+     */
+    public boolean pickGeometry(DrawContext dc, GeometryPickSupport pickSupport)
+    {
+        if (!this.isEnabled() || !this.isPickEnabled() || !this.isLayerActive(dc) || !this.isLayerInView(dc))
+            return true;
+
+        for (Renderable renderable : this.getVisibleRenderables(dc))
+        {
+            try
+            {
+                if (renderable instanceof GeometryPickable)
+                {
+                    if (!((GeometryPickable) renderable).pickGeometry(dc, pickSupport))
+                        pickSupport.setFallbackRequired(true);
+                }
+                else if (renderable != null && !(renderable instanceof SurfaceTile))
+                {
+                    pickSupport.setFallbackRequired(true);
+                }
+            }
+            catch (Exception e)
+            {
+                String msg = Logging.getMessage("generic.ExceptionPickingRenderable", renderable);
+                Logging.error(msg, e);
+                // Don't abort; continue on to the next renderable.
+            }
+        }
+
+        return true;
+    }
+
 	@Override
     protected void doRender(DrawContext dc)
     {
-        for (Renderable renderable : this.renderables)
+        for (Renderable renderable : this.getVisibleRenderables(dc))
         {
             try
             {
@@ -257,7 +425,7 @@ public class RenderableLayer extends AbstractLayer
 	@Override
 	protected void doPreRender(DrawContext dc)
 	{
-		for (Renderable renderable : renderables)
+		for (Renderable renderable : this.getVisibleRenderables(dc))
 		{
 			try
 			{
@@ -275,6 +443,153 @@ public class RenderableLayer extends AbstractLayer
 		}
 	}
 
+    /**
+     * Returns the renderables to visit in the current frame. If this layer is not indexed this returns all of its
+     * renderables. Otherwise this keys the renderables that changed since the last frame, then returns the renderables
+     * that intersect the scene's visible sector, in the order they were added. The result is computed once per frame.
+     *
+     * @param dc the current draw context.
+     *
+     * @return the renderables to visit.
+     */
+    protected Iterable<Renderable> getVisibleRenderables(DrawContext dc)
+    {
+        SectorQuadTree<Renderable> index = this.renderableIndex;
+        if (index == null)
+            return this.renderables;
+
+        if (this.visibleRenderablesTimeStamp != dc.getFrameTimeStamp())
+        {
+            this.updateIndex(dc, index);
+
+            this.visibleRenderables.clear();
+            index.getItemsInRegion(this.computeIndexRegion(dc), this.visibleRenderables);
+            this.visibleRenderablesTimeStamp = dc.getFrameTimeStamp();
+        }
+
+        return this.visibleRenderables;
+    }
+
+    protected void addToIndex(SectorQuadTree<Renderable> index, Renderable renderable)
+    {
+        // Visit the renderable in every frame until it is keyed at the start of the next frame, since its bounds may
+        // depend on the draw context.
+        index.putUnbounded(renderable);
+        this.changedRenderables.add(renderable);
+    }
+
+    protected void updateIndex(DrawContext dc, SectorQuadTree<Renderable> index)
+    {
+        if (this.changedRenderables.isEmpty())
+            return;
+
+        Iterator<Renderable> iterator = this.changedRenderables.iterator();
+        while (iterator.hasNext())
+        {
+            Renderable renderable = iterator.next();
+            iterator.remove(); // A change made while the renderable is keyed marks it changed again.
+
+            Sector sector;
+            try
+            {
+                sector = this.computeRenderableSector(dc, renderable);
+            }
+            catch (Exception e)
+            {
+                String msg = Logging.getMessage("generic.ExceptionRenderingRenderable", renderable);
+                Logging.error(msg, e);
+                sector = null; // Visit the renderable in every frame.
+            }
+
+            synchronized (index)
+            {
+                if (!index.contains(renderable))
+                    continue; // The renderable was removed from this layer.
+
+                index.put(renderable, sector);
+            }
+
+            if (sector != null && renderable instanceof GeographicExtent)
+            {
+                double altitude = ((GeographicExtent) renderable).getMaxAltitude();
+                if (altitude > this.indexedMaxAltitude)
+                    this.indexedMaxAltitude = altitude;
+            }
+        }
+    }
+
+    /**
+     * Computes the sector by which a renderable is keyed in the spatial index. The default implementation returns the
+     * sector of a {@link GeographicExtent} and the union of the bounding sectors of a {@link SurfaceObject}, and null
+     * for any other renderable. Subclasses may override this method to index other kinds of renderables.
+     *
+     * @param dc         the current draw context.
+     * @param renderable the renderable in question.
+     *
+     * @return the renderable's bounding sector, or null to visit the renderable in every frame.
+     */
+    protected Sector computeRenderableSector(DrawContext dc, Renderable renderable)
+    {
+        if (renderable instanceof GeographicExtent)
+            return ((GeographicExtent) renderable).getSector();
+
+        if (renderable instanceof SurfaceObject)
+        {
+            List<Sector> sectors = ((SurfaceObject) renderable).getSectors(dc);
+            if (sectors == null || sectors.isEmpty())
+                return null;
+
+            Sector sector = sectors.get(0).copy();
+            for (int i = 1; i < sectors.size(); i++)
+            {
+                sector.union(sectors.get(i));
+            }
+
+            return sector;
+        }
+
+        return null;
+    }
+
+    /**
+     * Computes the region whose renderables are visited in the current frame: the scene's visible sector, widened by
+     * the distance beyond the horizon at which the highest indexed renderable is still visible.
+     *
+     * @param dc the current draw context.
+     *
+     * @return the region of interest, or null if every renderable is to be visited.
+     */
+    protected Sector computeIndexRegion(DrawContext dc)
+    {
+        Sector visibleSector = dc.getVisibleSector();
+        if (visibleSector == null)
+            return null;
+
+        if (this.indexedMaxAltitude <= 0)
+            return visibleSector;
+
+        // An object at altitude h remains visible from the terrain horizon until it is acos(R / (R + h)) beyond it.
+        double radius = dc.getGlobe().getRadius();
+        double altitude = this.indexedMaxAltitude * dc.getVerticalExaggeration();
+        double margin = Math.toDegrees(Math.acos(radius / (radius + altitude)));
+
+        double minLat = Math.max(-90, visibleSector.minLatitude.degrees - margin);
+        double maxLat = Math.min(90, visibleSector.maxLatitude.degrees + margin);
+        double cosLat = Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+        double lonMargin = cosLat > margin / 180 ? margin / cosLat : 360;
+        double minLon = visibleSector.minLongitude.degrees - lonMargin;
+        double maxLon = visibleSector.maxLongitude.degrees + lonMargin;
+
+        // The widened region may cross the antimeridian; cover every longitude rather than splitting it.
+        if (minLon < -180 || maxLon > 180)
+        {
+            minLon = -180;
+            maxLon = 180;
+        }
+
+        return this.indexRegion.setDegrees(minLat, maxLat, minLon, maxLon);
+    }
+
     /**
      * {@inheritDoc}
      * <p/>
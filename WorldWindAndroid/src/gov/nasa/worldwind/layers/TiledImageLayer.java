@@ -8,7 +8,6 @@ package gov.nasa.worldwind.layers;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Point;
-import android.opengl.GLES20;
 import gov.nasa.worldwind.Configuration;
 import gov.nasa.worldwind.WorldWind;
 import gov.nasa.worldwind.WorldWindowImpl;
@@ -53,6 +52,9 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 	private boolean drawBoundingVolumes = false;
 	protected List<GpuTextureTile> topLevelTiles = new ArrayList<GpuTextureTile>();
 	protected String tileCountName;
+	protected ScreenSpaceErrorLod screenSpaceErrorLod;
+	protected ScreenSpaceErrorLod.TileTree<GpuTextureTile> tileTree;
+	protected TilePrefetcher prefetcher = new TilePrefetcher();
 
 	// Stuff computed each frame
 	protected List<GpuTextureTile> currentTiles = new ArrayList<GpuTextureTile>();
@@ -203,6 +205,51 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 		this.detailHint = detailHint;
 	}
 
+	/**
+	 * Indicates the screen-space error selection used to choose this layer's tiles, if any.
+	 * 
+	 * @return the screen-space error selection, or null if tiles are chosen by the detail hint.
+	 * @see #setScreenSpaceErrorLod(ScreenSpaceErrorLod)
+	 */
+	public ScreenSpaceErrorLod getScreenSpaceErrorLod() {
+		return this.screenSpaceErrorLod;
+	}
+
+	/**
+	 * Specifies a screen-space error selection that chooses this layer's tiles instead of the detail hint. Tiles are
+	 * then refined until one texel covers no more than the selection's maximum pixel error, and no more tiles than the
+	 * selection's budget are displayed. Sharing one selection among several layers gives them a common budget. The
+	 * default is null, which chooses tiles by the detail hint.
+	 * 
+	 * @param lod
+	 *            the screen-space error selection. May be null.
+	 */
+	public void setScreenSpaceErrorLod(ScreenSpaceErrorLod lod) {
+		this.screenSpaceErrorLod = lod;
+	}
+
+	/**
+	 * Returns the prefetcher that requests this layer's tiles ahead of a moving view.
+	 * 
+	 * @return the layer's prefetcher, or null if prefetch is disabled.
+	 */
+	public TilePrefetcher getPrefetcher() {
+		return this.prefetcher;
+	}
+
+	/**
+	 * Specifies the prefetcher that requests this layer's tiles ahead of a moving view. Specify null to disable
+	 * prefetch.
+	 * 
+	 * @param prefetcher
+	 *            the layer's prefetcher. May be null.
+	 */
+	public void setPrefetcher(TilePrefetcher prefetcher) {
+		if (this.prefetcher != null && this.prefetcher != prefetcher) this.prefetcher.cancel();
+
+		this.prefetcher = prefetcher;
+	}
+
 	protected LevelSet getLevels() {
 		return levels;
 	}
@@ -289,11 +336,23 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 		while (task != null) {
 			if (!WorldWind.getTaskService().isFull()) {
 				WorldWind.getTaskService().runTask(task);
+			} else {
+				this.requestDropped(task);
 			}
 			task = this.requestQ.poll();
 		}
 	}
 
+	/**
+	 * Called when a request is dropped because the task service is full. Requests for visible tiles are made again in
+	 * the next frame. The default implementation does nothing.
+	 * 
+	 * @param task
+	 *            the dropped request.
+	 */
+	protected void requestDropped(Runnable task) {
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * <p/>
@@ -363,6 +422,7 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 			this.currentTiles.clear();
 		}
 
+		this.prefetchTiles(dc);
 		this.sendRequests();
 		this.requestQ.clear();
 
@@ -377,8 +437,7 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 			textRenderer = new TextRenderer(dc, paint);
 		}
 
-		GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-		GLES20.glDepthMask(false);
+		textRenderer.beginDrawing();
 
 		for (GpuTextureTile tile : tiles)
 		{
@@ -393,8 +452,7 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 					dc.getGlobe().getElevation(ll.getLatitude(), ll.getLongitude())), pt);
 			textRenderer.draw(tileLabel, (int) pt.x, (int) pt.y);
 		}
-		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-		GLES20.glDepthMask(true);
+		textRenderer.endDrawing();
 	}
 
 	protected void drawBoundingVolumes(DrawContext dc, List<GpuTextureTile> tiles)
@@ -460,6 +518,8 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 
 		if (this.topLevelTiles.isEmpty()) this.createTopLevelTiles();
 
+		if (this.screenSpaceErrorLod != null) this.screenSpaceErrorLod.select(dc, this, this.topLevelTiles, this.getTileTree());
+
 		for (int i = 0; i < this.topLevelTiles.size(); i++) {
 			Tile tile = this.topLevelTiles.get(i);
 
@@ -557,6 +617,7 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 
 		// If the tile's texture is in memory, add it to the list of current tiles and return.
 		if (tile.isTextureInMemory(dc.getGpuResourceCache())) {
+			if (this.prefetcher != null) this.prefetcher.tileUsed(tile.getTileKey());
 			this.currentTiles.add(tile);
 			return;
 		}
@@ -597,6 +658,51 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 		}
 	}
 
+	/**
+	 * Requests the tiles the view is predicted to need next, after the visible tiles have been requested. Does nothing
+	 * if the view is not moving.
+	 * 
+	 * @param dc
+	 *            the current draw context.
+	 */
+	protected void prefetchTiles(DrawContext dc) {
+		if (this.prefetcher == null || !this.prefetcher.isEnabled()) return;
+
+		MemoryCache cache = GpuTextureTile.getMemoryCache();
+		for (TileKey key : this.prefetcher.selectTiles(dc, this.levels, this.detailHintOrigin + this.detailHint)) {
+			GpuTextureTile tile = (GpuTextureTile) cache.get(key);
+			if (tile == null) {
+				tile = this.createTile(this.levels.computeSectorForKey(key), this.levels.getLevel(key.getLevelNumber()), key.getRow(), key.getColumn());
+				cache.put(key, tile);
+			}
+
+			// Prefetch requests use only the task service's spare capacity.
+			if (WorldWind.getTaskService().isFull()) break;
+			if (tile.isTextureInMemory(dc.getGpuResourceCache())) continue;
+			if (!this.prefetcher.tryAcquire(dc, key)) break;
+
+			this.requestPrefetchTile(dc, tile, this.prefetcher.getGeneration());
+		}
+	}
+
+	/**
+	 * Requests a tile the view is predicted to need. Subclasses should issue the request at a lower priority than the
+	 * requests for visible tiles, and skip it if the generation is no longer current when it runs. The default
+	 * implementation requests the tile as a visible tile.
+	 * 
+	 * @param dc
+	 *            the current draw context.
+	 * @param tile
+	 *            the tile to request.
+	 * @param generation
+	 *            the prefetcher's generation when the request was issued.
+	 */
+	protected void requestPrefetchTile(DrawContext dc, GpuTextureTile tile, int generation) {
+		if (tile.getExtent() == null) tile.setExtent(this.computeTileExtent(dc, tile));
+
+		this.requestTile(dc, tile);
+	}
+
 	protected boolean isTileVisible(DrawContext dc, GpuTextureTile tile) {
 		// TODO: compute extent every frame or periodically update
 		if (tile.getExtent() == null) tile.setExtent(this.computeTileExtent(dc, tile));
@@ -604,7 +710,8 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 		Sector visibleSector = dc.getVisibleSector();
 		Extent extent = tile.getExtent();
 
-		return (visibleSector == null || visibleSector.intersects(tile.getSector())) && (extent == null || dc.getView().getFrustumInModelCoordinates().intersects(extent));
+		return (visibleSector == null || visibleSector.intersects(tile.getSector()))
+				&& (extent == null || (dc.getView().getFrustumInModelCoordinates().intersects(extent) && !dc.isBelowHorizon(extent)));
 	}
 
 	protected boolean meetsRenderCriteria(DrawContext dc, GpuTextureTile tile) {
@@ -612,9 +719,41 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 	}
 
 	protected boolean needToSubdivide(DrawContext dc, GpuTextureTile tile) {
+		if (this.screenSpaceErrorLod != null) return this.screenSpaceErrorLod.isRefined(tile);
+
 		return tile.mustSubdivide(dc, this.detailHintOrigin + this.detailHint);
 	}
 
+	protected ScreenSpaceErrorLod.TileTree<GpuTextureTile> getTileTree() {
+		if (this.tileTree == null) {
+			this.tileTree = new ScreenSpaceErrorLod.TileTree<GpuTextureTile>() {
+				public boolean isTileVisible(DrawContext dc, GpuTextureTile tile) {
+					if (!levels.getSector().intersects(tile.getSector())) return false;
+
+					updateTileExtent(dc, tile);
+					return TiledImageLayer.this.isTileVisible(dc, tile);
+				}
+
+				public boolean canRefine(DrawContext dc, GpuTextureTile tile) {
+					return !levels.isFinalLevel(tile.getLevelNumber());
+				}
+
+				public void subdivide(DrawContext dc, GpuTextureTile tile, List<GpuTextureTile> result) {
+					MemoryCache cache = GpuTextureTile.getMemoryCache();
+					Tile[] subTiles = tile.subdivide(levels.getLevel(tile.getLevelNumber() + 1), cache, TiledImageLayer.this);
+					for (Tile child : subTiles) {
+						// Cache the sub-tiles so that addTileOrDescendants refines the tile into the same instances.
+						if (!cache.contains(child.getTileKey())) cache.put(child.getTileKey(), child);
+						result.add((GpuTextureTile) child);
+					}
+					tile.clearChildList();
+				}
+			};
+		}
+
+		return this.tileTree;
+	}
+
 	protected void updateTileExtent(DrawContext dc, GpuTextureTile tile) {
 		// TODO: regenerate the tile extent and reference points whenever the underlying elevation model changes.
 		// TODO: regenerate the tile extent and reference points whenever the vertical exaggeration changes.
@@ -912,8 +1051,8 @@ public abstract class TiledImageLayer extends AbstractLayer implements Tile.Tile
 	protected boolean isTextureFileExpired(GpuTextureTile tile, java.net.URL textureURL, FileStore fileStore) {
 		if (!WWIO.isFileOutOfDate(textureURL, tile.getLevel().getExpiryTime())) return false;
 
-		// The file has expired. Delete it.
-		fileStore.removeFile(textureURL);
+		// The file has expired. Keep it so that the retrieval can ask the server whether it has changed, and replace it
+		// only if it has.
 		String message = Logging.getMessage("generic.DataFileExpired", textureURL);
 		Logging.verbose(message);
 		return true;
@@ -6,7 +6,6 @@
 
 package gov.nasa.worldwind.layers;
 
-import gov.nasa.worldwind.WorldWind;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.cache.FileStore;
 import gov.nasa.worldwind.event.*;
@@ -17,7 +16,6 @@ import gov.nasa.worldwind.util.*;
 
 import java.io.*;
 import java.net.URL;
-import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -36,7 +34,6 @@ public class TiledImageLayerBulkDownloader extends BulkRetrievalThread
 
     protected final BasicTiledImageLayer layer;
     protected final int level;
-    protected List<GpuTextureTile> missingTiles;
 
     /**
      * Constructs a downloader to retrieve imagery not currently available in the World Wind file cache.
@@ -88,38 +85,7 @@ public class TiledImageLayerBulkDownloader extends BulkRetrievalThread
     {
         try
         {
-            // Init progress with missing tile count estimate
-            this.progress.setTotalCount(this.estimateMissingTilesCount(20));
-            this.progress.setTotalSize(this.progress.getTotalCount() * estimateAverageTileSize());
-
-            // Determine and request missing tiles by level/region
-            for (int levelNumber = 0; levelNumber <= this.level; levelNumber++)
-            {
-                if (this.layer.getLevels().isLevelEmpty(levelNumber))
-                    continue;
-
-                int div = this.computeRegionDivisions(this.sector, levelNumber, MAX_TILE_COUNT_PER_REGION);
-                Iterator<Sector> regionsIterator = this.getRegionIterator(this.sector, div);
-
-                Sector region;
-                while (regionsIterator.hasNext())
-                {
-                    region = regionsIterator.next();
-                    // Determine missing tiles
-                    this.missingTiles = getMissingTilesInSector(region, levelNumber);
-
-                    // Submit missing tiles requests at intervals
-                    while (this.missingTiles.size() > 0)
-                    {
-                        submitMissingTilesRequests();
-                        if (this.missingTiles.size() > 0)
-                            Thread.sleep(RETRIEVAL_SERVICE_POLL_DELAY);
-                    }
-                }
-            }
-            // Set progress to 100%
-            this.progress.setTotalCount(this.progress.getCurrentCount());
-            this.progress.setTotalSize(this.progress.getCurrentSize());
+            this.retrieveTiles(this.layer.getLevels(), this.level, this.layer);
         }
         catch (InterruptedException e)
         {
@@ -134,95 +100,27 @@ public class TiledImageLayerBulkDownloader extends BulkRetrievalThread
         }
     }
 
-    protected synchronized void submitMissingTilesRequests() throws InterruptedException
+    protected boolean isTileAbsent(Tile tile)
     {
-        RetrievalService rs = WorldWind.getRetrievalService();
-        int i = 0;
-        while (this.missingTiles.size() > i && rs.isAvailable())
-        {
-            Thread.sleep(1); // generates InterruptedException if thread has been interrupted
-
-            GpuTextureTile tile = this.missingTiles.get(i);
-
-            if (this.layer.getLevels().isResourceAbsent(tile))
-            {
-                removeAbsentTile(tile);  // tile is absent, count it off.
-                continue;
-            }
-
-            URL url = this.fileStore.findFile(tile.getPath(), false);
-            if (url != null)
-            {
-                // tile has been retrieved and is local now, count it as retrieved.
-                removeRetrievedTile(tile);
-                continue;
-            }
-
-            this.layer.retrieveRemoteTexture(tile, createBulkDownloadPostProcessor(tile));
-            i++;
-        }
+        return this.layer.getLevels().isResourceAbsent(tile);
     }
 
-    protected BasicTiledImageLayer.DownloadPostProcessor createBulkDownloadPostProcessor(GpuTextureTile tile)
+    protected URL findLocalTile(Tile tile)
     {
-        return new BulkDownloadPostProcessor(tile, this.layer, this.fileStore);
-    }
-
-    protected class BulkDownloadPostProcessor extends BasicTiledImageLayer.DownloadPostProcessor
-    {
-        public BulkDownloadPostProcessor(GpuTextureTile tile, BasicTiledImageLayer layer, FileStore fileStore)
-        {
-            super(tile, layer, fileStore);
-        }
-
-        public ByteBuffer run(Retriever retriever)
-        {
-            ByteBuffer buffer = super.run(retriever);
-
-            if (retriever.getState().equals(Retriever.RETRIEVER_STATE_SUCCESSFUL))
-                removeRetrievedTile(this.tile);
-
-            if (hasRetrievalListeners())
-                callRetrievalListeners(retriever, this.tile);
-
-            return buffer;
-        }
-    }
+        URL url = this.fileStore.findFile(tile.getPath(), false);
 
-    protected void callRetrievalListeners(Retriever retriever, GpuTextureTile tile)
-    {
-        String eventType = (retriever.getState().equals(Retriever.RETRIEVER_STATE_SUCCESSFUL))
-            ? BulkRetrievalEvent.RETRIEVAL_SUCCEEDED : BulkRetrievalEvent.RETRIEVAL_FAILED;
-        super.callRetrievalListeners(new BulkRetrievalEvent(this.layer, eventType, tile.getPath()));
+        return url != null && !this.layer.isTextureFileExpired((GpuTextureTile) tile, url, this.fileStore) ? url : null;
     }
 
-    protected synchronized void removeRetrievedTile(GpuTextureTile tile)
+    protected Retriever createRetriever(Tile tile)
     {
-        this.missingTiles.remove(tile);
-        // Update progress
-        this.progress.setCurrentCount(this.progress.getCurrentCount() + 1);
-        this.progress.setCurrentSize(this.progress.getCurrentSize() + estimateAverageTileSize());
-        this.progress.setLastUpdateTime(System.currentTimeMillis());
-        this.normalizeProgress();
+        return this.layer.createRemoteRetriever((GpuTextureTile) tile,
+            this.createBulkDownloadPostProcessor((GpuTextureTile) tile));
     }
 
-    protected synchronized void removeAbsentTile(GpuTextureTile tile)
-    {
-        this.missingTiles.remove(tile);
-        // Decrease progress expected total count and size
-        this.progress.setTotalCount(this.progress.getTotalCount() - 1);
-        this.progress.setTotalSize(this.progress.getTotalSize() - estimateAverageTileSize());
-        this.progress.setLastUpdateTime(System.currentTimeMillis());
-        this.normalizeProgress();
-    }
-
-    protected void normalizeProgress()
+    protected BasicTiledImageLayer.DownloadPostProcessor createBulkDownloadPostProcessor(GpuTextureTile tile)
     {
-        if (this.progress.getTotalCount() < this.progress.getCurrentCount())
-        {
-            this.progress.setTotalCount(this.progress.getCurrentCount());
-            this.progress.setTotalSize(this.progress.getCurrentSize());
-        }
+        return new BasicTiledImageLayer.DownloadPostProcessor(tile, this.layer, this.fileStore);
     }
 
     /**
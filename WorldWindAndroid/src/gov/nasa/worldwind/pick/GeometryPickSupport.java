@@ -0,0 +1,619 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.pick;
+
+import android.graphics.Point;
+import gov.nasa.worldwind.View;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.layers.Layer;
+import gov.nasa.worldwind.render.DrawContext;
+import gov.nasa.worldwind.terrain.SectorGeometryList;
+import gov.nasa.worldwind.util.Logging;
+
+import java.nio.FloatBuffer;
+import java.util.*;
+
+/**
+ * Picks objects by testing the geometry they drew against the pick point on the CPU, as an alternative to drawing the
+ * scene a second time in pick colors and reading the color under the pick point back from the frame buffer. Objects
+ * that can be picked this way implement {@link GeometryPickable} and report their screen distance from the pick point
+ * to this class, which keeps those within a tolerance and resolves the top object once every object has been tested.
+ * <p/>
+ * Geometry in model coordinates is compared with the pick point in screen coordinates. Geometry on the terrain is
+ * compared with the terrain position under the pick point in geographic coordinates, and its distance converted to
+ * screen pixels using the size of a pixel at that position. Neither requires an OpenGL context.
+ *
+ * @version $Id$
+ */
+public class GeometryPickSupport
+{
+    /** The default pick tolerance, in screen pixels. */
+    public static final double DEFAULT_TOLERANCE = 8;
+
+    protected static class Candidate
+    {
+        protected final Object object;
+        protected final Layer layer;
+        protected final double distance;
+        protected final double eyeDistance;
+        protected final Position position;
+        protected final int ordinal;
+
+        public Candidate(Object object, Layer layer, double distance, double eyeDistance, Position position,
+            int ordinal)
+        {
+            this.object = object;
+            this.layer = layer;
+            this.distance = distance;
+            this.eyeDistance = eyeDistance;
+            this.position = position;
+            this.ordinal = ordinal;
+        }
+    }
+
+    /**
+     * Orders candidates nearest the pick point first, then nearest the eye, then most recently tested, since objects
+     * tested later are drawn later and therefore on top.
+     */
+    protected static final Comparator<Candidate> PICK_ORDER = new Comparator<Candidate>()
+    {
+        public int compare(Candidate a, Candidate b)
+        {
+            int c = Double.compare(a.distance, b.distance);
+            if (c == 0)
+                c = Double.compare(a.eyeDistance, b.eyeDistance);
+            if (c == 0)
+                c = b.ordinal - a.ordinal;
+
+            return c;
+        }
+    };
+
+    protected double tolerance = DEFAULT_TOLERANCE;
+    protected Point pickPoint;
+    protected double pickX; // The pick point's x coordinate in OpenGL screen coordinates.
+    protected double pickY; // The pick point's y coordinate in OpenGL screen coordinates, measured from the bottom.
+    protected Line pickRay = new Line();
+    protected boolean hasPickRay;
+    protected Vec4 terrainPoint;
+    protected Position terrainPosition;
+    protected double terrainEyeDistance;
+    protected double terrainPixelSize;
+    protected double globeRadius;
+    protected boolean fallbackRequired;
+    protected List<Candidate> candidates = new ArrayList<Candidate>();
+    // Scratch values used by the distance computations.
+    protected Vec4 modelA = new Vec4();
+    protected Vec4 modelB = new Vec4();
+    protected Vec4 screenA = new Vec4();
+    protected Vec4 screenB = new Vec4();
+    protected Vec4 screenC = new Vec4();
+    protected Vec4 closestPoint = new Vec4();
+    protected double closestFraction;
+
+    public GeometryPickSupport()
+    {
+    }
+
+    /**
+     * Indicates the distance from the pick point within which objects are picked.
+     *
+     * @return the pick tolerance, in screen pixels.
+     */
+    public double getTolerance()
+    {
+        return this.tolerance;
+    }
+
+    /**
+     * Specifies the distance from the pick point within which objects are picked. Lines thinner than the tolerance are
+     * therefore easier to pick.
+     *
+     * @param tolerance the pick tolerance, in screen pixels.
+     *
+     * @throws IllegalArgumentException if the tolerance is less than 0.
+     */
+    public void setTolerance(double tolerance)
+    {
+        if (tolerance < 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", tolerance);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.tolerance = tolerance;
+    }
+
+    public Point getPickPoint()
+    {
+        return this.pickPoint;
+    }
+
+    /**
+     * Indicates the terrain position under the pick point, as computed by {@link #beginPicking(DrawContext,
+     * Point)}.
+     *
+     * @return the terrain position under the pick point, or null if the pick point is not over the terrain.
+     */
+    public Position getTerrainPosition()
+    {
+        return this.terrainPosition;
+    }
+
+    /**
+     * Indicates the distance from the eye to the terrain position under the pick point. Objects on the terrain use this
+     * as their eye distance.
+     *
+     * @return the terrain position's distance from the eye, in meters, or 0 if the pick point is not over the terrain.
+     */
+    public double getTerrainEyeDistance()
+    {
+        return this.terrainPosition != null ? this.terrainEyeDistance : 0;
+    }
+
+    /**
+     * Indicates whether an object could not be picked geometrically during the current pick, in which case the results
+     * of this pick are incomplete and the scene must be picked by drawing it in pick colors.
+     *
+     * @return true if the scene must be picked in pick colors, otherwise false.
+     */
+    public boolean isFallbackRequired()
+    {
+        return this.fallbackRequired;
+    }
+
+    public void setFallbackRequired(boolean fallbackRequired)
+    {
+        this.fallbackRequired = fallbackRequired;
+    }
+
+    /**
+     * Prepares to pick at a screen point. This computes the pick ray and the terrain position under the pick point
+     * from the draw context's view and surface geometry, which must be those of the most recently drawn frame.
+     *
+     * @param dc        the current draw context.
+     * @param pickPoint the pick point, in Android screen coordinates.
+     *
+     * @throws IllegalArgumentException if either argument is null.
+     */
+    public void beginPicking(DrawContext dc, Point pickPoint)
+    {
+        if (dc == null)
+        {
+            String msg = Logging.getMessage("nullValue.DrawContextIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (pickPoint == null)
+        {
+            String msg = Logging.getMessage("nullValue.PointIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.candidates.clear();
+        this.fallbackRequired = false;
+        this.terrainPoint = null;
+        this.terrainPosition = null;
+        this.pickPoint = pickPoint;
+
+        View view = dc.getView();
+        Rect viewport = view.getViewport();
+        this.pickX = pickPoint.x;
+        this.pickY = viewport.y + viewport.height - pickPoint.y;
+        this.hasPickRay = view.computeRayFromScreenPoint(pickPoint, this.pickRay);
+        this.globeRadius = dc.getGlobe().getEquatorialRadius();
+
+        SectorGeometryList sgl = dc.getSurfaceGeometry();
+        Intersection[] hits = (sgl != null && this.hasPickRay) ? sgl.intersect(this.pickRay) : null;
+        if (hits != null && hits.length > 0 && hits[0] != null)
+        {
+            this.terrainPoint = hits[0].getIntersectionPoint();
+            this.terrainPosition = dc.getGlobe().computePositionFromPoint(this.terrainPoint);
+            this.terrainEyeDistance = this.terrainPoint.distanceTo3(view.getEyePoint());
+            this.terrainPixelSize = view.computePixelSizeAtDistance(this.terrainEyeDistance);
+        }
+    }
+
+    /** Releases the objects held by the most recent pick. */
+    public void endPicking()
+    {
+        this.candidates.clear();
+        this.pickPoint = null;
+        this.terrainPoint = null;
+        this.terrainPosition = null;
+    }
+
+    /**
+     * Adds an object to the pick candidates if its distance from the pick point is within the pick tolerance. The
+     * object's layer is the draw context's current layer.
+     *
+     * @param dc          the current draw context.
+     * @param object      the object to pick.
+     * @param distance    the object's distance from the pick point, in screen pixels. This is 0 if the pick point is
+     *                    on the object.
+     * @param eyeDistance the object's distance from the eye, in meters. This orders objects at equal distances from
+     *                    the pick point.
+     * @param position    the picked position on the object, or null if it is not known.
+     *
+     * @return true if the object has been added, otherwise false.
+     */
+    public boolean addCandidate(DrawContext dc, Object object, double distance, double eyeDistance, Position position)
+    {
+        if (object == null || !(distance <= this.tolerance))
+            return false;
+
+        this.candidates.add(new Candidate(object, dc.getCurrentLayer(), Math.max(distance, 0), eyeDistance, position,
+            this.candidates.size()));
+        return true;
+    }
+
+    /**
+     * Adds the picked objects to the draw context's list of objects at the pick point, and marks the object nearest
+     * the pick point as the top object. The terrain position under the pick point is added last, and is the top object
+     * if no other object is picked.
+     *
+     * @param dc         the current draw context.
+     * @param allObjects true to add every object within the pick tolerance, as when deep picking, or false to add only
+     *                   the top object.
+     */
+    public void resolvePick(DrawContext dc, boolean allObjects)
+    {
+        Collections.sort(this.candidates, PICK_ORDER);
+
+        for (int i = 0; i < this.candidates.size(); i++)
+        {
+            if (i > 0 && !allObjects)
+                break;
+
+            Candidate c = this.candidates.get(i);
+            PickedObject po = new PickedObject(this.pickPoint, dc.getUniquePickColor(), c.object, c.position, false);
+            po.setParentLayer(c.layer);
+            if (i == 0)
+                po.setOnTop();
+            dc.addPickedObject(po);
+        }
+
+        if (this.terrainPosition != null)
+        {
+            Position pp = this.terrainPosition.copy();
+            pp.elevation = dc.getGlobe().getElevation(pp.latitude, pp.longitude) * dc.getVerticalExaggeration();
+            PickedObject po = new PickedObject(this.pickPoint, dc.getUniquePickColor(), pp, pp, true);
+            if (this.candidates.isEmpty())
+                po.setOnTop();
+            dc.addPickedObject(po);
+        }
+    }
+
+    /**
+     * Indicates whether an extent may hold geometry within the pick tolerance of the pick point. Objects use this to
+     * reject the pick without examining their geometry.
+     *
+     * @param dc     the current draw context.
+     * @param extent the extent to test. If null, the extent is assumed to be near the pick point.
+     *
+     * @return true if the extent may hold geometry near the pick point, or false if it cannot.
+     */
+    public boolean isExtentNearPickPoint(DrawContext dc, Extent extent)
+    {
+        if (extent == null || !this.hasPickRay)
+            return true;
+
+        // Compare the extent's distance from the pick ray with its radius, widened by the size of the tolerance at the
+        // extent's distance along the ray.
+        Vec4 origin = this.pickRay.getOrigin();
+        Vec4 direction = this.pickRay.getDirection();
+        Vec4 center = extent.getCenter();
+        double radius = extent.getRadius();
+        double dx = center.x - origin.x;
+        double dy = center.y - origin.y;
+        double dz = center.z - origin.z;
+        double length = Math.sqrt(direction.x * direction.x + direction.y * direction.y + direction.z * direction.z);
+        double t = (dx * direction.x + dy * direction.y + dz * direction.z) / length;
+        if (t < -radius)
+            return false; // The extent is behind the eye.
+
+        double d = Math.sqrt(Math.max(dx * dx + dy * dy + dz * dz - t * t, 0));
+        double toleranceSize = this.tolerance * dc.getView().computePixelSizeAtDistance(Math.max(t, 0));
+
+        return d <= radius + toleranceSize;
+    }
+
+    /**
+     * Computes the screen distance from the pick point to a line strip in model coordinates. This also computes the
+     * model point on the line strip nearest the pick point, which is then available from {@link
+     * #getClosestPoint()}. Segments with an end point outside the view's depth range are ignored.
+     *
+     * @param dc             the current draw context.
+     * @param points         the line strip's points, relative to the reference point.
+     * @param stride         the number of floats between the start of consecutive points.
+     * @param count          the number of points.
+     * @param referencePoint the model point the points are relative to.
+     *
+     * @return the distance from the pick point to the line strip, in screen pixels, or positive infinity if no segment
+     *         is in view.
+     */
+    public double computeLineStripDistance(DrawContext dc, FloatBuffer points, int stride, int count,
+        Vec4 referencePoint)
+    {
+        View view = dc.getView();
+        Vec4 pa = this.modelA, pb = this.modelB, sa = this.screenA, sb = this.screenB;
+        boolean aValid = false;
+        double minDistance = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < count; i++)
+        {
+            int index = i * stride;
+            pb.set(referencePoint.x + points.get(index), referencePoint.y + points.get(index + 1),
+                referencePoint.z + points.get(index + 2));
+            boolean bValid = this.projectInDepthRange(view, pb, sb);
+
+            if (aValid && bValid)
+            {
+                double d = this.computeSegmentDistance(sa.x, sa.y, sb.x, sb.y);
+                if (d < minDistance)
+                {
+                    minDistance = d;
+                    double f = this.closestFraction;
+                    this.closestPoint.set(pa.x + f * (pb.x - pa.x), pa.y + f * (pb.y - pa.y),
+                        pa.z + f * (pb.z - pa.z));
+                }
+            }
+
+            // Swap the scratch points so that this point becomes the start of the next segment.
+            Vec4 tmp = pa;
+            pa = pb;
+            pb = tmp;
+            tmp = sa;
+            sa = sb;
+            sb = tmp;
+            aValid = bValid;
+        }
+
+        return minDistance;
+    }
+
+    /**
+     * Indicates whether the pick point is inside a triangle strip in model coordinates. Triangles with a vertex
+     * outside the view's depth range are ignored.
+     *
+     * @param dc             the current draw context.
+     * @param points         the triangle strip's points, relative to the reference point.
+     * @param stride         the number of floats between the start of consecutive points.
+     * @param count          the number of points.
+     * @param referencePoint the model point the points are relative to.
+     *
+     * @return true if the pick point is inside a triangle of the strip, otherwise false.
+     */
+    public boolean isPickPointInTriangleStrip(DrawContext dc, FloatBuffer points, int stride, int count,
+        Vec4 referencePoint)
+    {
+        View view = dc.getView();
+        Vec4 sa = this.screenA, sb = this.screenB, sc = this.screenC;
+        boolean aValid = false, bValid = false;
+
+        for (int i = 0; i < count; i++)
+        {
+            int index = i * stride;
+            this.modelA.set(referencePoint.x + points.get(index), referencePoint.y + points.get(index + 1),
+                referencePoint.z + points.get(index + 2));
+            boolean cValid = this.projectInDepthRange(view, this.modelA, sc);
+
+            if (aValid && bValid && cValid && this.isPickPointInTriangle(sa, sb, sc))
+                return true;
+
+            Vec4 tmp = sa;
+            sa = sb;
+            sb = sc;
+            sc = tmp;
+            aValid = bValid;
+            bValid = cValid;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the model point computed by the most recent call to {@link #computeLineStripDistance(DrawContext,
+     * FloatBuffer, int, int, Vec4)}. The returned point is reused by subsequent calls.
+     *
+     * @return the model point nearest the pick point.
+     */
+    public Vec4 getClosestPoint()
+    {
+        return this.closestPoint;
+    }
+
+    /**
+     * Indicates whether a sector is within a distance of the terrain position under the pick point. Objects on the
+     * terrain use this to reject the pick without examining their geometry.
+     *
+     * @param sector the sector to test.
+     * @param margin the distance, in screen pixels.
+     *
+     * @return true if the sector is within the distance of the terrain position, otherwise false. This returns false if
+     *         the pick point is not over the terrain.
+     */
+    public boolean isSectorNearTerrainPosition(Sector sector, double margin)
+    {
+        if (this.terrainPosition == null || sector == null)
+            return false;
+
+        double lat = this.terrainPosition.latitude.degrees;
+        double lon = this.terrainPosition.longitude.degrees;
+        double marginDegrees = Math.toDegrees(margin * this.terrainPixelSize / this.globeRadius);
+        double lonMarginDegrees = marginDegrees / Math.max(Math.cos(this.terrainPosition.latitude.radians), 1e-6);
+
+        return lat >= sector.minLatitude.degrees - marginDegrees && lat <= sector.maxLatitude.degrees + marginDegrees
+            && lon >= sector.minLongitude.degrees - lonMarginDegrees
+            && lon <= sector.maxLongitude.degrees + lonMarginDegrees;
+    }
+
+    /**
+     * Computes the screen distance from the terrain position under the pick point to a set of lines on the terrain.
+     * The lines are compared in an equirectangular projection centered on the terrain position, which is accurate for
+     * the short distances that matter to picking. Segments spanning more than 180 degrees of longitude are assumed to
+     * have been split at the dateline by the caller, and are ignored.
+     *
+     * @param lines  the lines, each a list of locations.
+     * @param closed true if each line is a closed ring whose last location connects to its first.
+     *
+     * @return the distance from the pick point to the nearest line, in screen pixels, or positive infinity if the pick
+     *         point is not over the terrain.
+     */
+    public double computeSurfaceDistance(Iterable<? extends List<? extends LatLon>> lines, boolean closed)
+    {
+        if (this.terrainPosition == null || lines == null)
+            return Double.POSITIVE_INFINITY;
+
+        double lat0 = this.terrainPosition.latitude.degrees;
+        double lon0 = this.terrainPosition.longitude.degrees;
+        double cosLat = Math.cos(this.terrainPosition.latitude.radians);
+        double minDistance = Double.POSITIVE_INFINITY;
+
+        for (List<? extends LatLon> line : lines)
+        {
+            int size = line.size();
+            if (size == 0)
+                continue;
+
+            LatLon prev = closed ? line.get(size - 1) : line.get(0);
+            double ax = normalizedDelta(prev.longitude.degrees - lon0);
+            double ay = prev.latitude.degrees - lat0;
+
+            for (int i = closed ? 0 : 1; i < size; i++)
+            {
+                LatLon ll = line.get(i);
+                double bx = normalizedDelta(ll.longitude.degrees - lon0);
+                double by = ll.latitude.degrees - lat0;
+
+                if (Math.abs(bx - ax) <= 180)
+                {
+                    double d = distanceToSegment(0, 0, ax * cosLat, ay, bx * cosLat, by);
+                    if (d < minDistance)
+                        minDistance = d;
+                }
+
+                ax = bx;
+                ay = by;
+            }
+        }
+
+        return Math.toRadians(minDistance) * this.globeRadius / this.terrainPixelSize;
+    }
+
+    /**
+     * Indicates whether the terrain position under the pick point is inside a set of polygons on the terrain, using the
+     * even-odd rule so that inner rings are holes. Polygons may extend past the dateline to longitudes beyond
+     * &plusmn;180 degrees.
+     *
+     * @param rings the polygons' rings, each a list of locations whose last location connects to its first.
+     *
+     * @return true if the terrain position under the pick point is inside the polygons, otherwise false.
+     */
+    public boolean isTerrainPositionInside(Iterable<? extends List<? extends LatLon>> rings)
+    {
+        if (this.terrainPosition == null || rings == null)
+            return false;
+
+        double py = this.terrainPosition.latitude.degrees;
+        for (int k = -1; k <= 1; k++)
+        {
+            double px = this.terrainPosition.longitude.degrees + 360 * k;
+            boolean inside = false;
+
+            for (List<? extends LatLon> ring : rings)
+            {
+                int size = ring.size();
+                if (size < 3)
+                    continue;
+
+                LatLon prev = ring.get(size - 1);
+                for (int i = 0; i < size; i++)
+                {
+                    LatLon ll = ring.get(i);
+                    double xi = ll.longitude.degrees, yi = ll.latitude.degrees;
+                    double xj = prev.longitude.degrees, yj = prev.latitude.degrees;
+                    if ((yi > py) != (yj > py) && px < (xj - xi) * (py - yi) / (yj - yi) + xi)
+                        inside = !inside;
+
+                    prev = ll;
+                }
+            }
+
+            if (inside)
+                return true;
+        }
+
+        return false;
+    }
+
+    protected boolean projectInDepthRange(View view, Vec4 modelPoint, Vec4 result)
+    {
+        return view.project(modelPoint, result) && result.z >= 0 && result.z <= 1;
+    }
+
+    // Computes the distance from the pick point to a screen segment, and leaves the fraction along the segment of the
+    // nearest point in closestFraction.
+    protected double computeSegmentDistance(double ax, double ay, double bx, double by)
+    {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double f = lengthSquared > 0 ? ((this.pickX - ax) * dx + (this.pickY - ay) * dy) / lengthSquared : 0;
+        f = f < 0 ? 0 : (f > 1 ? 1 : f);
+        this.closestFraction = f;
+
+        double x = ax + f * dx - this.pickX;
+        double y = ay + f * dy - this.pickY;
+        return Math.sqrt(x * x + y * y);
+    }
+
+    protected boolean isPickPointInTriangle(Vec4 a, Vec4 b, Vec4 c)
+    {
+        double d1 = cross(this.pickX, this.pickY, a, b);
+        double d2 = cross(this.pickX, this.pickY, b, c);
+        double d3 = cross(this.pickX, this.pickY, c, a);
+        boolean hasNegative = d1 < 0 || d2 < 0 || d3 < 0;
+        boolean hasPositive = d1 > 0 || d2 > 0 || d3 > 0;
+
+        return !(hasNegative && hasPositive);
+    }
+
+    protected static double cross(double px, double py, Vec4 a, Vec4 b)
+    {
+        return (px - b.x) * (a.y - b.y) - (a.x - b.x) * (py - b.y);
+    }
+
+    protected static double distanceToSegment(double px, double py, double ax, double ay, double bx, double by)
+    {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double f = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        f = f < 0 ? 0 : (f > 1 ? 1 : f);
+
+        double x = ax + f * dx - px;
+        double y = ay + f * dy - py;
+        return Math.sqrt(x * x + y * y);
+    }
+
+    protected static double normalizedDelta(double degrees)
+    {
+        while (degrees > 180)
+        {
+            degrees -= 360;
+        }
+        while (degrees < -180)
+        {
+            degrees += 360;
+        }
+
+        return degrees;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.pick;
+
+import gov.nasa.worldwind.render.DrawContext;
+
+/**
+ * GeometryPickable is implemented by objects that can be picked by testing the geometry they drew in the most recent
+ * frame against the pick point, without drawing them in pick colors.
+ *
+ * @version $Id$
+ * @see GeometryPickSupport
+ */
+public interface GeometryPickable
+{
+    /**
+     * Tests this object's most recently drawn geometry against the pick point, and adds this object to the pick
+     * support's candidates if it lies within the pick tolerance.
+     *
+     * @param dc          the current draw context.
+     * @param pickSupport the pick support holding the pick point and the candidates picked so far.
+     *
+     * @return true if this object has been tested, whether or not it was picked, or false if this object cannot be
+     *         picked geometrically and must be picked by drawing it in pick colors.
+     */
+    boolean pickGeometry(DrawContext dc, GeometryPickSupport pickSupport);
+}
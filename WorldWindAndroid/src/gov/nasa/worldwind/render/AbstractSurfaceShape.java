@@ -12,6 +12,8 @@ import gov.nasa.worldwind.WorldWindowImpl;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.globes.Globe;
+import gov.nasa.worldwind.pick.GeometryPickSupport;
+import gov.nasa.worldwind.pick.GeometryPickable;
 import gov.nasa.worldwind.util.*;
 import gov.nasa.worldwind.util.measure.AreaMeasurer;
 
@@ -36,7 +38,8 @@ import static gov.nasa.worldwind.util.OGLStackHandler.GL_POLYGON_BIT;
  * @author dcollins
  * @version $Id: AbstractSurfaceShape.java 1869 2014-03-14 23:03:14Z dcollins $
  */
-public abstract class AbstractSurfaceShape extends AbstractSurfaceObject implements SurfaceShape, Movable
+public abstract class AbstractSurfaceShape extends AbstractSurfaceObject
+    implements SurfaceShape, Movable, GeometryPickable
 {
     /** The default interior color. */
     protected static final Material DEFAULT_INTERIOR_MATERIAL = Material.PINK;
@@ -518,6 +521,9 @@ public abstract class AbstractSurfaceShape extends AbstractSurfaceObject impleme
     {
         this.updateModifiedTime();
         this.clearCaches();
+
+        // Notify listeners that this shape may have moved, such as a spatially indexed RenderableLayer.
+        this.firePropertyChange(AVKey.SECTOR, null, this);
     }
 
     /**
@@ -973,6 +979,72 @@ public abstract class AbstractSurfaceShape extends AbstractSurfaceObject impleme
         return this.activeGeometry;
     }
 
+    /**
+     * Picks this shape by testing its most recently drawn geometry against the terrain position under the pick point.
+     * The shape is picked if the position is inside its interior, or if its outline is within the pick tolerance,
+     * widened by half the outline's width. Shapes that have not yet been drawn are tested against their locations.
+     *
+     * @param dc          the current draw context.
+     * @param pickSupport the pick support holding the pick point.
+     *
+     * @return true, since surface shapes can always be picked geometrically.
+     */
+    public boolean pickGeometry(DrawContext dc, GeometryPickSupport pickSupport)
+    {
+        if (!this.isVisible() || pickSupport.getTerrainPosition() == null || this.getActiveAttributes() == null)
+            return true;
+
+        ShapeAttributes attrs = this.getActiveAttributes();
+        double halfWidth = attrs.isEnableOutline() ? 0.5 * attrs.getOutlineWidth() : 0;
+        double margin = pickSupport.getTolerance() + halfWidth;
+
+        boolean near = false;
+        List<Sector> sectors = this.getSectors(dc);
+        if (sectors != null)
+        {
+            for (Sector sector : sectors)
+            {
+                if (pickSupport.isSectorNearTerrainPosition(sector, margin))
+                {
+                    near = true;
+                    break;
+                }
+            }
+        }
+
+        if (!near)
+            return true;
+
+        List<List<LatLon>> geometry = this.activeGeometry;
+        List<List<LatLon>> outlineGeometry = this.activeOutlineGeometry;
+        if (geometry.isEmpty())
+        {
+            Iterable<? extends LatLon> locations = this.getLocations(dc.getGlobe());
+            if (locations == null)
+                return true;
+
+            List<LatLon> list = new ArrayList<LatLon>();
+            for (LatLon ll : locations)
+            {
+                list.add(ll);
+            }
+
+            geometry = outlineGeometry = Arrays.asList(list);
+        }
+
+        // A closed shape's outline includes the edge from its last location back to its first, which its locations
+        // may not repeat.
+        double distance = Double.POSITIVE_INFINITY;
+        if (attrs.isEnableInterior() && pickSupport.isTerrainPositionInside(geometry))
+            distance = 0;
+        else if (attrs.isEnableOutline())
+            distance = pickSupport.computeSurfaceDistance(outlineGeometry, this.canContainPole()) - halfWidth;
+
+        pickSupport.addCandidate(dc, this.getDelegateOwner() != null ? this.getDelegateOwner() : this, distance,
+            pickSupport.getTerrainEyeDistance(), pickSupport.getTerrainPosition());
+        return true;
+    }
+
     protected void drawInterior(DrawContext dc, SurfaceTileDrawContext sdc)
     {
         if (this.getActiveGeometry().isEmpty())
@@ -1027,6 +1099,7 @@ public abstract class AbstractSurfaceShape extends AbstractSurfaceObject impleme
         {
 			GpuTextureData data = GpuTextureData.createTextureData(getActiveAttributes().getImageSource(), null, false);
             this.texture = GpuTexture.createTexture(data);
+            data.dispose();
         }
 
         return this.texture;
@@ -92,6 +92,7 @@ public class DrawContext extends WWObjectImpl implements Disposable {
 
 	protected Set<String> perFrameStatisticsKeys;
 	protected Map<String, PerformanceStatistic> perFrameStatistics;
+	protected HorizonCulling horizonCulling = new HorizonCulling();
 
 	/**
 	 * Initializes this <code>DrawContext</code>. This method should be called at the beginning of each frame to prepare
@@ -125,6 +126,7 @@ public class DrawContext extends WWObjectImpl implements Disposable {
 		this.uniquePickNumber = 0;
 		this.pickPoint = null;
 		this.objectsAtPickPoint.clear();
+		this.horizonCulling.resetCulledCount();
 	}
 
 	/**
@@ -954,6 +956,40 @@ public class DrawContext extends WWObjectImpl implements Disposable {
 	}
 
 
+	/**
+	 * Returns the horizon culling test used by {@link #isBelowHorizon(Extent)}. Its culled count is reset at the
+	 * beginning of each frame.
+	 *
+	 * @return this draw context's horizon culling test.
+	 */
+	public HorizonCulling getHorizonCulling() {
+		return this.horizonCulling;
+	}
+
+	/**
+	 * Indicates whether an extent is hidden behind the horizon of the current globe's ellipsoid, as seen from the current
+	 * view's eye point. Tile selection uses this in addition to the view frustum to avoid selecting tiles that cannot be
+	 * seen.
+	 *
+	 * @param extent the extent to test.
+	 *
+	 * @return true if the extent is below the horizon, otherwise false.
+	 *
+	 * @throws IllegalArgumentException if the extent is null.
+	 */
+	public boolean isBelowHorizon(Extent extent) {
+		if (extent == null) {
+			String msg = Logging.getMessage("nullValue.ExtentIsNull");
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		if (this.view == null) return false;
+
+		this.horizonCulling.update(this.getGlobe(), this.view.getEyePoint(), this.verticalExaggeration);
+		return this.horizonCulling.isBelowHorizon(extent);
+	}
+
 	public Map<String, PerformanceStatistic> getPerFrameStatistics()
 	{
 		return this.perFrameStatistics;
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.render;
+
+import gov.nasa.worldwind.geom.Sector;
+
+/**
+ * GeographicExtent provides an interface to query an object's geographic bounds without a draw context.
+ *
+ * @version $Id$
+ * @see gov.nasa.worldwind.layers.RenderableLayer#setIndexed(boolean)
+ */
+public interface GeographicExtent
+{
+    /**
+     * Returns the sector bounding the object. The returned sector must not be modified.
+     *
+     * @return the object's bounding sector, or null if the object has no bounds.
+     */
+    Sector getSector();
+
+    /**
+     * Returns the approximate maximum altitude of the object, in meters. Objects lying on the terrain return 0.
+     *
+     * @return the object's maximum altitude.
+     */
+    double getMaxAltitude();
+}
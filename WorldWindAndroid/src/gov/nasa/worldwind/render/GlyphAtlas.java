@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.render;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.util.HashMap;
+
+/**
+ * Packs glyph images into a single texture and lays out strings as quads that reference them. The atlas only tracks
+ * where each glyph is and how it is positioned relative to the pen; drawing the glyphs into the atlas image is left to
+ * the caller, so packing and layout do not depend on Android graphics or OpenGL.
+ * <p/>
+ * Glyphs are packed on shelves: each glyph is placed to the right of the previous one, and a new shelf is started
+ * below the tallest glyph of the current shelf when a glyph does not fit the shelf's remaining width. Glyphs are never
+ * removed individually; {@link #clear()} empties the atlas when it is full.
+ *
+ * @version $Id$
+ */
+public class GlyphAtlas {
+	/** The number of floats {@link #layout(CharSequence, float, float, float[], int)} writes for each visible glyph. */
+	public static final int FLOATS_PER_GLYPH = 24; // Two triangles of x, y, s, t vertices.
+
+	/** A glyph's region in the atlas and its position relative to the pen, in pixels. */
+	public static class Glyph {
+		/** The glyph's character. */
+		public final char character;
+		/** The column of the glyph's upper left pixel in the atlas. */
+		public final int x;
+		/** The row of the glyph's upper left pixel in the atlas. Rows increase downward. */
+		public final int y;
+		/** The glyph's width. Zero for glyphs that draw nothing, such as spaces. */
+		public final int width;
+		/** The glyph's height. Zero for glyphs that draw nothing, such as spaces. */
+		public final int height;
+		/** The distance from the pen to the glyph's left edge. */
+		public final float left;
+		/** The distance from the baseline up to the glyph's top edge. */
+		public final float top;
+		/** The distance the pen moves after the glyph. */
+		public final float advance;
+
+		public Glyph(char character, int x, int y, int width, int height, float left, float top, float advance) {
+			this.character = character;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.left = left;
+			this.top = top;
+			this.advance = advance;
+		}
+	}
+
+	protected final int width;
+	protected final int height;
+	protected final int padding;
+	protected HashMap<Character, Glyph> glyphs = new HashMap<Character, Glyph>();
+	protected int shelfX;
+	protected int shelfY;
+	protected int shelfHeight;
+
+	/**
+	 * Creates an empty atlas.
+	 *
+	 * @param width   the atlas width in pixels.
+	 * @param height  the atlas height in pixels.
+	 * @param padding the number of empty pixels kept around each glyph, which prevents texture filtering from blending
+	 *                neighboring glyphs.
+	 *
+	 * @throws IllegalArgumentException if the width or height is less than one, or the padding is negative.
+	 */
+	public GlyphAtlas(int width, int height, int padding) {
+		if (width < 1 || height < 1) {
+			String msg = Logging.getMessage("generic.SizeIsInvalid", width + " x " + height);
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		if (padding < 0) {
+			String msg = Logging.getMessage("generic.ArgumentOutOfRange", padding);
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		this.width = width;
+		this.height = height;
+		this.padding = padding;
+		this.clear();
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Returns the number of glyphs in the atlas.
+	 *
+	 * @return the number of glyphs added since the atlas was created or last cleared.
+	 */
+	public int getGlyphCount() {
+		return this.glyphs.size();
+	}
+
+	/**
+	 * Returns a character's glyph.
+	 *
+	 * @param character the character.
+	 *
+	 * @return the character's glyph, or null if the glyph has not been added.
+	 */
+	public Glyph getGlyph(char character) {
+		return this.glyphs.get(character);
+	}
+
+	/**
+	 * Reserves a region for a character's glyph. The caller draws the glyph image in the returned glyph's region,
+	 * with the glyph's top left at the region's top left.
+	 *
+	 * @param character the character.
+	 * @param width     the width of the glyph image. Zero for glyphs that draw nothing.
+	 * @param height    the height of the glyph image. Zero for glyphs that draw nothing.
+	 * @param left      the distance from the pen to the glyph's left edge.
+	 * @param top       the distance from the baseline up to the glyph's top edge.
+	 * @param advance   the distance the pen moves after the glyph.
+	 *
+	 * @return the glyph, or null if the atlas has no room for it. If the character has already been added, its
+	 *         existing glyph is returned.
+	 *
+	 * @throws IllegalArgumentException if the width or height is negative.
+	 */
+	public Glyph addGlyph(char character, int width, int height, float left, float top, float advance) {
+		if (width < 0 || height < 0) {
+			String msg = Logging.getMessage("generic.SizeIsInvalid", width + " x " + height);
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		Glyph glyph = this.glyphs.get(character);
+		if (glyph != null) return glyph;
+
+		if (width == 0 || height == 0) {
+			glyph = new Glyph(character, 0, 0, 0, 0, left, top, advance);
+			this.glyphs.put(character, glyph);
+			return glyph;
+		}
+
+		int paddedWidth = width + this.padding;
+		int paddedHeight = height + this.padding;
+
+		// Start a new shelf if the glyph does not fit the remaining width of the current one.
+		if (this.shelfX + paddedWidth > this.width) {
+			this.shelfY += this.shelfHeight;
+			this.shelfX = this.padding;
+			this.shelfHeight = 0;
+		}
+
+		if (this.shelfX + paddedWidth > this.width || this.shelfY + paddedHeight > this.height) return null;
+
+		glyph = new Glyph(character, this.shelfX, this.shelfY, width, height, left, top, advance);
+		this.glyphs.put(character, glyph);
+		this.shelfX += paddedWidth;
+		if (this.shelfHeight < paddedHeight) this.shelfHeight = paddedHeight;
+
+		return glyph;
+	}
+
+	/** Removes all glyphs from the atlas. */
+	public void clear() {
+		this.glyphs.clear();
+		this.shelfX = this.padding;
+		this.shelfY = this.padding;
+		this.shelfHeight = 0;
+	}
+
+	/**
+	 * Computes the distance the pen moves when drawing a string. Characters whose glyphs are not in the atlas do not
+	 * move the pen.
+	 *
+	 * @param text the string.
+	 *
+	 * @return the sum of the advances of the string's glyphs.
+	 */
+	public float getAdvance(CharSequence text) {
+		if (text == null) {
+			String msg = Logging.getMessage("nullValue.StringIsNull");
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		float advance = 0;
+		for (int i = 0; i < text.length(); i++) {
+			Glyph glyph = this.glyphs.get(text.charAt(i));
+			if (glyph != null) advance += glyph.advance;
+		}
+
+		return advance;
+	}
+
+	/**
+	 * Lays out a string as two triangles for each visible glyph. Each vertex is written as its x and y coordinates
+	 * followed by its s and t texture coordinates in the atlas. The y axis points up, and t increases with the atlas
+	 * rows. Characters whose glyphs are not in the atlas are skipped.
+	 *
+	 * @param text   the string.
+	 * @param x      the pen's starting x coordinate.
+	 * @param y      the baseline's y coordinate.
+	 * @param result the array to write the vertices to. Must have room for {@link #FLOATS_PER_GLYPH} floats for each
+	 *               character after the offset.
+	 * @param offset the index of the first float to write.
+	 *
+	 * @return the number of floats written.
+	 *
+	 * @throws IllegalArgumentException if the string or array is null, or the array is too short.
+	 */
+	public int layout(CharSequence text, float x, float y, float[] result, int offset) {
+		if (text == null) {
+			String msg = Logging.getMessage("nullValue.StringIsNull");
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		if (result == null) {
+			String msg = Logging.getMessage("nullValue.ArrayIsNull");
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		if (offset < 0 || result.length - offset < text.length() * FLOATS_PER_GLYPH) {
+			String msg = Logging.getMessage("generic.ArrayInvalidLength", result.length);
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		int index = offset;
+		float penX = x;
+		for (int i = 0; i < text.length(); i++) {
+			Glyph glyph = this.glyphs.get(text.charAt(i));
+			if (glyph == null) continue;
+
+			if (glyph.width > 0) {
+				float x0 = penX + glyph.left;
+				float x1 = x0 + glyph.width;
+				float y1 = y + glyph.top;
+				float y0 = y1 - glyph.height;
+				float s0 = (float) glyph.x / this.width;
+				float s1 = (float) (glyph.x + glyph.width) / this.width;
+				float t0 = (float) glyph.y / this.height;
+				float t1 = (float) (glyph.y + glyph.height) / this.height;
+
+				index = putVertex(result, index, x0, y0, s0, t1);
+				index = putVertex(result, index, x1, y0, s1, t1);
+				index = putVertex(result, index, x1, y1, s1, t0);
+				index = putVertex(result, index, x1, y1, s1, t0);
+				index = putVertex(result, index, x0, y1, s0, t0);
+				index = putVertex(result, index, x0, y0, s0, t1);
+			}
+
+			penX += glyph.advance;
+		}
+
+		return index - offset;
+	}
+
+	protected static int putVertex(float[] result, int index, float x, float y, float s, float t) {
+		result[index++] = x;
+		result[index++] = y;
+		result[index++] = s;
+		result[index++] = t;
+		return index;
+	}
+}
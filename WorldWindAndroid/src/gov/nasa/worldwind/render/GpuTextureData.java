@@ -11,8 +11,10 @@ import android.opengl.ETC1;
 import android.opengl.ETC1Util;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
+import gov.nasa.worldwind.Disposable;
 import gov.nasa.worldwind.WorldWindowImpl;
 import gov.nasa.worldwind.cache.Cacheable;
+import gov.nasa.worldwind.util.ByteBufferPool;
 import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.OGLUtil;
 import gov.nasa.worldwind.util.WWIO;
@@ -23,9 +25,13 @@ import gov.nasa.worldwind.util.dds.DXTCompressionAttributes;
 import gov.nasa.worldwind.util.pkm.ETC1Compressor;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -33,7 +39,7 @@ import java.util.List;
  * @author dcollins
  * @version $Id: GpuTextureData.java 764 2012-09-11 00:17:17Z tgaskins $
  */
-public class GpuTextureData implements Cacheable
+public class GpuTextureData implements Cacheable, Disposable
 {
 	private static final int MAX_MIP_LEVELS = 12;
 
@@ -230,37 +236,48 @@ public class GpuTextureData implements Cacheable
 
 			List<MipmapData> colorData = new LinkedList<MipmapData>();
 			List<MipmapData> alphaData = new LinkedList<MipmapData>();
+			// The levels are read into pooled buffers, which the texture data releases once the texture is created.
+			List<ByteBuffer> pooledBuffers = new ArrayList<ByteBuffer>();
+			try {
+				MipmapData mipmapData = readPooledETC1(stream, pooledBuffers);
+				colorData.add(mipmapData);
+				int dataSize = mipmapData.buffer.limit();
+
+				MipmapData alphaLevel0 = readPooledETC1(url.substring(0, url.lastIndexOf(".pkm")) + "_alpha.pkm", pooledBuffers);
+				if(alphaLevel0 != null) {
+					alphaData.add(alphaLevel0);
+					dataSize += alphaLevel0.buffer.limit();
+				}
 
-			ETC1Util.ETC1Texture etc1tex = ETC1Util.createTexture(stream);
-			MipmapData mipmapData = new MipmapData(etc1tex.getWidth(), etc1tex.getHeight(), etc1tex.getData());
-			colorData.add(mipmapData);
-			int dataSize = etc1tex.getData().limit();
-
-			MipmapData alphaLevel0 = readETC1(url.substring(0, url.lastIndexOf(".pkm")) + "_alpha.pkm");
-			if(alphaLevel0 != null) {
-				alphaData.add(alphaLevel0);
-				dataSize += alphaLevel0.buffer.limit();
-			}
-
-			if(useMipMaps) {
-				for(int i=0; i<MAX_MIP_LEVELS; i++) {
-					String mipUrl = url.replace("mip_0", "mip_"+i);
-					MipmapData mipData = readETC1(mipUrl);
-					if(mipData==null)
-						break;
-					colorData.add(mipData);
-					dataSize += mipData.buffer.limit();
-
-					mipData = readETC1(mipUrl.substring(0, mipUrl.lastIndexOf(".pkm")) + "_alpha.pkm");
-					if(mipData!=null) {
-						alphaData.add(mipData);
+				// Mipmap levels are separate files named by level. A file without a level in its name, such as a layer's
+				// transcoded copy of a tile, holds a single level; replacing "mip_0" would name the same file again.
+				if(useMipMaps && url.contains("mip_0")) {
+					for(int i=0; i<MAX_MIP_LEVELS; i++) {
+						String mipUrl = url.replace("mip_0", "mip_"+i);
+						MipmapData mipData = readPooledETC1(mipUrl, pooledBuffers);
+						if(mipData==null)
+							break;
+						colorData.add(mipData);
 						dataSize += mipData.buffer.limit();
+
+						mipData = readPooledETC1(mipUrl.substring(0, mipUrl.lastIndexOf(".pkm")) + "_alpha.pkm", pooledBuffers);
+						if(mipData!=null) {
+							alphaData.add(mipData);
+							dataSize += mipData.buffer.limit();
+						}
 					}
 				}
+				MipmapData[] colors = colorData.isEmpty() ? null : colorData.toArray(new MipmapData[colorData.size()]);
+				MipmapData[] alphas = alphaData.isEmpty() ? null : alphaData.toArray(new MipmapData[alphaData.size()]);
+				GpuTextureData textureData = new GpuTextureData(ETC1.ETC1_RGB8_OES, colors, alphas, dataSize);
+				for (ByteBuffer buffer : pooledBuffers)
+					textureData.addPooledBuffer(buffer);
+				pooledBuffers.clear();
+				return textureData;
+			} finally {
+				for (ByteBuffer buffer : pooledBuffers)
+					ByteBufferPool.getDefault().release(buffer);
 			}
-			MipmapData[] colors = colorData.isEmpty() ? null : colorData.toArray(new MipmapData[colorData.size()]);
-			MipmapData[] alphas = alphaData.isEmpty() ? null : alphaData.toArray(new MipmapData[alphaData.size()]);
-			return new GpuTextureData(ETC1.ETC1_RGB8_OES, colors, alphas, dataSize);
 		} else {
 			if(WorldWindowImpl.DEBUG)
 				Logging.verbose("Loading bitmap texture "+ url);
@@ -284,6 +301,99 @@ public class GpuTextureData implements Cacheable
 		}
 	}
 
+	/**
+	 * Reads a PKM texture into a buffer borrowed from the shared {@link ByteBufferPool}, rather than the buffers
+	 * ETC1Util allocates for every texture it reads.
+	 *
+	 * @param stream        the stream to read. The stream is not closed.
+	 * @param pooledBuffers a list the borrowed buffer is added to. The caller releases the buffers in the list.
+	 * @return the texture's level.
+	 * @throws IOException if the stream does not contain a complete PKM texture.
+	 */
+	protected static MipmapData readPooledETC1(InputStream stream, List<ByteBuffer> pooledBuffers) throws IOException {
+		// Don't close the channel, which would close the stream.
+		java.nio.channels.ReadableByteChannel channel = Channels.newChannel(stream);
+		ByteBufferPool pool = ByteBufferPool.getDefault();
+
+		int width, height;
+		ByteBuffer header = pool.acquire(ETC1.ETC_PKM_HEADER_SIZE).order(ByteOrder.nativeOrder());
+		try {
+			WWIO.readChannelToBuffer(channel, header);
+			if (header.remaining() != ETC1.ETC_PKM_HEADER_SIZE || !ETC1.isValid(header))
+				throw new IOException(Logging.getMessage("generic.FormatIsInvalid", "image/pkm"));
+			width = ETC1.getWidth(header);
+			height = ETC1.getHeight(header);
+		} finally {
+			pool.release(header);
+		}
+
+		int encodedSize = ETC1.getEncodedDataSize(width, height);
+		ByteBuffer data = pool.acquire(encodedSize).order(ByteOrder.nativeOrder());
+		pooledBuffers.add(data);
+		WWIO.readChannelToBuffer(channel, data);
+		if (data.remaining() != encodedSize)
+			throw new IOException(Logging.getMessage("generic.BufferInvalidLength", data.remaining()));
+
+		return new MipmapData(width, height, data);
+	}
+
+	/**
+	 * Reads a PKM texture file into a buffer borrowed from the shared {@link ByteBufferPool}.
+	 *
+	 * @param url           the file's path.
+	 * @param pooledBuffers a list the borrowed buffer is added to. The caller releases the buffers in the list.
+	 * @return the texture's level, or null if the file does not exist.
+	 * @throws IOException if the file does not contain a complete PKM texture.
+	 */
+	protected static MipmapData readPooledETC1(String url, List<ByteBuffer> pooledBuffers) throws IOException {
+		InputStream is = WWIO.getFileOrResourceAsBufferedStream(url, GpuTextureData.class);
+		if(is==null)
+			return null;
+		try {
+			return readPooledETC1(is, pooledBuffers);
+		} finally {
+			WWIO.closeStream(is, url);
+		}
+	}
+
+	/**
+	 * Compresses an image to the file format of a compressed texture format. The result holds the same texture that
+	 * {@link #createTextureData(Object, String, String, boolean)} creates when it compresses an image itself, so it
+	 * can be saved and loaded later without compressing the image again.
+	 *
+	 * @param stream        stream containing the image to compress.
+	 * @param textureFormat the compressed texture format, either "image/dds" or "image/pkm".
+	 * @param useMipMaps    whether a DDS texture includes mipmaps.
+	 * @return the contents of a DDS or PKM file, or null if the format is not a compressed format or the image cannot
+	 *         be decoded.
+	 * @throws IllegalArgumentException if the stream is null.
+	 * @throws IOException if an error occurs while writing the compressed texture.
+	 */
+	public static ByteBuffer compressTexture(InputStream stream, String textureFormat, boolean useMipMaps) throws IOException {
+		if (stream == null) {
+			String msg = Logging.getMessage("nullValue.InputStreamIsNull");
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		if ("image/dds".equalsIgnoreCase(textureFormat)) {
+			DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+			attributes.setBuildMipmaps(useMipMaps);
+			return DDSCompressor.compressImageStream(stream, attributes);
+		} else if ("image/pkm".equalsIgnoreCase(textureFormat)) {
+			Bitmap image = BitmapFactory.decodeStream(stream);
+			if (image == null)
+				return null;
+
+			ETC1Util.ETC1Texture etc1tex = ETC1Compressor.compressImage(image)[0];
+			ByteArrayOutputStream out = new ByteArrayOutputStream(ETC1.ETC_PKM_HEADER_SIZE + etc1tex.getData().remaining());
+			ETC1Util.writeTexture(etc1tex, out);
+			return ByteBuffer.wrap(out.toByteArray());
+		}
+
+		return null;
+	}
+
     public GpuTextureData(Bitmap bitmap, long estimatedMemorySize)
     {
         if (bitmap == null)
@@ -332,6 +442,7 @@ public class GpuTextureData implements Cacheable
     protected BitmapData bitmapData;
     protected CompressedData compressedData;
     protected long estimatedMemorySize;
+    protected List<ByteBuffer> pooledBuffers;
 
     protected GpuTextureData()
     {
@@ -352,6 +463,52 @@ public class GpuTextureData implements Cacheable
         return this.estimatedMemorySize;
     }
 
+    /**
+     * Gives this texture data a buffer borrowed from the shared {@link ByteBufferPool} that holds some of its content.
+     * The buffer is released by {@link #dispose()}.
+     *
+     * @param buffer the borrowed buffer.
+     *
+     * @throws IllegalArgumentException if the buffer is null.
+     */
+    public synchronized void addPooledBuffer(ByteBuffer buffer)
+    {
+        if (buffer == null)
+        {
+            String msg = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (this.pooledBuffers == null)
+            this.pooledBuffers = new ArrayList<ByteBuffer>(1);
+
+        this.pooledBuffers.add(buffer);
+    }
+
+    /**
+     * Releases the pooled buffers holding this texture data's content, for use once a texture has been created from
+     * it. The texture data must not be used afterwards. Texture data that is discarded without being disposed is
+     * collected as usual, but its buffers are not reused.
+     */
+    public void dispose()
+    {
+        List<ByteBuffer> buffers;
+        synchronized (this)
+        {
+            buffers = this.pooledBuffers;
+            this.pooledBuffers = null;
+        }
+
+        if (buffers != null)
+        {
+            for (ByteBuffer buffer : buffers)
+            {
+                ByteBufferPool.getDefault().release(buffer);
+            }
+        }
+    }
+
     protected static long estimateMemorySize(Bitmap bitmap)
     {
 		return OGLUtil.estimateMemorySize(GLUtils.getInternalFormat(bitmap), GLUtils.getType(bitmap), bitmap.getWidth(), bitmap.getHeight(), true);
@@ -8,9 +8,9 @@ package gov.nasa.worldwind.render;
 import gov.nasa.worldwind.Configuration;
 import gov.nasa.worldwind.WorldWind;
 import gov.nasa.worldwind.avlist.AVKey;
-import gov.nasa.worldwind.cache.BasicMemoryCache;
 import gov.nasa.worldwind.cache.GpuResourceCache;
 import gov.nasa.worldwind.cache.MemoryCache;
+import gov.nasa.worldwind.cache.TileMemoryCache;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.globes.Globe;
 import gov.nasa.worldwind.util.Level;
@@ -37,7 +37,7 @@ public class GpuTextureTile extends Tile implements SurfaceTile {
 	public static MemoryCache getMemoryCache() {
 		if (!WorldWind.getMemoryCacheSet().contains(GpuTextureTile.class.getName())) {
 			long size = Configuration.getLongValue(AVKey.GPU_TEXTURE_TILE_CACHE_SIZE);
-			MemoryCache cache = new BasicMemoryCache((long) (0.8 * size), size);
+			MemoryCache cache = WorldWind.getMemoryCacheSet().createTileMemoryCache((long) (0.8 * size), size);
 			cache.setName("Texture Tiles");
 			WorldWind.getMemoryCacheSet().put(GpuTextureTile.class.getName(), cache);
 		}
@@ -196,10 +196,14 @@ public class GpuTextureTile extends Tile implements SurfaceTile {
 	}
 
 	protected GpuTexture getOrCreateTexture(DrawContext dc) {
-		if (this.textureData != null) {
-			GpuTexture texture = this.createTexture(dc, this.textureData);
-			if (texture != null) this.setTexture(dc.getGpuResourceCache(), texture);
-			else {
+		GpuTextureData textureData = this.textureData;
+		if (textureData != null) {
+			GpuTexture texture = this.createTexture(dc, textureData);
+			if (texture != null) {
+				this.setTexture(dc.getGpuResourceCache(), texture);
+				// The texture's content is in GPU memory, so the buffers that held it can be reused.
+				textureData.dispose();
+			} else {
 				String msg = Logging.getMessage("GpuTextureTile.UnableToCreateTexture", this);
 				Logging.warning(msg);
 			}
@@ -268,11 +272,48 @@ public class GpuTextureTile extends Tile implements SurfaceTile {
 		return new TileKey(level.getLevelNumber(), row, col, level.getCacheName());
 	}
 
+	/**
+	 * Returns the id of the cache name under which this tile's sub tiles are cached, as assigned by {@link
+	 * TileKey#getCacheNameId(String)}. This must name the same cache name as the keys returned by {@link
+	 * #createSubTileKey(gov.nasa.worldwind.util.Level, int, int)}; subclasses that override one must override both.
+	 *
+	 * @param level the sub tiles' level.
+	 *
+	 * @return the sub tiles' cache name id.
+	 */
+	protected int getSubTileCacheNameId(Level level)
+	{
+		return level.getCacheNameId();
+	}
+
 	protected GpuTextureTile getTileFromMemoryCache(TileKey tileKey)
 	{
 		return (GpuTextureTile) getMemoryCache().get(tileKey);
 	}
 
+	/**
+	 * Returns the texture tile at the specified level, row and column if it is in the memory cache. When the memory
+	 * cache is a {@link TileMemoryCache} the tile is looked up by packed key, without allocating a {@link TileKey}.
+	 *
+	 * @param level the tile's level.
+	 * @param row   the tile's row.
+	 * @param col   the tile's column.
+	 *
+	 * @return the tile, or null if it is not in the memory cache.
+	 */
+	protected GpuTextureTile getTileFromMemoryCache(Level level, int row, int col)
+	{
+		MemoryCache cache = getMemoryCache();
+		if (cache instanceof TileMemoryCache)
+		{
+			long packedKey = TileKey.pack(this.getSubTileCacheNameId(level), level.getLevelNumber(), row, col);
+			if (packedKey != TileKey.INVALID_PACKED_KEY)
+				return (GpuTextureTile) ((TileMemoryCache) cache).get(packedKey);
+		}
+
+		return this.getTileFromMemoryCache(this.createSubTileKey(level, row, col));
+	}
+
 	protected void updateMemoryCache()
 	{
 		if (this.getTileFromMemoryCache(this.getTileKey()) != null)
@@ -312,29 +353,25 @@ public class GpuTextureTile extends Tile implements SurfaceTile {
 
 		GpuTextureTile[] subTiles = new GpuTextureTile[4];
 
-		TileKey key = this.createSubTileKey(nextLevel, 2 * row, 2 * col);
-		GpuTextureTile subTile = this.getTileFromMemoryCache(key);
+		GpuTextureTile subTile = this.getTileFromMemoryCache(nextLevel, 2 * row, 2 * col);
 		if (subTile != null)
 			subTiles[0] = subTile;
 		else
 			subTiles[0] = this.createSubTile(new Sector(p0, p1, t0, t1), nextLevel, 2 * row, 2 * col);
 
-		key = this.createSubTileKey(nextLevel, 2 * row, 2 * col + 1);
-		subTile = this.getTileFromMemoryCache(key);
+		subTile = this.getTileFromMemoryCache(nextLevel, 2 * row, 2 * col + 1);
 		if (subTile != null)
 			subTiles[1] = subTile;
 		else
 			subTiles[1] = this.createSubTile(new Sector(p0, p1, t1, t2), nextLevel, 2 * row, 2 * col + 1);
 
-		key = this.createSubTileKey(nextLevel, 2 * row + 1, 2 * col);
-		subTile = this.getTileFromMemoryCache(key);
+		subTile = this.getTileFromMemoryCache(nextLevel, 2 * row + 1, 2 * col);
 		if (subTile != null)
 			subTiles[2] = subTile;
 		else
 			subTiles[2] = this.createSubTile(new Sector(p1, p2, t0, t1), nextLevel, 2 * row + 1, 2 * col);
 
-		key = this.createSubTileKey(nextLevel, 2 * row + 1, 2 * col + 1);
-		subTile = this.getTileFromMemoryCache(key);
+		subTile = this.getTileFromMemoryCache(nextLevel, 2 * row + 1, 2 * col + 1);
 		if (subTile != null)
 			subTiles[3] = subTile;
 		else
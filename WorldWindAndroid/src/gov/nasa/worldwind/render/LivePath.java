@@ -0,0 +1,615 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.render;
+
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.cache.GpuResourceCache;
+import gov.nasa.worldwind.geom.Position;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.geom.Vec4;
+import gov.nasa.worldwind.terrain.Terrain;
+import gov.nasa.worldwind.util.BufferUtil;
+import gov.nasa.worldwind.util.Logging;
+
+import java.nio.FloatBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import android.opengl.GLES20;
+
+import static gov.nasa.worldwind.WorldWindowImpl.glCheckError;
+
+/**
+ * A {@link Path} that grows as positions are appended to it, such as the track of a moving vehicle. Positions are held
+ * in a ring of fixed capacity; once the ring is full, each new position replaces the oldest, which ages out of the
+ * path.
+ * <p/>
+ * Appending a position tessellates only the new segment at the end of the path, and uploads only that segment's
+ * vertices to the GPU. The path's vertices are kept in a sliding window of a buffer roughly twice as large as the
+ * path, and are moved to the front of the buffer only when the window reaches its end, so the cost of an append is
+ * constant when amortized over many appends. The whole path is tessellated again only when the globe, vertical
+ * exaggeration or, for terrain-following paths, the terrain changes.
+ * <p/>
+ * Positions may be appended from any thread. Live paths are neither extruded nor show their positions, since both
+ * require geometry spanning the whole path.
+ *
+ * @version $Id$
+ */
+public class LivePath extends Path {
+	/** The smallest number of vertices for which a live path's vertex buffer is sized. */
+	protected static final int MIN_BUFFER_VERTICES = 256;
+
+	/** The current data for a live path, which tracks the vertices drawn for each position still in the path. */
+	protected static class LivePathData extends PathData {
+		/**
+		 * The index of the last vertex tessellated for each position in the path, indexed by the position's sequence
+		 * number modulo the path's capacity. A position's segment ends at this vertex.
+		 */
+		protected int[] positionVertices;
+		/** The sequence number of the oldest position drawn. */
+		protected long firstSequence;
+		/** One more than the sequence number of the newest position tessellated. */
+		protected long endSequence;
+		/** The number of vertices written to <code>renderedPath</code>, including any that have aged out. */
+		protected int writeVertex;
+		/** The number of vertices in <code>renderedPath</code> that have been uploaded to the VBO. */
+		protected int uploadedVertex;
+		/** The size in bytes of the VBO, or <code>0</code> if it has not been created. */
+		protected int vboSize;
+		/** Indicates whether the whole path must be tessellated, rather than only the positions appended to it. */
+		protected boolean fullRebuild = true;
+		/** The positions to tessellate, copied from the path's ring while holding its lock. */
+		protected ArrayList<Position> pendingPositions = new ArrayList<Position>();
+		/** Scratch buffer holding the points of a single tessellated segment. */
+		protected FloatBuffer segmentPoints;
+
+		public LivePathData(DrawContext dc, LivePath shape) {
+			super(dc, shape);
+			this.positionVertices = new int[shape.getCapacity()];
+			// Tessellated positions and colors hold only the most recent segment. Each position adds at most one
+			// entry to the pole and position point indices, which are cleared for every segment.
+			this.tessellatedPositions = new ArrayList<Position>();
+			this.polePositions = BufferUtil.newIntBuffer(2);
+			this.positionPoints = BufferUtil.newIntBuffer(1);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p/>
+		 * Overridden to restart the timer only when the whole path has been tessellated, so that appending positions
+		 * does not postpone the periodic refresh of a terrain-following path.
+		 */
+		@Override
+		public void restartTimer(DrawContext dc) {
+			if (this.fullRebuild) super.restartTimer(dc);
+
+			this.fullRebuild = false;
+		}
+	}
+
+	protected final Object lock = new Object();
+	protected final Position[] ring;
+	/** The sequence number of the oldest position in the path. Sequence numbers are never reused. */
+	protected long firstSequence;
+	/** One more than the sequence number of the newest position in the path. */
+	protected long endSequence;
+
+	/**
+	 * Creates a live path with no positions.
+	 *
+	 * @param capacity
+	 *            the greatest number of positions the path holds. Once the path holds this many, each position added
+	 *            replaces the oldest.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is less than 2.
+	 */
+	public LivePath(int capacity) {
+		if (capacity < 2) {
+			String msg = Logging.getMessage("generic.ArgumentOutOfRange", capacity);
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		this.ring = new Position[capacity];
+		this.positions = new LivePositions();
+		this.decimationThreshold = Integer.MAX_VALUE; // A live path is never decimated.
+	}
+
+	/**
+	 * Creates a live path with initial positions. If there are more positions than the capacity, only the most recent
+	 * are kept.
+	 *
+	 * @param capacity
+	 *            the greatest number of positions the path holds.
+	 * @param positions
+	 *            the initial positions.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is less than 2 or the positions are null.
+	 */
+	public LivePath(int capacity, Iterable<? extends Position> positions) {
+		this(capacity);
+		this.setPositions(positions);
+	}
+
+	@Override
+	protected AbstractShapeData createCacheEntry(DrawContext dc) {
+		return new LivePathData(dc, this);
+	}
+
+	/**
+	 * Indicates the greatest number of positions this path holds.
+	 *
+	 * @return this path's capacity.
+	 */
+	public int getCapacity() {
+		return this.ring.length;
+	}
+
+	/**
+	 * Appends a position to the end of this path. If the path is full, its oldest position is removed.
+	 *
+	 * @param position
+	 *            the position to append.
+	 * @throws IllegalArgumentException
+	 *             if the position is null.
+	 */
+	public void addPosition(Position position) {
+		if (position == null) {
+			String msg = Logging.getMessage("nullValue.PositionIsNull");
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		boolean sectorChanged;
+		synchronized (this.lock) {
+			sectorChanged = this.appendPosition(position);
+		}
+
+		if (sectorChanged) this.firePropertyChange(AVKey.SECTOR, null, this);
+	}
+
+	/**
+	 * Appends positions to the end of this path, in order. If the path becomes full, its oldest positions are removed.
+	 *
+	 * @param positions
+	 *            the positions to append.
+	 * @throws IllegalArgumentException
+	 *             if the positions are null.
+	 */
+	public void addPositions(Iterable<? extends Position> positions) {
+		if (positions == null) {
+			String msg = Logging.getMessage("nullValue.PositionsListIsNull");
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		boolean sectorChanged = false;
+		synchronized (this.lock) {
+			for (Position position : positions) {
+				if (position != null && this.appendPosition(position)) sectorChanged = true;
+			}
+		}
+
+		if (sectorChanged) this.firePropertyChange(AVKey.SECTOR, null, this);
+	}
+
+	/** Removes all of this path's positions. */
+	public void clear() {
+		synchronized (this.lock) {
+			Arrays.fill(this.ring, null);
+			this.firstSequence = this.endSequence;
+			this.numPositions = 0;
+			this.sector = null;
+		}
+
+		this.firePropertyChange(AVKey.SECTOR, null, this);
+	}
+
+	/**
+	 * Replaces this path's positions. If there are more positions than the capacity, only the most recent are kept.
+	 * The positions are copied; later changes to the iterable do not affect this path.
+	 *
+	 * @param positions
+	 *            this path's positions.
+	 * @throws IllegalArgumentException
+	 *             if positions is null.
+	 */
+	@Override
+	public void setPositions(Iterable<? extends Position> positions) {
+		if (positions == null) {
+			String msg = Logging.getMessage("nullValue.PositionsListIsNull");
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		synchronized (this.lock) {
+			Arrays.fill(this.ring, null);
+			this.firstSequence = this.endSequence;
+			this.numPositions = 0;
+			this.reset();
+
+			for (Position position : positions) {
+				if (position != null) this.appendPosition(position);
+			}
+
+			this.referencePosition = this.numPositions > 0 ? this.ring[this.ringIndex(this.firstSequence)] : null;
+		}
+
+		// Notify listeners that this path may have moved, such as a spatially indexed RenderableLayer.
+		this.firePropertyChange(AVKey.SECTOR, null, this);
+	}
+
+	/**
+	 * Appends a position to the ring, replacing the oldest position if the ring is full, and extends this path's
+	 * sector to include it. The sector is not shrunk as positions age out; it is recomputed when the whole path is next
+	 * tessellated. This path's lock must be held.
+	 *
+	 * @param position
+	 *            the position to append.
+	 * @return true if this path's sector changed.
+	 */
+	protected boolean appendPosition(Position position) {
+		if (this.endSequence - this.firstSequence == this.ring.length) this.firstSequence++;
+		else this.numPositions++;
+
+		this.ring[this.ringIndex(this.endSequence++)] = position;
+
+		double lat = position.latitude.degrees;
+		double lon = position.longitude.degrees;
+		Sector s = this.sector;
+		if (s == null) {
+			this.sector = Sector.fromDegrees(lat, lat, lon, lon);
+			return true;
+		}
+
+		if (s.contains(position)) return false;
+
+		this.sector = Sector.fromDegrees(Math.min(lat, s.minLatitude.degrees), Math.max(lat, s.maxLatitude.degrees),
+				Math.min(lon, s.minLongitude.degrees), Math.max(lon, s.maxLongitude.degrees));
+		return true;
+	}
+
+	protected int ringIndex(long sequence) {
+		return (int) (sequence % this.ring.length);
+	}
+
+	@Override
+	public Sector getSector() {
+		synchronized (this.lock) {
+			if (this.sector == null && this.numPositions > 0) this.sector = Sector.fromBoundingSector(this.positions);
+
+			return this.sector;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * Overridden to return false: live paths are never extruded.
+	 */
+	@Override
+	public boolean isExtrude() {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * Overridden to return false: live paths never show their positions.
+	 */
+	@Override
+	public boolean isShowPositions() {
+		return false;
+	}
+
+	@Override
+	protected boolean mustRegenerateGeometry(DrawContext dc) {
+		LivePathData pathData = (LivePathData) this.getCurrentPathData();
+
+		// The explicit expired flag is tested rather than the timer for paths at absolute altitudes, whose geometry
+		// does not depend on the terrain and need not be refreshed periodically.
+		boolean expired = this.isTerrainDependent() ? pathData.isExpired(dc) : pathData.getTimer().isExpired(Long.MIN_VALUE);
+
+		if (pathData.renderedPath == null || expired || !pathData.isValid(dc)
+				|| (this.positionColors != null) != (pathData.tessellatedColors != null)) {
+			pathData.fullRebuild = true;
+			return true;
+		}
+
+		synchronized (this.lock) {
+			return pathData.endSequence != this.endSequence || pathData.firstSequence != this.firstSequence;
+		}
+	}
+
+	@Override
+	protected boolean doMakeOrderedRenderable(DrawContext dc) {
+		LivePathData pathData = (LivePathData) this.getCurrentPathData();
+		ArrayList<Position> pending = pathData.pendingPositions;
+		long first, start;
+		boolean sectorChanged = false;
+
+		// Copy the positions to tessellate while holding the lock, so that positions may be appended meanwhile.
+		synchronized (this.lock) {
+			first = this.firstSequence;
+			if (this.endSequence - first < 2) return false;
+
+			// Tessellate the whole path if the newest position already drawn has aged out.
+			if (pathData.endSequence <= first) pathData.fullRebuild = true;
+
+			start = pathData.fullRebuild ? first : pathData.endSequence - 1;
+			pending.clear();
+			for (long sequence = start; sequence < this.endSequence; sequence++) {
+				pending.add(this.ring[this.ringIndex(sequence)]);
+			}
+
+			// The sector only grows as positions are appended. Shrink it to the positions still held.
+			if (pathData.fullRebuild) {
+				Sector sector = Sector.fromBoundingSector(pending);
+				sectorChanged = !sector.equals(this.sector);
+				this.sector = sector;
+			}
+		}
+
+		// Notify listeners that this path's sector has changed, such as a spatially indexed RenderableLayer.
+		if (sectorChanged) this.firePropertyChange(AVKey.SECTOR, null, this);
+
+		if (pathData.fullRebuild) {
+			this.referencePosition = pending.get(0);
+			this.computeReferenceCenter(dc);
+			pathData.setTransformMatrixFromReferencePosition();
+			pathData.tessellatedColors = this.positionColors != null ? new ArrayList<Color>() : null;
+			pathData.endSequence = first;
+			pathData.writeVertex = 0;
+			pathData.firstVertex = 0;
+			pathData.uploadedVertex = 0;
+		}
+
+		pathData.firstSequence = first;
+		this.appendSegments(dc, pathData, pending, start);
+		pending.clear();
+
+		pathData.firstVertex = pathData.positionVertices[this.ringIndex(first)];
+		pathData.vertexCount = pathData.writeVertex - pathData.firstVertex;
+		pathData.renderedPath.limit(pathData.writeVertex * pathData.vertexStride);
+		pathData.renderedPath.rewind();
+
+		pathData.setEyeDistance(pathData.fullRebuild ? this.computeEyeDistance(dc, pathData) : this.computeEndsEyeDistance(dc, pathData));
+		pathData.setGlobeStateKey(dc.getGlobe().getGlobeStateKey(dc));
+		pathData.setVerticalExaggeration(dc.getVerticalExaggeration());
+
+		return true;
+	}
+
+	/**
+	 * Tessellates the segments ending at each of a list of consecutive positions, and appends their points to the
+	 * rendered path. Each segment is tessellated regardless of its visibility, since it is not tessellated again when
+	 * the view changes. The first position ends a segment only when the whole path is being tessellated; otherwise it
+	 * is the newest position already drawn, and only starts the next segment.
+	 *
+	 * @param dc
+	 *            the current draw context.
+	 * @param pathData
+	 *            the current globe-specific path data.
+	 * @param positions
+	 *            the positions, in order.
+	 * @param startSequence
+	 *            the sequence number of the first position.
+	 */
+	protected void appendSegments(DrawContext dc, LivePathData pathData, List<Position> positions, long startSequence) {
+		Terrain terrain = dc.getVisibleTerrain();
+		Position posA = null;
+		Vec4 ptA = null;
+		Color colorA = null;
+		int ordinalA = 0;
+
+		for (int i = 0; i < positions.size(); i++) {
+			long sequence = startSequence + i;
+			Position posB = positions.get(i);
+			int ordinalB = (int) sequence; // Ordinals count every position appended since the path was created.
+			Color colorB = this.getColor(posB, ordinalB);
+			Vec4 ptB = this.computePoint(terrain, posB);
+
+			pathData.tessellatedPositions.clear();
+			if (pathData.tessellatedColors != null) pathData.tessellatedColors.clear();
+			pathData.polePositions.clear();
+			pathData.positionPoints.clear();
+
+			if (posA != null) this.makeSegment(dc, posA, posB, ptA, ptB, colorA, colorB, ordinalA, ordinalB, pathData);
+			else if (pathData.fullRebuild) this.addTessellatedPosition(posB, colorB, ordinalB, pathData);
+
+			if (posA != null || pathData.fullRebuild) this.appendSegmentPoints(dc, pathData, sequence);
+
+			posA = posB;
+			ptA = ptB;
+			colorA = colorB;
+			ordinalA = ordinalB;
+		}
+	}
+
+	/**
+	 * Computes the points of the most recently tessellated segment and appends them to the rendered path, then records
+	 * the segment's last vertex as the vertex of the position that ends it.
+	 *
+	 * @param dc
+	 *            the current draw context.
+	 * @param pathData
+	 *            the current globe-specific path data.
+	 * @param sequence
+	 *            the sequence number of the position ending the segment.
+	 */
+	protected void appendSegmentPoints(DrawContext dc, LivePathData pathData, long sequence) {
+		if (!pathData.tessellatedPositions.isEmpty()) {
+			FloatBuffer points = pathData.segmentPoints;
+			if (AVKey.CLAMP_TO_GROUND.equals(this.getAltitudeMode())) points = this.computePointsRelativeToTerrain(dc, pathData.tessellatedPositions, 0d, points, pathData);
+			else if (AVKey.RELATIVE_TO_GROUND.equals(this.getAltitudeMode())) points = this.computePointsRelativeToTerrain(dc, pathData.tessellatedPositions, null, points, pathData);
+			else points = this.computeAbsolutePoints(dc, pathData.tessellatedPositions, points, pathData);
+			points.flip();
+			pathData.segmentPoints = points;
+
+			int numVertices = points.remaining() / pathData.vertexStride;
+			this.reserveVertices(pathData, numVertices);
+
+			FloatBuffer path = pathData.renderedPath;
+			path.limit(path.capacity());
+			path.position(pathData.writeVertex * pathData.vertexStride);
+			path.put(points);
+			pathData.writeVertex += numVertices;
+		}
+
+		pathData.positionVertices[this.ringIndex(sequence)] = pathData.writeVertex - 1;
+		pathData.endSequence = sequence + 1;
+	}
+
+	/**
+	 * Ensures that the rendered path has room for a number of vertices after those already written. If it has not, the
+	 * vertices still drawn are moved to the front of the buffer, and the buffer is replaced by one twice as large as
+	 * they and the new vertices need if they would fill more than half of it. The buffer is therefore compacted only
+	 * after at least as many vertices as it retains have been appended since it was last compacted.
+	 *
+	 * @param pathData
+	 *            the current globe-specific path data.
+	 * @param numVertices
+	 *            the number of vertices about to be appended.
+	 */
+	protected void reserveVertices(LivePathData pathData, int numVertices) {
+		int stride = pathData.vertexStride;
+		FloatBuffer buffer = pathData.renderedPath;
+		if (buffer != null && (pathData.writeVertex + numVertices) * stride <= buffer.capacity()) return;
+
+		// The first vertex still drawn is the last vertex of the oldest position's segment, if it has been tessellated.
+		boolean hasFirst = pathData.endSequence > pathData.firstSequence;
+		int first = hasFirst ? pathData.positionVertices[this.ringIndex(pathData.firstSequence)] : pathData.writeVertex;
+		int liveVertices = pathData.writeVertex - first;
+		int required = (liveVertices + numVertices) * stride;
+
+		FloatBuffer target = buffer;
+		if (buffer == null || 2 * required > buffer.capacity()) {
+			target = BufferUtil.newFloatBuffer(Math.max(2 * required, MIN_BUFFER_VERTICES * stride));
+		}
+
+		if (liveVertices > 0) {
+			buffer.limit(pathData.writeVertex * stride);
+			buffer.position(first * stride);
+			if (target == buffer) {
+				buffer.compact();
+			} else {
+				target.clear();
+				target.put(buffer);
+			}
+		}
+
+		for (long sequence = pathData.firstSequence; sequence < pathData.endSequence; sequence++) {
+			pathData.positionVertices[this.ringIndex(sequence)] -= first;
+		}
+
+		pathData.renderedPath = target;
+		pathData.writeVertex = liveVertices;
+		pathData.uploadedVertex = 0; // The whole buffer must be uploaded again.
+	}
+
+	/**
+	 * Computes the distance from the eye point to the nearer of this path's oldest and newest vertices. This is an
+	 * inexpensive approximation of the eye distance, used when only the end of the path has changed.
+	 *
+	 * @param dc
+	 *            the current draw context.
+	 * @param pathData
+	 *            the current globe-specific path data.
+	 * @return the approximate distance from the eye point to this path.
+	 */
+	protected double computeEndsEyeDistance(DrawContext dc, LivePathData pathData) {
+		Vec4 eyePoint = dc.getView().getEyePoint();
+		Vec4 refPt = pathData.getReferencePoint();
+		FloatBuffer path = pathData.renderedPath;
+
+		double minDistanceSquared = Double.MAX_VALUE;
+		int[] vertices = { pathData.firstVertex, pathData.writeVertex - 1 };
+		for (int vertex : vertices) {
+			int i = vertex * pathData.vertexStride;
+			double x = eyePoint.x - (path.get(i) + refPt.x);
+			double y = eyePoint.y - (path.get(i + 1) + refPt.y);
+			double z = eyePoint.z - (path.get(i + 2) + refPt.z);
+
+			double d = x * x + y * y + z * z;
+			if (d < minDistanceSquared) minDistanceSquared = d;
+		}
+
+		return Math.sqrt(minDistanceSquared);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * Overridden to size the VBO to the whole vertex buffer, and to upload only the vertices written since the last
+	 * upload.
+	 */
+	@Override
+	protected void fillVBO(DrawContext dc) {
+		LivePathData pathData = (LivePathData) this.getCurrentPathData();
+		int vSize = pathData.renderedPath.capacity() * 4;
+
+		int[] vboIds = (int[]) dc.getGpuResourceCache().get(pathData.getVboCacheKey());
+		if (vboIds != null && pathData.vboSize != vSize) {
+			this.clearCachedVbos(dc);
+			vboIds = null;
+		}
+
+		try {
+			if (vboIds == null) {
+				vboIds = new int[1];
+				GLES20.glGenBuffers(vboIds.length, vboIds, 0);
+				glCheckError("glGenBuffers");
+				dc.getGpuResourceCache().put(pathData.getVboCacheKey(), vboIds, GpuResourceCache.VBO_BUFFERS, vSize);
+
+				GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vboIds[0]);
+				glCheckError("glBindBuffer");
+				GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vSize, null, GLES20.GL_DYNAMIC_DRAW);
+				glCheckError("glBufferData");
+				pathData.vboSize = vSize;
+				pathData.uploadedVertex = 0;
+			} else {
+				GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vboIds[0]);
+				glCheckError("glBindBuffer");
+			}
+
+			if (pathData.uploadedVertex < pathData.writeVertex) {
+				int stride = pathData.vertexStride;
+				FloatBuffer vb = pathData.renderedPath.duplicate();
+				vb.limit(pathData.writeVertex * stride);
+				vb.position(pathData.uploadedVertex * stride);
+				GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, pathData.uploadedVertex * stride * 4, vb.remaining() * 4, vb);
+				glCheckError("glBufferSubData");
+				pathData.uploadedVertex = pathData.writeVertex;
+			}
+		} finally {
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+			glCheckError("glBindBuffer");
+		}
+	}
+
+	/**
+	 * A live view of this path's positions, from oldest to newest, which is this path's <code>positions</code>.
+	 */
+	protected class LivePositions extends AbstractList<Position> implements RandomAccess {
+		@Override
+		public Position get(int index) {
+			synchronized (lock) {
+				if (index < 0 || index >= endSequence - firstSequence) throw new IndexOutOfBoundsException(String.valueOf(index));
+
+				return ring[ringIndex(firstSequence + index)];
+			}
+		}
+
+		@Override
+		public int size() {
+			synchronized (lock) {
+				return (int) (endSequence - firstSequence);
+			}
+		}
+	}
+}
@@ -16,10 +16,13 @@ import gov.nasa.worldwind.geom.Frustum;
 import gov.nasa.worldwind.geom.Intersection;
 import gov.nasa.worldwind.geom.LatLon;
 import gov.nasa.worldwind.geom.Line;
+import gov.nasa.worldwind.geom.Matrix;
 import gov.nasa.worldwind.geom.Position;
 import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.geom.Vec4;
 import gov.nasa.worldwind.globes.Globe;
+import gov.nasa.worldwind.pick.GeometryPickSupport;
+import gov.nasa.worldwind.pick.GeometryPickable;
 import gov.nasa.worldwind.terrain.Terrain;
 import gov.nasa.worldwind.util.*;
 
@@ -28,6 +31,7 @@ import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
 import android.opengl.GLES20;
 
 import static gov.nasa.worldwind.WorldWindowImpl.glCheckError;
@@ -74,7 +78,7 @@ import static gov.nasa.worldwind.WorldWindowImpl.glCheckError;
  * @author tag
  * @version $Id: Path.java 844 2012-10-11 00:35:07Z tgaskins $
  */
-public class Path extends AbstractShape {
+public class Path extends AbstractShape implements GeographicExtent, GeometryPickable {
 	/** The default interior color. */
 	protected static final Color DEFAULT_INTERIOR_COLOR = Color.pink();
 	/** The default outline color. */
@@ -97,6 +101,15 @@ public class Path extends AbstractShape {
 	protected static final double DEFAULT_DRAW_POSITIONS_THRESHOLD = 1e6;
 	/** The default scale for position dots. The scale is applied to the current outline width to produce the dot size. */
 	protected static final double DEFAULT_DRAW_POSITIONS_SCALE = 10;
+	/** The default number of positions at and above which a path is decimated: 4096. */
+	protected static final int DEFAULT_DECIMATION_THRESHOLD = 4096;
+	/** The default screen-space error, in pixels, within which a decimated path follows its positions: 1. */
+	protected static final double DEFAULT_DECIMATION_TOLERANCE = 1;
+	/**
+	 * The distance the eye may move before a decimated path is decimated again, as a fraction of the eye's distance from
+	 * the path or the ground, whichever is greater.
+	 */
+	protected static final double DECIMATION_EYE_MOVEMENT = 0.1;
 
 	/**
 	 * Overrides the default materials specified in the base class.
@@ -169,6 +182,23 @@ public class Path extends AbstractShape {
 		protected int vertexStride;
 		/** Indicates the number of vertices represented by <code>renderedPath</code>. */
 		protected int vertexCount;
+		/**
+		 * Indicates the index of the first vertex to draw from <code>renderedPath</code>. The vertices drawn are those from
+		 * <code>firstVertex</code> through <code>firstVertex + vertexCount - 1</code>. This is <code>0</code> unless a subclass
+		 * retains vertices it no longer draws, as {@link LivePath} does.
+		 */
+		protected int firstVertex;
+		/** The eye point when the path was last decimated, or <code>null</code> if it has not been decimated. */
+		protected Vec4 decimationEyePoint;
+		/** The modelview matrix when the path was last decimated. */
+		protected Matrix decimationModelview;
+		/** Indicates whether the last decimation left parts of the path outside the view at low detail. */
+		protected boolean decimationCulled;
+		/**
+		 * Indicates whether the tessellated positions were selected by decimation. This is false for a decimated path
+		 * while its simplification hierarchy is being built, during which every position is tessellated.
+		 */
+		protected boolean decimated;
 
 		public PathData(DrawContext dc, Path shape) {
 			super(dc, shape.minExpiryTime, shape.maxExpiryTime);
@@ -618,6 +648,17 @@ public class Path extends AbstractShape {
 	protected double showPositionsThreshold = DEFAULT_DRAW_POSITIONS_THRESHOLD;
 	protected double showPositionsScale = DEFAULT_DRAW_POSITIONS_SCALE;
     protected TextRenderer textRenderer;
+	protected int decimationThreshold = DEFAULT_DECIMATION_THRESHOLD;
+	protected double decimationTolerance = DEFAULT_DECIMATION_TOLERANCE;
+	/** The positions of a decimated path, in a list that supports random access. */
+	protected List<? extends Position> decimationPositions;
+	/** The simplification hierarchy of a decimated path's positions, or null until it has been built. */
+	protected DouglasPeuckerTree decimationTree;
+	/** The task building the simplification hierarchy, or null if no build has been requested. */
+	protected DecimationTreeTask decimationTreeTask;
+	/** The indices of the positions selected by the most recent decimation. */
+	protected int[] decimationIndices;
+	protected int decimationCount;
 
 	/** Creates a path with no positions. */
 	public Path() {
@@ -732,8 +773,15 @@ public class Path extends AbstractShape {
 
 		this.positions = positions;
 		this.computePositionCount();
+		this.decimationPositions = null;
+		this.decimationTree = null;
+		this.decimationTreeTask = null;
+		this.decimationIndices = null;
 		this.referencePosition = this.numPositions < 1 ? null : this.positions.iterator().next(); // use first position
 		this.reset();
+
+		// Notify listeners that this path may have moved, such as a spatially indexed RenderableLayer.
+		this.firePropertyChange(AVKey.SECTOR, null, this);
 	}
 
 	/**
@@ -848,6 +896,73 @@ public class Path extends AbstractShape {
 		this.reset();
 	}
 
+	/**
+	 * Indicates the number of positions at and above which this path is decimated. A decimated path draws only the
+	 * positions needed to follow its specified positions within the decimation tolerance from the current view, and
+	 * draws parts of the path outside the view at low detail. Its positions are simplified once, when it is first
+	 * drawn, so that each view selects its positions without examining every specified position.
+	 *
+	 * @return the number of positions at and above which this path is decimated.
+	 * @see #setDecimationThreshold(int)
+	 * @see #getDecimationTolerance()
+	 */
+	public int getDecimationThreshold() {
+		return this.decimationThreshold;
+	}
+
+	/**
+	 * Specifies the number of positions at and above which this path is decimated. Specify
+	 * <code>Integer.MAX_VALUE</code> to draw every position regardless of the path's size.
+	 *
+	 * @param threshold
+	 *            the number of positions at and above which this path is decimated. The default is 4096.
+	 * @see #getDecimationThreshold()
+	 */
+	public void setDecimationThreshold(int threshold) {
+		this.decimationThreshold = threshold;
+		this.reset();
+	}
+
+	/**
+	 * Indicates the screen-space error within which a decimated path follows its specified positions.
+	 *
+	 * @return the decimation tolerance, in pixels.
+	 * @see #setDecimationTolerance(double)
+	 */
+	public double getDecimationTolerance() {
+		return this.decimationTolerance;
+	}
+
+	/**
+	 * Specifies the screen-space error within which a decimated path follows its specified positions. Larger values
+	 * cause fewer positions to be drawn.
+	 *
+	 * @param tolerance
+	 *            the decimation tolerance, in pixels. The default is 1.
+	 * @throws IllegalArgumentException
+	 *             if the tolerance is less than 0.
+	 */
+	public void setDecimationTolerance(double tolerance) {
+		if (tolerance < 0) {
+			String msg = Logging.getMessage("generic.ArgumentOutOfRange", tolerance);
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		this.decimationTolerance = tolerance;
+		this.reset();
+	}
+
+	/**
+	 * Indicates whether this path is decimated.
+	 *
+	 * @return true if this path has at least the decimation threshold's number of positions, otherwise false.
+	 * @see #getDecimationThreshold()
+	 */
+	protected boolean isDecimated() {
+		return this.numPositions > 2 && this.numPositions >= this.decimationThreshold;
+	}
+
 	/**
 	 * Indicates the terrain conformance target when this path follows the terrain. The value indicates the maximum
 	 * number of pixels between which intermediate positions of a path segment -- the path portion between two specified
@@ -984,6 +1099,65 @@ public class Path extends AbstractShape {
 		return this.sector;
 	}
 
+	public double getMaxAltitude() {
+		if (this.positions == null || AVKey.CLAMP_TO_GROUND.equals(this.getAltitudeMode())) return 0;
+
+		double maxAltitude = 0;
+		for (Position position : this.positions) {
+			if (position.elevation > maxAltitude) maxAltitude = position.elevation;
+		}
+
+		return maxAltitude;
+	}
+
+	/**
+	 * Picks this path by testing the geometry drawn in the current frame against the pick point. The path is picked if
+	 * its outline is within the pick tolerance, widened by half the outline's width, or if the pick point is inside
+	 * its extruded interior.
+	 *
+	 * @param dc
+	 *            the current draw context.
+	 * @param pickSupport
+	 *            the pick support holding the pick point.
+	 * @return true, since paths can always be picked geometrically.
+	 */
+	public boolean pickGeometry(DrawContext dc, GeometryPickSupport pickSupport) {
+		PathData pathData = this.getCurrentPathData();
+		if (!this.isVisible() || pathData == null || this.getActiveAttributes() == null) return true;
+
+		// Only the geometry drawn in the current frame can be picked.
+		if (pathData.getFrameNumber() != dc.getFrameTimeStamp() || !this.isOrderedRenderableValid(dc)) return true;
+
+		if (!pickSupport.isExtentNearPickPoint(dc, pathData.getExtent())) return true;
+
+		ShapeAttributes attrs = this.getActiveAttributes();
+		FloatBuffer points = pathData.renderedPath;
+		if (pathData.firstVertex > 0) {
+			points = points.duplicate();
+			points.position(pathData.firstVertex * pathData.vertexStride);
+			points = points.slice();
+		}
+		Vec4 referencePoint = pathData.getReferencePoint();
+		int stride = pathData.hasExtrusionPoints ? 2 * pathData.vertexStride : pathData.vertexStride;
+		int count = pathData.hasExtrusionPoints ? pathData.vertexCount / 2 : pathData.vertexCount;
+
+		double distance = Double.POSITIVE_INFINITY;
+		Position position = null;
+		if (attrs.isEnableOutline()) {
+			double halfWidth = 0.5 * Math.max(attrs.getOutlineWidth(), this.getOutlinePickWidth());
+			distance = pickSupport.computeLineStripDistance(dc, points, stride, count, referencePoint) - halfWidth;
+			if (distance <= pickSupport.getTolerance())
+				position = dc.getGlobe().computePositionFromPoint(pickSupport.getClosestPoint());
+		}
+
+		if (distance > 0 && pathData.hasExtrusionPoints && attrs.isEnableInterior()
+			&& pickSupport.isPickPointInTriangleStrip(dc, points, pathData.vertexStride, pathData.vertexCount, referencePoint))
+			distance = 0;
+
+		pickSupport.addCandidate(dc, this.getDelegateOwner() != null ? this.getDelegateOwner() : this, distance, pathData.getEyeDistance(), position);
+		return true;
+	}
+
     protected TextRenderer getTextRenderer(DrawContext dc) {
         if(textRenderer==null)
             textRenderer = new TextRenderer(dc);
@@ -1005,6 +1179,8 @@ public class Path extends AbstractShape {
 
 		if (this.getCurrentPathData().tessellatedPositions == null) return true;
 
+		if (this.isDecimated() && this.mustRedecimate(dc, this.getCurrentPathData())) return true;
+
 		if (dc.getVerticalExaggeration() != this.getCurrentPathData().getVerticalExaggeration()) {
 			if(WorldWindowImpl.DEBUG)
 				Logging.verbose("Path regenerating due to Vertical Exaggeration change");
@@ -1258,7 +1434,8 @@ public class Path extends AbstractShape {
             glCheckError("glVertexAttribPointer");
 		}
 
-		GLES20.glDrawArrays(GLES20.GL_LINE_STRIP, 0, count);
+		int first = pathData.hasExtrusionPoints ? pathData.firstVertex / 2 : pathData.firstVertex;
+		GLES20.glDrawArrays(GLES20.GL_LINE_STRIP, first, count);
 		glCheckError("glDrawArrays");
 
 		if (useVertexColors)
@@ -1694,8 +1871,14 @@ public class Path extends AbstractShape {
 	protected void makeTessellatedPositions(DrawContext dc, PathData pathData) {
 		if (this.numPositions < 2) return;
 
-		if (pathData.tessellatedPositions == null || pathData.tessellatedPositions.size() < this.numPositions) {
-			int size = (this.numSubsegments * (this.numPositions - 1) + 1) * (this.isExtrude() ? 2 : 1);
+		// A decimated path tessellates only the positions selected for the current view, so its buffers are sized to
+		// those rather than to every specified position. Until its simplification hierarchy is built, it tessellates
+		// every position.
+		pathData.decimated = this.isDecimated() && this.isDecimationTreeReady(dc);
+		int numPositions = pathData.decimated ? this.selectDecimatedPositions(dc, pathData) : this.numPositions;
+
+		if (pathData.tessellatedPositions == null || pathData.tessellatedPositions.size() < numPositions) {
+			int size = (this.numSubsegments * (numPositions - 1) + 1) * (this.isExtrude() ? 2 : 1);
 			pathData.tessellatedPositions = new ArrayList<Position>(size);
 			pathData.tessellatedColors = (this.positionColors != null) ? new ArrayList<Color>(size) : null;
 		} else {
@@ -1704,13 +1887,13 @@ public class Path extends AbstractShape {
 			if (pathData.tessellatedColors != null) pathData.tessellatedColors.clear();
 		}
 
-		if (pathData.polePositions == null || pathData.polePositions.capacity() < this.numPositions * 2)
-		pathData.polePositions = BufferUtil.newIntBuffer(this.numPositions * 2);
+		if (pathData.polePositions == null || pathData.polePositions.capacity() < numPositions * 2)
+		pathData.polePositions = BufferUtil.newIntBuffer(numPositions * 2);
 		else
 		pathData.polePositions.clear();
 
-		if (pathData.positionPoints == null || pathData.positionPoints.capacity() < this.numPositions)
-		pathData.positionPoints = BufferUtil.newIntBuffer(this.numPositions);
+		if (pathData.positionPoints == null || pathData.positionPoints.capacity() < numPositions)
+		pathData.positionPoints = BufferUtil.newIntBuffer(numPositions);
 		else
 		pathData.positionPoints.clear();
 
@@ -1741,6 +1924,11 @@ public class Path extends AbstractShape {
 	}
 
 	protected void makePositions(DrawContext dc, PathData pathData) {
+		if (pathData.decimated) {
+			this.makeDecimatedPositions(dc, pathData);
+			return;
+		}
+
 		Iterator<? extends Position> iter = this.positions.iterator();
 		Position posA = iter.next();
 		int ordinalA = 0;
@@ -1768,6 +1956,224 @@ public class Path extends AbstractShape {
 		}
 	}
 
+	/**
+	 * Tessellates the positions selected by the most recent decimation, in the same way as {@link #makePositions(DrawContext, PathData)}
+	 * tessellates every position. Each selected position keeps its ordinal in the specified positions.
+	 *
+	 * @param dc
+	 *            the current draw context.
+	 * @param pathData
+	 *            the current globe-specific path data.
+	 */
+	protected void makeDecimatedPositions(DrawContext dc, PathData pathData) {
+		int ordinalA = this.decimationIndices[0];
+		Position posA = this.decimationPositions.get(ordinalA);
+		Color colorA = this.getColor(posA, ordinalA);
+
+		this.addTessellatedPosition(posA, colorA, ordinalA, pathData); // add the first position of the path
+
+		Vec4 ptA = this.computePoint(dc.getVisibleTerrain(), posA);
+
+		for (int i = 1; i < this.decimationCount; i++) {
+			int ordinalB = this.decimationIndices[i];
+			Position posB = this.decimationPositions.get(ordinalB);
+			Color colorB = this.getColor(posB, ordinalB);
+			Vec4 ptB = this.computePoint(dc.getVisibleTerrain(), posB);
+
+			// If the segment is very small or not visible, don't tessellate, just add the segment's end position.
+			if (this.isSmall(dc, ptA, ptB, 8) || !this.isSegmentVisible(dc, posA, posB, ptA, ptB)) this.addTessellatedPosition(posB, colorB, ordinalB, pathData);
+			else this.makeSegment(dc, posA, posB, ptA, ptB, colorA, colorB, ordinalA, ordinalB, pathData);
+
+			posA = posB;
+			ptA = ptB;
+			ordinalA = ordinalB;
+			colorA = colorB;
+		}
+	}
+
+	/**
+	 * Indicates whether this decimated path's simplification hierarchy has been built. If it has not, this requests
+	 * that it be built on a task service thread; the request is made again if the task service is full. The hierarchy
+	 * is built from the path's positions as they are when the request is made.
+	 *
+	 * @param dc
+	 *            the current draw context.
+	 * @return true if the hierarchy is ready, otherwise false.
+	 */
+	protected boolean isDecimationTreeReady(DrawContext dc) {
+		if (this.decimationTree != null) return true;
+
+		DecimationTreeTask task = this.decimationTreeTask;
+		if (task != null) {
+			if (task.decimationTree != null) {
+				this.decimationPositions = task.decimationPositions;
+				this.decimationTree = task.decimationTree;
+				this.decimationIndices = new int[this.decimationTree.getCount()];
+				this.decimationTreeTask = null;
+				return true;
+			}
+
+			// The build is still in progress, or it failed and the path is drawn undecimated. The task service discards
+			// tasks it cannot queue, so the build is requested again if it is neither queued nor finished.
+			if (task.finished || WorldWind.getTaskService().contains(task)) return false;
+		}
+
+		if (WorldWind.getTaskService().isFull()) return false;
+
+		this.decimationTreeTask = new DecimationTreeTask(this, this.positions, this.numPositions, dc.getGlobe().getEquatorialRadius());
+		WorldWind.getTaskService().runTask(this.decimationTreeTask);
+		return false;
+	}
+
+	/**
+	 * Selects the positions of this decimated path to draw from the current view. The path's simplification hierarchy
+	 * must have been built; see {@link #isDecimationTreeReady(DrawContext)}. The selected positions' indices are left in
+	 * <code>decimationIndices</code>.
+	 *
+	 * @param dc
+	 *            the current draw context.
+	 * @param pathData
+	 *            the current globe-specific path data.
+	 * @return the number of positions selected.
+	 */
+	protected int selectDecimatedPositions(DrawContext dc, PathData pathData) {
+		DecimationRefinement refinement = new DecimationRefinement(dc);
+		this.decimationCount = this.decimationTree.select(refinement, this.decimationIndices);
+
+		pathData.decimationEyePoint = dc.getView().getEyePoint().copy();
+		pathData.decimationModelview = dc.getView().getModelviewMatrix().copy();
+		pathData.decimationCulled = refinement.culled;
+
+		return this.decimationCount;
+	}
+
+	/**
+	 * Indicates whether the view has changed enough since this path was last decimated that it must be decimated
+	 * again. This is so if the eye has moved more than a fraction of its distance from the path or the ground, or if
+	 * parts of the path were outside the previous view and the view has changed at all.
+	 *
+	 * @param dc
+	 *            the current draw context.
+	 * @param pathData
+	 *            the current globe-specific path data.
+	 * @return true if this path must be decimated again, otherwise false.
+	 */
+	protected boolean mustRedecimate(DrawContext dc, PathData pathData) {
+		// A path drawn with every position while its hierarchy was built is decimated once the hierarchy is ready.
+		if (!pathData.decimated) return this.isDecimationTreeReady(dc);
+
+		if (pathData.decimationEyePoint == null || pathData.decimationModelview == null) return true;
+
+		Vec4 eyePoint = dc.getView().getEyePoint();
+		double distance = dc.getView().getEyePosition().elevation;
+		Extent extent = pathData.getExtent();
+		if (extent != null) distance = Math.max(distance, extent.getCenter().distanceTo3(eyePoint) - extent.getRadius());
+
+		if (eyePoint.distanceTo3(pathData.decimationEyePoint) > DECIMATION_EYE_MOVEMENT * distance) return true;
+
+		return pathData.decimationCulled && !dc.getView().getModelviewMatrix().equals(pathData.decimationModelview);
+	}
+
+	/**
+	 * Builds a decimated path's simplification hierarchy on a task service thread. The path draws every position until
+	 * the hierarchy is ready, then asks to be drawn again.
+	 */
+	protected static class DecimationTreeTask implements Runnable {
+		protected final Path path;
+		protected final Iterable<? extends Position> positions;
+		protected final int numPositions;
+		protected final double radius;
+		// Set on the task service thread. The hierarchy is set last, so the positions are visible once it is.
+		protected volatile List<? extends Position> decimationPositions;
+		protected volatile DouglasPeuckerTree decimationTree;
+		protected volatile boolean finished;
+
+		public DecimationTreeTask(Path path, Iterable<? extends Position> positions, int numPositions, double radius) {
+			this.path = path;
+			this.positions = positions;
+			this.numPositions = numPositions;
+			this.radius = radius;
+		}
+
+		@SuppressWarnings("unchecked")
+		public void run() {
+			if (Thread.currentThread().isInterrupted()) return; // The task was cancelled by the task service.
+
+			try {
+				List<? extends Position> list;
+				if (this.positions instanceof List && this.positions instanceof RandomAccess) {
+					list = (List<? extends Position>) this.positions;
+				} else {
+					ArrayList<Position> copy = new ArrayList<Position>(this.numPositions);
+					for (Position pos : this.positions) {
+						copy.add(pos);
+					}
+					list = copy;
+				}
+
+				DouglasPeuckerTree tree = DouglasPeuckerTree.fromPositions(list, this.radius);
+				this.decimationPositions = list;
+				this.decimationTree = tree;
+			} catch (Exception e) {
+				Logging.error(Logging.getMessage("Path.ExceptionBuildingDecimationTree", this.path), e);
+			} finally {
+				this.finished = true;
+			}
+
+			// Ask the window to draw the path again, now with its decimated positions.
+			this.path.firePropertyChange(AVKey.REPAINT, null, this.path);
+		}
+
+		@Override
+		public String toString() {
+			return this.path.toString();
+		}
+	}
+
+	/**
+	 * Refines a decimated path's simplification hierarchy where its error exceeds the decimation tolerance at its
+	 * distance from the eye. Parts of the path outside the view are not refined.
+	 */
+	protected class DecimationRefinement implements DouglasPeuckerTree.Refinement {
+		protected final DrawContext dc;
+		protected final Frustum frustum;
+		protected final Vec4 eyePoint;
+		protected final boolean clampToGround;
+		protected boolean culled;
+
+		public DecimationRefinement(DrawContext dc) {
+			this.dc = dc;
+			this.frustum = dc.getView().getFrustumInModelCoordinates();
+			this.eyePoint = dc.getView().getEyePoint();
+			this.clampToGround = AVKey.CLAMP_TO_GROUND.equals(getAltitudeMode());
+		}
+
+		public boolean mustRefine(int start, int split, int end, double error) {
+			if (error <= 0) return false;
+
+			// Every position in the range lies within the error of the chord between the range's end points. The
+			// points are computed on the ellipsoid, which is close enough to choose a level of detail.
+			Vec4 ptA = this.computePoint(decimationPositions.get(start));
+			Vec4 ptB = this.computePoint(decimationPositions.get(end));
+			if (!ptA.equals(ptB) && !new Cylinder(ptA, ptB, error).intersects(this.frustum)) {
+				this.culled = true;
+				return false;
+			}
+
+			double radius = 0.5 * ptA.distanceTo3(ptB) + error;
+			double cx = 0.5 * (ptA.x + ptB.x) - this.eyePoint.x;
+			double cy = 0.5 * (ptA.y + ptB.y) - this.eyePoint.y;
+			double cz = 0.5 * (ptA.z + ptB.z) - this.eyePoint.z;
+			double distance = Math.max(Math.sqrt(cx * cx + cy * cy + cz * cz) - radius, 0);
+
+			return error > getDecimationTolerance() * this.dc.getView().computePixelSizeAtDistance(distance);
+		}
+
+		protected Vec4 computePoint(Position pos) {
+			return this.dc.getGlobe().computePointFromPosition(pos.latitude, pos.longitude, this.clampToGround ? 0 : pos.elevation);
+		}
+	}
+
 	/**
 	 * Adds a position to this path's <code>tessellatedPositions</code> list. If the specified color is not <code>null</code>, this adds the color to this
 	 * path's <code>tessellatedColors</code> list. If the specified
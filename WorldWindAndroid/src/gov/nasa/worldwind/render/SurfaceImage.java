@@ -13,7 +13,7 @@ import gov.nasa.worldwind.util.*;
  * @author dcollins
  * @version $Id: SurfaceImage.java 762 2012-09-07 00:22:58Z tgaskins $
  */
-public class SurfaceImage implements Renderable, SurfaceTile
+public class SurfaceImage implements Renderable, SurfaceTile, GeographicExtent
 {
     protected String imagePath;
     protected Sector sector;
@@ -49,6 +49,11 @@ public class SurfaceImage implements Renderable, SurfaceTile
         return this.sector;
     }
 
+    public double getMaxAltitude()
+    {
+        return 0;
+    }
+
     public boolean bind(DrawContext dc)
     {
         if (dc == null)
@@ -134,6 +139,7 @@ public class SurfaceImage implements Renderable, SurfaceTile
         if (textureData != null)
         {
             texture = GpuTexture.createTexture(dc, textureData);
+            textureData.dispose();
         }
 
         this.textureCreationFailed = (texture == null);
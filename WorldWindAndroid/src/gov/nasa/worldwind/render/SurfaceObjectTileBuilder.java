@@ -503,6 +503,11 @@ public class SurfaceObjectTileBuilder
      * necessary. The tile keeps track of the list of SurfaceObjects rendered into it, and the state keys those objects.
      * The tile is updated if the list changes, if any of the state keys change, or if the tile has no texture.
      * Otherwise the tile is left unchanged and the update is skipped.
+     * <p/>
+     * When the tile's texture already exists, only the region covered by the objects that changed is cleared and
+     * redrawn, as determined by the tile's {@link DirtyRegionTracker}. The whole tile is redrawn when its texture is
+     * new, or when the texture is not rendered through a framebuffer object, since the texture is then copied from the
+     * framebuffer in its entirety.
      *
      * @param dc   the draw context the tile relates to.
      * @param tile the tile to update.
@@ -528,11 +533,14 @@ public class SurfaceObjectTileBuilder
         // ensures that the lastUpdateStateKey is current when the tile is added to the cache.
         tile.lastUpdateStateKey = tileStateKey;
 
+        DirtyRegionTracker dirtyRegion = tile.getDirtyRegion();
+
         if (texture == null) // Create the tile's texture if it doesn't already have one.
         {
 			Logging.verbose("Creating tile texture");
             texture = this.createTileTexture(dc, tile.getWidth(), tile.getHeight());
             tile.setTexture(dc.getTextureCache(), texture);
+            dirtyRegion.invalidate();
         }
 
         if (texture == null) // This should never happen, but we check anyway.
@@ -540,8 +548,31 @@ public class SurfaceObjectTileBuilder
             Logging.warning(Logging.getMessage("nullValue.TextureIsNull"));
             return;
         }
+
+        if (!this.canUpdateIncrementally(dc))
+            dirtyRegion.invalidate();
+
+        // Compare the objects now intersecting the tile with those last drawn into it. The tile's state key already
+        // holds each object's state key, in the same order as the object list.
+        Object[] objectKeys = tileStateKey instanceof SurfaceObjectTileStateKey
+            ? ((SurfaceObjectTileStateKey) tileStateKey).intersectingObjectKeys : null;
+        dirtyRegion.beginUpdate();
+        if (tile.hasObjects())
+        {
+            int index = 0;
+            for (SurfaceObject so : tile.getObjectList())
+            {
+                dirtyRegion.addObject(objectKeys != null ? objectKeys[index++] : so.getStateKey(dc), so.getSectors(dc));
+            }
+        }
+
+        // The objects that changed may not cover any of the tile's pixels.
+        if (!dirtyRegion.endUpdate())
+            return;
+
 		if(WorldWindowImpl.DEBUG)
 			Logging.verbose("Rendering tile texture");
+        boolean partial = !dirtyRegion.isFullRedraw();
         try
         {
             // SurfaceObjects expect the SurfaceTileDrawContext to be attached to the draw context's AVList. Create a
@@ -550,12 +581,24 @@ public class SurfaceObjectTileBuilder
             dc.setValue(AVKey.SURFACE_TILE_DRAW_CONTEXT, this.createSurfaceTileDrawContext(tile, projection));
 
             this.rttSupport.setColorTarget(dc, texture);
-            this.rttSupport.clear(dc, new Color(0, 0, 0, 0)); // Set all texture pixels to transparent black.
+
+            // Limit the clear and the drawing to the dirty rectangle. The scissor box defines the region affected by
+            // glClear() as well as by drawing.
+            if (partial)
+            {
+                Rect r = dirtyRegion.getDirtyRect();
+                glScissor((int) r.x, (int) r.y, (int) r.width, (int) r.height);
+            }
+
+            this.rttSupport.clear(dc, new Color(0, 0, 0, 0)); // Set the texture pixels to transparent black.
 
             if (tile.hasObjects())
             {
                 for (SurfaceObject so : tile.getObjectList())
                 {
+                    if (partial && !dirtyRegion.intersectsDirtyRegion(so.getSectors(dc)))
+                        continue;
+
 					dc.setCurrentLayer(so.getLayer());
                     so.render(dc);
 					dc.setCurrentLayer(null);
@@ -564,12 +607,30 @@ public class SurfaceObjectTileBuilder
         }
         finally
         {
+            if (partial) // Restore the scissor box set by beginRendering.
+                glScissor(0, 0, this.currentTileDimension.x, this.currentTileDimension.y);
+
             this.rttSupport.setColorTarget(dc, null);
 
             dc.removeKey(AVKey.SURFACE_TILE_DRAW_CONTEXT);
         }
     }
 
+    /**
+     * Indicates whether tile textures can be updated in part. This is true only when tiles are rendered through a
+     * framebuffer object, which draws into the texture directly. Otherwise tiles are drawn into the framebuffer and the
+     * whole drawing region copied to the texture, so every pixel must be drawn again.
+     *
+     * @param dc the current draw context.
+     *
+     * @return true if tile textures can be updated in part; false otherwise.
+     */
+    protected boolean canUpdateIncrementally(DrawContext dc)
+    {
+        return this.rttSupport.isEnableFramebufferObject()
+            && GLRuntimeCapabilities.getInstance().isUseFramebufferObject();
+    }
+
     /**
      * Returns a new surface tile texture for use on the specified draw context with the specified width and height.
      * <p/>
@@ -880,6 +941,13 @@ public class SurfaceObjectTileBuilder
 			return;
 		}
 
+        // Ignore this tile if it is hidden behind the horizon.
+        if (this.isBelowHorizon(dc, tile))
+        {
+            tile.clearObjectList();
+            return;
+        }
+
         // Ignore this tile if it falls completely outside the DrawContext's visible sector.
 //        if (!this.intersectsFrustum(dc, tile))
 //        {
@@ -1009,6 +1077,27 @@ public class SurfaceObjectTileBuilder
         return dc.getView().getFrustumInModelCoordinates().intersects(extent);
     }
 
+    /**
+     * Test if the specified tile is hidden behind the horizon. The tile's extent is computed from its sector and the
+     * globe's elevations, and is recomputed whenever the globe's state or the vertical exaggeration changes.
+     *
+     * @param dc   the current draw context.
+     * @param tile the tile to test.
+     *
+     * @return true if the tile is below the horizon; false otherwise.
+     */
+    protected boolean isBelowHorizon(DrawContext dc, SurfaceObjectTile tile)
+    {
+        if (!tile.isExtentValid(dc))
+        {
+            tile.setExtent(Sector.computeBoundingBox(dc.getGlobe(), dc.getVerticalExaggeration(), tile.getSector()));
+            tile.extentGlobeStateKey = dc.getGlobe().getStateKey(dc);
+            tile.extentVerticalExaggeration = dc.getVerticalExaggeration();
+        }
+
+        return dc.isBelowHorizon(tile.getExtent());
+    }
+
     /**
      * Test if the specified tile intersects the draw context's visible sector. This returns false if the draw context's
      * visible sector is null.
@@ -1132,6 +1221,12 @@ public class SurfaceObjectTileBuilder
         protected List<SurfaceObject> intersectingObjects;
         /** The state key that was valid when the tile was last updated. */
         protected Object lastUpdateStateKey;
+        /** Tracks the region of the tile's texture that must be redrawn. Created when the tile is first updated. */
+        protected DirtyRegionTracker dirtyRegion;
+        /** The globe state key that was valid when the tile's extent was computed. */
+        protected Object extentGlobeStateKey;
+        /** The vertical exaggeration that was in effect when the tile's extent was computed. */
+        protected double extentVerticalExaggeration;
 
         /**
          * Constructs a tile for a given sector, level, row and column of the tile's containing tile set.
@@ -1183,6 +1278,35 @@ public class SurfaceObjectTileBuilder
             return new SurfaceObjectTileStateKey(dc, this);
         }
 
+        /**
+         * Indicates whether the tile's extent was computed for the specified draw context's globe state and vertical
+         * exaggeration. This returns false if the tile has no extent.
+         *
+         * @param dc the current draw context.
+         *
+         * @return true if the tile's extent is current; false otherwise.
+         */
+        public boolean isExtentValid(DrawContext dc)
+        {
+            return this.getExtent() != null
+                && this.extentVerticalExaggeration == dc.getVerticalExaggeration()
+                && this.extentGlobeStateKey != null
+                && this.extentGlobeStateKey.equals(dc.getGlobe().getStateKey(dc));
+        }
+
+        /**
+         * Returns the tracker of the region of this tile's texture that must be redrawn, creating it if necessary.
+         *
+         * @return this tile's dirty region tracker.
+         */
+        public DirtyRegionTracker getDirtyRegion()
+        {
+            if (this.dirtyRegion == null)
+                this.dirtyRegion = new DirtyRegionTracker(this.getSector(), this.getWidth(), this.getHeight());
+
+            return this.dirtyRegion;
+        }
+
         /**
          * Returns a sector that bounds the surface objects intersecting the tile. This returns null if no surface
          * objects intersect the tile.
@@ -1277,6 +1401,17 @@ public class SurfaceObjectTileBuilder
         {
             return new TileKey(level.getLevelNumber(), row, col, this.getCacheName());
         }
+
+        /**
+         * {@inheritDoc}
+         * <p/>
+         * Overridden to return the id of this tile's cache name, matching {@link #createSubTileKey(Level, int, int)}.
+         */
+        @Override
+        protected int getSubTileCacheNameId(Level level)
+        {
+            return TileKey.getCacheNameId(this.getCacheName());
+        }
     }
 
     /**
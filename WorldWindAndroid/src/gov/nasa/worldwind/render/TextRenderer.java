@@ -3,7 +3,9 @@ package gov.nasa.worldwind.render;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Typeface;
 import android.opengl.GLES20;
+import android.opengl.GLUtils;
 import gov.nasa.worldwind.R;
 import gov.nasa.worldwind.WorldWindowImpl;
 import gov.nasa.worldwind.cache.GpuResourceCache;
@@ -18,6 +20,13 @@ import java.util.HashMap;
 
 /**
  * Class used to render text on view
+ * <p/>
+ * By default text is drawn from a {@link GlyphAtlas}: each character is rasterized once into a shared atlas texture,
+ * and strings are laid out as quads referencing the atlas. Strings drawn between {@link #beginDrawing()} and {@link
+ * #endDrawing()} are collected into a single vertex buffer and drawn together when drawing ends. Strings drawn outside
+ * those calls are drawn immediately. Glyph atlas drawing places each character independently, so text requiring
+ * shaping, such as Arabic or Devanagari, should disable it with {@link #setGlyphAtlasEnabled(boolean)} to draw each
+ * string from its own texture.
  *
  * @author Nicola Dorigatti Trilogis SRL
  * @version 1
@@ -33,6 +42,30 @@ public class TextRenderer {
 	private Paint paint;
 	private float[] color = new float[] { 1, 1, 1, 1 };
 
+	protected static final int DEFAULT_ATLAS_SIZE = 512;
+	protected static final int ATLAS_PADDING = 1;
+	protected static final int VERTEX_STRIDE = 16; // x, y, s, t floats
+
+	protected boolean glyphAtlasEnabled = true;
+	protected GlyphAtlas atlas;
+	protected Bitmap atlasImage;
+	protected Canvas atlasCanvas;
+	protected Paint atlasPaint;
+	protected final Object atlasKey = new Object();
+	protected boolean atlasModified;
+	protected float atlasTextSize;
+	protected Typeface atlasTypeface;
+	protected android.graphics.Rect glyphBounds = new android.graphics.Rect();
+	// Strings drawn since the last flush, as vertices and runs of vertices sharing a color.
+	protected boolean batching;
+	protected float[] batchVertices = new float[64 * GlyphAtlas.FLOATS_PER_GLYPH];
+	protected int batchFloatCount;
+	protected float[] runColors = new float[16 * 4];
+	protected int[] runVertexCounts = new int[16];
+	protected int runCount;
+	protected FloatBuffer batchBuffer;
+	protected Matrix mvpMatrix = Matrix.fromIdentity();
+
 	float[] unitQuadVerts = new float[] { 0, 0, 1, 0, 1, 1, 0, 1 };
 	float[] textureVerts = new float[] { 0, 1, 1, 1, 1, 0, 0, 0 };
 	FloatBuffer vertexBuf;
@@ -70,7 +103,235 @@ public class TextRenderer {
         return this.paint;
     }
 
+	/**
+	 * Indicates whether text is drawn from a shared glyph atlas rather than from a texture for each string.
+	 *
+	 * @return true if text is drawn from a glyph atlas, otherwise false.
+	 */
+	public boolean isGlyphAtlasEnabled() {
+		return this.glyphAtlasEnabled;
+	}
+
+	/**
+	 * Specifies whether text is drawn from a shared glyph atlas rather than from a texture for each string. The atlas
+	 * is more efficient, but draws each character independently, which is not suitable for text that requires
+	 * shaping.
+	 *
+	 * @param enabled true to draw text from a glyph atlas, otherwise false.
+	 */
+	public void setGlyphAtlasEnabled(boolean enabled) {
+		if (this.glyphAtlasEnabled && !enabled) this.flush();
+
+		this.glyphAtlasEnabled = enabled;
+	}
+
+	/**
+	 * Draws a string with its baseline starting at a screen point. With the glyph atlas enabled, the string is drawn
+	 * when drawing ends if called between {@link #beginDrawing()} and {@link #endDrawing()}, otherwise immediately.
+	 *
+	 * @param text the string to draw.
+	 * @param x    the screen x coordinate of the start of the string.
+	 * @param y    the screen y coordinate of the string's baseline.
+	 */
 	public void draw(String text, int x, int y) {
+		if (!this.glyphAtlasEnabled) {
+			this.drawTexture(text, x, y);
+			return;
+		}
+
+		this.addToBatch(text, x, y);
+
+		if (!this.batching) this.flush();
+	}
+
+	protected void addToBatch(String text, int x, int y) {
+		if (!this.addGlyphs(text)) {
+			// The atlas is full. Draw the strings that use its current glyphs, then start over with an empty atlas.
+			this.flush();
+			this.clearAtlas();
+			if (!this.addGlyphs(text)) {
+				// The string's glyphs do not fit even an empty atlas. The batch has just been drawn, so drawing the
+				// string from its own texture now keeps the strings in order.
+				this.drawTexture(text, x, y);
+				return;
+			}
+		}
+
+		int length = this.batchFloatCount + text.length() * GlyphAtlas.FLOATS_PER_GLYPH;
+		if (length > this.batchVertices.length) {
+			float[] newVertices = new float[Math.max(length, 2 * this.batchVertices.length)];
+			System.arraycopy(this.batchVertices, 0, newVertices, 0, this.batchFloatCount);
+			this.batchVertices = newVertices;
+		}
+
+		int floatCount = this.atlas.layout(text, x, y, this.batchVertices, this.batchFloatCount);
+		this.batchFloatCount += floatCount;
+		this.addRun(floatCount / 4);
+	}
+
+	protected void addRun(int vertexCount) {
+		// The glyphs are white, so the text color is the paint's color modulated by this renderer's color.
+		int argb = this.paint.getColor();
+		float opacity = drawContext.getCurrentLayer() != null ? (float) drawContext.getCurrentLayer().getOpacity() : 1;
+		float r = ((argb >> 16) & 0xFF) / 255f * color[0];
+		float g = ((argb >> 8) & 0xFF) / 255f * color[1];
+		float b = (argb & 0xFF) / 255f * color[2];
+		float a = ((argb >>> 24) & 0xFF) / 255f * color[3] * opacity;
+
+		int last = this.runCount - 1;
+		if (last >= 0 && this.runColors[4 * last] == r && this.runColors[4 * last + 1] == g
+				&& this.runColors[4 * last + 2] == b && this.runColors[4 * last + 3] == a) {
+			this.runVertexCounts[last] += vertexCount;
+			return;
+		}
+
+		if (this.runCount == this.runVertexCounts.length) {
+			int[] newCounts = new int[2 * this.runCount];
+			System.arraycopy(this.runVertexCounts, 0, newCounts, 0, this.runCount);
+			this.runVertexCounts = newCounts;
+			float[] newColors = new float[8 * this.runCount];
+			System.arraycopy(this.runColors, 0, newColors, 0, 4 * this.runCount);
+			this.runColors = newColors;
+		}
+
+		this.runColors[4 * this.runCount] = r;
+		this.runColors[4 * this.runCount + 1] = g;
+		this.runColors[4 * this.runCount + 2] = b;
+		this.runColors[4 * this.runCount + 3] = a;
+		this.runVertexCounts[this.runCount++] = vertexCount;
+	}
+
+	/**
+	 * Adds the glyphs of a string's characters to the atlas, rasterizing those not already in it. Clears the atlas
+	 * first if the paint's text size or typeface have changed since the glyphs were rasterized.
+	 *
+	 * @return false if the atlas is full, otherwise true.
+	 */
+	protected boolean addGlyphs(String text) {
+		if (this.atlas == null) {
+			this.atlas = new GlyphAtlas(DEFAULT_ATLAS_SIZE, DEFAULT_ATLAS_SIZE, ATLAS_PADDING);
+			this.atlasImage = Bitmap.createBitmap(DEFAULT_ATLAS_SIZE, DEFAULT_ATLAS_SIZE, Bitmap.Config.ARGB_8888);
+			this.atlasCanvas = new Canvas(this.atlasImage);
+			this.clearAtlas();
+		} else if (this.atlasTextSize != this.paint.getTextSize() || this.atlasTypeface != this.paint.getTypeface()) {
+			this.flush();
+			this.clearAtlas();
+		}
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (this.atlas.getGlyph(c) != null) continue;
+
+			String s = String.valueOf(c);
+			this.atlasPaint.getTextBounds(s, 0, 1, this.glyphBounds);
+			GlyphAtlas.Glyph glyph = this.atlas.addGlyph(c, this.glyphBounds.width(), this.glyphBounds.height(),
+					this.glyphBounds.left, -this.glyphBounds.top, this.atlasPaint.measureText(s));
+			if (glyph == null) return false;
+
+			if (glyph.width > 0) {
+				this.atlasCanvas.drawText(s, glyph.x - this.glyphBounds.left, glyph.y - this.glyphBounds.top,
+						this.atlasPaint);
+				this.atlasModified = true;
+			}
+		}
+
+		return true;
+	}
+
+	protected void clearAtlas() {
+		this.atlas.clear();
+		this.atlasImage.eraseColor(0);
+		this.atlasModified = true;
+
+		// Rasterize glyphs in opaque white with the current paint's font. The paint's color is applied when drawing.
+		this.atlasPaint = new Paint(this.paint);
+		this.atlasPaint.setColor(0xFFFFFFFF);
+		this.atlasTextSize = this.paint.getTextSize();
+		this.atlasTypeface = this.paint.getTypeface();
+	}
+
+	protected GpuTexture getAtlasTexture() {
+		GpuResourceCache cache = drawContext.getGpuResourceCache();
+		GpuTexture texture = cache.getTexture(this.atlasKey);
+		if (texture == null) {
+			GpuTextureData textureData = GpuTextureData.createTextureData(this.atlasImage, null, null, false);
+			if (textureData != null) texture = GpuTexture.createTexture(drawContext, textureData);
+			if (texture != null) cache.put(this.atlasKey, texture);
+			this.atlasModified = false;
+		}
+
+		return texture;
+	}
+
+	/** Draws the strings collected since the last flush in one pass over a single vertex buffer. */
+	protected void flush() {
+		if (this.batchFloatCount == 0) return;
+
+		try {
+			GpuProgram program = this.getGpuProgram(drawContext.getGpuResourceCache(), shaderKey, VERTEX_SHADER_PATH, FRAGMENT_SHADER_PATH);
+			if (program == null) return; // Message already logged in getGpuProgram.
+
+			GpuTexture texture = this.getAtlasTexture();
+			if (texture == null) return;
+
+			if (this.batchBuffer == null || this.batchBuffer.capacity() < this.batchFloatCount) {
+				int capacity = Math.max(this.batchFloatCount, this.batchVertices.length);
+				this.batchBuffer = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+			}
+			this.batchBuffer.clear();
+			this.batchBuffer.put(this.batchVertices, 0, this.batchFloatCount);
+
+			Rect viewport = drawContext.getView().getViewport();
+			this.mvpMatrix.setOrthographic(0d, viewport.width, 0d, viewport.height, -1d, 1d);
+			program.bind();
+			program.loadUniformMatrix("mvpMatrix", this.mvpMatrix);
+			program.loadUniformSampler("sTexture", 0);
+
+			texture.bind();
+			if (this.atlasModified) {
+				GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, this.atlasImage);
+				WorldWindowImpl.glCheckError("texSubImage2D");
+				this.atlasModified = false;
+			}
+
+			int pointLocation = program.getAttribLocation("vertexPoint");
+			GLES20.glEnableVertexAttribArray(pointLocation);
+			WorldWindowImpl.glCheckError("glEnableVertexAttribArray");
+
+			GLES20.glVertexAttribPointer(pointLocation, 2, GLES20.GL_FLOAT, false, VERTEX_STRIDE, this.batchBuffer.position(0));
+			WorldWindowImpl.glCheckError("glVertexAttribPointer");
+
+			int textureLocation = program.getAttribLocation("aTextureCoord");
+			GLES20.glEnableVertexAttribArray(textureLocation);
+			WorldWindowImpl.glCheckError("glEnableVertexAttribArray");
+
+			GLES20.glVertexAttribPointer(textureLocation, 2, GLES20.GL_FLOAT, false, VERTEX_STRIDE, this.batchBuffer.position(2));
+			WorldWindowImpl.glCheckError("glVertexAttribPointer");
+
+			int first = 0;
+			for (int i = 0; i < this.runCount; i++) {
+				program.loadUniform4f("uTextureColor", this.runColors[4 * i], this.runColors[4 * i + 1],
+						this.runColors[4 * i + 2], this.runColors[4 * i + 3]);
+				GLES20.glDrawArrays(GLES20.GL_TRIANGLES, first, this.runVertexCounts[i]);
+				WorldWindowImpl.glCheckError("glDrawArrays");
+				first += this.runVertexCounts[i];
+			}
+
+			GLES20.glDisableVertexAttribArray(pointLocation);
+			WorldWindowImpl.glCheckError("glDisableVertexAttribArray");
+
+			GLES20.glDisableVertexAttribArray(textureLocation);
+			WorldWindowImpl.glCheckError("glDisableVertexAttribArray");
+
+			GLES20.glUseProgram(0);
+			WorldWindowImpl.glCheckError("glUseProgram");
+		} finally {
+			this.batchFloatCount = 0;
+			this.runCount = 0;
+		}
+	}
+
+	protected void drawTexture(String text, int x, int y) {
 		Rect viewport = drawContext.getView().getViewport();
 		Rect bounds = getBounds(text);
 		Matrix projection = Matrix.fromIdentity().setOrthographic(0d, viewport.width, 0d, viewport.height, -0.6 * bounds.width, 0.6 * bounds.width);
@@ -174,9 +435,12 @@ public class TextRenderer {
     public void beginDrawing() {
         GLES20.glDisable(GLES20.GL_DEPTH_TEST);
         GLES20.glDepthMask(false);
+        this.batching = true;
     }
 
     public void endDrawing() {
+        this.batching = false;
+        this.flush();
         GLES20.glEnable(GLES20.GL_DEPTH_TEST);
         GLES20.glDepthMask(true);
     }
@@ -11,18 +11,25 @@ import android.opengl.ETC1Util;
 import gov.nasa.worldwind.WorldWindowImpl;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.avlist.AVList;
+import gov.nasa.worldwind.cache.FileStore;
+import gov.nasa.worldwind.cache.PackedDataFileStore;
+import gov.nasa.worldwind.util.ByteBufferPool;
 import gov.nasa.worldwind.util.ImageUtil;
 import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.WWIO;
 import gov.nasa.worldwind.util.WWUtil;
+import gov.nasa.worldwind.util.WriteBehindWriter;
 import gov.nasa.worldwind.util.dds.DDSCompressor;
 import gov.nasa.worldwind.util.pkm.ETC1Compressor;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 
@@ -41,6 +48,10 @@ public abstract class AbstractRetrievalPostProcessor implements RetrievalPostPro
     protected AVList avList;
     /** The retriever associated with the post-processor. Only non-null after {@link #run(Retriever)} is called. */
     protected Retriever retriever;
+    /** Indicates whether the output file is written on a background thread. */
+    protected boolean writeBehind;
+    /** The data most recently passed to the output file by {@link #saveBuffer(java.nio.ByteBuffer)}, or null. */
+    protected ByteBuffer savedBuffer;
 
     /**
      * Abstract method that subclasses must provide to identify the output file for the post-processor's retrieval
@@ -65,6 +76,31 @@ public abstract class AbstractRetrievalPostProcessor implements RetrievalPostPro
         this.avList = avList;
     }
 
+    /**
+     * Indicates whether the output file is written on a background thread.
+     *
+     * @return true if the output file is written behind, otherwise false.
+     *
+     * @see #setWriteBehind(boolean)
+     */
+    public boolean isWriteBehind()
+    {
+        return this.writeBehind;
+    }
+
+    /**
+     * Specifies whether the output file is written on a background thread. When true, {@link
+     * #saveBuffer(java.nio.ByteBuffer)} schedules the write with the shared {@link WriteBehindWriter} and returns
+     * without waiting for it, so subclasses can build their in-memory representation from the retrieved data rather
+     * than reading the file back. The output file appears atomically once written. The default is false.
+     *
+     * @param writeBehind true to write the output file behind, otherwise false.
+     */
+    public void setWriteBehind(boolean writeBehind)
+    {
+        this.writeBehind = writeBehind;
+    }
+
     /**
      * Runs the post-processor.
      *
@@ -85,19 +121,61 @@ public abstract class AbstractRetrievalPostProcessor implements RetrievalPostPro
         }
         this.retriever = retriever;
 
-        if (!retriever.getState().equals(Retriever.RETRIEVER_STATE_SUCCESSFUL))
+        // The retrieved content is used in place rather than copied, and released once it's written or discarded.
+        ByteBuffer pooledBuffer = retriever instanceof URLRetriever ? ((URLRetriever) retriever).takePooledBuffer()
+            : null;
+        try
         {
-            this.handleUnsuccessfulRetrieval();
-            return null;
-        }
+            if (!retriever.getState().equals(Retriever.RETRIEVER_STATE_SUCCESSFUL))
+            {
+                this.handleUnsuccessfulRetrieval();
+                return null;
+            }
+
+            if (this.isNotModified())
+                return this.handleNotModified();
 
-        if (!this.validateResponseCode())
+            if (!this.validateResponseCode())
+            {
+                this.handleInvalidResponseCode();
+                return null;
+            }
+
+            ByteBuffer buffer = this.handleSuccessfulRetrieval();
+            this.saveEntityTag();
+
+            return buffer;
+        }
+        finally
         {
-            this.handleInvalidResponseCode();
-            return null;
+            if (pooledBuffer != null)
+                this.releasePooledBuffer(pooledBuffer);
         }
+    }
 
-        return this.handleSuccessfulRetrieval();
+    /**
+     * Returns the pooled buffer holding the retrieved content to {@link ByteBufferPool#getDefault()} once
+     * post-processing is complete. If this post-processor writes behind, the buffer is released after the pending
+     * writes have run, since one of them may be writing the buffer's content.
+     *
+     * @param buffer the pooled buffer taken from the retriever.
+     */
+    protected void releasePooledBuffer(final ByteBuffer buffer)
+    {
+        if (this.isWriteBehind())
+        {
+            WriteBehindWriter.getDefault().runAfterPendingWrites(new Runnable()
+            {
+                public void run()
+                {
+                    ByteBufferPool.getDefault().release(buffer);
+                }
+            });
+        }
+        else
+        {
+            ByteBufferPool.getDefault().release(buffer);
+        }
     }
 
     /**
@@ -139,6 +217,252 @@ public abstract class AbstractRetrievalPostProcessor implements RetrievalPostPro
         }
     }
 
+    /**
+     * Indicates whether the retrieval was a conditional request that the server answered with {@link
+     * java.net.HttpURLConnection#HTTP_NOT_MODIFIED}, meaning the local copy of the resource is still current.
+     *
+     * @return true if the retriever is an {@link HTTPRetriever} that received a not-modified response, otherwise
+     *         false.
+     */
+    protected boolean isNotModified()
+    {
+        return this.getRetriever() instanceof HTTPRetriever && ((HTTPRetriever) this.getRetriever()).isNotModified();
+    }
+
+    /**
+     * Called when the server reports that the local copy of the resource has not changed. The default implementation
+     * updates the output file's modification time so that it's no longer considered expired, and returns null because
+     * no content was retrieved. Subclasses may override this method to notify listeners that the resource is current.
+     *
+     * @return null, as no content is retrieved by a not-modified response.
+     */
+    protected ByteBuffer handleNotModified()
+    {
+        URL url = this.findOutputFile();
+        if (url == null)
+        {
+            // The local copy disappeared while the request was in flight. It must be requested again in full.
+            this.markResourceAbsent();
+            return null;
+        }
+
+        synchronized (this.getFileLock()) // synchronize with read of file in another class
+        {
+            this.setLastModified(url, System.currentTimeMillis());
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the file store that holds the output file. The default implementation returns null. Subclasses that
+     * write their output file to a file store should return it.
+     *
+     * @return the output file's file store, or null if the output file is not held by a file store.
+     */
+    protected FileStore getFileStore()
+    {
+        return null;
+    }
+
+    /**
+     * Returns the location of the existing copy of the output file. The default implementation returns the output
+     * file's URL if the file exists. Subclasses that write their output file to a file store should find it through
+     * the store, which may hold it somewhere other than the output file, such as a {@link PackedDataFileStore}
+     * segment.
+     *
+     * @return the URL of the existing copy, or null if there is none.
+     */
+    protected URL findOutputFile()
+    {
+        File outFile = this.doGetOutputFile();
+        return outFile != null && outFile.exists() ? WWIO.makeURL(outFile) : null;
+    }
+
+    /**
+     * Returns the modification time of an existing copy of the output file, as returned by {@link #findOutputFile()}.
+     * Packed tiles report the modification time stored with them.
+     *
+     * @param url the existing copy's URL.
+     *
+     * @return the modification time in milliseconds since the epoch, or 0 if it cannot be determined.
+     */
+    protected long getLastModified(URL url)
+    {
+        if (PackedDataFileStore.PROTOCOL.equals(url.getProtocol()))
+        {
+            try
+            {
+                return url.openConnection().getLastModified();
+            }
+            catch (IOException e)
+            {
+                return 0;
+            }
+        }
+
+        File file = WWIO.convertURLToFile(url);
+        return file != null ? file.lastModified() : 0;
+    }
+
+    /**
+     * Sets the modification time of an existing copy of the output file, as returned by {@link #findOutputFile()}.
+     * Packed tiles are updated through the {@link PackedDataFileStore} returned by {@link #getFileStore()}.
+     *
+     * @param url  the existing copy's URL.
+     * @param time the new modification time in milliseconds since the epoch.
+     *
+     * @return true if the modification time is set, otherwise false.
+     */
+    protected boolean setLastModified(URL url, long time)
+    {
+        if (PackedDataFileStore.PROTOCOL.equals(url.getProtocol()))
+        {
+            FileStore fileStore = this.getFileStore();
+            return fileStore instanceof PackedDataFileStore
+                && ((PackedDataFileStore) fileStore).setLastModified(url, time);
+        }
+
+        File file = WWIO.convertURLToFile(url);
+        return file != null && file.setLastModified(time);
+    }
+
+    /**
+     * Configures a retriever to request the resource only if it differs from the existing output file. If a copy of the
+     * output file exists, the retriever is given the copy's modification time and the entity tag recorded when the
+     * file was saved. The copy is found by {@link #findOutputFile()}, so a tile packed by a {@link PackedDataFileStore}
+     * presents the modification time stored with it. If no copy exists, the retriever is left unchanged.
+     *
+     * @param retriever the retriever to configure.
+     *
+     * @throws IllegalArgumentException if the retriever is null.
+     */
+    public void configureConditionalRequest(HTTPRetriever retriever)
+    {
+        if (retriever == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.error(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        URL url = this.findOutputFile();
+        if (url == null)
+            return;
+
+        retriever.setIfModifiedSince(this.getLastModified(url));
+
+        // Entity tags are kept beside the output file even when the file store packs the file itself.
+        File outFile = this.doGetOutputFile();
+        if (outFile != null)
+            retriever.setIfNoneMatch(this.readEntityTag(outFile));
+    }
+
+    /**
+     * Returns the entity tag recorded for the specified output file by {@link #saveEntityTag()}.
+     *
+     * @param outFile the output file.
+     *
+     * @return the entity tag, or null if none was recorded or it cannot be read.
+     */
+    protected String readEntityTag(File outFile)
+    {
+        File tagFile = getEntityTagFile(outFile);
+        if (!tagFile.exists())
+            return null;
+
+        InputStream stream = null;
+        try
+        {
+            stream = new FileInputStream(tagFile);
+            String entityTag = WWIO.readTextStream(stream, "UTF-8");
+            return WWUtil.isEmpty(entityTag) ? null : entityTag.trim();
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+        finally
+        {
+            WWIO.closeStream(stream, tagFile.getPath());
+        }
+    }
+
+    /**
+     * Records the entity tag of a successful HTTP retrieval alongside the output file, so that a later conditional
+     * request for the same resource can present it. Any entity tag left from an earlier retrieval is removed if the
+     * server did not supply one.
+     * <p/>
+     * The tag is taken from the response headers, so it is recorded even though the output file may not exist yet
+     * because it is written behind or packed by the file store. If this post-processor writes behind, the tag is
+     * written once the output file's pending write has run.
+     */
+    protected void saveEntityTag()
+    {
+        if (!(this.getRetriever() instanceof HTTPRetriever))
+            return;
+
+        File outFile = this.doGetOutputFile();
+        if (outFile == null)
+            return;
+
+        final File tagFile = getEntityTagFile(outFile);
+        final String entityTag = ((HTTPRetriever) this.getRetriever()).getEntityTag();
+
+        if (this.isWriteBehind())
+        {
+            WriteBehindWriter.getDefault().runAfterPendingWrites(new Runnable()
+            {
+                public void run()
+                {
+                    writeEntityTag(tagFile, entityTag);
+                }
+            });
+        }
+        else
+        {
+            writeEntityTag(tagFile, entityTag);
+        }
+    }
+
+    /**
+     * Writes an entity tag to a tag file, or removes the tag file if the entity tag is null or empty.
+     *
+     * @param tagFile   the file that holds the entity tag.
+     * @param entityTag the entity tag to write. May be null.
+     */
+    protected static void writeEntityTag(File tagFile, String entityTag)
+    {
+        if (WWUtil.isEmpty(entityTag))
+        {
+            if (tagFile.exists())
+                //noinspection ResultOfMethodCallIgnored
+                tagFile.delete();
+            return;
+        }
+
+        try
+        {
+            WWIO.saveBuffer(ByteBuffer.wrap(entityTag.getBytes("UTF-8")), tagFile);
+        }
+        catch (IOException e)
+        {
+            Logging.warning(Logging.getMessage("generic.ExceptionWhileSavingRetreivedData", tagFile.getPath()), e);
+        }
+    }
+
+    /**
+     * Returns the file that holds the entity tag of the specified output file.
+     *
+     * @param outFile the output file.
+     *
+     * @return the entity tag file.
+     */
+    protected static File getEntityTagFile(File outFile)
+    {
+        return new File(outFile.getPath() + ".etag");
+    }
+
     /**
      * Checks the retrieval response code.
      *
@@ -184,12 +508,16 @@ public abstract class AbstractRetrievalPostProcessor implements RetrievalPostPro
 
     /**
      * Handle the case of an invalid response code. Subclasses can override this method to handle special cases. The
-     * default implementation calls {@link #markResourceAbsent()} and logs the contents of the retrieval buffer if it
+     * default implementation calls {@link #markResourceNotFound()} if the server reported that the resource does not
+     * exist, otherwise it calls {@link #markResourceAbsent()}. It then logs the contents of the retrieval buffer if it
      * contains content of type "text".
      */
     protected void handleInvalidResponseCode()
     {
-        this.markResourceAbsent();
+        if (this.isResourceNotFound())
+            this.markResourceNotFound();
+        else
+            this.markResourceAbsent();
 
         if (this.isWMSException())
             this.handleWMSExceptionContent();
@@ -206,6 +534,32 @@ public abstract class AbstractRetrievalPostProcessor implements RetrievalPostPro
     {
     }
 
+    /**
+     * Indicates whether the server reported that the retrieval target does not exist, as opposed to failing to deliver
+     * it. Only HTTP responses of {@link HttpURLConnection#HTTP_NOT_FOUND}, {@link HttpURLConnection#HTTP_GONE} and
+     * {@link HttpURLConnection#HTTP_NO_CONTENT} are taken to mean the target does not exist.
+     *
+     * @return true if the server reported that the target does not exist, otherwise false.
+     */
+    protected boolean isResourceNotFound()
+    {
+        if (!(this.getRetriever() instanceof HTTPRetriever))
+            return false;
+
+        int code = ((HTTPRetriever) this.getRetriever()).getResponseCode();
+        return code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE
+            || code == HttpURLConnection.HTTP_NO_CONTENT;
+    }
+
+    /**
+     * Marks the retrieval target as not existing on its server. Subclasses that keep track of absent resources across
+     * sessions should override this method. The default implementation calls {@link #markResourceAbsent()}.
+     */
+    protected void markResourceNotFound()
+    {
+        this.markResourceAbsent();
+    }
+
     /**
      * Saves the retrieved and possibly transformed data. The data may have been transformed during content handling.
      * <p/>
@@ -225,6 +579,8 @@ public abstract class AbstractRetrievalPostProcessor implements RetrievalPostPro
     /**
      * Saves the retrieved and possibly transformed data. The data may have been transformed during content handling.
      * The data is not saved if the output file already exists unless {@link #overwriteExistingFile()} returns true.
+     * If this post-processor writes behind, the write is scheduled and may not have completed when this returns. The
+     * data passed to the file is available from {@link #savedBuffer}.
      *
      * @param buffer the buffer to save.
      *
@@ -243,9 +599,18 @@ public abstract class AbstractRetrievalPostProcessor implements RetrievalPostPro
         if (outFile.exists() && !this.overwriteExistingFile())
             return false;
 
+        ByteBuffer data = buffer != null ? buffer : this.getRetriever().getBuffer();
+        this.savedBuffer = data;
+
+        if (this.isWriteBehind())
+        {
+            WriteBehindWriter.getDefault().write(data, outFile, this.getFileLock(), true);
+            return true;
+        }
+
         synchronized (this.getFileLock()) // synchronize with read of file in another class
         {
-            WWIO.saveBuffer(buffer != null ? buffer : this.getRetriever().getBuffer(), outFile);
+            WWIO.saveBuffer(data, outFile);
         }
 
         return true;
@@ -11,10 +11,17 @@ import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.util.Logging;
 
 import java.net.*;
+import java.util.*;
 import java.util.concurrent.*;
 
 /**
  * Performs threaded retrieval of data.
+ * <p/>
+ * The number of requests to the same host that are queued or running at once may be limited with {@link
+ * #setHostConnectionLimit(int)} or {@link AVKey#RETRIEVAL_HOST_CONNECTION_LIMIT}, so a single host is not flooded and
+ * its requests reuse the platform's keep-alive connections. Further requests to a saturated host are held back in
+ * priority order and handed to the thread pool as earlier requests to that host complete. Requests held back count
+ * against the service's queue size. By default there is no per-host limit.
  *
  * @author Tom Gaskins
  * @version $Id: BasicRetrievalService.java 733 2012-09-02 17:15:09Z dcollins $
@@ -25,6 +32,7 @@ public class BasicRetrievalService extends WWObjectImpl
     // These constants are last-ditch values in case Configuration lacks defaults
     protected static final int DEFAULT_QUEUE_SIZE = 100;
     protected static final int DEFAULT_POOL_SIZE = 3;
+    protected static final int DEFAULT_HOST_CONNECTION_LIMIT = Integer.MAX_VALUE; // no per-host limit
     protected static final long DEFAULT_STALE_REQUEST_LIMIT = 30000; // milliseconds
     protected static final int DEFAULT_TIME_PRIORITY_GRANULARITY = 500; // milliseconds
 
@@ -36,6 +44,11 @@ public class BasicRetrievalService extends WWObjectImpl
     protected RetrievalExecutor executor; // thread pool for running retrievers
     protected ConcurrentLinkedQueue<RetrievalTask> activeTasks; // tasks currently allocated a thread
     protected int queueSize; // maximum queue size
+    // The following are guarded by this service's monitor.
+    protected int hostConnectionLimit; // maximum number of tasks per host handed to the executor
+    protected HashMap<String, Integer> hostTaskCounts = new HashMap<String, Integer>(); // executor tasks per host
+    protected HashMap<String, PriorityQueue<RetrievalTask>> deferredTasks =
+        new HashMap<String, PriorityQueue<RetrievalTask>>(); // tasks waiting for their host to have a free slot
 
     /** Encapsulates a single threaded retrieval as a {@link java.util.concurrent.FutureTask}. */
     protected static class RetrievalTask extends FutureTask<Retriever>
@@ -43,12 +56,14 @@ public class BasicRetrievalService extends WWObjectImpl
     {
         protected Retriever retriever;
         protected double priority; // retrieval secondary priority (primary priority is submit time)
+        protected String host;
 
         protected RetrievalTask(Retriever retriever, double priority)
         {
             super(retriever);
             this.retriever = retriever;
             this.priority = priority;
+            this.host = getHost(retriever);
         }
 
         public double getPriority()
@@ -238,6 +253,7 @@ public class BasicRetrievalService extends WWObjectImpl
 
             RetrievalTask task = (RetrievalTask) runnable;
             BasicRetrievalService.this.activeTasks.remove(task);
+            BasicRetrievalService.this.hostTaskFinished(task);
             task.retriever.setEndTime(System.currentTimeMillis());
 
             try
@@ -284,6 +300,8 @@ public class BasicRetrievalService extends WWObjectImpl
     {
         Integer poolSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_POOL_SIZE, DEFAULT_POOL_SIZE);
         this.queueSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+        this.hostConnectionLimit = Configuration.getIntegerValue(AVKey.RETRIEVAL_HOST_CONNECTION_LIMIT,
+            DEFAULT_HOST_CONNECTION_LIMIT);
 
         // this.executor runs the retrievers, each in their own thread
         this.executor = new RetrievalExecutor(poolSize, this.queueSize);
@@ -294,6 +312,12 @@ public class BasicRetrievalService extends WWObjectImpl
 
     public void shutdown(boolean immediately)
     {
+        synchronized (this)
+        {
+            this.deferredTasks.clear();
+            this.hostTaskCounts.clear();
+        }
+
         if (immediately)
             this.executor.shutdownNow();
         else
@@ -348,14 +372,181 @@ public class BasicRetrievalService extends WWObjectImpl
         retriever.setSubmitTime(System.currentTimeMillis());
 
         // Do not queue duplicates.
-        if (this.activeTasks.contains(task) || this.executor.getQueue().contains(task))
+        if (this.activeTasks.contains(task) || this.executor.getQueue().contains(task) || this.isDeferred(task))
             return null;
 
-        this.executor.execute(task);
+        if (task.host != null && this.getHostTaskCount(task.host) >= this.hostConnectionLimit)
+        {
+            // The host already has its share of the executor. Hold the task until one of them completes, unless the
+            // service already holds as many requests as its queue size.
+            if (this.getNumQueuedTasks() >= this.queueSize)
+            {
+                Logging.verbose(Logging.getMessage("BasicRetrievalService.ResourceRejected", retriever.getName()));
+                return null;
+            }
+
+            PriorityQueue<RetrievalTask> queue = this.deferredTasks.get(task.host);
+            if (queue == null)
+            {
+                queue = new PriorityQueue<RetrievalTask>();
+                this.deferredTasks.put(task.host, queue);
+            }
+            queue.add(task);
+            return task;
+        }
+
+        this.executeTask(task);
 
         return task;
     }
 
+    /**
+     * Indicates the maximum number of requests to the same host that may be queued or running on the thread pool at
+     * once. This is initially read from {@link AVKey#RETRIEVAL_HOST_CONNECTION_LIMIT}, and is unlimited if that is not
+     * specified.
+     *
+     * @return the per-host request limit.
+     */
+    public synchronized int getHostConnectionLimit()
+    {
+        return this.hostConnectionLimit;
+    }
+
+    /**
+     * Specifies the maximum number of requests to the same host that may be queued or running on the thread pool at
+     * once.
+     *
+     * @param limit the per-host request limit.
+     *
+     * @throws IllegalArgumentException if <code>limit</code> is less than 1.
+     */
+    public synchronized void setHostConnectionLimit(int limit)
+    {
+        if (limit < 1)
+        {
+            String message = Logging.getMessage("BasicRetrievalService.HostConnectionLimitIsLessThanOne");
+            Logging.verbose(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.hostConnectionLimit = limit;
+
+        for (String host : new ArrayList<String>(this.deferredTasks.keySet()))
+        {
+            this.executeDeferredTasks(host);
+        }
+    }
+
+    /**
+     * Returns the host a retriever connects to, or null if the retriever is not limited per host.
+     *
+     * @param retriever the retriever to examine.
+     *
+     * @return the retriever's host, or null if it has none.
+     */
+    protected static String getHost(Retriever retriever)
+    {
+        if (retriever instanceof URLRetriever && ((URLRetriever) retriever).getURL() != null)
+            return ((URLRetriever) retriever).getURL().getHost();
+
+        return null;
+    }
+
+    /**
+     * Hands a task to the thread pool and counts it against its host. MUST BE CALLED WITHIN SYNCHRONIZED.
+     *
+     * @param task the task to run.
+     */
+    protected void executeTask(RetrievalTask task)
+    {
+        if (task.host != null)
+            this.hostTaskCounts.put(task.host, this.getHostTaskCount(task.host) + 1);
+
+        this.executor.execute(task);
+    }
+
+    /**
+     * Releases a completed task's slot on its host and hands the most urgent deferred task for that host to the
+     * thread pool.
+     *
+     * @param task the task that has completed.
+     */
+    protected synchronized void hostTaskFinished(RetrievalTask task)
+    {
+        if (task.host == null)
+            return;
+
+        int count = this.getHostTaskCount(task.host);
+        if (count <= 1)
+            this.hostTaskCounts.remove(task.host);
+        else
+            this.hostTaskCounts.put(task.host, count - 1);
+
+        this.executeDeferredTasks(task.host);
+    }
+
+    /**
+     * Hands deferred tasks for a host to the thread pool until the host reaches the per-host limit. MUST BE CALLED
+     * WITHIN SYNCHRONIZED.
+     *
+     * @param host the host whose deferred tasks are run.
+     */
+    protected void executeDeferredTasks(String host)
+    {
+        PriorityQueue<RetrievalTask> queue = this.deferredTasks.get(host);
+        if (queue == null)
+            return;
+
+        while (!queue.isEmpty() && this.getHostTaskCount(host) < this.hostConnectionLimit)
+        {
+            RetrievalTask task = queue.poll();
+            if (!task.isCancelled())
+                this.executeTask(task);
+        }
+
+        if (queue.isEmpty())
+            this.deferredTasks.remove(host);
+    }
+
+    /** MUST BE CALLED WITHIN SYNCHRONIZED. */
+    protected int getHostTaskCount(String host)
+    {
+        Integer count = this.hostTaskCounts.get(host);
+        return count != null ? count : 0;
+    }
+
+    /** MUST BE CALLED WITHIN SYNCHRONIZED. */
+    protected boolean isDeferred(RetrievalTask task)
+    {
+        if (task.host == null)
+            return false;
+
+        PriorityQueue<RetrievalTask> queue = this.deferredTasks.get(task.host);
+        return queue != null && queue.contains(task);
+    }
+
+    /** MUST BE CALLED WITHIN SYNCHRONIZED. */
+    protected int getNumDeferredTasks()
+    {
+        int count = 0;
+        for (PriorityQueue<RetrievalTask> queue : this.deferredTasks.values())
+        {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of tasks waiting on the thread pool's queue or held back for their host. MUST BE CALLED
+     * WITHIN SYNCHRONIZED.
+     *
+     * @return the number of tasks waiting to run.
+     */
+    protected int getNumQueuedTasks()
+    {
+        return this.executor.getQueue().size() + this.getNumDeferredTasks();
+    }
+
     /** {@inheritDoc} */
     public void setRetrieverPoolSize(int poolSize)
     {
@@ -395,20 +586,20 @@ public class BasicRetrievalService extends WWObjectImpl
     }
 
     /** {@inheritDoc} */
-    public boolean isAvailable()
+    public synchronized boolean isAvailable()
     {
-        return this.executor.getQueue().size() < this.queueSize;
+        return this.getNumQueuedTasks() < this.queueSize;
     }
 
     /** {@inheritDoc} */
-    public int getNumRetrieversPending()
+    public synchronized int getNumRetrieversPending()
     {
         // Could use same method to determine active tasks as hasRetrievers() above, but this method only advisory.
-        return this.activeTasks.size() + this.executor.getQueue().size();
+        return this.activeTasks.size() + this.executor.getQueue().size() + this.getNumDeferredTasks();
     }
 
     /** {@inheritDoc} */
-    public boolean contains(Retriever retriever)
+    public synchronized boolean contains(Retriever retriever)
     {
         if (retriever == null)
         {
@@ -417,6 +608,6 @@ public class BasicRetrievalService extends WWObjectImpl
             throw new IllegalArgumentException(msg);
         }
         RetrievalTask task = new RetrievalTask(retriever, 0d);
-        return (this.activeTasks.contains(task) || this.executor.getQueue().contains(task));
+        return (this.activeTasks.contains(task) || this.executor.getQueue().contains(task) || this.isDeferred(task));
     }
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.retrieve;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Records the items a bulk retrieval has completed, so that an interrupted retrieval resumes where it stopped instead
+ * of starting over. Each completed item is appended to a journal file as its key and size in bytes, one item per line.
+ * The first line identifies the retrieval the journal belongs to; a journal written for a different retrieval is
+ * discarded when opened.
+ * <p/>
+ * A journal created without a file keeps its items in memory only.
+ *
+ * @version $Id$
+ */
+public class BulkRetrievalJournal
+{
+    protected final File file;
+    protected final String id;
+    protected final Map<String, Long> entries = new HashMap<String, Long>();
+    protected long size;
+    protected Writer writer;
+    protected boolean closed;
+
+    /**
+     * Opens the journal in a specified file, reading the items it already holds if the file was written for the same
+     * retrieval.
+     *
+     * @param file the journal file. May be null, in which case the journal is not persisted.
+     * @param id   a string identifying the retrieval the journal belongs to.
+     *
+     * @throws IllegalArgumentException if the id is null.
+     */
+    public BulkRetrievalJournal(File file, String id)
+    {
+        if (id == null)
+        {
+            String msg = Logging.getMessage("nullValue.StringIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.file = file;
+        this.id = id;
+
+        if (file != null && file.exists())
+            this.read();
+    }
+
+    /**
+     * Returns the journal file.
+     *
+     * @return the journal file, or null if the journal is not persisted.
+     */
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * Indicates whether an item has been completed.
+     *
+     * @param key the item's key.
+     *
+     * @return true if the journal holds the item, otherwise false.
+     */
+    public synchronized boolean contains(String key)
+    {
+        return this.entries.containsKey(key);
+    }
+
+    /**
+     * Returns the number of completed items.
+     *
+     * @return the number of items in the journal.
+     */
+    public synchronized int getCount()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the total size of the completed items.
+     *
+     * @return the sum of the sizes of the items in the journal, in bytes.
+     */
+    public synchronized long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * Records a completed item and appends it to the journal file. Errors writing the file are logged; the item is
+     * still recorded in memory. Items added after the journal is closed are ignored.
+     *
+     * @param key  the item's key.
+     * @param size the item's size in bytes.
+     *
+     * @throws IllegalArgumentException if the key is null.
+     */
+    public synchronized void add(String key, long size)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.StringIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (this.closed || this.entries.containsKey(key))
+            return;
+
+        if (this.file != null)
+            this.write(key, size);
+
+        this.entries.put(key, size);
+        this.size += size;
+    }
+
+    protected void write(String key, long size)
+    {
+        try
+        {
+            if (this.writer == null)
+                this.writer = this.openWriter();
+
+            this.writer.write(key + "\t" + size + "\n");
+            this.writer.flush(); // An entry not written before the process stops is retrieved again, but not lost.
+        }
+        catch (IOException e)
+        {
+            Logging.error(Logging.getMessage("generic.ExceptionWritingFile", this.file), e);
+            WWIO.closeStream(this.writer, this.file.getPath());
+            this.writer = null;
+        }
+    }
+
+    /** Closes the journal file. Items added after closing the journal are ignored. */
+    public synchronized void close()
+    {
+        this.closed = true;
+
+        if (this.writer != null)
+        {
+            WWIO.closeStream(this.writer, this.file.getPath());
+            this.writer = null;
+        }
+    }
+
+    /** Closes and deletes the journal file. Called when the retrieval the journal belongs to has completed. */
+    public synchronized void delete()
+    {
+        this.close();
+
+        if (this.file != null && this.file.exists() && !this.file.delete())
+            this.file.deleteOnExit();
+    }
+
+    protected void read()
+    {
+        BufferedReader reader = null;
+        try
+        {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), "UTF-8"));
+            if (!this.id.equals(reader.readLine()))
+                return; // The journal belongs to a different retrieval. It's replaced when the first item is added.
+
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                int tab = line.lastIndexOf('\t');
+                if (tab <= 0)
+                    continue; // Skip a partially written entry.
+
+                try
+                {
+                    long size = Long.parseLong(line.substring(tab + 1));
+                    if (this.entries.put(line.substring(0, tab), size) == null)
+                        this.size += size;
+                }
+                catch (NumberFormatException e)
+                {
+                    // Skip a partially written entry.
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            Logging.error(Logging.getMessage("generic.ExceptionOpeningPath", this.file), e);
+        }
+        finally
+        {
+            WWIO.closeStream(reader, this.file.getPath());
+        }
+    }
+
+    protected Writer openWriter() throws IOException
+    {
+        File parent = this.file.getParentFile();
+        if (parent != null && !parent.exists())
+            //noinspection ResultOfMethodCallIgnored
+            parent.mkdirs();
+
+        // Rewrite the journal from the items in memory, which drops any partially written entry and any entries of a
+        // different retrieval.
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, false), "UTF-8"));
+        writer.write(this.id + "\n");
+        for (Map.Entry<String, Long> entry : this.entries.entrySet())
+        {
+            writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+        }
+
+        return writer;
+    }
+}
@@ -8,21 +8,29 @@ package gov.nasa.worldwind.retrieve;
 
 import gov.nasa.worldwind.cache.FileStore;
 import gov.nasa.worldwind.event.*;
-import gov.nasa.worldwind.geom.Sector;
-import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.*;
 
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.io.File;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Retrieves data for a {@link BulkRetrievable}.
+ * <p/>
+ * Subclasses retrieve tiles by calling {@link #retrieveTiles(LevelSet, int, Tile.TileFactory)}, which visits the tiles
+ * of each level in turn without first collecting them, and keeps up to {@link #getMaxConcurrentRetrievals()}
+ * retrievals in progress. Completed tiles are recorded in a {@link BulkRetrievalJournal} in the file store, so that a
+ * retrieval for the same sector and resolution resumes where an interrupted one stopped.
  *
  * @author Patrick Murris
  * @version $Id: BulkRetrievalThread.java 733 2012-09-02 17:15:09Z dcollins $
  */
 public abstract class BulkRetrievalThread extends Thread
 {
-    protected int RETRIEVAL_SERVICE_POLL_DELAY = 1000;
+    /** The default number of tile retrievals a bulk retrieval keeps in progress. */
+    protected static final int DEFAULT_MAX_CONCURRENT_RETRIEVALS = 4;
 
     protected final BulkRetrievable retrievable;
     protected final Sector sector;
@@ -30,6 +38,10 @@ public abstract class BulkRetrievalThread extends Thread
     protected final Progress progress;
     protected final FileStore fileStore;
     protected List<BulkRetrievalListener> retrievalListeners = new CopyOnWriteArrayList<BulkRetrievalListener>();
+    protected int maxConcurrentRetrievals = DEFAULT_MAX_CONCURRENT_RETRIEVALS;
+    protected BulkRetrievalJournal journal;
+    protected long sessionSize; // bytes retrieved by this thread, excluding those recorded by a previous retrieval
+    protected long failedCount;
 
     /**
      * Construct a thread that attempts to download to a specified {@link FileStore} a retrievable's data for a given
@@ -143,6 +155,383 @@ public abstract class BulkRetrievalThread extends Thread
         return this.progress;
     }
 
+    /**
+     * Returns the number of tile retrievals this thread keeps in progress.
+     *
+     * @return the maximum number of concurrent retrievals.
+     */
+    public int getMaxConcurrentRetrievals()
+    {
+        return this.maxConcurrentRetrievals;
+    }
+
+    /**
+     * Specifies the number of tile retrievals this thread keeps in progress, which is the number of connections it
+     * opens. Must be called before the thread is started.
+     *
+     * @param maxConcurrentRetrievals the maximum number of concurrent retrievals.
+     *
+     * @throws IllegalArgumentException if the number is less than one.
+     */
+    public void setMaxConcurrentRetrievals(int maxConcurrentRetrievals)
+    {
+        if (maxConcurrentRetrievals < 1)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", maxConcurrentRetrievals);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.maxConcurrentRetrievals = maxConcurrentRetrievals;
+    }
+
+    /**
+     * Indicates whether a tile is known to be unavailable from its source.
+     *
+     * @param tile the tile to test.
+     *
+     * @return true if the tile is absent, otherwise false.
+     */
+    protected abstract boolean isTileAbsent(Tile tile);
+
+    /**
+     * Finds a tile in the file store.
+     *
+     * @param tile the tile to find.
+     *
+     * @return the tile's file, or null if the tile is not in the file store or its file has expired.
+     */
+    protected abstract URL findLocalTile(Tile tile);
+
+    /**
+     * Creates a retriever that retrieves a tile and saves it to the file store. The bulk retrieval runs the retriever
+     * on one of its own threads rather than submitting it to the retrieval service.
+     *
+     * @param tile the tile to retrieve.
+     *
+     * @return the tile's retriever, or null if the tile cannot be retrieved.
+     */
+    protected abstract Retriever createRetriever(Tile tile);
+
+    /**
+     * Estimates the size of a tile's file, used to estimate the total size until tiles have been retrieved.
+     *
+     * @return the estimated tile size in bytes.
+     */
+    protected abstract long estimateAverageTileSize();
+
+    /**
+     * Retrieves the tiles in this thread's sector that are not in the file store, from the first level up to and
+     * including a specified level. Tiles are visited level by level and row by row as they are needed, and submitted
+     * to a pool of {@link #getMaxConcurrentRetrievals()} threads. Visiting blocks while all threads are busy, so the
+     * number of pending tiles never exceeds the number of threads.
+     * <p/>
+     * Tiles already recorded in this retrieval's journal are skipped without looking them up in the file store. The
+     * journal is deleted once every tile has been retrieved.
+     *
+     * @param levels      the level set to retrieve tiles from.
+     * @param maxLevel    the number of the last level to retrieve tiles from.
+     * @param tileFactory the factory to create the tiles with.
+     *
+     * @throws InterruptedException if this thread is interrupted. Retrievals in progress are interrupted and the
+     *                              journal is kept.
+     */
+    protected void retrieveTiles(LevelSet levels, int maxLevel, Tile.TileFactory<? extends Tile> tileFactory)
+        throws InterruptedException
+    {
+        TileIterator tiles = new TileIterator(levels, this.sector, maxLevel, tileFactory);
+        this.journal = this.openJournal(levels, maxLevel);
+        this.initProgress(tiles.getTileCount());
+
+        final Semaphore permits = new Semaphore(this.maxConcurrentRetrievals);
+        ExecutorService executor = Executors.newFixedThreadPool(this.maxConcurrentRetrievals, new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY); // Subordinate thread priority to rendering
+                return thread;
+            }
+        });
+
+        boolean complete = false;
+        try
+        {
+            while (tiles.hasNext())
+            {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+
+                final Tile tile = tiles.next();
+                if (this.journal.contains(tile.getPath()))
+                    continue; // Counted when the progress was initialized from the journal.
+
+                if (this.isTileAbsent(tile))
+                {
+                    this.tileAbsent();
+                    continue;
+                }
+
+                URL url = this.findLocalTile(tile);
+                if (url != null)
+                {
+                    File file = WWIO.convertURLToFile(url);
+                    this.tileCompleted(tile, file != null ? file.length() : 0, false);
+                    continue;
+                }
+
+                permits.acquire(); // Blocks while all retrieval threads are busy.
+                executor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            retrieveTile(tile);
+                        }
+                        finally
+                        {
+                            permits.release();
+                        }
+                    }
+                });
+            }
+
+            permits.acquire(this.maxConcurrentRetrievals); // Wait for the last retrievals to complete.
+            complete = this.failedCount == 0;
+        }
+        finally
+        {
+            executor.shutdownNow();
+
+            if (complete)
+                this.journal.delete();
+            else
+                this.journal.close();
+        }
+    }
+
+    protected void retrieveTile(Tile tile)
+    {
+        Retriever retriever = this.createRetriever(tile);
+        if (retriever == null)
+        {
+            this.tileAbsent();
+            return;
+        }
+
+        try
+        {
+            retriever.call();
+        }
+        catch (Exception e)
+        {
+            // The retriever logs the exception and sets its state to indicate the retrieval failed.
+        }
+
+        if (Thread.currentThread().isInterrupted())
+            return; // The bulk retrieval has been interrupted. The tile is retrieved again when it resumes.
+
+        if (Retriever.RETRIEVER_STATE_SUCCESSFUL.equals(retriever.getState()))
+            this.tileCompleted(tile, Math.max(retriever.getContentLengthRead(), 0), true);
+        else
+            this.tileFailed();
+
+        if (this.hasRetrievalListeners())
+        {
+            String eventType = Retriever.RETRIEVER_STATE_SUCCESSFUL.equals(retriever.getState())
+                ? BulkRetrievalEvent.RETRIEVAL_SUCCEEDED : BulkRetrievalEvent.RETRIEVAL_FAILED;
+            this.callRetrievalListeners(new BulkRetrievalEvent(this.retrievable, eventType, tile.getPath(),
+                this.copyProgress()));
+        }
+    }
+
+    protected BulkRetrievalJournal openJournal(LevelSet levels, int maxLevel)
+    {
+        // Identify the retrieval by its data set, sector and last level, which together determine the tiles it visits.
+        String id = levels.getFirstLevel().getCacheName() + ";" + this.sector + ";" + maxLevel;
+
+        File dir = this.fileStore.getWriteLocation();
+        File file = dir != null ? new File(new File(dir, levels.getFirstLevel().getCacheName()),
+            "bulk-" + Integer.toHexString(id.hashCode()) + ".journal") : null;
+
+        return new BulkRetrievalJournal(file, id);
+    }
+
+    protected synchronized void initProgress(long tileCount)
+    {
+        this.sessionSize = 0;
+        this.failedCount = 0;
+        this.progress.setStartTime(System.currentTimeMillis());
+        this.progress.setTotalCount(tileCount);
+        this.progress.setCurrentCount(this.journal.getCount());
+        this.progress.setCurrentSize(this.journal.getSize());
+        this.progress.setThroughput(0);
+        this.updateProgress();
+    }
+
+    protected synchronized void tileCompleted(Tile tile, long size, boolean retrieved)
+    {
+        this.journal.add(tile.getPath(), size);
+        this.progress.setCurrentCount(this.progress.getCurrentCount() + 1);
+        this.progress.setCurrentSize(this.progress.getCurrentSize() + size);
+
+        if (retrieved)
+            this.sessionSize += size;
+
+        this.updateProgress();
+    }
+
+    protected synchronized void tileAbsent()
+    {
+        // Absent tiles are not part of the retrieval. They are looked up again when the retrieval resumes.
+        this.progress.setTotalCount(this.progress.getTotalCount() - 1);
+        this.updateProgress();
+    }
+
+    protected synchronized void tileFailed()
+    {
+        // Failed tiles are not part of this retrieval, but are retrieved again when it resumes.
+        this.failedCount++;
+        this.progress.setTotalCount(this.progress.getTotalCount() - 1);
+        this.updateProgress();
+    }
+
+    protected void updateProgress()
+    {
+        long time = System.currentTimeMillis();
+        long currentCount = this.progress.getCurrentCount();
+        long currentSize = this.progress.getCurrentSize();
+
+        // Estimate the size of the remaining tiles from the tiles completed so far.
+        long averageTileSize = currentCount > 0 && currentSize > 0 ? currentSize / currentCount
+            : this.estimateAverageTileSize();
+        this.progress.setTotalSize(currentSize + (this.progress.getTotalCount() - currentCount) * averageTileSize);
+
+        long elapsed = time - this.progress.getStartTime();
+        this.progress.setThroughput(elapsed > 0 ? this.sessionSize * 1000d / elapsed : 0);
+        this.progress.setLastUpdateTime(time);
+    }
+
+    protected synchronized Progress copyProgress()
+    {
+        Progress copy = new Progress();
+        copy.setStartTime(this.progress.getStartTime());
+        copy.setLastUpdateTime(this.progress.getLastUpdateTime());
+        copy.setTotalCount(this.progress.getTotalCount());
+        copy.setTotalSize(this.progress.getTotalSize());
+        copy.setCurrentCount(this.progress.getCurrentCount());
+        copy.setCurrentSize(this.progress.getCurrentSize());
+        copy.setThroughput(this.progress.getThroughput());
+        return copy;
+    }
+
+    /**
+     * Visits the tiles of a level set that intersect a sector, from the first level up to a specified level, skipping
+     * empty levels. Tiles are created as they are visited, in the same row and column order as {@link
+     * gov.nasa.worldwind.layers.TiledImageLayer#getTilesInSector(Sector, int)}.
+     */
+    protected static class TileIterator implements Iterator<Tile>
+    {
+        protected final LevelSet levels;
+        protected final Sector sector;
+        protected final int maxLevel;
+        protected final Tile.TileFactory<? extends Tile> tileFactory;
+        protected Level level;
+        protected int nwRow;
+        protected int nwCol;
+        protected int seRow;
+        protected int seCol;
+        protected int row;
+        protected int col;
+
+        public TileIterator(LevelSet levels, Sector sector, int maxLevel, Tile.TileFactory<? extends Tile> tileFactory)
+        {
+            this.levels = levels;
+            this.sector = sector;
+            this.maxLevel = maxLevel;
+            this.tileFactory = tileFactory;
+            this.nextLevel(-1);
+        }
+
+        /**
+         * Returns the number of tiles the iterator visits.
+         *
+         * @return the number of tiles intersecting the sector in each level the iterator visits.
+         */
+        public long getTileCount()
+        {
+            long count = 0;
+            for (int i = 0; i <= this.maxLevel; i++)
+            {
+                if (this.levels.isLevelEmpty(i))
+                    continue;
+
+                LatLon delta = this.levels.getLevel(i).getTileDelta();
+                LatLon origin = this.levels.getTileOrigin();
+                long numRows = Tile.computeRow(delta.latitude, this.sector.maxLatitude, origin.latitude)
+                    - Tile.computeRow(delta.latitude, this.sector.minLatitude, origin.latitude) + 1;
+                long numCols = Tile.computeColumn(delta.longitude, this.sector.maxLongitude, origin.longitude)
+                    - Tile.computeColumn(delta.longitude, this.sector.minLongitude, origin.longitude) + 1;
+                count += numRows * numCols;
+            }
+
+            return count;
+        }
+
+        public boolean hasNext()
+        {
+            return this.level != null;
+        }
+
+        public Tile next()
+        {
+            if (this.level == null)
+                throw new NoSuchElementException();
+
+            TileKey key = new TileKey(this.level.getLevelNumber(), this.row, this.col, this.level.getCacheName());
+            Tile tile = this.tileFactory.createTile(this.levels.computeSectorForKey(key), this.level, this.row,
+                this.col);
+
+            if (++this.col > this.seCol)
+            {
+                this.col = this.nwCol;
+                if (--this.row < this.seRow)
+                    this.nextLevel(this.level.getLevelNumber());
+            }
+
+            return tile;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        protected void nextLevel(int levelNumber)
+        {
+            this.level = null;
+
+            for (int i = levelNumber + 1; i <= this.maxLevel; i++)
+            {
+                if (this.levels.isLevelEmpty(i))
+                    continue;
+
+                this.level = this.levels.getLevel(i);
+                LatLon delta = this.level.getTileDelta();
+                LatLon origin = this.levels.getTileOrigin();
+                this.nwRow = Tile.computeRow(delta.latitude, this.sector.maxLatitude, origin.latitude);
+                this.nwCol = Tile.computeColumn(delta.longitude, this.sector.minLongitude, origin.longitude);
+                this.seRow = Tile.computeRow(delta.latitude, this.sector.minLatitude, origin.latitude);
+                this.seCol = Tile.computeColumn(delta.longitude, this.sector.maxLongitude, origin.longitude);
+                this.row = this.nwRow;
+                this.col = this.nwCol;
+                break;
+            }
+        }
+    }
+
     public void addRetrievalListener(BulkRetrievalListener listener)
     {
         if (listener != null)
@@ -6,12 +6,21 @@
 
 package gov.nasa.worldwind.retrieve;
 
-import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.util.*;
 
+import java.io.*;
 import java.net.*;
 import java.nio.ByteBuffer;
 
 /**
+ * Retrieves resources over HTTP. Connections are left in the platform's keep-alive pool after each request, so
+ * successive tile requests to the same host reuse an open socket instead of paying for a new TCP and TLS handshake. The
+ * number of concurrent requests to each host is limited by the retrieval service that runs the retriever.
+ * <p/>
+ * A retriever for a resource that already exists locally can be made conditional by specifying the local copy's
+ * modification time and entity tag with {@link #setIfModifiedSince(long)} and {@link #setIfNoneMatch(String)}. When the
+ * server reports that the resource has not changed, {@link #isNotModified()} returns true and no content is read.
+ *
  * @author Tom Gaskins
  * @version $Id: HTTPRetriever.java 733 2012-09-02 17:15:09Z dcollins $
  */
@@ -19,6 +28,9 @@ public class HTTPRetriever extends URLRetriever
 {
     private int responseCode;
     private String responseMessage;
+    private long ifModifiedSince;
+    private String ifNoneMatch;
+    private String entityTag;
 
     public HTTPRetriever(URL url, RetrievalPostProcessor postProcessor)
     {
@@ -35,6 +47,74 @@ public class HTTPRetriever extends URLRetriever
         return this.responseMessage;
     }
 
+    /**
+     * Indicates whether the server reported that the resource has not changed since the time or entity tag specified
+     * by {@link #setIfModifiedSince(long)} and {@link #setIfNoneMatch(String)}.
+     *
+     * @return true if the response code is {@link HttpURLConnection#HTTP_NOT_MODIFIED}, otherwise false.
+     */
+    public boolean isNotModified()
+    {
+        return this.responseCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    public long getIfModifiedSince()
+    {
+        return this.ifModifiedSince;
+    }
+
+    /**
+     * Specifies the modification time of a local copy of the resource. When non-zero, the request is sent with an
+     * If-Modified-Since header and the server may respond with {@link HttpURLConnection#HTTP_NOT_MODIFIED}.
+     *
+     * @param time the local copy's modification time in milliseconds since the epoch, or 0 to send an unconditional
+     *             request.
+     */
+    public void setIfModifiedSince(long time)
+    {
+        this.ifModifiedSince = time;
+    }
+
+    public String getIfNoneMatch()
+    {
+        return this.ifNoneMatch;
+    }
+
+    /**
+     * Specifies the entity tag of a local copy of the resource. When non-null, the request is sent with an
+     * If-None-Match header and the server may respond with {@link HttpURLConnection#HTTP_NOT_MODIFIED}.
+     *
+     * @param entityTag the local copy's entity tag, or null to omit the header.
+     */
+    public void setIfNoneMatch(String entityTag)
+    {
+        this.ifNoneMatch = entityTag;
+    }
+
+    /**
+     * Returns the value of the response's ETag header.
+     *
+     * @return the entity tag, or null if the server did not specify one.
+     */
+    public String getEntityTag()
+    {
+        return this.entityTag;
+    }
+
+    @Override
+    protected URLConnection openConnection() throws IOException
+    {
+        URLConnection connection = super.openConnection();
+
+        if (this.ifModifiedSince > 0)
+            connection.setIfModifiedSince(this.ifModifiedSince);
+
+        if (!WWUtil.isEmpty(this.ifNoneMatch))
+            connection.setRequestProperty("If-None-Match", this.ifNoneMatch);
+
+        return connection;
+    }
+
     @Override
     protected ByteBuffer doRead(URLConnection connection) throws Exception
     {
@@ -48,6 +128,7 @@ public class HTTPRetriever extends URLRetriever
         HttpURLConnection htpc = (HttpURLConnection) connection;
         this.responseCode = htpc.getResponseCode();
         this.responseMessage = htpc.getResponseMessage();
+        this.entityTag = htpc.getHeaderField("ETag");
         String contentType = connection.getContentType();
 
         String msg = Logging.getMessage("HTTPRetriever.ResponseInfo", this.responseCode, connection.getContentLength(),
@@ -57,6 +138,44 @@ public class HTTPRetriever extends URLRetriever
         if (this.responseCode == HttpURLConnection.HTTP_OK)
             return super.doRead(connection);
 
+        // The connection can return to the keep-alive pool only after its response body has been consumed.
+        this.discardResponseBody(htpc);
+
         return null;
     }
+
+    /**
+     * Reads and discards the body of a response that is not going to be used, such as a 304 or an error page, so that
+     * the underlying socket can be reused by the next request to the same host.
+     *
+     * @param connection the connection whose response body is discarded.
+     */
+    protected void discardResponseBody(HttpURLConnection connection)
+    {
+        InputStream stream = null;
+        try
+        {
+            stream = connection.getErrorStream();
+            if (stream == null && this.responseCode < HttpURLConnection.HTTP_BAD_REQUEST)
+                stream = connection.getInputStream();
+
+            if (stream != null)
+            {
+                byte[] scratch = new byte[4096];
+                //noinspection StatementWithEmptyBody
+                while (stream.read(scratch) >= 0)
+                {
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // The connection can't be reused, but the response code has already been read and is all that's needed.
+            connection.disconnect();
+        }
+        finally
+        {
+            WWIO.closeStream(stream, connection.getURL().toString());
+        }
+    }
 }
@@ -0,0 +1,639 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.util.PerformanceStatistic;
+
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Performs threaded retrieval of data, ordering pending requests by their current priority rather than by submit time.
+ * <p/>
+ * Clients re-submit the requests they still need every frame, as the tiled layers and elevation models do for their
+ * visible, missing tiles. Re-submitting a pending request replaces its priority with the new value and marks it as
+ * still wanted, so the queue order always reflects the current view. A pending request that has not been re-submitted
+ * within the idle request limit is assumed to have scrolled out of view and is dropped without being run. Requests that
+ * are submitted only once, such as prefetches and requests without a priority, are exempt from the idle limit; see
+ * {@link #runRetrieverOnce(Retriever, double)}. Requests for the same resource are coalesced: re-submitting a pending or
+ * running request returns the existing future.
+ * <p/>
+ * Each worker takes the lowest priority value among the pending requests whose host has fewer than the per-host limit
+ * of requests running. When the queue is full, a new request displaces the pending request with the highest priority
+ * value if the new one is more urgent.
+ */
+public class PriorityRetrievalService extends WWObjectImpl implements RetrievalService, Thread.UncaughtExceptionHandler
+{
+    /**
+     * The priority of requests submitted without one by {@link #runRetriever(Retriever)}. This is the least urgent
+     * priority, so such requests run after every request with a client priority. Requests of equal priority run in the
+     * order they were submitted.
+     */
+    public static final double DEFAULT_PRIORITY = Double.MAX_VALUE;
+
+    // These constants are last-ditch values in case Configuration lacks defaults
+    protected static final int DEFAULT_QUEUE_SIZE = 100;
+    protected static final int DEFAULT_POOL_SIZE = 3;
+    protected static final int DEFAULT_HOST_CONNECTION_LIMIT = 2;
+    protected static final long DEFAULT_IDLE_REQUEST_LIMIT = 2000; // milliseconds
+
+    protected final String RUNNING_THREAD_NAME_PREFIX = Logging.getMessage(
+        "BasicRetrievalService.RunningThreadNamePrefix");
+    protected static final String IDLE_THREAD_NAME_PREFIX = Logging.getMessage(
+        "BasicRetrievalService.IdleThreadNamePrefix");
+
+    /** Encapsulates a single threaded retrieval as a {@link java.util.concurrent.FutureTask}. */
+    protected static class RetrievalTask extends FutureTask<Retriever> implements RetrievalFuture
+    {
+        protected Retriever retriever;
+        protected String host;
+        // Guarded by the service's lock.
+        protected double priority;
+        protected long lastRequestTime;
+        protected boolean oneShot; // true if the request is not re-submitted every frame
+
+        protected RetrievalTask(Retriever retriever, double priority, String host)
+        {
+            super(retriever);
+            this.retriever = retriever;
+            this.priority = priority;
+            this.host = host;
+        }
+
+        public Retriever getRetriever()
+        {
+            return this.retriever;
+        }
+    }
+
+    protected final Object lock = new Object();
+    // All of the following are guarded by lock.
+    protected HashMap<String, RetrievalTask> pendingTasks = new HashMap<String, RetrievalTask>();
+    protected HashMap<String, RetrievalTask> activeTasks = new HashMap<String, RetrievalTask>();
+    protected HashMap<String, Integer> activeHostCounts = new HashMap<String, Integer>();
+    protected ArrayList<Thread> workers = new ArrayList<Thread>();
+    protected int poolSize;
+    protected int queueSize;
+    protected int hostConnectionLimit;
+    protected long idleRequestLimit;
+    protected boolean shutdown;
+    // Statistics, guarded by lock.
+    protected long numSubmitted;
+    protected long numCoalesced;
+    protected long numDroppedIdle;
+    protected long numDisplaced;
+    protected long numCompleted;
+
+    public PriorityRetrievalService()
+    {
+        this.poolSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_POOL_SIZE, DEFAULT_POOL_SIZE);
+        this.queueSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+        this.hostConnectionLimit = Configuration.getIntegerValue(AVKey.RETRIEVAL_HOST_CONNECTION_LIMIT,
+            DEFAULT_HOST_CONNECTION_LIMIT);
+        this.idleRequestLimit = Configuration.getLongValue(AVKey.RETRIEVAL_QUEUE_IDLE_REQUEST_LIMIT,
+            DEFAULT_IDLE_REQUEST_LIMIT);
+
+        synchronized (this.lock)
+        {
+            this.adjustWorkerCount();
+        }
+    }
+
+    public void uncaughtException(Thread thread, Throwable throwable)
+    {
+        Logging.verbose(Logging.getMessage("BasicRetrievalService.UncaughtExceptionDuringRetrieval",
+            thread.getName()));
+    }
+
+    public void shutdown(boolean immediately)
+    {
+        synchronized (this.lock)
+        {
+            this.shutdown = true;
+
+            for (RetrievalTask task : this.pendingTasks.values())
+            {
+                task.cancel(false);
+            }
+            this.pendingTasks.clear();
+
+            if (immediately)
+            {
+                for (RetrievalTask task : this.activeTasks.values())
+                {
+                    task.cancel(true);
+                }
+            }
+
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The request is given {@link #DEFAULT_PRIORITY}, and is exempt from the idle request limit.
+     */
+    public RetrievalFuture runRetriever(Retriever retriever)
+    {
+        if (retriever == null)
+        {
+            String msg = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.verbose(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        if (retriever.getName() == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverNameIsNull");
+            Logging.verbose(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        // Clients that don't specify a priority don't re-submit their requests either, so the requests are exempt from
+        // the idle request limit.
+        return this.runRetrieverOnce(retriever, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Lower priority values are retrieved first. If a request for the same resource is already pending, its priority
+     * is replaced with <code>priority</code>, it is marked as still wanted, and its future is returned. If a request
+     * for the same resource is running, its future is returned.
+     */
+    public RetrievalFuture runRetriever(Retriever retriever, double priority)
+    {
+        return this.submitRetriever(retriever, priority, false);
+    }
+
+    /**
+     * Schedules a request that the client submits only once rather than every frame, such as a tile prefetch. The
+     * request is exempt from the idle request limit; it runs unless it is displaced by more urgent requests or
+     * cancelled. If a request for the same resource is already pending, its priority is raised to
+     * <code>priority</code> if that is more urgent, and it is kept from being dropped as idle.
+     *
+     * @param retriever the retriever to run.
+     * @param priority  the request's priority. Lower values are retrieved first.
+     *
+     * @return a future object that can be used to query the request status or cancel the request, or null if the
+     *         queue is full.
+     *
+     * @throws IllegalArgumentException if <code>retriever</code> is null or has no name.
+     */
+    public RetrievalFuture runRetrieverOnce(Retriever retriever, double priority)
+    {
+        return this.submitRetriever(retriever, priority, true);
+    }
+
+    protected RetrievalFuture submitRetriever(Retriever retriever, double priority, boolean oneShot)
+    {
+        if (retriever == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.verbose(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (retriever.getName() == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverNameIsNull");
+            Logging.verbose(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        long now = System.currentTimeMillis();
+
+        synchronized (this.lock)
+        {
+            if (this.shutdown)
+                return null;
+
+            String name = retriever.getName();
+
+            RetrievalTask existing = this.activeTasks.get(name);
+            if (existing != null)
+            {
+                this.numCoalesced++;
+                return existing;
+            }
+
+            existing = this.pendingTasks.get(name);
+            if (existing != null)
+            {
+                if (oneShot)
+                {
+                    existing.priority = Math.min(existing.priority, priority);
+                    existing.oneShot = true;
+                }
+                else
+                {
+                    // A request the client re-submits every frame takes the client's current priority.
+                    existing.priority = priority;
+                    existing.oneShot = false;
+                }
+                existing.lastRequestTime = now;
+                this.numCoalesced++;
+                return existing;
+            }
+
+            this.dropIdleTasks(now);
+
+            if (this.pendingTasks.size() >= this.queueSize && !this.displaceLeastUrgentTask(priority))
+            {
+                Logging.verbose(Logging.getMessage("BasicRetrievalService.ResourceRejectedQueueIsFull", name));
+                return null;
+            }
+
+            RetrievalTask task = new RetrievalTask(retriever, priority, this.getHost(retriever));
+            task.lastRequestTime = now;
+            task.oneShot = oneShot;
+            retriever.setSubmitTime(now);
+            this.pendingTasks.put(name, task);
+            this.numSubmitted++;
+            this.lock.notify();
+
+            return task;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void setRetrieverPoolSize(int poolSize)
+    {
+        if (poolSize < 1)
+        {
+            String message = Logging.getMessage("BasicRetrievalService.RetrieverPoolSizeIsLessThanOne");
+            Logging.verbose(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        synchronized (this.lock)
+        {
+            this.poolSize = poolSize;
+            this.adjustWorkerCount();
+            this.lock.notifyAll(); // Wake surplus workers so they can exit.
+        }
+    }
+
+    /** {@inheritDoc} */
+    public int getRetrieverPoolSize()
+    {
+        synchronized (this.lock)
+        {
+            return this.poolSize;
+        }
+    }
+
+    /**
+     * Indicates the maximum number of requests to the same host that may run at once.
+     *
+     * @return the per-host request limit.
+     */
+    public int getHostConnectionLimit()
+    {
+        synchronized (this.lock)
+        {
+            return this.hostConnectionLimit;
+        }
+    }
+
+    /**
+     * Specifies the maximum number of requests to the same host that may run at once.
+     *
+     * @param limit the per-host request limit.
+     *
+     * @throws IllegalArgumentException if <code>limit</code> is less than 1.
+     */
+    public void setHostConnectionLimit(int limit)
+    {
+        if (limit < 1)
+        {
+            String message = Logging.getMessage("PriorityRetrievalService.HostConnectionLimitIsLessThanOne");
+            Logging.verbose(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        synchronized (this.lock)
+        {
+            this.hostConnectionLimit = limit;
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Indicates how long a pending request may go without being re-submitted before it is dropped.
+     *
+     * @return the idle request limit, in milliseconds.
+     */
+    public long getIdleRequestLimit()
+    {
+        synchronized (this.lock)
+        {
+            return this.idleRequestLimit;
+        }
+    }
+
+    /**
+     * Specifies how long a pending request may go without being re-submitted before it is dropped. Clients that submit
+     * requests once rather than every frame should use a large value.
+     *
+     * @param limit the idle request limit, in milliseconds.
+     */
+    public void setIdleRequestLimit(long limit)
+    {
+        synchronized (this.lock)
+        {
+            this.idleRequestLimit = limit;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean hasActiveTasks()
+    {
+        synchronized (this.lock)
+        {
+            return !this.activeTasks.isEmpty();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean isAvailable()
+    {
+        synchronized (this.lock)
+        {
+            this.dropIdleTasks(System.currentTimeMillis());
+            return !this.shutdown && this.pendingTasks.size() < this.queueSize;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public int getNumRetrieversPending()
+    {
+        synchronized (this.lock)
+        {
+            return this.activeTasks.size() + this.pendingTasks.size();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean contains(Retriever retriever)
+    {
+        if (retriever == null)
+        {
+            String msg = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.verbose(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        synchronized (this.lock)
+        {
+            String name = retriever.getName();
+            return this.activeTasks.containsKey(name) || this.pendingTasks.containsKey(name);
+        }
+    }
+
+    /**
+     * Returns the service's request counters: requests submitted, re-submissions coalesced into an existing request,
+     * pending requests dropped because they were no longer requested, pending requests displaced by more urgent ones,
+     * and requests completed.
+     *
+     * @return the service's statistics.
+     */
+    public Collection<PerformanceStatistic> getPerformanceStatistics()
+    {
+        ArrayList<PerformanceStatistic> stats = new ArrayList<PerformanceStatistic>();
+
+        synchronized (this.lock)
+        {
+            stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL_QUEUE, "Retrievals submitted",
+                this.numSubmitted));
+            stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL_QUEUE, "Retrievals coalesced",
+                this.numCoalesced));
+            stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL_QUEUE, "Retrievals dropped (idle)",
+                this.numDroppedIdle));
+            stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL_QUEUE, "Retrievals dropped (displaced)",
+                this.numDisplaced));
+            stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL_QUEUE, "Retrievals completed",
+                this.numCompleted));
+        }
+
+        return stats;
+    }
+
+    protected String getHost(Retriever retriever)
+    {
+        if (retriever instanceof URLRetriever && ((URLRetriever) retriever).getURL() != null)
+        {
+            String host = ((URLRetriever) retriever).getURL().getHost();
+            if (host != null)
+                return host;
+        }
+
+        return "";
+    }
+
+    /**
+     * Removes pending tasks that have not been requested within the idle request limit, other than requests submitted
+     * only once. MUST BE CALLED WITHIN SYNCHRONIZED.
+     *
+     * @param now the current time in milliseconds.
+     */
+    protected void dropIdleTasks(long now)
+    {
+        if (this.idleRequestLimit <= 0)
+            return;
+
+        Iterator<RetrievalTask> iter = this.pendingTasks.values().iterator();
+        while (iter.hasNext())
+        {
+            RetrievalTask task = iter.next();
+            if (!task.oneShot && now - task.lastRequestTime > this.idleRequestLimit)
+            {
+                iter.remove();
+                task.cancel(false);
+                this.numDroppedIdle++;
+                Logging.verbose(Logging.getMessage("PriorityRetrievalService.DroppingIdleRetrieval",
+                    task.getRetriever().getName()));
+            }
+        }
+    }
+
+    /**
+     * Drops the pending task with the highest priority value if it is less urgent than <code>priority</code>. MUST BE
+     * CALLED WITHIN SYNCHRONIZED.
+     *
+     * @param priority the priority of the task that needs a slot.
+     *
+     * @return true if a task was displaced.
+     */
+    protected boolean displaceLeastUrgentTask(double priority)
+    {
+        RetrievalTask leastUrgent = null;
+        for (RetrievalTask task : this.pendingTasks.values())
+        {
+            if (leastUrgent == null || task.priority > leastUrgent.priority)
+                leastUrgent = task;
+        }
+
+        if (leastUrgent == null || leastUrgent.priority <= priority)
+            return false;
+
+        this.pendingTasks.remove(leastUrgent.getRetriever().getName());
+        leastUrgent.cancel(false);
+        this.numDisplaced++;
+        return true;
+    }
+
+    /**
+     * Returns the most urgent pending task whose host is below the per-host limit, or null if there is none. Of tasks
+     * with equal priority, the one submitted first is returned. The queue is small, so a linear scan keeps priority
+     * changes free. MUST BE CALLED WITHIN SYNCHRONIZED.
+     *
+     * @return the next task to run, or null.
+     */
+    protected RetrievalTask selectNextTask()
+    {
+        this.dropIdleTasks(System.currentTimeMillis());
+
+        RetrievalTask best = null;
+        for (RetrievalTask task : this.pendingTasks.values())
+        {
+            if (best != null && (task.priority > best.priority || (task.priority == best.priority
+                && task.retriever.getSubmitTime() >= best.retriever.getSubmitTime())))
+                continue;
+
+            Integer hostCount = this.activeHostCounts.get(task.host);
+            if (hostCount != null && hostCount >= this.hostConnectionLimit)
+                continue;
+
+            best = task;
+        }
+
+        return best;
+    }
+
+    protected void adjustWorkerCount() // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        while (this.workers.size() < this.poolSize)
+        {
+            Thread thread = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    runWorker();
+                }
+            });
+            thread.setName(IDLE_THREAD_NAME_PREFIX);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY); // Subordinate thread priority to rendering
+            thread.setUncaughtExceptionHandler(this);
+            this.workers.add(thread);
+            thread.start();
+        }
+    }
+
+    protected void runWorker()
+    {
+        Thread thread = Thread.currentThread();
+
+        while (true)
+        {
+            RetrievalTask task;
+
+            synchronized (this.lock)
+            {
+                while (true)
+                {
+                    if (this.shutdown || this.workers.size() > this.poolSize)
+                    {
+                        this.workers.remove(thread);
+                        return;
+                    }
+
+                    task = this.selectNextTask();
+                    if (task != null)
+                        break;
+
+                    try
+                    {
+                        // Wake periodically so that idle requests are dropped even when nothing is submitted.
+                        this.lock.wait(this.idleRequestLimit > 0 ? this.idleRequestLimit : 0);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        this.workers.remove(thread);
+                        return;
+                    }
+                }
+
+                String name = task.getRetriever().getName();
+                this.pendingTasks.remove(name);
+                this.activeTasks.put(name, task);
+                Integer hostCount = this.activeHostCounts.get(task.host);
+                this.activeHostCounts.put(task.host, hostCount != null ? hostCount + 1 : 1);
+            }
+
+            this.runTask(thread, task);
+
+            synchronized (this.lock)
+            {
+                this.activeTasks.remove(task.getRetriever().getName());
+                Integer hostCount = this.activeHostCounts.get(task.host);
+                if (hostCount == null || hostCount <= 1)
+                    this.activeHostCounts.remove(task.host);
+                else
+                    this.activeHostCounts.put(task.host, hostCount - 1);
+                this.numCompleted++;
+                this.lock.notifyAll(); // A host slot is free.
+            }
+        }
+    }
+
+    protected void runTask(Thread thread, RetrievalTask task)
+    {
+        thread.setName(RUNNING_THREAD_NAME_PREFIX + task.getRetriever().getName());
+        task.retriever.setBeginTime(System.currentTimeMillis());
+
+        try
+        {
+            task.run();
+            task.get(); // Surface any exception thrown during the retrieval.
+        }
+        catch (ExecutionException e)
+        {
+            String message = Logging.getMessage("BasicRetrievalService.ExecutionExceptionDuringRetrieval",
+                task.getRetriever().getName());
+            if (e.getCause() instanceof SocketTimeoutException)
+            {
+                Logging.verbose(message + " " + e.getCause().getLocalizedMessage());
+            }
+            else
+            {
+                Logging.verbose(message, e);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Logging.verbose(Logging.getMessage("BasicRetrievalService.RetrievalInterrupted",
+                task.getRetriever().getName()), e);
+        }
+        catch (CancellationException e)
+        {
+            Logging.verbose(Logging.getMessage("BasicRetrievalService.RetrievalCancelled",
+                task.getRetriever().getName()));
+        }
+        finally
+        {
+            task.retriever.setEndTime(System.currentTimeMillis());
+            thread.setName(IDLE_THREAD_NAME_PREFIX);
+            Thread.interrupted(); // Clear any interrupt from cancel(true) before taking the next task.
+        }
+    }
+}
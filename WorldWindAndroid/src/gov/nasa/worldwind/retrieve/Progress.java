@@ -19,6 +19,7 @@ public class Progress
     private long currentSize;
     private long totalCount;
     private long currentCount;
+    private double throughput;      // bytes per second
 
     public Progress()
     {
@@ -84,5 +85,15 @@ public class Progress
     {
         this.currentCount = count;
     }
+
+    public double getThroughput()
+    {
+        return this.throughput;
+    }
+
+    public void setThroughput(double bytesPerSecond)
+    {
+        this.throughput = bytesPerSecond;
+    }
 }
 
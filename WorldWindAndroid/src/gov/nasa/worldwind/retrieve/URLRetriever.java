@@ -36,6 +36,9 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
     protected AtomicInteger contentLengthRead = new AtomicInteger(0);
     protected volatile String contentType;
     protected volatile ByteBuffer byteBuffer;
+    // The pooled buffer holding the retrieved content until a post-processor takes it or it's released. Guarded by
+    // this retriever's monitor.
+    protected ByteBuffer pooledBuffer;
     protected volatile URLConnection connection;
     protected final URL url;
     protected final RetrievalPostProcessor postProcessor;
@@ -126,6 +129,23 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
         return this.byteBuffer;
     }
 
+    /**
+     * Takes ownership of the pooled buffer that holds the retrieved content, the same buffer returned by {@link
+     * #getBuffer()}. Post-processors call this to use the content in place rather than have it copied. The caller
+     * must release the buffer to {@link ByteBufferPool#getDefault()} once neither it nor any view of it is used, after
+     * which {@link #getBuffer()} must not be used either. If no post-processor takes the buffer, the retriever copies
+     * the content into a heap buffer and releases the pooled buffer once post-processing is complete.
+     *
+     * @return the pooled buffer holding the retrieved content, or null if the content is not held in a pooled buffer
+     *         or the buffer has already been taken.
+     */
+    public synchronized ByteBuffer takePooledBuffer()
+    {
+        ByteBuffer buffer = this.pooledBuffer;
+        this.pooledBuffer = null;
+        return buffer;
+    }
+
     public final String getName()
     {
         return this.url.toString();
@@ -333,6 +353,32 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
             Logging.error(Logging.getMessage("Retriever.ErrorPostProcessing", this.url.toString()), e);
             throw e;
         }
+        finally
+        {
+            this.releasePooledBuffer();
+        }
+    }
+
+    /**
+     * Releases the pooled buffer holding the retrieved content if no post-processor took it. If the buffer is still
+     * this retriever's content, the content is first copied into a heap buffer so that it remains available from
+     * {@link #getBuffer()}.
+     */
+    protected void releasePooledBuffer()
+    {
+        ByteBuffer buffer = this.takePooledBuffer();
+        if (buffer == null)
+            return;
+
+        if (this.byteBuffer == buffer)
+        {
+            ByteBuffer content = ByteBuffer.allocate(buffer.limit());
+            content.put((ByteBuffer) buffer.duplicate().rewind());
+            content.flip();
+            this.byteBuffer = content;
+        }
+
+        ByteBufferPool.getDefault().release(buffer);
     }
 
     protected ByteBuffer read() throws Exception
@@ -418,28 +464,42 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
         final int pageSize = (int) Math.ceil(Math.pow(2, 15));
 
         ReadableByteChannel channel = Channels.newChannel(inputStream);
-        ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+        ByteBufferPool pool = ByteBufferPool.getDefault();
+        ByteBuffer buffer = pool.acquire(pageSize);
 
-        int count = 0;
-        int numBytesRead = 0;
-        while (!this.interrupted() && count >= 0)
+        boolean success = false;
+        try
         {
-            count = channel.read(buffer);
-            if (count > 0)
-                this.contentLengthRead.getAndAdd(numBytesRead += count);
-
-            if (count > 0 && !buffer.hasRemaining())
+            int count = 0;
+            int numBytesRead = 0;
+            while (!this.interrupted() && count >= 0)
             {
-                ByteBuffer biggerBuffer = ByteBuffer.allocate(buffer.limit() + pageSize);
-                biggerBuffer.put((ByteBuffer) buffer.rewind());
-                buffer = biggerBuffer;
+                count = channel.read(buffer);
+                if (count > 0)
+                    this.contentLengthRead.getAndAdd(numBytesRead += count);
+
+                if (count > 0 && !buffer.hasRemaining())
+                {
+                    buffer = pool.grow(buffer, 2 * buffer.capacity());
+                    buffer.limit(buffer.capacity());
+                }
             }
-        }
 
-        if (buffer != null)
+            // The content is handed to the post-processor in the pooled buffer. See takePooledBuffer.
             buffer.flip();
+            synchronized (this)
+            {
+                this.pooledBuffer = buffer;
+            }
+            success = true;
 
-        return buffer;
+            return buffer;
+        }
+        finally
+        {
+            if (!success)
+                pool.release(buffer);
+        }
     }
 
     /**
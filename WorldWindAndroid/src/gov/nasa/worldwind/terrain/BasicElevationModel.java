@@ -11,18 +11,24 @@ import gov.nasa.worldwind.WorldWind;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.avlist.AVList;
 import gov.nasa.worldwind.avlist.AVListImpl;
-import gov.nasa.worldwind.cache.BasicMemoryCache;
 import gov.nasa.worldwind.cache.Cacheable;
 import gov.nasa.worldwind.cache.FileStore;
 import gov.nasa.worldwind.cache.MemoryCache;
+import gov.nasa.worldwind.cache.PackedDataFileStore;
+import gov.nasa.worldwind.cache.TileMemoryCache;
 import gov.nasa.worldwind.event.BulkRetrievalListener;
 import gov.nasa.worldwind.geom.Angle;
 import gov.nasa.worldwind.geom.LatLon;
 import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.geom.Vec4;
+import gov.nasa.worldwind.globes.Globe;
+import gov.nasa.worldwind.render.DrawContext;
 import gov.nasa.worldwind.retrieve.AbstractRetrievalPostProcessor;
 import gov.nasa.worldwind.retrieve.BulkRetrievable;
 import gov.nasa.worldwind.retrieve.BulkRetrievalThread;
 import gov.nasa.worldwind.retrieve.HTTPRetriever;
+import gov.nasa.worldwind.retrieve.PriorityRetrievalService;
+import gov.nasa.worldwind.retrieve.RetrievalService;
 import gov.nasa.worldwind.retrieve.Retriever;
 import gov.nasa.worldwind.retrieve.RetrieverFactory;
 import gov.nasa.worldwind.retrieve.URLRetriever;
@@ -32,6 +38,8 @@ import gov.nasa.worldwind.util.LevelSet;
 import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.Tile;
 import gov.nasa.worldwind.util.TileKey;
+import gov.nasa.worldwind.util.TilePrefetcher;
+import gov.nasa.worldwind.util.BufferWrapper;
 import gov.nasa.worldwind.util.WWIO;
 import gov.nasa.worldwind.util.WWUtil;
 import gov.nasa.worldwind.util.WWXML;
@@ -87,6 +95,10 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 	protected int extremesLevel = -1;
 	protected short[] extremes = null;
 	protected MemoryCache extremesLookupCache;
+	protected TilePrefetcher prefetcher = new TilePrefetcher();
+	// The view most recently passed to prefetchTiles, used to order tile requests by their distance from the eye.
+	protected volatile Vec4 viewEyePoint;
+	protected volatile Globe viewGlobe;
 
 	public BasicElevationModel(AVList params) {
 		if (params == null) {
@@ -134,6 +146,9 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 		this.levels = new LevelSet(params);
 		this.memoryCache = this.createMemoryCache(ElevationTile.class.getName());
 
+		// Restore the tiles found missing from the dataset in earlier sessions, so they are not requested again.
+		if (this.getDataFileStore() != null) this.levels.readAbsentTiles(this.getDataFileStore());
+
 		this.setValue(AVKey.CONSTRUCTION_PARAMETERS, params.copy());
 	}
 
@@ -187,7 +202,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 			return WorldWind.getMemoryCache(cacheName);
 		} else {
 			long size = Configuration.getLongValue(AVKey.ELEVATION_TILE_CACHE_SIZE, 5000000L);
-			MemoryCache mc = new BasicMemoryCache((long) (0.85 * size), size);
+			MemoryCache mc = WorldWind.getMemoryCacheSet().createTileMemoryCache((long) (0.85 * size), size);
 			mc.setName("Elevation Tiles");
 			WorldWind.getMemoryCacheSet().put(cacheName, mc);
 			return mc;
@@ -320,28 +335,94 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 		WorldWind.getTaskService().runTask(request);
 	}
 
+	/**
+	 * Returns the prefetcher that requests this model's tiles ahead of a moving view.
+	 * 
+	 * @return the model's prefetcher, or null if prefetch is disabled.
+	 */
+	public TilePrefetcher getPrefetcher() {
+		return this.prefetcher;
+	}
+
+	/**
+	 * Specifies the prefetcher that requests this model's tiles ahead of a moving view. Specify null to disable
+	 * prefetch.
+	 * 
+	 * @param prefetcher
+	 *            the model's prefetcher. May be null.
+	 */
+	public void setPrefetcher(TilePrefetcher prefetcher) {
+		if (this.prefetcher != null && this.prefetcher != prefetcher) this.prefetcher.cancel();
+
+		this.prefetcher = prefetcher;
+	}
+
+	/**
+	 * Requests the tiles the view is predicted to need next. Called once per frame by the tessellator, after the
+	 * visible terrain has requested its elevations. Does nothing if the view is not moving. This also records the
+	 * view's eye point, by which the model orders its tile requests; see {@link #computeTilePriority(Tile)}.
+	 * 
+	 * @param dc
+	 *            the current draw context.
+	 * @param detailFactor
+	 *            the detail factor the tessellator selects terrain tiles with.
+	 */
+	public void prefetchTiles(DrawContext dc, double detailFactor) {
+		this.viewEyePoint = dc.getView().getEyePoint().copy();
+		this.viewGlobe = dc.getGlobe();
+
+		if (this.prefetcher == null || !this.prefetcher.isEnabled()) return;
+
+		for (TileKey key : this.prefetcher.selectTiles(dc, this.levels, detailFactor)) {
+			// Prefetch requests use only the task service's spare capacity.
+			if (WorldWind.getTaskService().isFull()) break;
+			if (this.areElevationsInMemory(key)) continue;
+			if (!this.prefetcher.tryAcquire(dc, key)) break;
+
+			WorldWind.getTaskService().runTask(new RequestTask(key, this, this.prefetcher, this.prefetcher.getGeneration()));
+		}
+	}
+
 	protected static class RequestTask implements Runnable {
 		protected final BasicElevationModel elevationModel;
 		protected final TileKey tileKey;
+		protected final TilePrefetcher prefetcher;
+		protected final int generation;
 
 		protected RequestTask(TileKey tileKey, BasicElevationModel elevationModel) {
+			this(tileKey, elevationModel, null, 0);
+		}
+
+		/**
+		 * Creates a task that loads a prefetched tile. The task does nothing if the prefetcher's generation has changed
+		 * by the time it runs.
+		 */
+		protected RequestTask(TileKey tileKey, BasicElevationModel elevationModel, TilePrefetcher prefetcher, int generation) {
 			this.elevationModel = elevationModel;
 			this.tileKey = tileKey;
+			this.prefetcher = prefetcher;
+			this.generation = generation;
 		}
 
 		public final void run() {
 			if (Thread.currentThread().isInterrupted()) return; // the task was cancelled because it's a duplicate or for some other reason
 
+			if (this.prefetcher != null && !this.prefetcher.isCurrent(this.generation)) return; // the prefetch was cancelled
+
 			try {
 				// check to ensure load is still needed
 				if (this.elevationModel.areElevationsInMemory(this.tileKey)) return;
 
 				ElevationTile tile = this.elevationModel.createTile(this.tileKey);
+				tile.setPriority(this.elevationModel.computeTilePriority(tile));
 				final URL url = this.elevationModel.getDataFileStore().findFile(tile.getPath(), false);
-				if (url != null && !this.elevationModel.isFileExpired(tile, url, this.elevationModel.getDataFileStore())) {
+				if (url != null) {
 					if (this.elevationModel.loadElevations(tile, url)) {
 						this.elevationModel.levels.unmarkResourceAbsent(tile);
 						this.elevationModel.firePropertyChange(AVKey.ELEVATION_MODEL, null, tile);
+						// Expired elevations are used until the server confirms or replaces them.
+						if (this.elevationModel.isFileExpired(tile, url, this.elevationModel.getDataFileStore()))
+							this.elevationModel.downloadElevations(tile);
 						return;
 					} else {
 						// Assume that something is wrong with the file and delete it.
@@ -380,11 +461,29 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 		}
 	}
 
+	/**
+	 * Compute the priority of retrieving a tile, based on the distance from the view's eye point to the tile's center.
+	 * Tiles closer to the eye have higher priority than those far from the eye.
+	 * 
+	 * @param tile
+	 *            tile for which to compute the priority.
+	 * @return tile priority. A lower number indicates higher priority.
+	 */
+	protected double computeTilePriority(Tile tile) {
+		Vec4 eyePoint = this.viewEyePoint;
+		Globe globe = this.viewGlobe;
+		if (eyePoint == null || globe == null) return 0d; // no view yet; tiles are retrieved in the order requested
+
+		// Tile priority is ordered from low (most priority) to high (least priority), by square distance from the eye
+		// point as for imagery tiles.
+		return eyePoint.distanceToSquared3(globe.computePointFromLocation(tile.getSector().getCentroid()));
+	}
+
 	protected boolean isFileExpired(Tile tile, java.net.URL fileURL, FileStore fileStore) {
 		if (!WWIO.isFileOutOfDate(fileURL, tile.getLevel().getExpiryTime())) return false;
 
-		// The file has expired. Delete it.
-		fileStore.removeFile(fileURL);
+		// The file has expired. Keep it so that the retrieval can ask the server whether it has changed, and replace it
+		// only if it has.
 		String message = Logging.getMessage("generic.DataFileExpired", fileURL);
 		Logging.verbose(message);
 		return true;
@@ -393,8 +492,8 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 	// Reads a tile's elevations from the file cache and adds the tile to the memory cache.
 
 	protected boolean loadElevations(ElevationTile tile, java.net.URL url) throws IOException {
-		short[] elevations = this.readElevations(url);
-		if (elevations == null || elevations.length == 0) return false;
+		BufferWrapper elevations = this.readElevations(url);
+		if (elevations == null || elevations.length() == 0) return false;
 
 		tile.setElevations(elevations);
 		this.addTileToCache(tile, elevations);
@@ -402,8 +501,8 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 		return true;
 	}
 
-	protected void addTileToCache(ElevationTile tile, short[] elevations) {
-		this.getMemoryCache().put(tile.getTileKey(), tile, elevations.length * 2);
+	protected void addTileToCache(ElevationTile tile, BufferWrapper elevations) {
+		this.getMemoryCache().put(tile.getTileKey(), tile, elevations.getSizeInBytes());
 	}
 
 	protected boolean areElevationsInMemory(TileKey key) {
@@ -419,23 +518,48 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 		return (ElevationTile) this.getMemoryCache().get(tileKey);
 	}
 
+	/**
+	 * Returns the tile at the specified level, row and column if it is in the memory cache. When the memory cache is a
+	 * {@link TileMemoryCache} the tile is looked up by packed key, without allocating a {@link TileKey}.
+	 * 
+	 * @param level
+	 *            the tile's level.
+	 * @param row
+	 *            the tile's row.
+	 * @param col
+	 *            the tile's column.
+	 * @return the tile, or null if it is not in the memory cache.
+	 */
+	protected ElevationTile getTileFromMemory(Level level, int row, int col) {
+		MemoryCache cache = this.getMemoryCache();
+		if (cache instanceof TileMemoryCache) {
+			long packedKey = TileKey.pack(level.getCacheNameId(), level.getLevelNumber(), row, col);
+			if (packedKey != TileKey.INVALID_PACKED_KEY) return (ElevationTile) ((TileMemoryCache) cache).get(packedKey);
+		}
+
+		return this.getTileFromMemory(new TileKey(level.getLevelNumber(), row, col, level.getCacheName()));
+	}
+
 	// Read elevations from the file cache. Don't be confused by the use of a URL here: it's used so that files can
 	// be read using System.getResource(URL), which will draw the data from a jar file in the classpath.
+	//
+	// Local files and packed tiles are memory mapped and wrapped in place, so a tile's elevations are neither copied
+	// nor held in the Java heap. No lock is needed: the download post-processor replaces an elevation file rather than
+	// writing over it, so a mapping always sees the complete file it was created from.
 
-	protected short[] readElevations(URL url) throws IOException {
+	protected BufferWrapper readElevations(URL url) throws IOException {
 		try {
-			ByteBuffer byteBuffer;
-			synchronized (this.fileLock) {
-				byteBuffer = WWIO.readURLContentToBuffer(url);
+			ByteBuffer byteBuffer = null;
+
+			FileStore fileStore = this.getDataFileStore();
+			if (fileStore instanceof PackedDataFileStore) byteBuffer = ((PackedDataFileStore) fileStore).getBuffer(url);
+
+			if (byteBuffer == null) {
+				File file = "file".equals(url.getProtocol()) ? WWIO.convertURLToFile(url) : null;
+				byteBuffer = file != null ? WWIO.mapFile(file) : WWIO.readURLContentToBuffer(url, true);
 			}
 
-			// This byte order assignment assumes the WW .BIL format. It will be generalized when the new server
-			// setup is integrated.
-			byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-			ShortBuffer shortBuffer = byteBuffer.asShortBuffer();
-			short[] elevations = new short[shortBuffer.limit()];
-			shortBuffer.get(elevations);
-			return elevations;
+			return BufferWrapper.wrap(byteBuffer, this.elevationDataType, this.elevationDataByteOrder);
 		} catch (java.io.IOException e) {
 			Logging.error("ElevationModel.ExceptionReadingElevationFile", url.toString());
 			throw e;
@@ -558,7 +682,10 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 	// *** Tile download ***
 
 	protected void downloadElevations(final Tile tile) {
-		retrieveElevations(tile, new DownloadPostProcessor(tile, this));
+		DownloadPostProcessor postProcessor = new DownloadPostProcessor(tile, this);
+		// The tile's elevations are read from the downloaded data, so its file need not be written before they're used.
+		postProcessor.setWriteBehind(true);
+		retrieveElevations(tile, postProcessor);
 	}
 
 	protected void downloadElevations(final Tile tile, DownloadPostProcessor postProcessor) {
@@ -575,8 +702,44 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 	protected void retrieveLocalElevations(Tile tile, DownloadPostProcessor postProcessor) {
 		if (!WorldWind.getLocalRetrievalService().isAvailable()) return;
 
+		Retriever retriever = this.createLocalRetriever(tile, postProcessor);
+		if (retriever == null) return;
+
+		WorldWind.getLocalRetrievalService().runRetriever(retriever, tile.getPriority());
+	}
+
+	protected void retrieveRemoteElevations(final Tile tile, DownloadPostProcessor postProcessor) {
+		Retriever retriever = this.createRemoteRetriever(tile, postProcessor);
+		if (retriever == null || !WorldWind.getRetrievalService().isAvailable()) return;
+
+		// The retrieval service ignores duplicate requests; re-submitting a pending request keeps it marked as wanted.
+		// Prefetch requests are submitted only once, so they must not be dropped for not being re-submitted. They're
+		// retrieved after every tile the view needs now.
+		RetrievalService service = WorldWind.getRetrievalService();
+		if (service instanceof PriorityRetrievalService && this.prefetcher != null && this.prefetcher.isPending(tile.getTileKey()))
+			((PriorityRetrievalService) service).runRetrieverOnce(retriever, TilePrefetcher.PREFETCH_PRIORITY);
+		else
+			service.runRetriever(retriever, tile.getPriority());
+	}
+
+	/**
+	 * Creates a retriever that retrieves a tile's elevations, without running it. The retriever reads the elevations
+	 * from the model's local retriever factory if it has one, otherwise from the network.
+	 * 
+	 * @param tile
+	 *            the tile to retrieve.
+	 * @param postProcessor
+	 *            post processor to handle the retrieval.
+	 * @return the tile's retriever, or null if the tile cannot be retrieved.
+	 */
+	protected Retriever createRetriever(Tile tile, DownloadPostProcessor postProcessor) {
+		if (this.getValue(AVKey.RETRIEVER_FACTORY_LOCAL) != null) return this.createLocalRetriever(tile, postProcessor);
+		else return this.createRemoteRetriever(tile, postProcessor);
+	}
+
+	protected Retriever createLocalRetriever(Tile tile, DownloadPostProcessor postProcessor) {
 		RetrieverFactory retrieverFactory = (RetrieverFactory) this.getValue(AVKey.RETRIEVER_FACTORY_LOCAL);
-		if (retrieverFactory == null) return;
+		if (retrieverFactory == null) return null;
 
 		AVListImpl avList = new AVListImpl();
 		avList.setValue(AVKey.SECTOR, tile.getSector());
@@ -584,37 +747,33 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 		avList.setValue(AVKey.HEIGHT, tile.getHeight());
 		avList.setValue(AVKey.FILE_NAME, tile.getPath());
 
-		Retriever retriever = retrieverFactory.createRetriever(avList, postProcessor);
-
-		WorldWind.getLocalRetrievalService().runRetriever(retriever, tile.getPriority());
+		return retrieverFactory.createRetriever(avList, postProcessor);
 	}
 
-	protected void retrieveRemoteElevations(final Tile tile, DownloadPostProcessor postProcessor) {
+	protected Retriever createRemoteRetriever(Tile tile, DownloadPostProcessor postProcessor) {
 		if (!this.isNetworkRetrievalEnabled()) {
 			this.getLevels().markResourceAbsent(tile);
-			return;
+			return null;
 		}
 
-		if (!WorldWind.getRetrievalService().isAvailable()) return;
-
 		java.net.URL url = null;
 		try {
 			url = tile.getResourceURL();
 			if (WorldWind.getNetworkStatus().isHostUnavailable(url)) {
 				this.getLevels().markResourceAbsent(tile);
-				return;
+				return null;
 			}
 		} catch (java.net.MalformedURLException e) {
 			Logging.error(Logging.getMessage("TiledElevationModel.ExceptionCreatingElevationsUrl", url), e);
-			return;
+			return null;
 		}
 
 		if (postProcessor == null) postProcessor = new DownloadPostProcessor(tile, this);
-		URLRetriever retriever = new HTTPRetriever(url, postProcessor);
+		HTTPRetriever retriever = new HTTPRetriever(url, postProcessor);
 		retriever.setValue(URLRetriever.EXTRACT_ZIP_ENTRY, "true"); // supports legacy elevation models
-		if (WorldWind.getRetrievalService().contains(retriever)) return;
+		postProcessor.configureConditionalRequest(retriever); // revalidates an expired file rather than refetching it
 
-		WorldWind.getRetrievalService().runRetriever(retriever, 0d);
+		return retriever;
 	}
 
 	protected static class DownloadPostProcessor extends AbstractRetrievalPostProcessor {
@@ -635,6 +794,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 			this.fileStore = fileStore;
 		}
 
+		@Override
 		protected FileStore getFileStore() {
 			return this.fileStore != null ? this.fileStore : this.elevationModel.getDataFileStore();
 		}
@@ -649,6 +809,12 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 			this.elevationModel.getLevels().markResourceAbsent(this.tile);
 		}
 
+		@Override
+		protected void markResourceNotFound() {
+			this.elevationModel.getLevels().markResourceNotFound(this.tile);
+			this.elevationModel.getLevels().scheduleAbsentTilesWrite(this.getFileStore());
+		}
+
 		@Override
 		protected Object getFileLock() {
 			return this.elevationModel.fileLock;
@@ -659,11 +825,22 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 			return this.getFileStore().newFile(this.tile.getPath());
 		}
 
+		@Override
+		protected URL findOutputFile() {
+			return this.getFileStore().findFile(this.tile.getPath(), false);
+		}
+
 		@Override
 		protected ByteBuffer handleSuccessfulRetrieval() {
 			ByteBuffer buffer = super.handleSuccessfulRetrieval();
 
 			if (buffer != null) {
+				if (this.isWriteBehind() && this.savedBuffer != null && this.loadSavedElevations()) {
+					// The new elevations replace any expired copy of the tile in the memory cache.
+				} else {
+					// Evict any expired copy of the tile so that the new elevations are read on the next request.
+					this.elevationModel.getMemoryCache().remove(this.tile.getTileKey());
+				}
 				// Fire a property change to denote that the model's backing data has changed.
 				this.elevationModel.firePropertyChange(AVKey.ELEVATION_MODEL, null, this);
 			}
@@ -671,6 +848,67 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 			return buffer;
 		}
 
+		/**
+		 * Creates the tile's elevations from the data saved to its file, without reading the file back, and adds the
+		 * tile to the memory cache. Later reads of the tile after it leaves the cache map the file as usual.
+		 *
+		 * @return true if the tile's elevations are created, otherwise false.
+		 */
+		protected boolean loadSavedElevations() {
+			// The saved data is in the retriever's pooled buffer, which is released once it's written. The tile keeps
+			// a copy of exactly its size.
+			ByteBuffer data = ByteBuffer.allocate(this.savedBuffer.limit());
+			data.put((ByteBuffer) this.savedBuffer.duplicate().rewind());
+			data.flip();
+
+			BufferWrapper elevations = BufferWrapper.wrap(data,
+				this.elevationModel.elevationDataType, this.elevationModel.elevationDataByteOrder);
+			if (elevations == null || elevations.length() == 0) return false;
+
+			ElevationTile tile = this.elevationModel.createTile(this.tile.getTileKey());
+			tile.setElevations(elevations);
+			this.elevationModel.addTileToCache(tile, elevations);
+			this.elevationModel.levels.unmarkResourceAbsent(tile);
+
+			return true;
+		}
+
+		@Override
+		protected ByteBuffer handleNotModified() {
+			ByteBuffer buffer = super.handleNotModified();
+
+			// The file on disk is current again; there is nothing new to read.
+			this.elevationModel.levels.unmarkResourceAbsent(this.tile);
+
+			return buffer;
+		}
+
+		/**
+		 * {@inheritDoc} Elevation files are memory mapped by the tiles read from them, so an existing file is replaced
+		 * by renaming a new file over it rather than by writing over its content, as the write-behind writer does.
+		 */
+		@Override
+		protected boolean saveBuffer(ByteBuffer buffer) throws IOException {
+			if (this.isWriteBehind()) return super.saveBuffer(buffer);
+
+			File outFile = this.getOutputFile();
+			if (outFile == null) return false;
+
+			File tempFile = new File(outFile.getPath() + ".tmp");
+			synchronized (this.getFileLock()) {
+				if (!WWIO.saveBuffer(buffer != null ? buffer : this.getRetriever().getBuffer(), tempFile)) return false;
+
+				if (!tempFile.renameTo(outFile)) {
+					// noinspection ResultOfMethodCallIgnored
+					tempFile.delete();
+					Logging.error(Logging.getMessage("generic.CannotMoveFile", tempFile, outFile));
+					return false;
+				}
+			}
+
+			return true;
+		}
+
 		@Override
 		protected ByteBuffer handleTextContent() throws IOException {
 			this.markResourceAbsent();
@@ -755,13 +993,13 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 			this.extremes = WWUtil.defaultMinMix();
 
 			for (ElevationTile tile : this.tiles) {
-				short[] elevations = tile.getElevations();
+				BufferWrapper elevations = tile.getElevations();
 
-				int len = elevations.length;
+				int len = elevations.length();
 				if (len == 0) return null;
 
 				for (int i = 0; i < len; i++) {
-					this.elevationModel.determineExtremes(elevations[i], this.extremes);
+					this.elevationModel.determineExtremes(elevations.getDouble(i), this.extremes);
 				}
 			}
 
@@ -802,21 +1040,23 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 		if (!this.contains(latitude, longitude)) return this.getMissingDataSignal();
 
 		Level lastLevel = this.levels.getLastLevel(latitude, longitude);
-		final TileKey tileKey = new TileKey(latitude, longitude, this.levels, lastLevel.getLevelNumber());
-		ElevationTile tile = this.getTileFromMemory(tileKey);
+		LatLon tileOrigin = this.levels.getTileOrigin();
+		int tileRow = Tile.computeRow(lastLevel.getTileDelta().latitude, latitude, tileOrigin.latitude);
+		int tileCol = Tile.computeColumn(lastLevel.getTileDelta().longitude, longitude, tileOrigin.longitude);
+		ElevationTile tile = this.getTileFromMemory(lastLevel, tileRow, tileCol);
 
 		if (tile == null) {
-			int fallbackRow = tileKey.getRow();
-			int fallbackCol = tileKey.getColumn();
-			for (int fallbackLevelNum = tileKey.getLevelNumber() - 1; fallbackLevelNum >= 0; fallbackLevelNum--) {
+			int fallbackRow = tileRow;
+			int fallbackCol = tileCol;
+			for (int fallbackLevelNum = lastLevel.getLevelNumber() - 1; fallbackLevelNum >= 0; fallbackLevelNum--) {
 				fallbackRow /= 2;
 				fallbackCol /= 2;
 
-				if (this.levels.getLevel(fallbackLevelNum).isEmpty()) // everything lower res is empty
+				Level fallbackLevel = this.levels.getLevel(fallbackLevelNum);
+				if (fallbackLevel.isEmpty()) // everything lower res is empty
 				return this.getExtremeElevations(latitude, longitude)[0];
 
-				TileKey fallbackKey = new TileKey(fallbackLevelNum, fallbackRow, fallbackCol, this.levels.getLevel(fallbackLevelNum).getCacheName());
-				tile = this.getTileFromMemory(fallbackKey);
+				tile = this.getTileFromMemory(fallbackLevel, fallbackRow, fallbackCol);
 				if (tile != null) break;
 			}
 		}
@@ -926,7 +1166,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 	}
 
 	protected double lookupElevation(Angle latitude, Angle longitude, final ElevationTile tile) {
-		short[] elevations = tile.getElevations();
+		BufferWrapper elevations = tile.getElevations();
 		Sector sector = tile.getSector();
 		final int tileHeight = tile.getHeight();
 		final int tileWidth = tile.getWidth();
@@ -941,8 +1181,8 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 		int i = (int) ((tileWidth - 1) * sLon);
 		int k = j * tileWidth + i;
 
-		double eLeft = elevations[k];
-		double eRight = i < (tileWidth - 1) ? elevations[k + 1] : eLeft;
+		double eLeft = elevations.getDouble(k);
+		double eRight = i < (tileWidth - 1) ? elevations.getDouble(k + 1) : eLeft;
 
 		if (this.getMissingDataSignal() == eLeft || this.getMissingDataSignal() == eRight) return this.getMissingDataSignal();
 
@@ -954,8 +1194,8 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 		double eTop = eLeft + ssLon * (eRight - eLeft);
 
 		if (j < tileHeight - 1 && i < tileWidth - 1) {
-			eLeft = elevations[k + tileWidth];
-			eRight = elevations[k + tileWidth + 1];
+			eLeft = elevations.getDouble(k + tileWidth);
+			eRight = elevations.getDouble(k + tileWidth + 1);
 
 			if (this.getMissingDataSignal() == eLeft || this.getMissingDataSignal() == eRight) return this.getMissingDataSignal();
 		}
@@ -1136,25 +1376,25 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 			// Default cache size holds 1250 min/max pairs. This size was experimentally determined to hold enough
 			// value lookups to prevent cache thrashing.
 			long size = Configuration.getLongValue(AVKey.ELEVATION_EXTREMES_LOOKUP_CACHE_SIZE, 20000L);
-			this.extremesLookupCache = new BasicMemoryCache((long) (0.85 * size), size);
+			this.extremesLookupCache = WorldWind.getMemoryCacheSet().createMemoryCache((long) (0.85 * size), size);
 		}
 
 		return this.extremesLookupCache;
 	}
 
 	protected static class ElevationTile extends gov.nasa.worldwind.util.Tile implements Cacheable {
-		protected short[] elevations; // the elevations themselves
+		protected BufferWrapper elevations; // the elevations themselves
 		protected long updateTime = 0;
 
 		protected ElevationTile(Sector sector, Level level, int row, int col) {
 			super(sector, level, row, col);
 		}
 
-		public short[] getElevations() {
+		public BufferWrapper getElevations() {
 			return this.elevations;
 		}
 
-		public void setElevations(short[] elevations) {
+		public void setElevations(BufferWrapper elevations) {
 			this.elevations = elevations;
 			this.updateTime = System.currentTimeMillis();
 		}
@@ -1196,7 +1436,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 			int[] indices = new int[4];
 			for (int i = 0; i < 4; i++) {
 				int k = this.computeElevationIndex(corners[i]);
-				indices[i] = k < 0 ? 0 : k > this.elevations.length - 1 ? this.elevations.length - 1 : k;
+				indices[i] = k < 0 ? 0 : k > this.elevations.length() - 1 ? this.elevations.length() - 1 : k;
 			}
 
 			int sw = indices[0];
@@ -1210,7 +1450,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 			while (nw <= sw) {
 				for (int i = 0; i < nCols; i++) {
 					int k = nw + i;
-					em.determineExtremes(this.elevations[k], extremes);
+					em.determineExtremes(this.elevations.getDouble(k), extremes);
 				}
 
 				nw += this.getWidth();
@@ -1248,29 +1488,31 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 		boolean missingLevelZeroTiles = false;
 		for (int row = seRow; row <= nwRow; row++) {
 			for (int col = nwCol; col <= seCol; col++) {
-				TileKey key = new TileKey(targetLevel.getLevelNumber(), row, col, targetLevel.getCacheName());
-				ElevationTile tile = this.getTileFromMemory(key);
+				ElevationTile tile = this.getTileFromMemory(targetLevel, row, col);
 				if (tile != null) {
+					if (this.prefetcher != null) this.prefetcher.tileUsed(tile.getTileKey());
 					tiles.add(tile);
 					continue;
 				}
 
 				missingTargetTiles = true;
+				TileKey key = new TileKey(targetLevel.getLevelNumber(), row, col, targetLevel.getCacheName());
 				this.requestTile(key);
 
 				// Determine the fallback to use. Simultaneously determine a fallback to request that is
 				// the next resolution higher than the fallback chosen, if any. This will progressively
 				// refine the display until the desired resolution tile arrives.
-				TileKey fallbackToRequest = null;
-				TileKey fallbackKey;
+				Level fallbackLevelToRequest = null;
+				int fallbackRowToRequest = 0;
+				int fallbackColToRequest = 0;
 				int fallbackRow = row;
 				int fallbackCol = col;
 				for (int fallbackLevelNum = key.getLevelNumber() - 1; fallbackLevelNum >= 0; fallbackLevelNum--) {
 					fallbackRow /= 2;
 					fallbackCol /= 2;
-					fallbackKey = new TileKey(fallbackLevelNum, fallbackRow, fallbackCol, this.levels.getLevel(fallbackLevelNum).getCacheName());
+					Level fallbackLevel = this.levels.getLevel(fallbackLevelNum);
 
-					tile = this.getTileFromMemory(fallbackKey);
+					tile = this.getTileFromMemory(fallbackLevel, fallbackRow, fallbackCol);
 					if (tile != null) {
 						if (!tiles.contains(tile)) {
 							tiles.add(tile);
@@ -1278,11 +1520,16 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 						break;
 					} else {
 						if (fallbackLevelNum == 0) missingLevelZeroTiles = true;
-						fallbackToRequest = fallbackKey; // keep track of lowest level to request
+						// keep track of lowest level to request
+						fallbackLevelToRequest = fallbackLevel;
+						fallbackRowToRequest = fallbackRow;
+						fallbackColToRequest = fallbackCol;
 					}
 				}
 
-				if (fallbackToRequest != null) {
+				if (fallbackLevelToRequest != null) {
+					TileKey fallbackToRequest = new TileKey(fallbackLevelToRequest.getLevelNumber(), fallbackRowToRequest, fallbackColToRequest,
+							fallbackLevelToRequest.getCacheName());
 					if (!requested.contains(fallbackToRequest)) {
 						this.requestTile(fallbackToRequest);
 						requested.add(fallbackToRequest); // keep track to avoid overhead of duplicte requests
@@ -6,7 +6,6 @@
 
 package gov.nasa.worldwind.terrain;
 
-import gov.nasa.worldwind.WorldWind;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.cache.FileStore;
 import gov.nasa.worldwind.event.*;
@@ -16,7 +15,6 @@ import gov.nasa.worldwind.util.*;
 
 import java.io.*;
 import java.net.URL;
-import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -36,8 +34,6 @@ public class BasicElevationModelBulkDownloader extends BulkRetrievalThread
     protected final BasicElevationModel elevationModel;
     protected final int level;
 
-    protected ArrayList<Tile> missingTiles;
-
     /**
      * Constructs a downloader to retrieve elevations not currently available in the World Wind file cache.
      * <p/>
@@ -89,38 +85,13 @@ public class BasicElevationModelBulkDownloader extends BulkRetrievalThread
     {
         try
         {
-            // Init progress with missing tiles count estimate
-            this.progress.setTotalCount(this.estimateMissingTilesCount(20));
-            this.progress.setTotalSize(this.progress.getTotalCount() * estimateAverageTileSize());
-
-            // Determine and request missing tiles by level/region
-            for (int levelNumber = 0; levelNumber <= this.level; levelNumber++)
+            this.retrieveTiles(this.elevationModel.getLevels(), this.level, new Tile.TileFactory<Tile>()
             {
-                if (elevationModel.getLevels().isLevelEmpty(levelNumber))
-                    continue;
-
-                int div = this.computeRegionDivisions(this.sector, levelNumber, MAX_TILE_COUNT_PER_REGION);
-                Iterator<Sector> regionsIterator = this.getRegionIterator(this.sector, div);
-
-                Sector region;
-                while (regionsIterator.hasNext())
+                public Tile createTile(Sector sector, Level level, int row, int column)
                 {
-                    region = regionsIterator.next();
-                    // Determine missing tiles
-                    this.missingTiles = getMissingTilesInSector(region, levelNumber);
-
-                    // Submit missing tiles requests at intervals
-                    while (this.missingTiles.size() > 0)
-                    {
-                        submitMissingTilesRequests();
-                        if (this.missingTiles.size() > 0)
-                            Thread.sleep(RETRIEVAL_SERVICE_POLL_DELAY);
-                    }
+                    return new Tile(sector, level, row, column);
                 }
-            }
-            // Set progress to 100%
-            this.progress.setTotalCount(this.progress.getCurrentCount());
-            this.progress.setTotalSize(this.progress.getCurrentSize());
+            });
         }
         catch (InterruptedException e)
         {
@@ -135,91 +106,22 @@ public class BasicElevationModelBulkDownloader extends BulkRetrievalThread
         }
     }
 
-    protected synchronized void submitMissingTilesRequests() throws InterruptedException
-    {
-        RetrievalService rs = WorldWind.getRetrievalService();
-        int i = 0;
-        while (this.missingTiles.size() > i && rs.isAvailable())
-        {
-            Thread.sleep(1); // generates InterruptedException if thread has been interrupted
-
-            Tile tile = this.missingTiles.get(i);
-
-            if (this.elevationModel.getLevels().isResourceAbsent(tile))
-            {
-                removeAbsentTile(tile);  // tile is absent, count it off.
-                continue;
-            }
-
-            URL url = this.fileStore.findFile(tile.getPath(), false);
-            if (url != null)
-            {
-                // tile has been retrieved and is local now, count it as retrieved.
-                removeRetrievedTile(tile);
-                continue;
-            }
-
-            this.elevationModel.downloadElevations(tile,
-                new BulkDownloadPostProcessor(tile, this.elevationModel, this.fileStore));
-            i++;
-        }
-    }
-
-    protected class BulkDownloadPostProcessor extends BasicElevationModel.DownloadPostProcessor
+    protected boolean isTileAbsent(Tile tile)
     {
-        public BulkDownloadPostProcessor(Tile tile, BasicElevationModel elevationModel, FileStore fileStore)
-        {
-            super(tile, elevationModel, fileStore);
-        }
-
-        public ByteBuffer run(Retriever retriever)
-        {
-            ByteBuffer buffer = super.run(retriever);
-
-            if (retriever.getState().equals(Retriever.RETRIEVER_STATE_SUCCESSFUL))
-                removeRetrievedTile(this.tile);
-
-            if (hasRetrievalListeners())
-                callRetrievalListeners(retriever, this.tile);
-
-            return buffer;
-        }
+        return this.elevationModel.getLevels().isResourceAbsent(tile);
     }
 
-    protected void callRetrievalListeners(Retriever retriever, Tile tile)
+    protected URL findLocalTile(Tile tile)
     {
-        String eventType = (retriever.getState().equals(Retriever.RETRIEVER_STATE_SUCCESSFUL))
-            ? BulkRetrievalEvent.RETRIEVAL_SUCCEEDED : BulkRetrievalEvent.RETRIEVAL_FAILED;
-        super.callRetrievalListeners(new BulkRetrievalEvent(this.elevationModel, eventType, tile.getPath()));
-    }
-
-    protected synchronized void removeRetrievedTile(Tile tile)
-    {
-        this.missingTiles.remove(tile);
-        // Update progress
-        this.progress.setCurrentCount(this.progress.getCurrentCount() + 1);
-        this.progress.setCurrentSize(this.progress.getCurrentSize() + estimateAverageTileSize());
-        this.progress.setLastUpdateTime(System.currentTimeMillis());
-        this.normalizeProgress();
-    }
+        URL url = this.fileStore.findFile(tile.getPath(), false);
 
-    protected synchronized void removeAbsentTile(Tile tile)
-    {
-        this.missingTiles.remove(tile);
-        // Decrease progress expected total count and size
-        this.progress.setTotalCount(this.progress.getTotalCount() - 1);
-        this.progress.setTotalSize(this.progress.getTotalSize() - estimateAverageTileSize());
-        this.progress.setLastUpdateTime(System.currentTimeMillis());
-        this.normalizeProgress();
+        return url != null && !this.elevationModel.isFileExpired(tile, url, this.fileStore) ? url : null;
     }
 
-    protected void normalizeProgress()
+    protected Retriever createRetriever(Tile tile)
     {
-        if (this.progress.getTotalCount() < this.progress.getCurrentCount())
-        {
-            this.progress.setTotalCount(this.progress.getCurrentCount());
-            this.progress.setTotalSize(this.progress.getCurrentSize());
-        }
+        return this.elevationModel.createRetriever(tile,
+            new BasicElevationModel.DownloadPostProcessor(tile, this.elevationModel, this.fileStore));
     }
 
     protected long getEstimatedMissingDataSize()
@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.geom.Angle;
+import gov.nasa.worldwind.geom.LatLon;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.globes.Globe;
+import gov.nasa.worldwind.util.LevelSet;
+import gov.nasa.worldwind.util.Logging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A quadtree of minimum and maximum elevations that covers the globe, built from the extreme elevations an elevation
+ * model already provides. The finest level is a grid of cells that each hold the extremes of the elevation model within
+ * the cell. Each coarser level holds the extremes of 2x2 cells of the level below it, up to a single cell covering the
+ * globe.
+ * <p/>
+ * The pyramid answers how far a point can move before it can possibly reach the terrain, without looking up any
+ * elevations. {@link gov.nasa.worldwind.util.RayCastingSupport} uses this to step over regions of empty space.
+ * <p/>
+ * The finest grid matches the extreme elevations grid of the model's {@link BasicElevationModel}s. Other models
+ * contribute the extremes they report for each cell, on a grid of {@link #DEFAULT_CELL_SIZE} degree cells if no model
+ * has an extreme elevations grid.
+ *
+ * @version $Id$
+ */
+public class ElevationPyramid
+{
+    /** The size in degrees of the finest cells when no model provides an extreme elevations grid. */
+    protected static final double DEFAULT_CELL_SIZE = 1;
+    /** Fraction of the computed clearance that is reported, absorbing the approximations made in computing it. */
+    protected static final double CLEARANCE_FACTOR = 0.99;
+    /** Used to keep cell edges that coincide with grid lines from selecting the neighboring grid cell. */
+    protected static final double EDGE_EPSILON = 1e-9;
+
+    protected final ElevationModel elevationModel;
+    protected final List<ElevationModel> sourceModels;
+    protected final double cellDeltaLat;
+    protected final double cellDeltaLon;
+    /** Number of rows in each level, finest level first. */
+    protected final int[] numRows;
+    /** Number of columns in each level, finest level first. */
+    protected final int[] numCols;
+    /** Minimum elevations of each level's cells, in row major order from the southwest cell. */
+    protected final float[][] minElevations;
+    /** Maximum elevations of each level's cells, in row major order from the southwest cell. */
+    protected final float[][] maxElevations;
+
+    /**
+     * Builds a pyramid from the extreme elevations of an elevation model.
+     *
+     * @param elevationModel the elevation model to build the pyramid from.
+     *
+     * @throws IllegalArgumentException if the elevation model is null.
+     */
+    public ElevationPyramid(ElevationModel elevationModel)
+    {
+        if (elevationModel == null)
+        {
+            String msg = Logging.getMessage("nullValue.ElevationModelIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.elevationModel = elevationModel;
+        this.sourceModels = new ArrayList<ElevationModel>();
+        collectSourceModels(elevationModel, this.sourceModels);
+
+        // Use the finest extremes grid of the model's components, so that each of the grid's cells maps to one cell.
+        double deltaLat = DEFAULT_CELL_SIZE;
+        double deltaLon = DEFAULT_CELL_SIZE;
+        boolean haveGrid = false;
+        for (ElevationModel em : this.sourceModels)
+        {
+            if (!hasExtremesGrid(em))
+                continue;
+
+            LatLon delta = ((BasicElevationModel) em).getLevels().getLevel(
+                ((BasicElevationModel) em).getExtremesLevel()).getTileDelta();
+            if (!haveGrid || delta.latitude.degrees < deltaLat)
+                deltaLat = delta.latitude.degrees;
+            if (!haveGrid || delta.longitude.degrees < deltaLon)
+                deltaLon = delta.longitude.degrees;
+            haveGrid = true;
+        }
+
+        this.cellDeltaLat = deltaLat;
+        this.cellDeltaLon = deltaLon;
+
+        // Determine the dimensions of each level, halving each dimension until a single cell covers the globe.
+        List<int[]> dimensions = new ArrayList<int[]>();
+        int rows = (int) Math.ceil(180 / deltaLat - EDGE_EPSILON);
+        int cols = (int) Math.ceil(360 / deltaLon - EDGE_EPSILON);
+        dimensions.add(new int[] {rows, cols});
+        while (rows > 1 || cols > 1)
+        {
+            rows = (rows + 1) / 2;
+            cols = (cols + 1) / 2;
+            dimensions.add(new int[] {rows, cols});
+        }
+
+        int numLevels = dimensions.size();
+        this.numRows = new int[numLevels];
+        this.numCols = new int[numLevels];
+        this.minElevations = new float[numLevels][];
+        this.maxElevations = new float[numLevels][];
+        for (int i = 0; i < numLevels; i++)
+        {
+            this.numRows[i] = dimensions.get(i)[0];
+            this.numCols[i] = dimensions.get(i)[1];
+        }
+
+        this.buildFinestLevel();
+        for (int i = 1; i < numLevels; i++)
+        {
+            this.buildLevel(i);
+        }
+    }
+
+    protected static void collectSourceModels(ElevationModel em, List<ElevationModel> models)
+    {
+        if (em instanceof CompoundElevationModel)
+        {
+            for (ElevationModel child : ((CompoundElevationModel) em).getElevationModels())
+            {
+                collectSourceModels(child, models);
+            }
+        }
+        else if (em != null)
+        {
+            models.add(em);
+        }
+    }
+
+    protected static boolean hasExtremesGrid(ElevationModel em)
+    {
+        return em instanceof BasicElevationModel && ((BasicElevationModel) em).getExtremesLevel() >= 0
+            && ((BasicElevationModel) em).getExtremes() != null;
+    }
+
+    /**
+     * Returns the elevation model this pyramid was built from.
+     *
+     * @return this pyramid's elevation model.
+     */
+    public ElevationModel getElevationModel()
+    {
+        return this.elevationModel;
+    }
+
+    /**
+     * Indicates whether this pyramid still describes its elevation model. A pyramid becomes out of date when models are
+     * added to or removed from a {@link CompoundElevationModel} it was built from.
+     *
+     * @return true if the pyramid was built from the elevation model's current components, otherwise false.
+     */
+    public boolean isCurrent()
+    {
+        List<ElevationModel> models = new ArrayList<ElevationModel>(this.sourceModels.size());
+        collectSourceModels(this.elevationModel, models);
+
+        return models.equals(this.sourceModels);
+    }
+
+    /**
+     * Returns the number of levels in this pyramid, including the finest level and the single cell covering the globe.
+     *
+     * @return the number of levels.
+     */
+    public int getNumLevels()
+    {
+        return this.numRows.length;
+    }
+
+    /**
+     * Computes the distance a point can move in any direction before it can reach the terrain. A point that moves this
+     * distance or less stays within a region whose highest elevation is below the point, and drops by no more than the
+     * distance it moves, so it remains above the terrain.
+     *
+     * @param globe     the globe the point is on, used to convert angular distances to meters.
+     * @param latitude  the point's latitude.
+     * @param longitude the point's longitude.
+     * @param elevation the point's elevation, in meters.
+     *
+     * @return the distance in meters the point can move while staying above the terrain, or 0 if the finest cell
+     *         containing the point has terrain at or above the point's elevation.
+     *
+     * @throws IllegalArgumentException if the globe or either angle is null.
+     */
+    public double computeClearance(Globe globe, Angle latitude, Angle longitude, double elevation)
+    {
+        if (globe == null)
+        {
+            String msg = Logging.getMessage("nullValue.GlobeIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (latitude == null || longitude == null)
+        {
+            String msg = Logging.getMessage("nullValue.AngleIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        double lat = latitude.degrees + 90;
+        double lon = longitude.degrees + 180;
+        int row = clamp((int) (lat / this.cellDeltaLat), this.numRows[0]);
+        int col = clamp((int) (lon / this.cellDeltaLon), this.numCols[0]);
+
+        // The smallest meridional radius of curvature converts angles to distances that are never longer than the
+        // distances on the ellipsoid.
+        double radius = globe.getPolarRadius() * globe.getPolarRadius() / globe.getEquatorialRadius();
+        double cosLat = Math.cos(latitude.radians);
+
+        // Finer cells are lower but narrower, so each level containing the point may allow the longest move.
+        double clearance = 0;
+        for (int level = 0; level < this.numRows.length; level++, row >>= 1, col >>= 1)
+        {
+            double height = elevation - this.maxElevations[level][row * this.numCols[level] + col];
+            if (height <= clearance)
+                continue;
+
+            double cellLat = this.cellDeltaLat * (1 << level);
+            double cellLon = this.cellDeltaLon * (1 << level);
+            double dLat = Math.min(lat - row * cellLat, Math.min((row + 1) * cellLat, 180) - lat);
+            double dLon = Math.min(lon - col * cellLon, Math.min((col + 1) * cellLon, 360) - lon);
+
+            // The distance to the nearest parallel bounding the cell, and to the great circle through the nearest
+            // meridian bounding it.
+            double toParallel = radius * Math.toRadians(dLat);
+            double toMeridian = radius * Math.asin(Math.min(1, Math.abs(Math.sin(Math.toRadians(dLon))) * cosLat));
+
+            double distance = Math.min(height, Math.min(toParallel, toMeridian));
+            if (distance > clearance)
+                clearance = distance;
+        }
+
+        return clearance * CLEARANCE_FACTOR;
+    }
+
+    /**
+     * Returns the extreme elevations of a sector according to this pyramid. The extremes are those of the smallest
+     * cells that cover the sector, so they bound the sector's elevations but may be wider than the sector's actual
+     * extremes.
+     *
+     * @param sector the sector of interest.
+     *
+     * @return a two-element array containing the minimum and maximum elevations.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     */
+    public double[] getExtremeElevations(Sector sector)
+    {
+        if (sector == null)
+        {
+            String msg = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int minRow = clamp((int) ((sector.minLatitude.degrees + 90) / this.cellDeltaLat), this.numRows[0]);
+        int maxRow = clamp((int) ((sector.maxLatitude.degrees + 90) / this.cellDeltaLat), this.numRows[0]);
+        int minCol = clamp((int) ((sector.minLongitude.degrees + 180) / this.cellDeltaLon), this.numCols[0]);
+        int maxCol = clamp((int) ((sector.maxLongitude.degrees + 180) / this.cellDeltaLon), this.numCols[0]);
+
+        // Go up the pyramid until the sector falls within 2x2 cells.
+        int level = 0;
+        while (level < this.numRows.length - 1 && (maxRow - minRow > 1 || maxCol - minCol > 1))
+        {
+            level++;
+            minRow >>= 1;
+            maxRow >>= 1;
+            minCol >>= 1;
+            maxCol >>= 1;
+        }
+
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (int row = minRow; row <= maxRow; row++)
+        {
+            for (int col = minCol; col <= maxCol; col++)
+            {
+                int index = row * this.numCols[level] + col;
+                if (this.minElevations[level][index] < min)
+                    min = this.minElevations[level][index];
+                if (this.maxElevations[level][index] > max)
+                    max = this.maxElevations[level][index];
+            }
+        }
+
+        return new double[] {min, max};
+    }
+
+    protected static int clamp(int index, int count)
+    {
+        return index < 0 ? 0 : index >= count ? count - 1 : index;
+    }
+
+    protected void buildFinestLevel()
+    {
+        int rows = this.numRows[0];
+        int cols = this.numCols[0];
+        float[] min = new float[rows * cols];
+        float[] max = new float[rows * cols];
+        Arrays.fill(min, Float.MAX_VALUE);
+        Arrays.fill(max, -Float.MAX_VALUE);
+
+        for (ElevationModel em : this.sourceModels)
+        {
+            if (hasExtremesGrid(em))
+                this.addExtremesGrid((BasicElevationModel) em, min, max);
+            else
+                this.addExtremes(em, min, max);
+        }
+
+        // Locations outside every model have the elevation the model reports for missing coverage.
+        float defaultMin = (float) Math.min(0, this.elevationModel.getMinElevation());
+        float defaultMax = (float) Math.max(0, this.elevationModel.getMaxElevation());
+        for (int i = 0; i < min.length; i++)
+        {
+            if (min[i] > max[i])
+            {
+                min[i] = defaultMin;
+                max[i] = defaultMax;
+            }
+        }
+
+        this.minElevations[0] = min;
+        this.maxElevations[0] = max;
+    }
+
+    protected void addExtremesGrid(BasicElevationModel em, float[] min, float[] max)
+    {
+        LevelSet levels = em.getLevels();
+        LatLon delta = levels.getLevel(em.getExtremesLevel()).getTileDelta();
+        LatLon origin = levels.getTileOrigin();
+        Sector coverage = levels.getSector();
+        short[] extremes = em.getExtremes();
+
+        // The extremes grid is indexed as in BasicElevationModel.getExtremeElevations.
+        double dLat = delta.latitude.degrees;
+        double dLon = delta.longitude.degrees;
+        int gridCols = (int) Math.ceil(360 / dLon - EDGE_EPSILON);
+        int gridRows = extremes.length / (2 * gridCols);
+        double missingDataSignal = em.getMissingDataSignal();
+        float missingDataReplacement = (float) em.getMissingDataReplacement();
+
+        int cols = this.numCols[0];
+        int firstRow = clamp((int) ((coverage.minLatitude.degrees + 90) / this.cellDeltaLat), this.numRows[0]);
+        int lastRow = clamp((int) ((coverage.maxLatitude.degrees + 90 - EDGE_EPSILON) / this.cellDeltaLat), this.numRows[0]);
+        int firstCol = clamp((int) ((coverage.minLongitude.degrees + 180) / this.cellDeltaLon), cols);
+        int lastCol = clamp((int) ((coverage.maxLongitude.degrees + 180 - EDGE_EPSILON) / this.cellDeltaLon), cols);
+
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            double south = row * this.cellDeltaLat - 90;
+            double north = Math.min(south + this.cellDeltaLat, 90);
+            int gridRow0 = clamp((int) Math.floor((south - origin.latitude.degrees + EDGE_EPSILON) / dLat), gridRows);
+            int gridRow1 = clamp((int) Math.floor((north - origin.latitude.degrees - EDGE_EPSILON) / dLat), gridRows);
+
+            for (int col = firstCol; col <= lastCol; col++)
+            {
+                double west = col * this.cellDeltaLon - 180;
+                double east = Math.min(west + this.cellDeltaLon, 180);
+                int gridCol0 = (int) Math.floor((west - origin.longitude.degrees + EDGE_EPSILON) / dLon);
+                int gridCol1 = (int) Math.floor((east - origin.longitude.degrees - EDGE_EPSILON) / dLon);
+
+                int index = row * cols + col;
+                for (int gridRow = gridRow0; gridRow <= gridRow1; gridRow++)
+                {
+                    for (int c = gridCol0; c <= gridCol1; c++)
+                    {
+                        // The grid wraps at its origin's longitude.
+                        int gridCol = ((c % gridCols) + gridCols) % gridCols;
+                        int gridIndex = 2 * (gridRow * gridCols + gridCol);
+
+                        for (int i = gridIndex; i <= gridIndex + 1; i++)
+                        {
+                            float value = extremes[i] == missingDataSignal ? missingDataReplacement : extremes[i];
+                            if (value < min[index])
+                                min[index] = value;
+                            if (value > max[index])
+                                max[index] = value;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    protected void addExtremes(ElevationModel em, float[] min, float[] max)
+    {
+        int rows = this.numRows[0];
+        int cols = this.numCols[0];
+
+        for (int row = 0; row < rows; row++)
+        {
+            double south = row * this.cellDeltaLat - 90;
+            double north = Math.min(south + this.cellDeltaLat, 90);
+
+            for (int col = 0; col < cols; col++)
+            {
+                double west = col * this.cellDeltaLon - 180;
+                double east = Math.min(west + this.cellDeltaLon, 180);
+
+                Sector sector = Sector.fromDegrees(south, north, west, east);
+                if (em.intersects(sector) < 0)
+                    continue;
+
+                double[] extremes = em.getExtremeElevations(sector);
+                int index = row * cols + col;
+                if (extremes[0] < min[index])
+                    min[index] = (float) extremes[0];
+                if (extremes[1] > max[index])
+                    max[index] = (float) extremes[1];
+            }
+        }
+    }
+
+    protected void buildLevel(int level)
+    {
+        int rows = this.numRows[level];
+        int cols = this.numCols[level];
+        int childRows = this.numRows[level - 1];
+        int childCols = this.numCols[level - 1];
+        float[] childMin = this.minElevations[level - 1];
+        float[] childMax = this.maxElevations[level - 1];
+        float[] min = new float[rows * cols];
+        float[] max = new float[rows * cols];
+
+        for (int row = 0; row < rows; row++)
+        {
+            for (int col = 0; col < cols; col++)
+            {
+                float cellMin = Float.MAX_VALUE;
+                float cellMax = -Float.MAX_VALUE;
+
+                for (int r = 2 * row; r < Math.min(2 * row + 2, childRows); r++)
+                {
+                    for (int c = 2 * col; c < Math.min(2 * col + 2, childCols); c++)
+                    {
+                        int childIndex = r * childCols + c;
+                        if (childMin[childIndex] < cellMin)
+                            cellMin = childMin[childIndex];
+                        if (childMax[childIndex] > cellMax)
+                            cellMax = childMax[childIndex];
+                    }
+                }
+
+                min[row * cols + col] = cellMin;
+                max[row * cols + col] = cellMax;
+            }
+        }
+
+        this.minElevations[level] = min;
+        this.maxElevations[level] = max;
+    }
+}
@@ -8,12 +8,12 @@ import android.graphics.*;
 import gov.nasa.worldwind.*;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.avlist.AVList;
-import gov.nasa.worldwind.cache.BasicMemoryCache;
 import gov.nasa.worldwind.cache.Cacheable;
 import gov.nasa.worldwind.cache.GpuResourceCache;
 import gov.nasa.worldwind.cache.MemoryCache;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.geom.Matrix;
+import gov.nasa.worldwind.globes.EllipsoidalGlobe;
 import gov.nasa.worldwind.globes.Globe;
 import gov.nasa.worldwind.pick.PickedObject;
 import gov.nasa.worldwind.render.*;
@@ -22,13 +22,18 @@ import gov.nasa.worldwind.util.BufferUtil;
 import gov.nasa.worldwind.util.Level;
 import gov.nasa.worldwind.util.LevelSet;
 import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.util.PerformanceStatistic;
+import gov.nasa.worldwind.util.ScreenSpaceErrorLod;
 import gov.nasa.worldwind.util.Tile;
+import gov.nasa.worldwind.util.TileKey;
 import gov.nasa.worldwind.util.WWXML;
 import java.beans.PropertyChangeEvent;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import javax.xml.xpath.XPath;
 import org.w3c.dom.Element;
 import android.opengl.GLES20;
@@ -213,15 +218,157 @@ public class TiledTessellator extends WWObjectImpl
 		}
 	}
 
+	/**
+	 * Locates the tiles of one level within a TerrainTileList by row and column. The tiles are held in a grid spanning
+	 * the rows and columns of the level's tiles in the list, or only in a list if that grid would be too large.
+	 */
+	protected static class LevelTileIndex {
+		protected static final int MAX_GRID_SIZE = 4096;
+		protected Level level;
+		protected int minRow;
+		protected int minCol;
+		protected int numRows;
+		protected int numCols;
+		protected ArrayList<TerrainTile> tiles = new ArrayList<TerrainTile>();
+		protected TerrainTile[] grid;
+		protected boolean useGrid;
+
+		public LevelTileIndex() {
+		}
+
+		public void build() {
+			int maxRow = Integer.MIN_VALUE, maxCol = Integer.MIN_VALUE;
+			this.minRow = Integer.MAX_VALUE;
+			this.minCol = Integer.MAX_VALUE;
+			for (int i = 0; i < this.tiles.size(); i++) {
+				TerrainTile tile = this.tiles.get(i);
+				if (tile.getRow() < this.minRow) this.minRow = tile.getRow();
+				if (tile.getRow() > maxRow) maxRow = tile.getRow();
+				if (tile.getColumn() < this.minCol) this.minCol = tile.getColumn();
+				if (tile.getColumn() > maxCol) maxCol = tile.getColumn();
+			}
+
+			this.numRows = maxRow - this.minRow + 1;
+			this.numCols = maxCol - this.minCol + 1;
+			this.useGrid = (long) this.numRows * this.numCols <= MAX_GRID_SIZE;
+			if (!this.useGrid) return;
+
+			if (this.grid == null || this.grid.length < this.numRows * this.numCols)
+				this.grid = new TerrainTile[this.numRows * this.numCols];
+			else
+				Arrays.fill(this.grid, 0, this.numRows * this.numCols, null);
+
+			for (int i = 0; i < this.tiles.size(); i++) {
+				TerrainTile tile = this.tiles.get(i);
+				this.grid[(tile.getRow() - this.minRow) * this.numCols + tile.getColumn() - this.minCol] = tile;
+			}
+		}
+
+		public TerrainTile get(int row, int column) {
+			if (row < this.minRow || row >= this.minRow + this.numRows || column < this.minCol
+					|| column >= this.minCol + this.numCols) return null;
+
+			if (this.useGrid) return this.grid[(row - this.minRow) * this.numCols + column - this.minCol];
+
+			for (int i = 0; i < this.tiles.size(); i++) {
+				TerrainTile tile = this.tiles.get(i);
+				if (tile.getRow() == row && tile.getColumn() == column) return tile;
+			}
+
+			return null;
+		}
+	}
+
 	protected static class TerrainTileList extends ArrayList<SectorGeometry> implements SectorGeometryList {
 		private static final long serialVersionUID = 7740545209150322934L;
 		protected Sector sector;
 		protected TiledTessellator tessellator;
+		// Index of the tiles by level number, rebuilt when the list's tiles have changed.
+		protected LevelTileIndex[] levelIndices = new LevelTileIndex[0];
+		protected ArrayList<LevelTileIndex> usedLevelIndices = new ArrayList<LevelTileIndex>();
+		protected boolean indexValid;
 
 		public TerrainTileList(TiledTessellator tessellator) {
 			this.tessellator = tessellator;
 		}
 
+		@Override
+		public boolean add(SectorGeometry sg) {
+			this.indexValid = false;
+			return super.add(sg);
+		}
+
+		@Override
+		public void clear() {
+			this.indexValid = false;
+			super.clear();
+		}
+
+		/**
+		 * Computes the point on the tile containing a location. The tile is found by computing the row and column
+		 * that contain the location in each level that has tiles in this list, instead of testing each tile's sector.
+		 *
+		 * @return true if a tile with geometry contains the location, otherwise false.
+		 */
+		protected boolean findSurfacePoint(Angle latitude, Angle longitude, Vec4 result) {
+			if (this.sector == null || !this.sector.contains(latitude, longitude)) return false;
+
+			if (!this.indexValid) this.buildIndex();
+
+			LatLon origin = this.tessellator.levels.getTileOrigin();
+			double gridLat = latitude.degrees - origin.latitude.degrees;
+			double gridLon = longitude.degrees - origin.longitude.degrees;
+			if (gridLon < 0) gridLon += 360;
+
+			for (int i = 0; i < this.usedLevelIndices.size(); i++) {
+				LevelTileIndex index = this.usedLevelIndices.get(i);
+				LatLon delta = index.level.getTileDelta();
+				double r = gridLat / delta.latitude.degrees;
+				double c = gridLon / delta.longitude.degrees;
+				int row = (int) Math.floor(r);
+				int col = (int) Math.floor(c);
+
+				// A location on a tile's lower or left edge is also on the upper or right edge of the adjacent tile.
+				for (int tr = row; tr >= (r == row ? row - 1 : row); tr--) {
+					for (int tc = col; tc >= (c == col ? col - 1 : col); tc--) {
+						TerrainTile tile = index.get(tr, tc);
+						if (tile != null && this.tessellator.getSurfacePoint(tile, latitude, longitude, result))
+							return true;
+					}
+				}
+			}
+
+			return false;
+		}
+
+		protected void buildIndex() {
+			for (int i = 0; i < this.usedLevelIndices.size(); i++) {
+				this.usedLevelIndices.get(i).tiles.clear();
+			}
+			this.usedLevelIndices.clear();
+
+			for (int i = 0; i < this.size(); i++) {
+				TerrainTile tile = (TerrainTile) this.get(i);
+				int levelNumber = tile.getLevelNumber();
+				if (levelNumber >= this.levelIndices.length)
+					this.levelIndices = Arrays.copyOf(this.levelIndices, levelNumber + 1);
+
+				LevelTileIndex index = this.levelIndices[levelNumber];
+				if (index == null) index = this.levelIndices[levelNumber] = new LevelTileIndex();
+				if (index.tiles.isEmpty()) {
+					index.level = tile.getLevel();
+					this.usedLevelIndices.add(index);
+				}
+				index.tiles.add(tile);
+			}
+
+			for (int i = 0; i < this.usedLevelIndices.size(); i++) {
+				this.usedLevelIndices.get(i).build();
+			}
+
+			this.indexValid = true;
+		}
+
 		/** {@inheritDoc} */
 		public Sector getSector() {
 			return this.sector;
@@ -395,14 +542,33 @@ public class TiledTessellator extends WWObjectImpl
 		}
 	}
 
+	/**
+	 * Holds a tile's vertices, either as 32-bit floating point points relative to the tile's reference center, or as
+	 * 16-bit unsigned heights above the tile's implicit latitude/longitude grid. In the latter case each vertex is
+	 * decoded from its height and the sines and cosines of its row's latitude and its column's longitude, and the
+	 * tile's vertex buffer object is loaded with 16-bit points quantized to the tile's bounding box. The quantized
+	 * points are mapped back to the bounding box by the vertex matrix, so both encodings are drawn by the same shaders.
+	 */
 	protected static class TerrainGeometry implements Cacheable {
 		protected Vec4 referenceCenter = new Vec4();
-		protected Matrix transformMatrix = Matrix.fromIdentity();
+		protected Matrix vertexMatrix = Matrix.fromIdentity();
 		protected FloatBuffer points;
+		protected short[] heights;
+		protected double heightOffset;
+		protected double heightScale;
+		/**
+		 * Four values for each row of vertices: the distance from the globe's axis and the Y coordinate of the row's
+		 * latitude at zero elevation, followed by the cosine and sine of the row's latitude.
+		 */
+		protected double[] rowCoords;
+		/** Two values for each column of vertices: the sine and cosine of the column's longitude. */
+		protected double[] columnCoords;
+		protected int vertexCount;
 		protected final Object vboCacheKey = new Object();
 		protected boolean mustRegnerateVbos;
 		protected TerrainSharedGeometry sharedGeom;
 		protected double verticalExaggeration;
+		protected TerrainTriangleTree triangleTree;
 
 		public TerrainGeometry() {
 		}
@@ -411,16 +577,269 @@ public class TiledTessellator extends WWObjectImpl
 			// This tile's size in bytes is computed as follows:
 			// self: 4 bytes (1 32-bit reference)
 			// referenceCenter: 36 bytes (1 32-bit reference + 4 64-bit floats)
-			// transformMatrix: 132 bytes (1 32-bit reference + 16 64-bit floats)
+			// vertexMatrix: 132 bytes (1 32-bit reference + 16 64-bit floats)
 			// points: 4 bytes + variable (1 32-bit reference + variable num of 32-bit floats)
+			// heights: 4 bytes + variable (1 32-bit reference + variable num of 16-bit integers)
+			// heightOffset, heightScale: 16 bytes (2 64-bit floats)
+			// rowCoords: 4 bytes + variable (1 32-bit reference + variable num of 64-bit floats)
+			// columnCoords: 4 bytes + variable (1 32-bit reference + variable num of 64-bit floats)
+			// vertexCount: 4 bytes (1 32-bit integer)
 			// vboCacheKey: 4 bytes (1 32-bit reference)
 			// sharedGeom: 4 bytes (1 32-bit reference)
-			// total: 184 bytes
+			// triangleTree: 4 bytes + variable (1 32-bit reference + optional tree)
+			// total: 220 bytes + variable
 
-			long size = 184;
+			long size = 220;
 			size += this.points != null ? 4 * this.points.capacity() : 0;
+			size += this.heights != null ? 2 * this.heights.length : 0;
+			size += this.rowCoords != null ? 8 * this.rowCoords.length : 0;
+			size += this.columnCoords != null ? 8 * this.columnCoords.length : 0;
+			size += this.triangleTree != null ? this.triangleTree.getSizeInBytes() : 0;
 			return size;
 		}
+
+		public boolean hasPoints() {
+			return this.vertexCount > 0;
+		}
+
+		/**
+		 * Returns the GL data type of the points loaded into the tile's vertex buffer object.
+		 *
+		 * @return <code>GL_UNSIGNED_SHORT</code> if the tile's vertices are stored as heights, otherwise
+		 *         <code>GL_FLOAT</code>.
+		 */
+		public int getPointType() {
+			return this.heights != null ? GLES20.GL_UNSIGNED_SHORT : GLES20.GL_FLOAT;
+		}
+
+		/**
+		 * Copies a run of the tile's points into an array as floating point XYZ coordinates relative to the tile's
+		 * reference center, decoding the points from their heights if necessary.
+		 *
+		 * @param first  the index of the first vertex to copy.
+		 * @param count  the number of vertices to copy.
+		 * @param result the array to receive the coordinates. Must have room for 3 * count values past the offset.
+		 * @param offset the index of the array at which to store the first coordinate.
+		 */
+		public void getPoints(int first, int count, float[] result, int offset) {
+			if (this.heights == null) {
+				this.points.position(3 * first);
+				this.points.get(result, offset, 3 * count);
+				this.points.rewind();
+				return;
+			}
+
+			// A point at height h above a location on an ellipsoid is the location's point at zero height offset by h
+			// along the location's geodetic normal. Both are a rotation of the row's values about the globe's axis.
+			int rowLength = this.columnCoords.length / 2;
+			double cx = this.referenceCenter.x, cy = this.referenceCenter.y, cz = this.referenceCenter.z;
+			for (int i = first, end = first + count; i < end; i++) {
+				int r = 4 * (i / rowLength);
+				int c = 2 * (i % rowLength);
+				double h = this.heightOffset + this.heightScale * (this.heights[i] & 0xFFFF);
+				double axisDistance = this.rowCoords[r] + h * this.rowCoords[r + 2];
+				result[offset++] = (float) (axisDistance * this.columnCoords[c] - cx);
+				result[offset++] = (float) (this.rowCoords[r + 1] + h * this.rowCoords[r + 3] - cy);
+				result[offset++] = (float) (axisDistance * this.columnCoords[c + 1] - cz);
+			}
+		}
+	}
+
+	/**
+	 * A bounding volume hierarchy over the triangles of a tile's surface, excluding the tile's skirts. The tile's cells
+	 * are grouped into blocks of LEAF_SIZE x LEAF_SIZE cells, and each level above the blocks groups 2x2 nodes of the
+	 * level below, up to a single root node. Each node holds the bounding box of its triangles in tile local
+	 * coordinates. A ray is tested only against the triangles of the blocks whose boxes it passes through. The tree
+	 * does not keep a copy of the tile's vertices; the vertices of each tested cell are read from the tile's geometry.
+	 */
+	protected static class TerrainTriangleTree {
+		protected static final int LEAF_SIZE = 4;
+		protected final int tileWidth;
+		protected final int tileHeight;
+		/** Number of node rows in each level, leaf level first. */
+		protected final int[] numRows;
+		/** Number of node columns in each level, leaf level first. */
+		protected final int[] numCols;
+		/** The minimum and maximum XYZ coordinates of each level's nodes, in row major order. */
+		protected final float[][] bounds;
+
+		public TerrainTriangleTree(TerrainGeometry geom, int tileWidth, int tileHeight) {
+			this.tileWidth = tileWidth;
+			this.tileHeight = tileHeight;
+
+			int rows = (tileHeight + LEAF_SIZE - 1) / LEAF_SIZE;
+			int cols = (tileWidth + LEAF_SIZE - 1) / LEAF_SIZE;
+			int numLevels = 1;
+			for (int r = rows, c = cols; r > 1 || c > 1; r = (r + 1) / 2, c = (c + 1) / 2)
+				numLevels++;
+
+			this.numRows = new int[numLevels];
+			this.numCols = new int[numLevels];
+			this.bounds = new float[numLevels][];
+			for (int level = 0; level < numLevels; level++, rows = (rows + 1) / 2, cols = (cols + 1) / 2) {
+				this.numRows[level] = rows;
+				this.numCols[level] = cols;
+				this.bounds[level] = new float[6 * rows * cols];
+			}
+
+			// Decode the tile's vertices once to compute the leaf bounds. The decoded vertices are not retained.
+			float[] coords = new float[3 * geom.vertexCount];
+			geom.getPoints(0, geom.vertexCount, coords, 0);
+			this.buildLeafBounds(coords);
+			for (int level = 1; level < numLevels; level++)
+				this.buildBounds(level);
+		}
+
+		public long getSizeInBytes() {
+			long size = 0;
+			for (float[] levelBounds : this.bounds)
+				size += 4 * levelBounds.length;
+
+			return size;
+		}
+
+		protected int vertexIndex(int i, int j) {
+			// Surface vertices are offset by one row and column of skirt vertices.
+			return (j + 1) * (this.tileWidth + 3) + i + 1;
+		}
+
+		protected void buildLeafBounds(float[] coords) {
+			float[] leafBounds = this.bounds[0];
+			for (int r = 0; r < this.numRows[0]; r++) {
+				for (int c = 0; c < this.numCols[0]; c++) {
+					int b = 6 * (r * this.numCols[0] + c);
+					leafBounds[b] = leafBounds[b + 1] = leafBounds[b + 2] = Float.MAX_VALUE;
+					leafBounds[b + 3] = leafBounds[b + 4] = leafBounds[b + 5] = -Float.MAX_VALUE;
+
+					int maxJ = Math.min((r + 1) * LEAF_SIZE, this.tileHeight);
+					int maxI = Math.min((c + 1) * LEAF_SIZE, this.tileWidth);
+					for (int j = r * LEAF_SIZE; j <= maxJ; j++) {
+						for (int i = c * LEAF_SIZE; i <= maxI; i++) {
+							int v = 3 * this.vertexIndex(i, j);
+							for (int k = 0; k < 3; k++) {
+								if (coords[v + k] < leafBounds[b + k]) leafBounds[b + k] = coords[v + k];
+								if (coords[v + k] > leafBounds[b + 3 + k]) leafBounds[b + 3 + k] = coords[v + k];
+							}
+						}
+					}
+				}
+			}
+		}
+
+		protected void buildBounds(int level) {
+			float[] levelBounds = this.bounds[level];
+			float[] childBounds = this.bounds[level - 1];
+			int childRows = this.numRows[level - 1];
+			int childCols = this.numCols[level - 1];
+
+			for (int r = 0; r < this.numRows[level]; r++) {
+				for (int c = 0; c < this.numCols[level]; c++) {
+					int b = 6 * (r * this.numCols[level] + c);
+					levelBounds[b] = levelBounds[b + 1] = levelBounds[b + 2] = Float.MAX_VALUE;
+					levelBounds[b + 3] = levelBounds[b + 4] = levelBounds[b + 5] = -Float.MAX_VALUE;
+
+					for (int cr = 2 * r; cr < Math.min(2 * r + 2, childRows); cr++) {
+						for (int cc = 2 * c; cc < Math.min(2 * c + 2, childCols); cc++) {
+							int cb = 6 * (cr * childCols + cc);
+							for (int k = 0; k < 3; k++) {
+								if (childBounds[cb + k] < levelBounds[b + k]) levelBounds[b + k] = childBounds[cb + k];
+								if (childBounds[cb + 3 + k] > levelBounds[b + 3 + k]) levelBounds[b + 3 + k] = childBounds[cb + 3 + k];
+							}
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Adds the intersections of a ray with the tile's surface triangles to a list.
+		 *
+		 * @param line the ray to intersect, in model coordinates.
+		 * @param geom the tile's geometry, which this tree was built from.
+		 * @param hits the list to receive the intersections, in model coordinates.
+		 */
+		public void intersect(Line line, TerrainGeometry geom, List<Intersection> hits) {
+			int top = this.bounds.length - 1;
+			this.intersect(line, geom, top, 0, 0, new float[12], hits);
+		}
+
+		protected void intersect(Line line, TerrainGeometry geom, int level, int row, int col, float[] cell,
+				List<Intersection> hits) {
+			Vec4 center = geom.referenceCenter;
+			if (!this.intersectsBounds(line, center, this.bounds[level], 6 * (row * this.numCols[level] + col))) return;
+
+			if (level > 0) {
+				for (int r = 2 * row; r < Math.min(2 * row + 2, this.numRows[level - 1]); r++) {
+					for (int c = 2 * col; c < Math.min(2 * col + 2, this.numCols[level - 1]); c++) {
+						this.intersect(line, geom, level - 1, r, c, cell, hits);
+					}
+				}
+				return;
+			}
+
+			// Test the two triangles of each cell in the block, in the order they're drawn: the upper-left, lower-left
+			// and upper-right vertices, then the lower-left, upper-right and lower-right vertices. The cell's vertices
+			// are stored in the following order: lower-left, lower-right, upper-left, upper-right.
+			Vec4 point = new Vec4();
+			int maxJ = Math.min((row + 1) * LEAF_SIZE, this.tileHeight);
+			int maxI = Math.min((col + 1) * LEAF_SIZE, this.tileWidth);
+			for (int j = row * LEAF_SIZE; j < maxJ; j++) {
+				for (int i = col * LEAF_SIZE; i < maxI; i++) {
+					geom.getPoints(this.vertexIndex(i, j), 2, cell, 0);
+					geom.getPoints(this.vertexIndex(i, j + 1), 2, cell, 6);
+
+					if (this.intersectTriangle(line, center, cell, 6, 0, 9, point)) {
+						hits.add(new Intersection(point, false));
+						point = new Vec4();
+					}
+
+					if (this.intersectTriangle(line, center, cell, 0, 9, 3, point)) {
+						hits.add(new Intersection(point, false));
+						point = new Vec4();
+					}
+				}
+			}
+		}
+
+		protected boolean intersectTriangle(Line line, Vec4 center, float[] v, int a, int b, int c, Vec4 result) {
+			return Triangle.intersect(line, v[a] + center.x, v[a + 1] + center.y, v[a + 2] + center.z, v[b] + center.x,
+					v[b + 1] + center.y, v[b + 2] + center.z, v[c] + center.x, v[c + 1] + center.y, v[c + 2] + center.z,
+					result);
+		}
+
+		protected boolean intersectsBounds(Line line, Vec4 center, float[] levelBounds, int b) {
+			// Clip the ray's parametric range against the box's slab along each axis.
+			Vec4 origin = line.getOrigin();
+			Vec4 dir = line.getDirection();
+			double tMin = 0;
+			double tMax = Double.MAX_VALUE;
+
+			for (int k = 0; k < 3; k++) {
+				double o = (k == 0 ? origin.x - center.x : k == 1 ? origin.y - center.y : origin.z - center.z);
+				double d = (k == 0 ? dir.x : k == 1 ? dir.y : dir.z);
+				double min = levelBounds[b + k];
+				double max = levelBounds[b + 3 + k];
+
+				if (d == 0) {
+					if (o < min || o > max) return false;
+					continue;
+				}
+
+				double t1 = (min - o) / d;
+				double t2 = (max - o) / d;
+				if (t1 > t2) {
+					double t = t1;
+					t1 = t2;
+					t2 = t;
+				}
+
+				if (t1 > tMin) tMin = t1;
+				if (t2 < tMax) tMax = t2;
+				if (tMin > tMax) return false;
+			}
+
+			return true;
+		}
 	}
 
 	protected static class TerrainSharedGeometry {
@@ -434,6 +853,63 @@ public class TiledTessellator extends WWObjectImpl
 		}
 	}
 
+	/**
+	 * Scratch arrays used while building a tile's vertices. Each thread that builds terrain geometry has its own
+	 * instance, which avoids constantly reallocating these arrays each time a tile is updated.
+	 */
+	protected static class TileBuildBuffers {
+		protected double[] tileElevations;
+		protected double[] tileRowElevations;
+		protected Vec4[] tilePoints;
+		protected float[] tileCoords;
+
+		public TileBuildBuffers() {
+		}
+	}
+
+	/**
+	 * Builds a tile's vertices on a task service thread. The vertices are written to a new TerrainGeometry that is not
+	 * visible to the render thread; the tessellator publishes the finished geometry on the render thread.
+	 */
+	protected static class GeometryBuildTask implements Runnable {
+		protected final TiledTessellator tessellator;
+		protected final TerrainTile tile;
+		protected final Globe globe;
+		protected final double verticalExaggeration;
+		protected TerrainGeometry geometry;
+		// Set on the render thread when the tile's sector expires after this task has been submitted.
+		protected volatile boolean expired;
+
+		public GeometryBuildTask(TiledTessellator tessellator, TerrainTile tile, Globe globe, double verticalExaggeration) {
+			this.tessellator = tessellator;
+			this.tile = tile;
+			this.globe = globe;
+			this.verticalExaggeration = verticalExaggeration;
+		}
+
+		public void run() {
+			if (Thread.currentThread().isInterrupted()) return; // The task was cancelled by the task service.
+
+			try {
+				TerrainGeometry geom = new TerrainGeometry();
+				this.tessellator.buildTileVertices(this.globe, this.verticalExaggeration, this.tile, geom,
+						tileBuildBuffers.get());
+				geom.verticalExaggeration = this.verticalExaggeration;
+				this.geometry = geom;
+			} catch (Exception e) {
+				Logging.error(Logging.getMessage("Tessellator.ExceptionBuildingGeometry", this.tile), e);
+			} finally {
+				// Hand the task back even if the build failed, so that the tile is no longer considered pending.
+				this.tessellator.completedBuilds.add(this);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.tile.toString();
+		}
+	}
+
 	protected static class TerrainPickGeometry {
 		protected Vec4 referenceCenter = new Vec4();
 		protected Matrix transformMatrix = Matrix.fromIdentity();
@@ -448,13 +924,24 @@ public class TiledTessellator extends WWObjectImpl
 	}
 
 	protected static final double DEFAULT_DETAIL_HINT_ORIGIN = 1.3;
+	/** The largest value of a quantized height or vertex coordinate. */
+	protected static final int QUANTIZED_COORD_MAX = 0xFFFF;
 	protected static Map<Object, TerrainSharedGeometry> sharedGeometry = new HashMap<Object, TerrainSharedGeometry>();
 	protected static Map<Object, TerrainPickGeometry> pickGeometry = new HashMap<Object, TerrainPickGeometry>();
 	protected static final int PICK_VERTEX_SHADER_PATH = R.raw.vertex_color_vert ;
 	protected static final int PICK_FRAGMENT_SHADER_PATH = R.raw.vertex_color_frag;
+	protected static final ThreadLocal<TileBuildBuffers> tileBuildBuffers = new ThreadLocal<TileBuildBuffers>() {
+		@Override
+		protected TileBuildBuffers initialValue() {
+			return new TileBuildBuffers();
+		}
+	};
 
 	protected double detailHintOrigin = DEFAULT_DETAIL_HINT_ORIGIN;
 	protected double detailHint;
+	protected ScreenSpaceErrorLod screenSpaceErrorLod;
+	protected ScreenSpaceErrorLod.TileTree<TerrainTile> tileTree;
+	protected boolean quantizeVertices = true;
 	protected Globe globe;
 	protected LevelSet levels;
 	protected List<TerrainTile> topLevelTiles = new ArrayList<TerrainTile>();
@@ -464,13 +951,17 @@ public class TiledTessellator extends WWObjectImpl
 	protected List<Sector> expiredSectors = new ArrayList<Sector>();
 	protected List<Sector> currentExpiredSectors = new ArrayList<Sector>();
 	protected final Object expiredSectorLock = new Object();
+	// Data structures used to build tile geometry on background threads. Pending builds are accessed only on the
+	// render thread. Completed builds are added by the task service's threads and published on the render thread.
+	protected Map<TileKey, GeometryBuildTask> pendingBuilds = new HashMap<TileKey, GeometryBuildTask>();
+	protected Queue<GeometryBuildTask> completedBuilds = new ConcurrentLinkedQueue<GeometryBuildTask>();
 	// Temporary properties used to avoid constant reallocation of data used during tile assembly and rendering.
 	protected Matrix mvpMatrix = Matrix.fromIdentity();
-	protected double[] tileElevations;
-	protected double[] tileRowElevations;
-	protected Vec4[] tilePoints;
-	protected float[] tileCoords;
 	protected float[] pointBuffer = new float[12];
+	// Temporary properties used to load the vertex buffer objects of tiles stored as heights.
+	protected float[] vboCoords;
+	protected short[] vboQuantizedCoords;
+	protected ShortBuffer vboPoints;
 	// Properties used for picking.
 	protected final Object pickProgramKey = new Object();
 	protected boolean pickProgramCreationFailed;
@@ -504,6 +995,9 @@ public class TiledTessellator extends WWObjectImpl
 		Object o = params.getValue(AVKey.DETAIL_HINT);
 		if (o != null && o instanceof Number) this.detailHint = ((Number) o).doubleValue();
 
+		o = params.getValue(AVKey.QUANTIZE_VERTICES);
+		if (o != null && o instanceof Boolean) this.quantizeVertices = (Boolean) o;
+
 		this.levels = new LevelSet(params);
 	}
 
@@ -513,6 +1007,9 @@ public class TiledTessellator extends WWObjectImpl
 		Double d = WWXML.getDouble(element, "DetailHint", xpath);
 		if (d != null) this.detailHint = d;
 
+		Boolean b = WWXML.getBoolean(element, "QuantizeVertices", xpath);
+		if (b != null) this.quantizeVertices = b;
+
 		this.levels = new LevelSet(LevelSet.paramsFromConfigDoc(element));
 	}
 
@@ -524,6 +1021,51 @@ public class TiledTessellator extends WWObjectImpl
 		this.detailHint = detailHint;
 	}
 
+	/**
+	 * Indicates the screen-space error selection used to choose terrain tiles, if any.
+	 * 
+	 * @return the screen-space error selection, or null if tiles are chosen by the detail hint.
+	 */
+	public ScreenSpaceErrorLod getScreenSpaceErrorLod() {
+		return this.screenSpaceErrorLod;
+	}
+
+	/**
+	 * Specifies a screen-space error selection that chooses terrain tiles instead of the detail hint. Tiles are then
+	 * refined until one elevation cell covers no more than the selection's maximum pixel error, and no more tiles than
+	 * the selection's budget are tessellated. The default is null, which chooses tiles by the detail hint.
+	 * 
+	 * @param lod
+	 *            the screen-space error selection. May be null.
+	 */
+	public void setScreenSpaceErrorLod(ScreenSpaceErrorLod lod) {
+		this.screenSpaceErrorLod = lod;
+	}
+
+	/**
+	 * Indicates whether tile vertices are stored as 16-bit heights above each tile's latitude/longitude grid, rather
+	 * than as 32-bit floating point positions.
+	 *
+	 * @return true if tile vertices are quantized, otherwise false.
+	 */
+	public boolean isQuantizeVertices() {
+		return this.quantizeVertices;
+	}
+
+	/**
+	 * Specifies whether tile vertices are stored as 16-bit heights above each tile's latitude/longitude grid, rather
+	 * than as 32-bit floating point positions. Heights are accurate to 1/65535th of the tile's range of elevations, and
+	 * are loaded into the tile's vertex buffer object as 16-bit positions quantized to the tile's bounding box. A
+	 * 32x32 vertex tile then uses less than a third of the memory of floating point positions. Heights are used only
+	 * with ellipsoidal globes; tiles of other globes are always stored as floating point positions. The new encoding
+	 * applies to tile geometry built after this call.
+	 *
+	 * @param quantizeVertices true to quantize tile vertices, otherwise false.
+	 */
+	public void setQuantizeVertices(boolean quantizeVertices) {
+		this.quantizeVertices = quantizeVertices;
+	}
+
 	@Override
 	public void propertyChange(PropertyChangeEvent event) {
 		super.propertyChange(event);
@@ -573,106 +1115,19 @@ public class TiledTessellator extends WWObjectImpl
 
 		TerrainGeometry geometry = tile.getGeometry(getTerrainGeometryCache());
 
-		if (geometry==null || geometry.points==null)
+		if (geometry==null || !geometry.hasPoints())
 			return null;
 
-		// Compute 'vertical' plane perpendicular to the ground, that contains the ray
-		Vec4 normalV = new Vec4();
-		globe.computeSurfaceNormalAtPoint(line.getOrigin(), normalV);
-		line.getDirection().cross3(normalV);
-		Plane verticalPlane = new Plane(normalV.x, normalV.y, normalV.z, -line.getOrigin().dot3(normalV));
-		if (!tile.getExtent().intersects(verticalPlane))
-			return null;
-
-		// Compute 'horizontal' plane perpendicular to the vertical plane, that contains the ray
-		Vec4 normalH = line.getDirection().cross3(normalV);
-		Plane horizontalPlane = new Plane(normalH.x, normalH.y, normalH.z, -line.getOrigin().dot3(normalH));
-		if (!tile.getExtent().intersects(horizontalPlane))
-			return null;
+		// Build the tile's triangle tree the first time the tile is intersected, and update the geometry's cached size.
+		if (geometry.triangleTree == null)
+		{
+			geometry.triangleTree = new TerrainTriangleTree(geometry, tile.getWidth(), tile.getHeight());
+			tile.setGeometry(this.getTerrainGeometryCache(), geometry);
+		}
 
 		Intersection[] hits;
 		ArrayList<Intersection> list = new ArrayList<Intersection>();
-
-		short[] indices = new short[geometry.sharedGeom.indices.limit()];
-		float[] coords = new float[geometry.points.limit()];
-		geometry.sharedGeom.indices.rewind();
-		geometry.points.rewind();
-		geometry.sharedGeom.indices.get(indices, 0, indices.length);
-		geometry.points.get(coords, 0, coords.length);
-		geometry.sharedGeom.indices.rewind();
-		geometry.points.rewind();
-
-		int trianglesNum = geometry.sharedGeom.indices.capacity() - 2;
-		double centerX = geometry.referenceCenter.x;
-		double centerY = geometry.referenceCenter.y;
-		double centerZ = geometry.referenceCenter.z;
-
-		// Compute maximum cell size based on tile delta lat, density and globe radius
-		double effectiveRadiusVertical = tile.extent.getEffectiveRadius(verticalPlane);
-		double effectiveRadiusHorizontal = tile.extent.getEffectiveRadius(horizontalPlane);
-
-		// Loop through all tile cells - triangle pairs
-		int startIndex = (tile.getWidth() + 2) * 2 + 6; // skip first skirt row and a couple degenerate cells
-		int endIndex = trianglesNum - startIndex; // ignore last skirt row and a couple degenerate cells
-		int k = -1;
-		for (int i = startIndex; i < endIndex; i += 2)
-		{
-			// Skip skirts and degenerate triangle cells - based on index sequence.
-			k = k == tile.getWidth() - 1 ? -4 : k + 1; // density x terrain cells interleaved with 4 skirt and degenerate cells.
-			if (k < 0)
-				continue;
-
-			// Triangle pair diagonal - v1 & v2
-			int vIndex = 3 * indices[i + 1];
-			Vec4 v1 = new Vec4(
-					coords[vIndex++] + centerX,
-					coords[vIndex++] + centerY,
-					coords[vIndex] + centerZ);
-
-			vIndex = 3 * indices[i + 2];
-			Vec4 v2 = new Vec4(
-					coords[vIndex++] + centerX,
-					coords[vIndex++] + centerY,
-					coords[vIndex] + centerZ);
-
-			Vec4 cellCenter = Vec4.mix3(.5, v1, v2);
-
-			// Test cell center distance to vertical plane
-			if (Math.abs(verticalPlane.distanceTo(cellCenter)) > effectiveRadiusVertical)
-				continue;
-
-			// Test cell center distance to horizontal plane
-			if (Math.abs(horizontalPlane.distanceTo(cellCenter)) > effectiveRadiusHorizontal)
-				continue;
-
-			// Prepare to test triangles - get other two vertices v0 & v3
-			Vec4 p = new Vec4();
-			vIndex = 3 * indices[i];
-			Vec4 v0 = new Vec4(
-					coords[vIndex++] + centerX,
-					coords[vIndex++] + centerY,
-					coords[vIndex] + centerZ);
-
-			vIndex = 3 * indices[i + 3];
-			Vec4 v3 = new Vec4(
-					coords[vIndex++] + centerX,
-					coords[vIndex++] + centerY,
-					coords[vIndex] + centerZ);
-
-			// Test triangle 1 intersection w ray
-			Triangle t = new Triangle(v0, v1, v2);
-			if (t.intersect(line, p))
-			{
-				list.add(new Intersection(p, false));
-			}
-
-			// Test triangle 2 intersection w ray
-			t = new Triangle(v1, v2, v3);
-			if (t.intersect(line, p))
-			{
-				list.add(new Intersection(p, false));
-			}
-		}
+		geometry.triangleTree.intersect(line, geometry, list);
 
 		int numHits = list.size();
 		if (numHits == 0)
@@ -708,7 +1163,7 @@ public class TiledTessellator extends WWObjectImpl
 	{
 		TerrainGeometry geometry = tile.getGeometry(getTerrainGeometryCache());
 
-		if (geometry==null || geometry.points==null)
+		if (geometry==null || !geometry.hasPoints())
 			return null;
 
 		// Check whether the tile includes the intersection elevation - assume cylinder as Extent
@@ -725,13 +1180,11 @@ public class TiledTessellator extends WWObjectImpl
 		ArrayList<Intersection> list = new ArrayList<Intersection>();
 
 		short[] indices = new short[geometry.sharedGeom.indices.limit()];
-		float[] coords = new float[geometry.points.limit()];
+		float[] coords = new float[3 * geometry.vertexCount];
 		geometry.sharedGeom.indices.rewind();
-		geometry.points.rewind();
 		geometry.sharedGeom.indices.get(indices, 0, indices.length);
-		geometry.points.get(coords, 0, coords.length);
 		geometry.sharedGeom.indices.rewind();
-		geometry.points.rewind();
+		geometry.getPoints(0, geometry.vertexCount, coords, 0);
 
 		int trianglesNum = geometry.sharedGeom.indices.capacity() - 2;
 		double centerX = geometry.referenceCenter.x;
@@ -801,12 +1254,7 @@ public class TiledTessellator extends WWObjectImpl
 	}
 
 	protected boolean getSurfacePoint(Angle latitude, Angle longitude, Vec4 result) {
-		for (SectorGeometry tile : this.currentTiles) {
-			if (tile.getSurfacePoint(latitude, longitude, result)) // Each tile tests the location against its sector.
-				return true;
-		}
-
-		return false;
+		return this.currentTiles.findSurfacePoint(latitude, longitude, result);
 	}
 
 	protected boolean getSurfacePoint(TerrainTile tile, Angle latitude, Angle longitude, Vec4 result) {
@@ -831,6 +1279,7 @@ public class TiledTessellator extends WWObjectImpl
 		}
 
 		this.assembleExpiredSectors();
+		this.publishGeometry(dc);
 		this.assembleTiles(dc);
 		this.currentExpiredSectors.clear();
 
@@ -874,6 +1323,8 @@ public class TiledTessellator extends WWObjectImpl
 
 		if (this.topLevelTiles.isEmpty()) this.createTopLevelTiles(dc);
 
+		if (this.screenSpaceErrorLod != null) this.screenSpaceErrorLod.select(dc, this, this.topLevelTiles, this.getTileTree());
+
 		for (int i = 0; i < this.topLevelTiles.size(); i++) {
 			Tile tile = this.topLevelTiles.get(i);
 
@@ -883,6 +1334,28 @@ public class TiledTessellator extends WWObjectImpl
 		}
 
 		this.currentTiles.setSector(this.currentCoverage.isEmpty() ? null : this.currentCoverage);
+		dc.setPerFrameStatistic(PerformanceStatistic.TERRAIN_TILE_COUNT, "Terrain Tiles", this.currentTiles.size());
+
+		if (dc.getGlobe().getElevationModel() != null) this.prefetchElevations(dc, dc.getGlobe().getElevationModel());
+	}
+
+	/**
+	 * Asks an elevation model to request the elevations the view is predicted to need next, at the resolution this
+	 * tessellator would select for them.
+	 * 
+	 * @param dc
+	 *            the current draw context.
+	 * @param model
+	 *            the elevation model.
+	 */
+	protected void prefetchElevations(DrawContext dc, ElevationModel model) {
+		if (model instanceof BasicElevationModel) {
+			((BasicElevationModel) model).prefetchTiles(dc, this.getDetailFactor());
+		} else if (model instanceof CompoundElevationModel) {
+			for (ElevationModel child : ((CompoundElevationModel) model).getElevationModels()) {
+				this.prefetchElevations(dc, child);
+			}
+		}
 	}
 
 	protected void createTopLevelTiles(DrawContext dc) {
@@ -914,9 +1387,14 @@ public class TiledTessellator extends WWObjectImpl
 		}
 
 		MemoryCache cache = this.getTerrainTileCache();
+		MemoryCache geomCache = this.getTerrainGeometryCache();
 
 		Tile[] subTiles = tile.subdivide(this.levels.getLevel(tile.getLevelNumber() + 1), cache, this);
-		for (Tile child : subTiles) {
+		int visibleChildren = 0; // Bit mask of the sub-tiles to add.
+		boolean childrenReady = true;
+		for (int i = 0; i < subTiles.length; i++) {
+			TerrainTile child = (TerrainTile) subTiles[i];
+
 			// Put all sub-tiles in the terrain tile cache to avoid repeatedly allocating them each frame. Top level
 			// tiles are not cached because they are held in the topLevelTiles list. Sub tiles are placed in the cache
 			// here, and updated when their terrain geometry changes.
@@ -925,10 +1403,25 @@ public class TiledTessellator extends WWObjectImpl
 			// Add descendant tiles that intersect the LevelSet's sector and intersect the viewing frustum. If half or
 			// more of the tile (in either latitude or longitude) extends beyond the LevelSet's sector, then two or
 			// three of its children will be entirely outside the LevelSet's sector.
-			if (this.levels.getSector().intersects(child.getSector()) && this.intersectsFrustum(dc, (TerrainTile) child)) {
-				this.addTileOrDescendants(dc, (TerrainTile) child);
+			if (this.levels.getSector().intersects(child.getSector()) && this.intersectsFrustum(dc, child)) {
+				visibleChildren |= 1 << i;
+
+				// Child geometry is built on a background thread. Until every visible child has geometry, this tile
+				// is displayed in their place so that the terrain has no holes while the children are being built.
+				if (child.getGeometry(geomCache) == null) {
+					this.requestGeometry(dc, child);
+					childrenReady = false;
+				}
 			}
 		}
+
+		if (childrenReady) {
+			for (int i = 0; i < subTiles.length; i++) {
+				if ((visibleChildren & (1 << i)) != 0) this.addTileOrDescendants(dc, (TerrainTile) subTiles[i]);
+			}
+		} else {
+			this.addTile(dc, tile);
+		}
 		tile.clearChildList();
 	}
 
@@ -946,7 +1439,7 @@ public class TiledTessellator extends WWObjectImpl
 
 	protected boolean intersectsFrustum(DrawContext dc, TerrainTile tile) {
 		Extent extent = tile.getExtent();
-		return extent == null || dc.getView().getFrustumInModelCoordinates().intersects(extent);
+		return extent == null || (dc.getView().getFrustumInModelCoordinates().intersects(extent) && !dc.isBelowHorizon(extent));
 	}
 
 	protected boolean meetsRenderCriteria(DrawContext dc, TerrainTile tile) {
@@ -958,9 +1451,41 @@ public class TiledTessellator extends WWObjectImpl
 	}
 
 	protected boolean needToSubdivide(DrawContext dc, TerrainTile tile) {
+		if (this.screenSpaceErrorLod != null) return this.screenSpaceErrorLod.isRefined(tile);
+
 		return tile.mustSubdivide(dc, this.getDetailFactor());
 	}
 
+	protected ScreenSpaceErrorLod.TileTree<TerrainTile> getTileTree() {
+		if (this.tileTree == null) {
+			this.tileTree = new ScreenSpaceErrorLod.TileTree<TerrainTile>() {
+				public boolean isTileVisible(DrawContext dc, TerrainTile tile) {
+					if (!levels.getSector().intersects(tile.getSector())) return false;
+
+					updateTileExtent(dc, tile);
+					return intersectsFrustum(dc, tile);
+				}
+
+				public boolean canRefine(DrawContext dc, TerrainTile tile) {
+					return !levels.isFinalLevel(tile.getLevelNumber()) && !atBestResolution(dc, tile);
+				}
+
+				public void subdivide(DrawContext dc, TerrainTile tile, List<TerrainTile> result) {
+					MemoryCache cache = getTerrainTileCache();
+					Tile[] subTiles = tile.subdivide(levels.getLevel(tile.getLevelNumber() + 1), cache, TiledTessellator.this);
+					for (Tile child : subTiles) {
+						// Cache the sub-tiles so that addTileOrDescendants refines the tile into the same instances.
+						if (!cache.contains(child.getTileKey())) cache.put(child.getTileKey(), child);
+						result.add((TerrainTile) child);
+					}
+					tile.clearChildList();
+				}
+			};
+		}
+
+		return this.tileTree;
+	}
+
 	protected double getDetailFactor() {
 		return this.detailHintOrigin + this.detailHint;
 	}
@@ -1017,6 +1542,10 @@ public class TiledTessellator extends WWObjectImpl
 			return true;
 		}
 
+		return this.intersectsExpiredSector(tile);
+	}
+
+	protected boolean intersectsExpiredSector(TerrainTile tile) {
 		if (this.currentExpiredSectors.isEmpty()) return false;
 
 		Sector tileSector = tile.getSector();
@@ -1034,8 +1563,16 @@ public class TiledTessellator extends WWObjectImpl
 	protected void regenerateGeometry(DrawContext dc, TerrainTile tile) {
 		MemoryCache cache = this.getTerrainGeometryCache();
 		TerrainGeometry geom = tile.getGeometry(cache);
-		if (geom == null) geom = new TerrainGeometry();
 
+		// Tiles that already have geometry keep displaying it while their new geometry is built in the background.
+		if (geom != null) {
+			this.requestGeometry(dc, tile);
+			return;
+		}
+
+		// A tile is added without geometry only when there is nothing else to display in its place, as is the case for
+		// the top level tiles. Build its geometry now.
+		geom = new TerrainGeometry();
 		this.buildTileVertices(dc, tile, geom);
 		this.buildSharedGeometry(tile, geom);
 		geom.verticalExaggeration = dc.getVerticalExaggeration();
@@ -1045,6 +1582,73 @@ public class TiledTessellator extends WWObjectImpl
 			Logging.verbose("added tile geometry: " + cache.getNumObjects());
 	}
 
+	/**
+	 * Requests that a tile's geometry be built on a task service thread. The request is ignored if a build for the tile
+	 * is already in progress, or if the task service is full; in the latter case the request is made again the next
+	 * time the tile is needed.
+	 *
+	 * @param dc   the current draw context.
+	 * @param tile the tile whose geometry to build.
+	 */
+	protected void requestGeometry(DrawContext dc, TerrainTile tile) {
+		GeometryBuildTask task = this.pendingBuilds.get(tile.getTileKey());
+		if (task != null) {
+			// If the tile's sector expired after the build sampled its elevations, the build's result is stale. Note
+			// that so the tile is built again once the result is published.
+			if (this.intersectsExpiredSector(tile)) task.expired = true;
+
+			// The task service discards tasks it cannot queue. Submit the build again if it is neither queued nor
+			// finished.
+			if (WorldWind.getTaskService().contains(task) || this.completedBuilds.contains(task)) return;
+		}
+
+		if (WorldWind.getTaskService().isFull()) return;
+
+		task = new GeometryBuildTask(this, tile, dc.getGlobe(), dc.getVerticalExaggeration());
+		this.pendingBuilds.put(tile.getTileKey(), task);
+		WorldWind.getTaskService().runTask(task);
+	}
+
+	/**
+	 * Makes geometry that has been built on task service threads available to the render thread. Only complete
+	 * geometry is published. Existing geometry is updated in place so that its vertex buffer object is reused.
+	 *
+	 * @param dc the current draw context.
+	 */
+	protected void publishGeometry(DrawContext dc) {
+		MemoryCache cache = this.getTerrainGeometryCache();
+
+		GeometryBuildTask task;
+		while ((task = this.completedBuilds.poll()) != null) {
+			TerrainTile tile = task.tile;
+			if (this.pendingBuilds.get(tile.getTileKey()) == task) this.pendingBuilds.remove(tile.getTileKey());
+
+			TerrainGeometry built = task.geometry;
+			if (built == null) continue; // The build failed. The tile is requested again when it's next needed.
+
+			TerrainGeometry geom = tile.getGeometry(cache);
+			if (geom == null) geom = new TerrainGeometry();
+
+			geom.referenceCenter = built.referenceCenter;
+			geom.vertexMatrix = built.vertexMatrix;
+			geom.points = built.points;
+			geom.heights = built.heights;
+			geom.heightOffset = built.heightOffset;
+			geom.heightScale = built.heightScale;
+			geom.rowCoords = built.rowCoords;
+			geom.columnCoords = built.columnCoords;
+			geom.vertexCount = built.vertexCount;
+			geom.verticalExaggeration = built.verticalExaggeration;
+			geom.triangleTree = null; // Rebuilt from the new points when the tile is next intersected.
+			geom.mustRegnerateVbos = true;
+			this.buildSharedGeometry(tile, geom);
+			// Update the geometry's cached size.
+			tile.setGeometry(cache, geom);
+
+			if (task.expired) this.requestGeometry(dc, tile);
+		}
+	}
+
 	/**
 	 * Returns the memory cache used to cache terrain tiles, initializing the cache if it doesn't yet exist.
 	 *
@@ -1053,7 +1657,7 @@ public class TiledTessellator extends WWObjectImpl
 	protected MemoryCache getTerrainTileCache() {
 		if (!WorldWind.getMemoryCacheSet().contains(TerrainTile.class.getName())) {
 			long size = Configuration.getLongValue(AVKey.SECTOR_GEOMETRY_TILE_CACHE_SIZE);
-			MemoryCache cache = new BasicMemoryCache((long) (0.8 * size), size);
+			MemoryCache cache = WorldWind.getMemoryCacheSet().createTileMemoryCache((long) (0.8 * size), size);
 			cache.setName("Tessellator Tiles");
 			WorldWind.getMemoryCacheSet().put(TerrainTile.class.getName(), cache);
 		}
@@ -1069,7 +1673,7 @@ public class TiledTessellator extends WWObjectImpl
 	protected MemoryCache getTerrainGeometryCache() {
 		if (!WorldWind.getMemoryCacheSet().contains(TerrainGeometry.class.getName())) {
 			long size = Configuration.getLongValue(AVKey.SECTOR_GEOMETRY_CACHE_SIZE);
-			MemoryCache cache = new BasicMemoryCache((long) (0.8 * size), size);
+			MemoryCache cache = WorldWind.getMemoryCacheSet().createMemoryCache((long) (0.8 * size), size);
 			cache.setName("Tessellator Geometry");
 			WorldWind.getMemoryCacheSet().put(TerrainGeometry.class.getName(), cache);
 			if(WorldWindowImpl.DEBUG) {
@@ -1091,6 +1695,22 @@ public class TiledTessellator extends WWObjectImpl
 	}
 
 	protected void buildTileVertices(DrawContext dc, TerrainTile tile, TerrainGeometry geom) {
+		this.buildTileVertices(dc.getGlobe(), dc.getVerticalExaggeration(), tile, geom, tileBuildBuffers.get());
+	}
+
+	/**
+	 * Builds a tile's vertices from the specified globe and vertical exaggeration. This does not access the draw context
+	 * or any state shared with the render thread, and may therefore be called on any thread, provided that each thread
+	 * specifies its own build buffers and the geometry is not in use by another thread.
+	 *
+	 * @param globe                the globe to compute the tile's vertices from.
+	 * @param verticalExaggeration the vertical exaggeration to apply to the tile's elevations.
+	 * @param tile                 the tile whose vertices to build.
+	 * @param geom                 the geometry to receive the tile's vertices.
+	 * @param buffers              scratch arrays owned by the calling thread.
+	 */
+	protected void buildTileVertices(Globe globe, double verticalExaggeration, TerrainTile tile, TerrainGeometry geom,
+			TileBuildBuffers buffers) {
 		// The WWAndroid terrain tessellator attempts to improves upon the WWJ tessellator's vertex construction
 		// performance by exploiting the fact that each terrain tile is a regular geographic grid. The following three
 		// critical differences have improved the performance of buildTileVertices by approximately 10x (from ~8ms to
@@ -1117,15 +1737,14 @@ public class TiledTessellator extends WWObjectImpl
 		int numLat = tile.getLevel().getTileHeight() + 1;
 		int numLon = tile.getLevel().getTileWidth() + 1;
 
-		// Allocate arrays to hold the elevations for a tile and for each row. These arrays are properties of the
-		// tessellator to avoid constantly reallocating them each time a tile is updated.
-		if (this.tileElevations == null || this.tileElevations.length < numLat * numLon) this.tileElevations = new double[numLat * numLon];
-		if (this.tileRowElevations == null || this.tileRowElevations.length < numLon) this.tileRowElevations = new double[numLon];
+		// Allocate arrays to hold the elevations for a tile and for each row. These arrays are held by the
+		// calling thread's build buffers to avoid constantly reallocating them each time a tile is updated.
+		if (buffers.tileElevations == null || buffers.tileElevations.length < numLat * numLon) buffers.tileElevations = new double[numLat * numLon];
+		if (buffers.tileRowElevations == null || buffers.tileRowElevations.length < numLon) buffers.tileRowElevations = new double[numLon];
 
 		// Get the elevation values for the tile from the Globe. Any elevations that are unknown or outside the Globe's
 		// elevation model are assigned the value 0.0.
-		Globe globe = dc.getGlobe();
-		globe.getElevations(tile.getSector(), numLat, numLon, tile.getResolution(), this.tileElevations);
+		globe.getElevations(tile.getSector(), numLat, numLon, tile.getResolution(), buffers.tileElevations);
 
 		// Adjust the tile's elevations and min elevation by the DrawContext's vertical exaggeration. We skip this step
 		// if the vertical exaggeration is 1.0.
@@ -1136,11 +1755,10 @@ public class TiledTessellator extends WWObjectImpl
 		// skirt elevation only when the Globe's min elevation was less than zero, or the verticalExaggeration was less
 		// than zero. That bug has been fixed in the WWAndroid project, and we can rely on Globe to return a min
 		// elevation of 0 if the elevation model does not span the entire globe.
-		double verticalExaggeration = dc.getVerticalExaggeration();
 		double minElevation = globe.getMinElevation();
 		if (verticalExaggeration != 1.0) {
 			for (int i = 0; i < numLat * numLon; i++) {
-				this.tileElevations[i] *= verticalExaggeration;
+				buffers.tileElevations[i] *= verticalExaggeration;
 			}
 
 			minElevation *= verticalExaggeration;
@@ -1148,16 +1766,24 @@ public class TiledTessellator extends WWObjectImpl
 
 		// Compute a local coordinate origin for the tile's world Cartesian points. We use this origin to keep each
 		// world coordinate small in order to achieve the resolution we need on the Gpu.
-		tile.getSector().computeCentroidPoint(globe, dc.getVerticalExaggeration(), geom.referenceCenter);
-		geom.transformMatrix.setTranslation(geom.referenceCenter);
+		tile.getSector().computeCentroidPoint(globe, verticalExaggeration, geom.referenceCenter);
 
-		// Re-use the tile's existing vertex buffer whenever possible. Create a new buffer if one has not been set or if
-		// the tile density has changed. We clear the buffer if it is non-null and has enough capacity to ensure that
-		// the previous limit does not interfere with what the new limit should be after filling the buffer. We add two
-		// rows and columns of vertices to provide an outer row/column for the tile skirt.
+		// Store the tile's vertices as heights when the globe is an ellipsoid, since each vertex can then be decoded
+		// from its height and its row and column alone. We add two rows and columns of vertices to provide an outer
+		// row/column for the tile skirt.
 		int numPoints = (numLat + 2) * (numLon + 2);
-		if (geom.points == null || geom.points.capacity() < 3 * numPoints) geom.points = BufferUtil.newFloatBuffer(3 * numPoints);
-		geom.points.clear();
+		if (this.quantizeVertices && globe instanceof EllipsoidalGlobe) {
+			this.buildTileHeights(globe, tile, numLat, numLon, buffers.tileElevations, minElevation, geom);
+			geom.vertexCount = numPoints;
+			geom.triangleTree = null;
+			geom.mustRegnerateVbos = true;
+			return;
+		}
+
+		// Allocate a buffer to hold the tile's floating point vertices. We clear the buffer to ensure that the previous
+		// limit does not interfere with what the new limit should be after filling the buffer.
+		FloatBuffer points = BufferUtil.newFloatBuffer(3 * numPoints);
+		points.clear();
 
 		double minLat = tile.getSector().minLatitude.degrees;
 		double maxLat = tile.getSector().maxLatitude.degrees;
@@ -1171,8 +1797,8 @@ public class TiledTessellator extends WWObjectImpl
 		// have the same locations as the first row, but are assigned the minimum elevation instead of the actual
 		// elevations. buildTileRowVertices handles adding the redundant columns for the tile's skirt.
 		rowSector.setDegrees(minLat, minLat, minLon, maxLon);
-		Arrays.fill(this.tileRowElevations, minElevation);
-		this.buildTileRowVertices(dc, rowSector, numLon, this.tileRowElevations, minElevation, geom);
+		Arrays.fill(buffers.tileRowElevations, minElevation);
+		this.buildTileRowVertices(globe, rowSector, numLon, buffers.tileRowElevations, minElevation, geom.referenceCenter, points, buffers);
 
 		double lat = minLat;
 		int elevOffset = 0;
@@ -1185,8 +1811,8 @@ public class TiledTessellator extends WWObjectImpl
 
 			// Process each tile row in bulk.
 			rowSector.setDegrees(lat, lat, minLon, maxLon);
-			System.arraycopy(this.tileElevations, elevOffset, this.tileRowElevations, 0, numLon);
-			this.buildTileRowVertices(dc, rowSector, numLon, this.tileRowElevations, minElevation, geom);
+			System.arraycopy(buffers.tileElevations, elevOffset, buffers.tileRowElevations, 0, numLon);
+			this.buildTileRowVertices(globe, rowSector, numLon, buffers.tileRowElevations, minElevation, geom.referenceCenter, points, buffers);
 
 			elevOffset += numLon;
 		}
@@ -1195,23 +1821,174 @@ public class TiledTessellator extends WWObjectImpl
 		// have the same locations as the last row, but are assigned the minimum elevation instead of the actual
 		// elevations. buildTileRowVertices handles adding the redundant columns for the tile's skirt.
 		rowSector.setDegrees(maxLat, maxLat, minLon, maxLon);
-		Arrays.fill(this.tileRowElevations, minElevation);
-		this.buildTileRowVertices(dc, rowSector, numLon, this.tileRowElevations, minElevation, geom);
+		Arrays.fill(buffers.tileRowElevations, minElevation);
+		this.buildTileRowVertices(globe, rowSector, numLon, buffers.tileRowElevations, minElevation, geom.referenceCenter, points, buffers);
 
 		// Set the limit to the current position then set the position to zero. We flip the buffer because its capacity
 		// may be greater than the space needed, and the GL commands that ready this buffer rely on the limit to
 		// determine how many buffer elements to read.
-		geom.points.flip();
+		points.flip();
+
+		geom.points = points;
+		geom.vertexMatrix.setTranslation(geom.referenceCenter);
+		geom.vertexCount = numPoints;
+		geom.triangleTree = null;
 		geom.mustRegnerateVbos = true;
 	}
 
-	protected void buildTileRowVertices(DrawContext dc, Sector rowSector, int width, double[] elevations, double minElevation, TerrainGeometry geom) {
+	/**
+	 * Stores a tile's vertices as 16-bit unsigned heights spanning the range of the tile's elevations, along with the
+	 * latitude dependent values of each row of vertices and the longitude dependent values of each column. The vertices
+	 * are arranged exactly as buildTileRowVertices arranges floating point vertices, including the outer rows and
+	 * columns of skirt vertices at the minimum elevation.
+	 *
+	 * @param globe        the globe to compute the tile's vertices from. Must be an ellipsoidal globe.
+	 * @param tile         the tile whose vertices to build.
+	 * @param numLat       the number of latitude vertices in the tile, excluding the skirt.
+	 * @param numLon       the number of longitude vertices in the tile, excluding the skirt.
+	 * @param elevations   the tile's elevations, with the vertical exaggeration applied.
+	 * @param minElevation the elevation of the tile's skirt, with the vertical exaggeration applied.
+	 * @param geom         the geometry to receive the tile's vertices.
+	 */
+	protected void buildTileHeights(Globe globe, TerrainTile tile, int numLat, int numLon, double[] elevations,
+			double minElevation, TerrainGeometry geom) {
+		Sector sector = tile.getSector();
+		int numRows = numLat + 2;
+		int rowLength = numLon + 2;
+
+		// Compute the values that depend only on each row's latitude. The Y axis is the globe's axis, so the point at
+		// zero elevation and zero longitude lies in the YZ plane at a distance from the axis equal to its Z
+		// coordinate. The latitudes are computed as buildTileVertices computes them. The outer rows are skirt rows,
+		// and have the same latitude as the rows adjacent to them.
+		double[] rowCoords = new double[4 * numRows];
+		double minLat = sector.minLatitude.degrees;
+		double maxLat = sector.maxLatitude.degrees;
+		double deltaLat = sector.getDeltaLatDegrees() / tile.getLevel().getTileHeight();
+		double lat = minLat;
+		Vec4 point = new Vec4();
+		for (int j = 0; j < numRows; j++) {
+			if (j <= 1) lat = minLat;
+			else if (j >= numRows - 2) lat = maxLat;
+			else lat += deltaLat;
+
+			Angle latitude = Angle.fromDegrees(lat);
+			globe.computePointFromPosition(latitude, Angle.ZERO, 0, point);
+			rowCoords[4 * j] = point.z;
+			rowCoords[4 * j + 1] = point.y;
+			rowCoords[4 * j + 2] = latitude.cos();
+			rowCoords[4 * j + 3] = latitude.sin();
+		}
+
+		// Compute the values that depend only on each column's longitude. The longitudes are computed as the globe
+		// computes them for a row of points. The outer columns are skirt columns, and have the same longitude as the
+		// columns adjacent to them.
+		double[] columnCoords = new double[2 * rowLength];
+		double minLon = sector.minLongitude.radians;
+		double maxLon = sector.maxLongitude.radians;
+		double deltaLon = sector.getDeltaLonRadians() / (numLon - 1);
+		double lon = minLon;
+		for (int i = 0; i < rowLength; i++) {
+			if (i <= 1) lon = minLon;
+			else if (i >= rowLength - 2) lon = maxLon;
+			else lon += deltaLon;
+
+			columnCoords[2 * i] = Math.sin(lon);
+			columnCoords[2 * i + 1] = Math.cos(lon);
+		}
+
+		// Quantize the heights to the range of the tile's elevations and its skirt elevation. A tile with no range of
+		// heights gets a step of one, which encodes every height as zero.
+		double minHeight = minElevation;
+		double maxHeight = minElevation;
+		for (int k = 0; k < numLat * numLon; k++) {
+			if (minHeight > elevations[k]) minHeight = elevations[k];
+			if (maxHeight < elevations[k]) maxHeight = elevations[k];
+		}
+
+		double scale = maxHeight > minHeight ? (maxHeight - minHeight) / QUANTIZED_COORD_MAX : 1;
+		short[] heights = new short[numRows * rowLength];
+		Arrays.fill(heights, (short) Math.round((minElevation - minHeight) / scale));
+		for (int j = 0; j < numLat; j++) {
+			for (int i = 0; i < numLon; i++) {
+				heights[(j + 1) * rowLength + i + 1] = (short) Math.round((elevations[j * numLon + i] - minHeight) / scale);
+			}
+		}
+
+		geom.points = null;
+		geom.heights = heights;
+		geom.heightOffset = minHeight;
+		geom.heightScale = scale;
+		geom.rowCoords = rowCoords;
+		geom.columnCoords = columnCoords;
+	}
+
+	/**
+	 * Decodes a tile's vertices from their heights and encodes them as 16-bit unsigned XYZ coordinates spanning the
+	 * bounding box of the vertices. The bounding box is folded into the geometry's vertex matrix, which maps the
+	 * quantized coordinates back to model coordinates. This enables the existing shaders to draw quantized vertices
+	 * without modification. The returned buffer is re-used by the next call, and must be loaded before then.
+	 *
+	 * @param geom the geometry whose vertices to quantize.
+	 *
+	 * @return a buffer holding the tile's quantized vertices.
+	 */
+	protected ShortBuffer quantizePoints(TerrainGeometry geom) {
+		int numCoords = 3 * geom.vertexCount;
+		if (this.vboCoords == null || this.vboCoords.length < numCoords) {
+			this.vboCoords = new float[numCoords];
+			this.vboQuantizedCoords = new short[numCoords];
+			this.vboPoints = BufferUtil.newShortBuffer(numCoords);
+		}
+
+		float[] coords = this.vboCoords;
+		geom.getPoints(0, geom.vertexCount, coords, 0);
+
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for (int i = 0; i < numCoords; i += 3) {
+			if (minX > coords[i]) minX = coords[i];
+			if (maxX < coords[i]) maxX = coords[i];
+			if (minY > coords[i + 1]) minY = coords[i + 1];
+			if (maxY < coords[i + 1]) maxY = coords[i + 1];
+			if (minZ > coords[i + 2]) minZ = coords[i + 2];
+			if (maxZ < coords[i + 2]) maxZ = coords[i + 2];
+		}
+
+		// Compute the size of one quantization step in each dimension. A dimension with no extent gets a step of one,
+		// which encodes every coordinate as zero while keeping the vertex matrix invertible.
+		double sx = maxX > minX ? (maxX - minX) / QUANTIZED_COORD_MAX : 1;
+		double sy = maxY > minY ? (maxY - minY) / QUANTIZED_COORD_MAX : 1;
+		double sz = maxZ > minZ ? (maxZ - minZ) / QUANTIZED_COORD_MAX : 1;
+
+		// Quantize the points in bulk using a temporary array. This is necessary on Android because the performance of
+		// ShortBuffer.put(short) is slow.
+		short[] quantized = this.vboQuantizedCoords;
+		for (int i = 0; i < numCoords; i += 3) {
+			quantized[i] = (short) Math.round((coords[i] - minX) / sx);
+			quantized[i + 1] = (short) Math.round((coords[i + 1] - minY) / sy);
+			quantized[i + 2] = (short) Math.round((coords[i + 2] - minZ) / sz);
+		}
+
+		this.vboPoints.clear();
+		this.vboPoints.put(quantized, 0, numCoords);
+		this.vboPoints.flip();
+
+		// Map quantized coordinates to the tile's local coordinates, then to model coordinates.
+		geom.vertexMatrix.setTranslation(geom.referenceCenter);
+		geom.vertexMatrix.multiplyAndSet(Matrix.fromTranslation(minX, minY, minZ));
+		geom.vertexMatrix.multiplyAndSet(Matrix.fromScale(sx, sy, sz));
+
+		return this.vboPoints;
+	}
+
+	protected void buildTileRowVertices(Globe globe, Sector rowSector, int width, double[] elevations, double minElevation,
+			Vec4 referenceCenter, FloatBuffer points, TileBuildBuffers buffers) {
 		// Allocate an array of points that hold the Cartesian coordinates for each XYZ point in this row. The array
-		// is a property of this tessellator to avoid constantly reallocating it each time a tile is updated.
-		if (this.tilePoints == null || this.tilePoints.length < width) {
-			this.tilePoints = new Vec4[width];
+		// is held by the calling thread's build buffers to avoid constantly reallocating it each time a tile is updated.
+		if (buffers.tilePoints == null || buffers.tilePoints.length < width) {
+			buffers.tilePoints = new Vec4[width];
 			for (int i = 0; i < width; i++) {
-				this.tilePoints[i] = new Vec4();
+				buffers.tilePoints[i] = new Vec4();
 			}
 		}
 
@@ -1219,26 +1996,25 @@ public class TiledTessellator extends WWObjectImpl
 		// it to the tile's point buffer in bulk. Adding an entire row of points into the FloatBuffer using a temporary
 		// array is approximately 2x faster than adding each coordinate individually.
 		int numCoords = 3 * (width + 2);
-		if (this.tileCoords == null || this.tileCoords.length < numCoords) this.tileCoords = new float[numCoords];
+		if (buffers.tileCoords == null || buffers.tileCoords.length < numCoords) buffers.tileCoords = new float[numCoords];
 
-		Globe globe = dc.getGlobe();
 		int index = 0;
 
 		// Add a redundant point with the row's minimum latitude. This point is used to display the tile's skirt, and
 		// has the same location as the row's first location, but is assigned the minimum elevation instead of the
 		// location's actual elevation. We subtract the tile's reference center from the Cartesian point to keep its
 		// values as near to zero as possible. This enables us to achieve the resolution we need on the Gpu.
-		globe.computePointFromPosition(rowSector.minLatitude, rowSector.minLongitude, minElevation, this.tilePoints[0]);
-		this.tilePoints[0].subtract3AndSet(geom.referenceCenter);
-		this.tilePoints[0].toArray3f(this.tileCoords, index);
+		globe.computePointFromPosition(rowSector.minLatitude, rowSector.minLongitude, minElevation, buffers.tilePoints[0]);
+		buffers.tilePoints[0].subtract3AndSet(referenceCenter);
+		buffers.tilePoints[0].toArray3f(buffers.tileCoords, index);
 		index += 3;
 
 		// Add points for each location in the row. We subtract the tile's reference center from the Cartesian point to
 		// keep its values as near to zero as possible. This enables us to achieve the resolution we need on the Gpu.
-		globe.computePointsFromPositions(rowSector, 1, width, elevations, this.tilePoints);
+		globe.computePointsFromPositions(rowSector, 1, width, elevations, buffers.tilePoints);
 		for (int i = 0; i < width; i++) {
-			this.tilePoints[i].subtract3AndSet(geom.referenceCenter);
-			this.tilePoints[i].toArray3f(this.tileCoords, index);
+			buffers.tilePoints[i].subtract3AndSet(referenceCenter);
+			buffers.tilePoints[i].toArray3f(buffers.tileCoords, index);
 			index += 3;
 		}
 
@@ -1246,14 +2022,14 @@ public class TiledTessellator extends WWObjectImpl
 		// has the same location as the row's last location, but is assigned the minimum elevation instead of the
 		// location's actual elevation. We subtract the tile's reference center from the Cartesian point to keep its
 		// values as near to zero as possible. This enables us to achieve the resolution we need on the Gpu.
-		globe.computePointFromPosition(rowSector.minLatitude, rowSector.maxLongitude, minElevation, this.tilePoints[0]);
-		this.tilePoints[0].subtract3AndSet(geom.referenceCenter);
-		this.tilePoints[0].toArray3f(this.tileCoords, index);
+		globe.computePointFromPosition(rowSector.minLatitude, rowSector.maxLongitude, minElevation, buffers.tilePoints[0]);
+		buffers.tilePoints[0].subtract3AndSet(referenceCenter);
+		buffers.tilePoints[0].toArray3f(buffers.tileCoords, index);
 		index += 3;
 
-		// Put the row's points into the tile's point buffer in bulk. Adding an entire row of points into the
+		// Put the row's points into the point buffer in bulk. Adding an entire row of points into the
 		// FloatBuffer using a temporary array is approximately 2x faster than adding each coordinate individually.
-		geom.points.put(this.tileCoords, 0, numCoords);
+		points.put(buffers.tileCoords, 0, numCoords);
 	}
 
 	protected void buildSharedGeometry(TerrainTile tile, TerrainGeometry geom) {
@@ -1516,7 +2292,7 @@ public class TiledTessellator extends WWObjectImpl
 			if (vboIds != null) {
 				GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vboIds[0]);
 				WorldWindowImpl.glCheckError("glBindBuffer");
-				GLES20.glVertexAttribPointer(location, 3, GLES20.GL_FLOAT, false, 0, 0);
+				GLES20.glVertexAttribPointer(location, 3, geom.getPointType(), false, 0, 0);
 				WorldWindowImpl.glCheckError("glVertexAttribPointer");
 			} else {
 				String msg = Logging.getMessage("Tessellator.SurfaceGeometryVBONotInGpuCache", tile, gpuCache.getUsedCapacity());
@@ -1543,8 +2319,9 @@ public class TiledTessellator extends WWObjectImpl
 		// Multiply the View's modelview-projection matrix by the tile's transform matrix to correctly transform tile
 		// points into eye coordinates. This achieves the resolution we need on Gpus with limited floating point
 		// precision keeping both the modelview-projection matrix and the point coordinates the Gpu uses as small as
-		// possible when the eye point is near the tile.
-		this.mvpMatrix.multiplyAndSet(dc.getView().getModelviewProjectionMatrix(), geom.transformMatrix);
+		// possible when the eye point is near the tile. The tile's vertex matrix is the transform matrix combined with
+		// the mapping from quantized coordinates to tile local coordinates, if the tile's points are quantized.
+		this.mvpMatrix.multiplyAndSet(dc.getView().getModelviewProjectionMatrix(), geom.vertexMatrix);
 		program.loadUniformMatrix("mvpMatrix", this.mvpMatrix);
 	}
 
@@ -1659,10 +2436,12 @@ public class TiledTessellator extends WWObjectImpl
 		}
 
 		try {
-			int sizeInBytes = 4 * geom.points.remaining();
+			// Tiles stored as heights are loaded as quantized points, which also updates the tile's vertex matrix.
+			Buffer points = geom.heights != null ? this.quantizePoints(geom) : geom.points;
+			int sizeInBytes = (geom.heights != null ? 2 : 4) * points.remaining();
 			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vboIds[0]);
 			WorldWindowImpl.glCheckError("glBindBuffer");
-			GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, sizeInBytes, geom.points, GLES20.GL_STREAM_DRAW);
+			GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, sizeInBytes, points, GLES20.GL_STREAM_DRAW);
 			WorldWindowImpl.glCheckError("glBufferData");
 
 			// Don't overwrite these VBOs if they're already in the cache. Doing so would cause the cache to delete
@@ -1912,10 +2691,8 @@ public class TiledTessellator extends WWObjectImpl
 				// Get the four vertices defining this cell. Store the lower-left coordinate at index 0, the lower-right
 				// coordinate at index 3, the upper-left coordinate at index 6, and the upper-right coordinate at index
 				// 9.
-				geom.points.position(3 * (i + j * numLon));
-				geom.points.get(corners, 0, 6);
-				geom.points.position(3 * (i + (j + 1) * numLon));
-				geom.points.get(corners, 6, 6);
+				geom.getPoints(i + j * numLon, 2, corners, 0);
+				geom.getPoints(i + (j + 1) * numLon, 2, corners, 6);
 
 				// Add the vertices and colors for the two triangles in each tile cell. The vertices for both triangles
 				// are arranged in counter-clockwise order. Each triangle is composed of three vertices from the cell's
@@ -1952,14 +2729,11 @@ public class TiledTessellator extends WWObjectImpl
 			}
 		}
 
-		// Restore the position of the tile point buffer.
-		geom.points.rewind();
-
-		// Set the pick geometry's reference center and transform matrix to be equivalent to the terrain geometry's
-		// properties of the same names. Since we're using the same local coordinates for pick geometry points, we need
-		// to use the same reference center and transform matrix.
+		// Set the pick geometry's reference center to the terrain geometry's reference center, and its transform matrix
+		// to the translation to that center. Since we're using the same local coordinates for pick geometry points, we
+		// need to use the same reference center.
 		pickGeom.referenceCenter.set(geom.referenceCenter);
-		pickGeom.transformMatrix.set(geom.transformMatrix);
+		pickGeom.transformMatrix.setTranslation(geom.referenceCenter);
 		// Set the limit to the current position then set the position to zero. We flip the buffer because its capacity
 		// may be greater than the space needed, and the GL commands that ready this buffer rely on the limit to
 		// determine how many buffer elements to read.
@@ -2095,11 +2869,8 @@ public class TiledTessellator extends WWObjectImpl
 		int ti = (t < tileHeight ? (int) t : tileHeight - 1) + 1;
 		int rowStride = tileWidth + 3;
 		float[] points = this.pointBuffer; // Holds up to 12 coordinates.
-		geom.points.position(3 * (si + ti * rowStride)); // lower-left and lower-right vertices.
-		geom.points.get(points, 0, 6);
-		geom.points.position(3 * (si + (ti + 1) * rowStride)); // upper-left and upper-right vertices.
-		geom.points.get(points, 6, 6);
-		geom.points.rewind();
+		geom.getPoints(si + ti * rowStride, 2, points, 0); // lower-left and lower-right vertices.
+		geom.getPoints(si + (ti + 1) * rowStride, 2, points, 6); // upper-left and upper-right vertices.
 
 		// Compute the location's corresponding point on the cell in tile local coordinates, given the fractional
 		// portion of the parameterized s and t coordinates. These values indicates the location's relative placement
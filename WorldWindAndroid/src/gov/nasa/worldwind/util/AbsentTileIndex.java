@@ -0,0 +1,541 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records which tiles of a level are absent, keyed by tile number. It applies the same policy as {@link
+ * AbsentResourceList}: a tile marked absent is not requested again until a check interval elapses, and a tile marked
+ * absent more than a maximum number of times is not requested again until a longer try-again interval elapses.
+ * <p/>
+ * In addition, a tile can be marked as not found, meaning its server reported that it does not exist rather than
+ * failing to deliver it. Such a tile is considered absent until a retry interval that is typically days long, and
+ * not-found marks can be saved and restored with {@link #writeNotFound(java.io.DataOutput)} and {@link
+ * #readNotFound(java.io.DataInput)} so that they survive restarts. This spares sparse datasets from requesting the
+ * same missing tiles in every session.
+ * <p/>
+ * Tile numbers are held in an open-addressing hash table of primitive longs, so neither lookups nor marks allocate.
+ * Lookups do not lock, since they are made for every visible tile in every frame; marks are synchronized. The table
+ * holds at most {@link #getMaxEntries()} tiles, beyond which the least recently marked tiles are forgotten.
+ *
+ * @version $Id$
+ */
+public class AbsentTileIndex
+{
+    /** The default number of times a tile is marked absent before it is considered absent until the try-again interval. */
+    public static final int DEFAULT_MAX_TRIES = 3;
+    /** The default interval, in milliseconds, a tile marked absent is considered absent. */
+    public static final int DEFAULT_MIN_CHECK_INTERVAL = 10000;
+    /** The default interval, in milliseconds, a tile marked absent too many times is considered absent. */
+    public static final int DEFAULT_TRY_AGAIN_INTERVAL = (int) 60e3;
+    /** The default interval, in milliseconds, a tile marked not found is considered absent. */
+    public static final long DEFAULT_NOT_FOUND_RETRY_INTERVAL = 7L * 24 * 60 * 60 * 1000;
+    /** The default maximum number of tiles held. */
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 14;
+
+    // A tile's state packs the time it was last marked, the number of times it was marked and whether it was not
+    // found into one long, so that it is read and written atomically. A state of zero means the tile is not absent.
+    protected static final int TIME_BITS = 44;
+    protected static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    protected static final int TRIES_SHIFT = TIME_BITS;
+    protected static final long TRIES_MASK = 0xFF;
+    protected static final long NOT_FOUND_BIT = 1L << (TRIES_SHIFT + 8);
+    protected static final int MIN_TABLE_SIZE = 16;
+
+    protected volatile int maxTries = DEFAULT_MAX_TRIES;
+    protected volatile int minCheckInterval = DEFAULT_MIN_CHECK_INTERVAL;
+    protected volatile int tryAgainInterval = DEFAULT_TRY_AGAIN_INTERVAL;
+    protected volatile long notFoundRetryInterval = DEFAULT_NOT_FOUND_RETRY_INTERVAL;
+    protected int maxEntries = DEFAULT_MAX_ENTRIES;
+    protected volatile Table table = new Table(MIN_TABLE_SIZE);
+
+    /** Creates an index with the default policy. */
+    public AbsentTileIndex()
+    {
+    }
+
+    /**
+     * Creates an index with a specified number of maximum tries and check interval.
+     *
+     * @param maxTries         the number of max tries. Must be greater than 0.
+     * @param minCheckInterval the check interval, in milliseconds. Must be greater than or equal to 0.
+     *
+     * @throws IllegalArgumentException if max-tries is less than 1 or the minimum check interval is less than 0.
+     */
+    public AbsentTileIndex(int maxTries, int minCheckInterval)
+    {
+        this.setMaxTries(maxTries);
+        this.setMinCheckInterval(minCheckInterval);
+    }
+
+    public int getMaxTries()
+    {
+        return this.maxTries;
+    }
+
+    /**
+     * Specifies the maximum number of times a tile is marked absent before it is considered absent until the try-again
+     * interval elapses.
+     *
+     * @param maxTries the number of max tries. Must be greater than 0.
+     *
+     * @throws IllegalArgumentException if max-tries is less than 1.
+     */
+    public void setMaxTries(int maxTries)
+    {
+        if (maxTries < 1)
+        {
+            String msg = Logging.getMessage("generic.MaxTriesIsInvalid", maxTries);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.maxTries = maxTries;
+    }
+
+    public int getMinCheckInterval()
+    {
+        return this.minCheckInterval;
+    }
+
+    /**
+     * Specifies the interval a tile marked absent is considered absent, if it has not been marked more than max-tries
+     * times.
+     *
+     * @param checkInterval the interval, in milliseconds. Must be greater than or equal to 0.
+     *
+     * @throws IllegalArgumentException if the interval is less than 0.
+     */
+    public void setMinCheckInterval(int checkInterval)
+    {
+        if (checkInterval < 0)
+        {
+            String msg = Logging.getMessage("generic.CheckIntervalIsInvalid", checkInterval);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.minCheckInterval = checkInterval;
+    }
+
+    public int getTryAgainInterval()
+    {
+        return this.tryAgainInterval;
+    }
+
+    /**
+     * Specifies the interval a tile marked absent more than max-tries times is considered absent.
+     *
+     * @param retryInterval the interval, in milliseconds. Must be greater than or equal to 0.
+     *
+     * @throws IllegalArgumentException if the interval is less than 0.
+     */
+    public void setTryAgainInterval(int retryInterval)
+    {
+        if (retryInterval < 0)
+        {
+            String msg = Logging.getMessage("generic.RetryIntervalIsInvalid", retryInterval);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.tryAgainInterval = retryInterval;
+    }
+
+    public long getNotFoundRetryInterval()
+    {
+        return this.notFoundRetryInterval;
+    }
+
+    /**
+     * Specifies the interval a tile marked not found is considered absent, after which it is requested again.
+     *
+     * @param retryInterval the interval, in milliseconds. Must be greater than or equal to 0.
+     *
+     * @throws IllegalArgumentException if the interval is less than 0.
+     */
+    public void setNotFoundRetryInterval(long retryInterval)
+    {
+        if (retryInterval < 0)
+        {
+            String msg = Logging.getMessage("generic.RetryIntervalIsInvalid", retryInterval);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.notFoundRetryInterval = retryInterval;
+    }
+
+    public synchronized int getMaxEntries()
+    {
+        return this.maxEntries;
+    }
+
+    /**
+     * Specifies the maximum number of tiles held. When the index is full, the least recently marked half of its tiles
+     * are forgotten.
+     *
+     * @param maxEntries the maximum number of tiles. Must be greater than 0.
+     *
+     * @throws IllegalArgumentException if the maximum is less than 1.
+     */
+    public synchronized void setMaxEntries(int maxEntries)
+    {
+        if (maxEntries < 1)
+        {
+            String msg = Logging.getMessage("generic.SizeIsInvalid", maxEntries);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Indicates whether a tile is considered absent.
+     *
+     * @param tileNumber the tile's number within its level.
+     *
+     * @return true if the tile is considered absent, otherwise false.
+     */
+    public boolean isAbsent(long tileNumber)
+    {
+        if (tileNumber < 0)
+            return false;
+
+        long state = this.table.get(tileNumber);
+        if (state == 0)
+            return false;
+
+        long timeSinceLastMark = System.currentTimeMillis() - (state & TIME_MASK);
+
+        if ((state & NOT_FOUND_BIT) != 0)
+            return timeSinceLastMark < this.notFoundRetryInterval;
+
+        if (timeSinceLastMark > this.tryAgainInterval)
+            return false;
+
+        return timeSinceLastMark < this.minCheckInterval || ((state >>> TRIES_SHIFT) & TRIES_MASK) > this.maxTries;
+    }
+
+    /**
+     * Marks a tile absent. If the tile is already marked absent, the number of times it was marked is incremented.
+     *
+     * @param tileNumber the tile's number within its level. Negative numbers are ignored.
+     */
+    public synchronized void markAbsent(long tileNumber)
+    {
+        if (tileNumber < 0)
+            return;
+
+        long now = System.currentTimeMillis();
+        long state = this.table.get(tileNumber);
+        long tries = (state >>> TRIES_SHIFT) & TRIES_MASK;
+
+        // A mark older than the try-again interval no longer counts, as the resource list forgets such entries.
+        if (state == 0 || now - (state & TIME_MASK) > this.tryAgainInterval)
+            tries = 0;
+
+        this.put(tileNumber, makeState(now, Math.min(tries + 1, TRIES_MASK), (state & NOT_FOUND_BIT) != 0));
+    }
+
+    /**
+     * Marks a tile as not found by its server. The tile is considered absent until the not-found retry interval
+     * elapses.
+     *
+     * @param tileNumber the tile's number within its level. Negative numbers are ignored.
+     */
+    public synchronized void markNotFound(long tileNumber)
+    {
+        if (tileNumber < 0)
+            return;
+
+        long state = this.table.get(tileNumber);
+        long tries = (state >>> TRIES_SHIFT) & TRIES_MASK;
+
+        this.put(tileNumber, makeState(System.currentTimeMillis(), Math.min(tries + 1, TRIES_MASK), true));
+    }
+
+    /**
+     * Removes any absent or not-found mark from a tile.
+     *
+     * @param tileNumber the tile's number within its level. Negative numbers are ignored.
+     */
+    public synchronized void unmarkAbsent(long tileNumber)
+    {
+        if (tileNumber >= 0)
+            this.put(tileNumber, 0);
+    }
+
+    /**
+     * Removes the not-found marks made before a specified time, as when the dataset is known to have changed since.
+     *
+     * @param time the time, in milliseconds since the epoch.
+     */
+    public synchronized void expireNotFound(long time)
+    {
+        Table t = this.table;
+        for (int i = 0; i < t.size(); i++)
+        {
+            long state = t.states.get(i);
+            if ((state & NOT_FOUND_BIT) != 0 && (state & TIME_MASK) < time)
+                t.states.set(i, 0);
+        }
+    }
+
+    /**
+     * Returns the number of tiles currently marked not found.
+     *
+     * @return the number of not-found tiles.
+     */
+    public int getNotFoundCount()
+    {
+        Table t = this.table;
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (int i = 0; i < t.size(); i++)
+        {
+            if (this.isCurrentNotFound(t.states.get(i), now))
+                count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Writes the tiles currently marked not found: their count, followed by each tile's number and the time it was
+     * marked.
+     *
+     * @param out the output to write to.
+     *
+     * @throws IOException if an error occurs while writing.
+     */
+    public void writeNotFound(DataOutput out) throws IOException
+    {
+        if (out == null)
+        {
+            String msg = Logging.getMessage("nullValue.OutputStreamIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        Table t = this.table;
+        long now = System.currentTimeMillis();
+        long[] entries = new long[2 * t.size()];
+        int count = 0;
+        for (int i = 0; i < t.size(); i++)
+        {
+            long key = t.keys.get(i);
+            long state = t.states.get(i);
+            if (key != 0 && this.isCurrentNotFound(state, now))
+            {
+                entries[2 * count] = key - 1;
+                entries[2 * count + 1] = state & TIME_MASK;
+                count++;
+            }
+        }
+
+        out.writeInt(count);
+        for (int i = 0; i < 2 * count; i++)
+        {
+            out.writeLong(entries[i]);
+        }
+    }
+
+    /**
+     * Reads not-found marks written by {@link #writeNotFound(java.io.DataOutput)}. Marks older than the not-found
+     * retry interval or a specified expiry time are skipped, and tiles already marked keep their current marks.
+     *
+     * @param in         the input to read from.
+     * @param expiryTime the time before which marks are not restored, in milliseconds since the epoch.
+     *
+     * @throws IOException if an error occurs while reading.
+     */
+    public void readNotFound(DataInput in, long expiryTime) throws IOException
+    {
+        if (in == null)
+        {
+            String msg = Logging.getMessage("nullValue.InputStreamIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException(Logging.getMessage("generic.SizeIsInvalid", count));
+
+        long now = System.currentTimeMillis();
+        synchronized (this)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                long tileNumber = in.readLong();
+                long time = in.readLong();
+                if (tileNumber < 0 || time < expiryTime || now - time >= this.notFoundRetryInterval)
+                    continue;
+
+                if (this.table.get(tileNumber) == 0)
+                    this.put(tileNumber, makeState(time, 1, true));
+            }
+        }
+    }
+
+    /**
+     * Reads not-found marks written by {@link #writeNotFound(java.io.DataOutput)}.
+     *
+     * @param in the input to read from.
+     *
+     * @throws IOException if an error occurs while reading.
+     */
+    public void readNotFound(DataInput in) throws IOException
+    {
+        this.readNotFound(in, 0);
+    }
+
+    protected boolean isCurrentNotFound(long state, long now)
+    {
+        return (state & NOT_FOUND_BIT) != 0 && now - (state & TIME_MASK) < this.notFoundRetryInterval;
+    }
+
+    protected static long makeState(long time, long tries, boolean notFound)
+    {
+        return (time & TIME_MASK) | (tries << TRIES_SHIFT) | (notFound ? NOT_FOUND_BIT : 0);
+    }
+
+    // Must be called while synchronized on this index.
+    protected void put(long tileNumber, long state)
+    {
+        Table t = this.table;
+        int index = t.indexOf(tileNumber);
+        if (t.keys.get(index) != 0)
+        {
+            t.states.set(index, state);
+            return;
+        }
+
+        if (state == 0)
+            return; // Nothing to unmark.
+
+        if (4 * (t.used + 1) > 3 * t.size())
+        {
+            t = this.rebuild(t);
+            index = t.indexOf(tileNumber);
+        }
+
+        // Write the state before the key, so that a reader finding the key also finds its state.
+        t.states.set(index, state);
+        t.keys.set(index, tileNumber + 1);
+        t.used++;
+    }
+
+    // Must be called while synchronized on this index. Copies the marked tiles to a new table with room for as many
+    // again, dropping unmarked tiles, and the least recently marked tiles if the index is full.
+    protected Table rebuild(Table t)
+    {
+        int live = 0;
+        for (int i = 0; i < t.size(); i++)
+        {
+            if (t.keys.get(i) != 0 && t.states.get(i) != 0)
+                live++;
+        }
+
+        long minTime = 0;
+        if (live >= this.maxEntries)
+        {
+            long[] times = new long[live];
+            int n = 0;
+            for (int i = 0; i < t.size(); i++)
+            {
+                long state = t.states.get(i);
+                if (t.keys.get(i) != 0 && state != 0)
+                    times[n++] = state & TIME_MASK;
+            }
+
+            Arrays.sort(times);
+            minTime = times[live - this.maxEntries / 2];
+            live = this.maxEntries / 2;
+        }
+
+        int size = MIN_TABLE_SIZE;
+        while (3 * size < 8 * (live + 1)) // Room for twice the live entries below the load factor.
+        {
+            size <<= 1;
+        }
+
+        Table newTable = new Table(size);
+        for (int i = 0; i < t.size(); i++)
+        {
+            long key = t.keys.get(i);
+            long state = t.states.get(i);
+            if (key == 0 || state == 0 || (state & TIME_MASK) < minTime)
+                continue;
+
+            int index = newTable.indexOf(key - 1);
+            if (newTable.keys.get(index) != 0)
+                continue;
+
+            newTable.states.set(index, state);
+            newTable.keys.set(index, key);
+            newTable.used++;
+        }
+
+        this.table = newTable;
+        return newTable;
+    }
+
+    protected static class Table
+    {
+        // Keys are tile numbers plus one, so that zero marks an empty slot.
+        protected final AtomicLongArray keys;
+        protected final AtomicLongArray states;
+        protected final int mask;
+        protected int used;
+
+        public Table(int size)
+        {
+            this.keys = new AtomicLongArray(size);
+            this.states = new AtomicLongArray(size);
+            this.mask = size - 1;
+        }
+
+        public int size()
+        {
+            return this.mask + 1;
+        }
+
+        /** Returns the slot holding a tile, or the empty slot where it belongs. */
+        public int indexOf(long tileNumber)
+        {
+            long key = tileNumber + 1;
+            int index = hash(key) & this.mask;
+            while (true)
+            {
+                long k = this.keys.get(index);
+                if (k == key || k == 0)
+                    return index;
+
+                index = (index + 1) & this.mask;
+            }
+        }
+
+        public long get(long tileNumber)
+        {
+            int index = this.indexOf(tileNumber);
+            return this.keys.get(index) != 0 ? this.states.get(index) : 0;
+        }
+
+        protected static int hash(long key)
+        {
+            key ^= key >>> 33;
+            key *= 0xff51afd7ed558ccdL;
+            key ^= key >>> 33;
+            return (int) key;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.avlist.AVKey;
+
+import java.nio.*;
+
+/**
+ * Provides read access to a buffer of numeric values as doubles, independent of how the values are stored. A
+ * BufferWrapper is a typed view of an underlying {@link ByteBuffer}; the values are not copied, so the buffer may be a
+ * memory-mapped file or a direct buffer held outside the Java heap.
+ */
+public abstract class BufferWrapper
+{
+    /**
+     * Returns the number of values in the buffer.
+     *
+     * @return the buffer's length.
+     */
+    public abstract int length();
+
+    /**
+     * Returns the value at the specified index, converted to a double.
+     *
+     * @param index the value's index.
+     *
+     * @return the value.
+     *
+     * @throws IndexOutOfBoundsException if the index is not less than the buffer's length.
+     */
+    public abstract double getDouble(int index);
+
+    /**
+     * Returns the number of bytes each value occupies in the buffer.
+     *
+     * @return the size of a value in bytes.
+     */
+    public abstract int getElementSize();
+
+    /**
+     * Returns the size of the buffer's values in bytes.
+     *
+     * @return the buffer's size in bytes.
+     */
+    public long getSizeInBytes()
+    {
+        return (long) this.length() * this.getElementSize();
+    }
+
+    /**
+     * Wraps the remaining bytes of a buffer as values of the specified type and byte order. The wrapper shares the
+     * buffer's content; the buffer's own byte order and position are not changed.
+     *
+     * @param buffer    the buffer to wrap.
+     * @param dataType  the type of the values, one of {@link AVKey#INT8}, {@link AVKey#INT16}, {@link AVKey#INT32} or
+     *                  {@link AVKey#FLOAT32}.
+     * @param byteOrder the order of the bytes in each value, either {@link AVKey#LITTLE_ENDIAN} or {@link
+     *                  AVKey#BIG_ENDIAN}. If null, big endian is assumed.
+     *
+     * @return a wrapper for the buffer's values.
+     *
+     * @throws IllegalArgumentException if the buffer or data type is null, or the data type is not supported.
+     */
+    public static BufferWrapper wrap(ByteBuffer buffer, String dataType, String byteOrder)
+    {
+        if (buffer == null)
+        {
+            String msg = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (dataType == null)
+        {
+            String msg = Logging.getMessage("nullValue.DataTypeIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        ByteBuffer view = buffer.slice();
+        view.order(AVKey.LITTLE_ENDIAN.equals(byteOrder) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+
+        if (AVKey.INT8.equals(dataType))
+            return new ByteBufferWrapper(view);
+        else if (AVKey.INT16.equals(dataType))
+            return new ShortBufferWrapper(view.asShortBuffer());
+        else if (AVKey.INT32.equals(dataType))
+            return new IntBufferWrapper(view.asIntBuffer());
+        else if (AVKey.FLOAT32.equals(dataType))
+            return new FloatBufferWrapper(view.asFloatBuffer());
+
+        String msg = Logging.getMessage("generic.DataTypeNotSupported", dataType);
+        Logging.error(msg);
+        throw new IllegalArgumentException(msg);
+    }
+
+    public static class ByteBufferWrapper extends BufferWrapper
+    {
+        protected final ByteBuffer buffer;
+
+        public ByteBufferWrapper(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        public int length()
+        {
+            return this.buffer.limit();
+        }
+
+        public double getDouble(int index)
+        {
+            return this.buffer.get(index);
+        }
+
+        public int getElementSize()
+        {
+            return 1;
+        }
+    }
+
+    public static class ShortBufferWrapper extends BufferWrapper
+    {
+        protected final ShortBuffer buffer;
+
+        public ShortBufferWrapper(ShortBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        public int length()
+        {
+            return this.buffer.limit();
+        }
+
+        public double getDouble(int index)
+        {
+            return this.buffer.get(index);
+        }
+
+        public int getElementSize()
+        {
+            return 2;
+        }
+    }
+
+    public static class IntBufferWrapper extends BufferWrapper
+    {
+        protected final IntBuffer buffer;
+
+        public IntBufferWrapper(IntBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        public int length()
+        {
+            return this.buffer.limit();
+        }
+
+        public double getDouble(int index)
+        {
+            return this.buffer.get(index);
+        }
+
+        public int getElementSize()
+        {
+            return 4;
+        }
+    }
+
+    public static class FloatBufferWrapper extends BufferWrapper
+    {
+        protected final FloatBuffer buffer;
+
+        public FloatBufferWrapper(FloatBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        public int length()
+        {
+            return this.buffer.limit();
+        }
+
+        public double getDouble(int index)
+        {
+            return this.buffer.get(index);
+        }
+
+        public int getElementSize()
+        {
+            return 4;
+        }
+    }
+}
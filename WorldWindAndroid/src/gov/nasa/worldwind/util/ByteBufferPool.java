@@ -0,0 +1,510 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.WorldWindowImpl;
+
+import java.lang.ref.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * A pool of direct byte buffers, shared by the code that reads tiles from the network and the file system. Reusing
+ * buffers avoids allocating native memory for every tile read, and the garbage collection that follows.
+ * <p/>
+ * Buffers come in size classes whose capacities are powers of two from {@link #MIN_CAPACITY} to {@link #MAX_CAPACITY}.
+ * {@link #acquire(int)} returns a buffer from the smallest class that holds the requested capacity, and {@link
+ * #release(java.nio.ByteBuffer)} returns it to the pool once its content is no longer used. Requests larger than the
+ * largest class are allocated directly and are not pooled. The pool retains at most {@link #getMaxPooledBytes()}
+ * bytes of released buffers; buffers released beyond that are left to the garbage collector.
+ * <p/>
+ * A buffer that is never released is not lost: it is collected like any other buffer, and the pool allocates a new one
+ * in its place. When leak detection is enabled, the pool records where each buffer was acquired and logs a warning
+ * with that location when a buffer is collected without having been released.
+ * <p/>
+ * The pool is thread safe.
+ *
+ * @version $Id$
+ */
+public class ByteBufferPool
+{
+    /** The capacity of the smallest size class, in bytes. */
+    public static final int MIN_CAPACITY = 1 << 12;
+    /** The capacity of the largest size class, in bytes. */
+    public static final int MAX_CAPACITY = 1 << 22;
+    /** The default maximum number of bytes held by released buffers. */
+    public static final long DEFAULT_MAX_POOLED_BYTES = 8L << 20;
+
+    protected static ByteBufferPool defaultPool;
+
+    protected final long maxPooledBytes;
+    protected final SizeClass[] sizeClasses;
+    protected long pooledBytes;
+    protected volatile boolean leakDetectionEnabled = WorldWindowImpl.DEBUG;
+    // Buffers acquired while leak detection is enabled, keyed by identity hash code. The references are weak so that a
+    // leaked buffer can be collected and reported.
+    protected final Map<Integer, List<LeakReference>> outstanding = new HashMap<Integer, List<LeakReference>>();
+    protected final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<ByteBuffer>();
+    protected int leakCount;
+
+    /**
+     * Creates a pool that retains up to a specified number of bytes of released buffers.
+     *
+     * @param maxPooledBytes the maximum number of bytes held by released buffers.
+     *
+     * @throws IllegalArgumentException if the maximum is negative.
+     */
+    public ByteBufferPool(long maxPooledBytes)
+    {
+        if (maxPooledBytes < 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", maxPooledBytes);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.maxPooledBytes = maxPooledBytes;
+
+        List<SizeClass> list = new ArrayList<SizeClass>();
+        for (int capacity = MIN_CAPACITY; capacity <= MAX_CAPACITY; capacity <<= 1)
+        {
+            list.add(new SizeClass(capacity));
+        }
+        this.sizeClasses = list.toArray(new SizeClass[list.size()]);
+    }
+
+    /**
+     * Returns the pool shared by the retrieval, file reading and texture reading code.
+     *
+     * @return the shared pool.
+     */
+    public static synchronized ByteBufferPool getDefault()
+    {
+        if (defaultPool == null)
+            defaultPool = new ByteBufferPool(DEFAULT_MAX_POOLED_BYTES);
+
+        return defaultPool;
+    }
+
+    /**
+     * Returns the maximum number of bytes held by released buffers.
+     *
+     * @return the maximum number of pooled bytes.
+     */
+    public long getMaxPooledBytes()
+    {
+        return this.maxPooledBytes;
+    }
+
+    /**
+     * Indicates whether buffers collected without being released are reported. Enabled by default when {@link
+     * WorldWindowImpl#DEBUG} is true.
+     *
+     * @return true if leak detection is enabled, otherwise false.
+     */
+    public boolean isLeakDetectionEnabled()
+    {
+        return this.leakDetectionEnabled;
+    }
+
+    /**
+     * Specifies whether buffers collected without being released are reported. Detection records a stack trace for
+     * every buffer acquired, so it is intended for debugging.
+     *
+     * @param enabled true to enable leak detection, otherwise false.
+     */
+    public void setLeakDetectionEnabled(boolean enabled)
+    {
+        this.leakDetectionEnabled = enabled;
+    }
+
+    /**
+     * Returns a direct buffer with at least a specified capacity. The buffer's position is zero, its limit is the
+     * requested capacity and its byte order is big endian. Its content is undefined.
+     *
+     * @param capacity the minimum capacity, in bytes.
+     *
+     * @return a direct buffer.
+     *
+     * @throws IllegalArgumentException if the capacity is negative.
+     */
+    public ByteBuffer acquire(int capacity)
+    {
+        if (capacity < 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", capacity);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.reportLeaks();
+
+        SizeClass sizeClass = this.getSizeClass(capacity);
+        ByteBuffer buffer = null;
+
+        synchronized (this)
+        {
+            if (sizeClass != null)
+            {
+                sizeClass.acquireCount++;
+                buffer = sizeClass.buffers.poll();
+                if (buffer != null)
+                {
+                    sizeClass.hitCount++;
+                    this.pooledBytes -= sizeClass.capacity;
+                }
+                sizeClass.outstandingCount++;
+            }
+        }
+
+        if (buffer == null)
+            buffer = ByteBuffer.allocateDirect(sizeClass != null ? sizeClass.capacity : capacity);
+
+        buffer.clear();
+        buffer.limit(capacity);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+
+        if (this.leakDetectionEnabled && sizeClass != null)
+            this.track(buffer);
+
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must have been returned by {@link #acquire(int)}, and neither it nor any
+     * view of it may be used afterwards. Buffers that were not acquired from this pool are ignored.
+     *
+     * @param buffer the buffer to return.
+     *
+     * @throws IllegalArgumentException if the buffer is null.
+     */
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer == null)
+        {
+            String msg = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (!buffer.isDirect())
+            return;
+
+        SizeClass sizeClass = this.getSizeClass(buffer.capacity());
+        if (sizeClass == null || sizeClass.capacity != buffer.capacity())
+            return;
+
+        if (this.leakDetectionEnabled)
+            this.untrack(buffer);
+
+        synchronized (this)
+        {
+            sizeClass.releaseCount++;
+            sizeClass.outstandingCount = Math.max(sizeClass.outstandingCount - 1, 0);
+
+            if (this.pooledBytes + sizeClass.capacity <= this.maxPooledBytes)
+            {
+                sizeClass.buffers.add(buffer);
+                this.pooledBytes += sizeClass.capacity;
+            }
+        }
+    }
+
+    /**
+     * Returns a buffer holding a buffer's content and room for at least a specified capacity, releasing the original
+     * buffer. Used to grow a buffer whose final size is not known in advance.
+     *
+     * @param buffer   a buffer acquired from this pool, whose content from zero to its position is kept.
+     * @param capacity the minimum capacity of the new buffer, in bytes.
+     *
+     * @return a buffer from this pool positioned after the original content.
+     *
+     * @throws IllegalArgumentException if the buffer is null or the capacity is less than the buffer's position.
+     */
+    public ByteBuffer grow(ByteBuffer buffer, int capacity)
+    {
+        if (buffer == null)
+        {
+            String msg = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (capacity < buffer.position())
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", capacity);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        ByteBuffer biggerBuffer = this.acquire(capacity);
+        buffer.flip();
+        biggerBuffer.put(buffer);
+        this.release(buffer);
+
+        return biggerBuffer;
+    }
+
+    /**
+     * Returns the number of buffers acquired while leak detection was enabled that were collected without being
+     * released.
+     *
+     * @return the number of leaked buffers detected.
+     */
+    public synchronized int getLeakCount()
+    {
+        return this.leakCount;
+    }
+
+    /**
+     * Returns the number of size classes.
+     *
+     * @return the number of size classes.
+     */
+    public int getSizeClassCount()
+    {
+        return this.sizeClasses.length;
+    }
+
+    /**
+     * Returns the capacity of the buffers in a size class.
+     *
+     * @param index the size class, from zero to {@link #getSizeClassCount()} - 1.
+     *
+     * @return the capacity in bytes.
+     */
+    public int getCapacity(int index)
+    {
+        return this.sizeClasses[index].capacity;
+    }
+
+    /**
+     * Returns the number of buffers acquired from a size class.
+     *
+     * @param index the size class.
+     *
+     * @return the number of buffers acquired.
+     */
+    public synchronized long getAcquireCount(int index)
+    {
+        return this.sizeClasses[index].acquireCount;
+    }
+
+    /**
+     * Returns the number of buffers acquired from a size class that were reused rather than allocated.
+     *
+     * @param index the size class.
+     *
+     * @return the number of buffers reused.
+     */
+    public synchronized long getHitCount(int index)
+    {
+        return this.sizeClasses[index].hitCount;
+    }
+
+    /**
+     * Returns the number of buffers released to a size class.
+     *
+     * @param index the size class.
+     *
+     * @return the number of buffers released.
+     */
+    public synchronized long getReleaseCount(int index)
+    {
+        return this.sizeClasses[index].releaseCount;
+    }
+
+    /**
+     * Returns the number of buffers of a size class that are acquired and not yet released.
+     *
+     * @param index the size class.
+     *
+     * @return the number of outstanding buffers.
+     */
+    public synchronized int getOutstandingCount(int index)
+    {
+        return this.sizeClasses[index].outstandingCount;
+    }
+
+    /**
+     * Returns the number of released buffers of a size class held by the pool.
+     *
+     * @param index the size class.
+     *
+     * @return the number of pooled buffers.
+     */
+    public synchronized int getPooledCount(int index)
+    {
+        return this.sizeClasses[index].buffers.size();
+    }
+
+    /**
+     * Returns the fraction of all buffers acquired that were reused rather than allocated.
+     *
+     * @return the hit rate, from 0 to 1.
+     */
+    public synchronized double getHitRate()
+    {
+        long acquires = 0;
+        long hits = 0;
+        for (SizeClass sizeClass : this.sizeClasses)
+        {
+            acquires += sizeClass.acquireCount;
+            hits += sizeClass.hitCount;
+        }
+
+        return acquires > 0 ? (double) hits / acquires : 0;
+    }
+
+    /**
+     * Returns the number of bytes held by released buffers.
+     *
+     * @return the number of pooled bytes.
+     */
+    public synchronized long getPooledBytes()
+    {
+        return this.pooledBytes;
+    }
+
+    /**
+     * Returns the pool's usage statistics: its hit rate, its size, the number of leaks detected, and for each size class
+     * that has been used, the number of buffers in use and pooled.
+     *
+     * @return the pool's statistics.
+     */
+    public Collection<PerformanceStatistic> getPerformanceStatistics()
+    {
+        ArrayList<PerformanceStatistic> stats = new ArrayList<PerformanceStatistic>();
+
+        synchronized (this)
+        {
+            stats.add(new PerformanceStatistic(PerformanceStatistic.BUFFER_POOL, "Buffer pool hit rate (%)",
+                (int) (100 * this.getHitRate())));
+            stats.add(new PerformanceStatistic(PerformanceStatistic.BUFFER_POOL, "Buffer pool size (KB)",
+                this.pooledBytes / 1024));
+            stats.add(new PerformanceStatistic(PerformanceStatistic.BUFFER_POOL, "Buffer pool leaks",
+                this.leakCount));
+
+            for (SizeClass sizeClass : this.sizeClasses)
+            {
+                if (sizeClass.acquireCount == 0)
+                    continue;
+
+                stats.add(new PerformanceStatistic(PerformanceStatistic.BUFFER_POOL,
+                    "Buffer pool " + (sizeClass.capacity / 1024) + " KB in use / pooled",
+                    sizeClass.outstandingCount + " / " + sizeClass.buffers.size()));
+            }
+        }
+
+        return stats;
+    }
+
+    protected SizeClass getSizeClass(int capacity)
+    {
+        if (capacity > MAX_CAPACITY)
+            return null;
+
+        int index = 0;
+        while (this.sizeClasses[index].capacity < capacity)
+        {
+            index++;
+        }
+
+        return this.sizeClasses[index];
+    }
+
+    protected void track(ByteBuffer buffer)
+    {
+        LeakReference ref = new LeakReference(buffer, this.collected);
+        synchronized (this.outstanding)
+        {
+            List<LeakReference> list = this.outstanding.get(ref.identity);
+            if (list == null)
+                this.outstanding.put(ref.identity, list = new ArrayList<LeakReference>(1));
+            list.add(ref);
+        }
+    }
+
+    protected void untrack(ByteBuffer buffer)
+    {
+        Integer identity = System.identityHashCode(buffer);
+        synchronized (this.outstanding)
+        {
+            List<LeakReference> list = this.outstanding.get(identity);
+            if (list == null)
+                return;
+
+            for (Iterator<LeakReference> iter = list.iterator(); iter.hasNext(); )
+            {
+                if (iter.next().get() == buffer)
+                {
+                    iter.remove();
+                    break;
+                }
+            }
+
+            if (list.isEmpty())
+                this.outstanding.remove(identity);
+        }
+    }
+
+    protected void reportLeaks()
+    {
+        Reference<? extends ByteBuffer> ref;
+        while ((ref = this.collected.poll()) != null)
+        {
+            LeakReference leak = (LeakReference) ref;
+            synchronized (this.outstanding)
+            {
+                List<LeakReference> list = this.outstanding.get(leak.identity);
+                if (list == null || !list.remove(leak))
+                    continue; // Released before it was collected.
+
+                if (list.isEmpty())
+                    this.outstanding.remove(leak.identity);
+            }
+
+            synchronized (this)
+            {
+                this.leakCount++;
+                SizeClass sizeClass = this.getSizeClass(leak.capacity);
+                if (sizeClass != null)
+                    sizeClass.outstandingCount = Math.max(sizeClass.outstandingCount - 1, 0);
+            }
+
+            Logging.warning(Logging.getMessage("ByteBufferPool.BufferNotReleased", leak.capacity), leak.origin);
+        }
+    }
+
+    protected static class SizeClass
+    {
+        protected final int capacity;
+        protected final Queue<ByteBuffer> buffers = new ArrayDeque<ByteBuffer>();
+        protected long acquireCount;
+        protected long hitCount;
+        protected long releaseCount;
+        protected int outstandingCount;
+
+        public SizeClass(int capacity)
+        {
+            this.capacity = capacity;
+        }
+    }
+
+    protected static class LeakReference extends WeakReference<ByteBuffer>
+    {
+        protected final Integer identity;
+        protected final int capacity;
+        protected final Throwable origin = new Throwable();
+
+        public LeakReference(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue)
+        {
+            super(buffer, queue);
+            this.identity = System.identityHashCode(buffer);
+            this.capacity = buffer.capacity();
+        }
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.geom.Rect;
+import gov.nasa.worldwind.geom.Sector;
+
+import java.util.*;
+
+/**
+ * Tracks which part of an offscreen tile must be redrawn when the objects drawn into it change. The tile is identified
+ * with a geographic sector mapped linearly onto its pixels. Each update lists the objects currently in the tile, in
+ * drawing order, by their state keys and sectors. Objects whose state key is unchanged since the tile was last drawn
+ * are considered unchanged; the pixels covered by every other object, in its previous or current state, form the dirty
+ * rectangle. Only the dirty rectangle need be cleared, and only the objects overlapping it drawn again.
+ * <p/>
+ * The tracker falls back to redrawing the whole tile when it has been invalidated, when an object's extent is unknown,
+ * when the drawing order of unchanged objects changes, or when the dirty rectangle covers most of the tile.
+ * <p/>
+ * DirtyRegionTracker uses no OpenGL state, and may be used and tested without a GPU.
+ *
+ * @version $Id$
+ */
+public class DirtyRegionTracker
+{
+    /** The default number of pixels by which each object's bounds are widened, to cover its outline. */
+    protected static final int DEFAULT_MARGIN = 8;
+    /** The default fraction of the tile's area above which the whole tile is redrawn. */
+    protected static final double DEFAULT_FULL_REDRAW_FRACTION = 0.5;
+    protected static final int[] EMPTY_BOUNDS = new int[0];
+
+    protected final Sector sector;
+    protected final int width;
+    protected final int height;
+    protected int margin = DEFAULT_MARGIN;
+    protected double fullRedrawFraction = DEFAULT_FULL_REDRAW_FRACTION;
+    protected boolean invalid = true;
+
+    /** The state keys of the objects last drawn into the tile, in drawing order. */
+    protected List<Object> drawnKeys = new ArrayList<Object>();
+    /** The pixel bounds of the objects last drawn into the tile, four values per sector. */
+    protected List<int[]> drawnBounds = new ArrayList<int[]>();
+    /** The state keys of the objects added during the current update. */
+    protected List<Object> keys = new ArrayList<Object>();
+    /** The pixel bounds of the objects added during the current update. */
+    protected List<int[]> bounds = new ArrayList<int[]>();
+    protected boolean unknownExtent;
+
+    protected boolean dirty;
+    protected boolean fullRedraw;
+    /** The dirty rectangle's minimum and maximum x and y, in pixels from the tile's lower left corner. */
+    protected int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+
+    /**
+     * Creates a tracker for a tile of the specified sector and pixel dimensions. The tracker is initially invalid, so
+     * its first update redraws the whole tile.
+     *
+     * @param sector the tile's sector.
+     * @param width  the tile's width, in pixels.
+     * @param height the tile's height, in pixels.
+     *
+     * @throws IllegalArgumentException if the sector is null, or either dimension is less than 1.
+     */
+    public DirtyRegionTracker(Sector sector, int width, int height)
+    {
+        if (sector == null)
+        {
+            String msg = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (width < 1 || height < 1)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", width < 1 ? width : height);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.sector = sector;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the number of pixels by which each object's bounds are widened.
+     *
+     * @return the margin, in pixels.
+     */
+    public int getMargin()
+    {
+        return this.margin;
+    }
+
+    /**
+     * Specifies the number of pixels by which each object's bounds are widened, to cover outlines and other features
+     * drawn outside the object's sector. This should be at least half the widest outline drawn into the tile.
+     *
+     * @param margin the margin, in pixels.
+     *
+     * @throws IllegalArgumentException if the margin is negative.
+     */
+    public void setMargin(int margin)
+    {
+        if (margin < 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", margin);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.margin = margin;
+    }
+
+    /**
+     * Returns the fraction of the tile's area above which the whole tile is redrawn.
+     *
+     * @return the full redraw fraction.
+     */
+    public double getFullRedrawFraction()
+    {
+        return this.fullRedrawFraction;
+    }
+
+    /**
+     * Specifies the fraction of the tile's area above which the whole tile is redrawn rather than only the dirty
+     * rectangle. Redrawing a large part of the tile costs nearly as much as redrawing all of it.
+     *
+     * @param fraction the full redraw fraction, between 0 and 1.
+     *
+     * @throws IllegalArgumentException if the fraction is not between 0 and 1.
+     */
+    public void setFullRedrawFraction(double fraction)
+    {
+        if (fraction < 0 || fraction > 1)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", fraction);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.fullRedrawFraction = fraction;
+    }
+
+    /**
+     * Causes the next update to redraw the whole tile, such as when the tile's contents have been lost.
+     */
+    public void invalidate()
+    {
+        this.invalid = true;
+    }
+
+    /** Starts an update. Objects in the tile are then added in drawing order, and the update ended. */
+    public void beginUpdate()
+    {
+        this.keys.clear();
+        this.bounds.clear();
+        this.unknownExtent = false;
+    }
+
+    /**
+     * Adds an object in the tile to the current update.
+     *
+     * @param stateKey the object's state key. The object is unchanged if the key equals one of an object last drawn.
+     *                 A null key is never equal to another, so the object is always redrawn.
+     * @param sectors  the sectors bounding the object, or null if they are unknown, in which case the whole tile is
+     *                 redrawn.
+     */
+    public void addObject(Object stateKey, List<Sector> sectors)
+    {
+        this.keys.add(stateKey != null ? stateKey : new Object());
+
+        if (sectors == null)
+        {
+            this.unknownExtent = true;
+            this.bounds.add(EMPTY_BOUNDS);
+            return;
+        }
+
+        int[] objectBounds = new int[4 * sectors.size()];
+        int n = 0;
+        for (Sector s : sectors)
+        {
+            if (s != null && this.computePixelBounds(s, objectBounds, n))
+                n += 4;
+        }
+
+        this.bounds.add(n == 0 ? EMPTY_BOUNDS : (n < objectBounds.length ? Arrays.copyOf(objectBounds, n) : objectBounds));
+    }
+
+    /**
+     * Ends the current update, computing the dirty rectangle from the differences between the objects added and those
+     * last drawn. The objects added become those last drawn.
+     *
+     * @return true if any part of the tile must be redrawn; false if the tile is unchanged.
+     */
+    public boolean endUpdate()
+    {
+        this.dirty = false;
+        this.fullRedraw = false;
+        this.dirtyMinX = this.width;
+        this.dirtyMinY = this.height;
+        this.dirtyMaxX = 0;
+        this.dirtyMaxY = 0;
+
+        if (this.invalid || this.unknownExtent)
+        {
+            this.dirty = true;
+            this.fullRedraw = true;
+        }
+        else
+        {
+            this.computeDirtyRegion();
+        }
+
+        // The objects added in this update are now the tile's drawn objects. Reuse the previous lists for the next
+        // update.
+        List<Object> tmpKeys = this.drawnKeys;
+        this.drawnKeys = this.keys;
+        this.keys = tmpKeys;
+        List<int[]> tmpBounds = this.drawnBounds;
+        this.drawnBounds = this.bounds;
+        this.bounds = tmpBounds;
+        this.keys.clear();
+        this.bounds.clear();
+        this.invalid = false;
+
+        return this.dirty;
+    }
+
+    /**
+     * Indicates whether the most recent update found any part of the tile to redraw.
+     *
+     * @return true if the tile must be redrawn, wholly or in part.
+     */
+    public boolean isDirty()
+    {
+        return this.dirty;
+    }
+
+    /**
+     * Indicates whether the most recent update requires the whole tile to be redrawn.
+     *
+     * @return true if the whole tile must be redrawn.
+     */
+    public boolean isFullRedraw()
+    {
+        return this.fullRedraw;
+    }
+
+    /**
+     * Returns the rectangle to redraw, as computed by the most recent update. The rectangle is in pixels from the
+     * tile's lower left corner, which is the tile sector's minimum latitude and longitude. This is the whole tile if
+     * the whole tile must be redrawn, and is empty if the tile is unchanged.
+     *
+     * @return a new rectangle holding the region to redraw.
+     */
+    public Rect getDirtyRect()
+    {
+        if (this.fullRedraw)
+            return new Rect(0, 0, this.width, this.height);
+
+        if (!this.dirty)
+            return new Rect();
+
+        return new Rect(this.dirtyMinX, this.dirtyMinY, this.dirtyMaxX - this.dirtyMinX,
+            this.dirtyMaxY - this.dirtyMinY);
+    }
+
+    /**
+     * Indicates whether an object must be drawn to redraw the region computed by the most recent update.
+     *
+     * @param sectors the sectors bounding the object, or null if they are unknown.
+     *
+     * @return true if the whole tile must be redrawn, or the object's widened bounds overlap the dirty rectangle.
+     */
+    public boolean intersectsDirtyRegion(List<Sector> sectors)
+    {
+        if (this.fullRedraw || sectors == null)
+            return true;
+
+        if (!this.dirty)
+            return false;
+
+        int[] b = new int[4];
+        for (Sector s : sectors)
+        {
+            if (s != null && this.computePixelBounds(s, b, 0)
+                && b[0] < this.dirtyMaxX && b[2] > this.dirtyMinX && b[1] < this.dirtyMaxY && b[3] > this.dirtyMinY)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Computes the dirty rectangle as the union of the bounds of every object that is not matched by an object with
+     * an equal state key in the other list, and determines whether the whole tile must be redrawn instead.
+     */
+    protected void computeDirtyRegion()
+    {
+        boolean[] drawnMatched = this.matchKeys(this.drawnKeys, this.keys);
+        boolean[] matched = this.matchKeys(this.keys, this.drawnKeys);
+
+        for (int i = 0; i < drawnMatched.length; i++)
+        {
+            if (!drawnMatched[i])
+                this.addDirtyBounds(this.drawnBounds.get(i));
+        }
+
+        for (int i = 0; i < matched.length; i++)
+        {
+            if (!matched[i])
+                this.addDirtyBounds(this.bounds.get(i));
+        }
+
+        // The unchanged objects must be drawn in the same order as before; otherwise where they overlap, the tile may
+        // differ anywhere.
+        for (int i = 0, j = 0; ; i++, j++)
+        {
+            while (i < drawnMatched.length && !drawnMatched[i])
+            {
+                i++;
+            }
+            while (j < matched.length && !matched[j])
+            {
+                j++;
+            }
+            if (i >= drawnMatched.length || j >= matched.length)
+                break;
+
+            if (!this.drawnKeys.get(i).equals(this.keys.get(j)))
+            {
+                this.fullRedraw = true;
+                this.dirty = true;
+                return;
+            }
+        }
+
+        // An object may have changed without covering any of the tile's pixels.
+        if (this.dirtyMinX >= this.dirtyMaxX || this.dirtyMinY >= this.dirtyMaxY)
+            return;
+
+        this.dirty = true;
+        double area = (double) (this.dirtyMaxX - this.dirtyMinX) * (this.dirtyMaxY - this.dirtyMinY);
+        if (area > this.fullRedrawFraction * this.width * this.height)
+            this.fullRedraw = true;
+    }
+
+    /**
+     * Determines which keys in one list are matched by an equal key in another, each key in the other list matching at
+     * most one.
+     *
+     * @param keys   the keys to match.
+     * @param others the keys to match against.
+     *
+     * @return an array indicating whether each key is matched.
+     */
+    protected boolean[] matchKeys(List<Object> keys, List<Object> others)
+    {
+        Map<Object, Integer> counts = new HashMap<Object, Integer>(2 * others.size());
+        for (Object key : others)
+        {
+            Integer count = counts.get(key);
+            counts.put(key, count != null ? count + 1 : 1);
+        }
+
+        boolean[] matched = new boolean[keys.size()];
+        for (int i = 0; i < matched.length; i++)
+        {
+            Object key = keys.get(i);
+            Integer count = counts.get(key);
+            if (count != null && count > 0)
+            {
+                counts.put(key, count - 1);
+                matched[i] = true;
+            }
+        }
+
+        return matched;
+    }
+
+    protected void addDirtyBounds(int[] b)
+    {
+        for (int i = 0; i < b.length; i += 4)
+        {
+            if (b[i] < this.dirtyMinX)
+                this.dirtyMinX = b[i];
+            if (b[i + 1] < this.dirtyMinY)
+                this.dirtyMinY = b[i + 1];
+            if (b[i + 2] > this.dirtyMaxX)
+                this.dirtyMaxX = b[i + 2];
+            if (b[i + 3] > this.dirtyMaxY)
+                this.dirtyMaxY = b[i + 3];
+        }
+    }
+
+    /**
+     * Computes the pixels covered by a sector, widened by the margin and clipped to the tile.
+     *
+     * @param s      the sector.
+     * @param result an array to receive the minimum x, minimum y, maximum x and maximum y, in that order.
+     * @param offset the index in the array at which to store the bounds.
+     *
+     * @return true if the sector covers any of the tile's pixels; false otherwise.
+     */
+    protected boolean computePixelBounds(Sector s, int[] result, int offset)
+    {
+        double sx = this.width / this.sector.getDeltaLonDegrees();
+        double sy = this.height / this.sector.getDeltaLatDegrees();
+        double x0 = (s.minLongitude.degrees - this.sector.minLongitude.degrees) * sx;
+        double x1 = (s.maxLongitude.degrees - this.sector.minLongitude.degrees) * sx;
+        double y0 = (s.minLatitude.degrees - this.sector.minLatitude.degrees) * sy;
+        double y1 = (s.maxLatitude.degrees - this.sector.minLatitude.degrees) * sy;
+
+        int minX = (int) Math.max(0, Math.floor(x0) - this.margin);
+        int minY = (int) Math.max(0, Math.floor(y0) - this.margin);
+        int maxX = (int) Math.min(this.width, Math.ceil(x1) + this.margin);
+        int maxY = (int) Math.min(this.height, Math.ceil(y1) + this.margin);
+        if (minX >= maxX || minY >= maxY)
+            return false;
+
+        result[offset] = minX;
+        result[offset + 1] = minY;
+        result[offset + 2] = maxX;
+        result[offset + 3] = maxY;
+        return true;
+    }
+}
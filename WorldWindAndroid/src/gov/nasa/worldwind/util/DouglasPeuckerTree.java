@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.geom.Position;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Douglas-Peucker simplification hierarchy over a line of points, from which a simplified line can be selected at
+ * any level of detail without reprocessing the points. The line is recursively split at the point furthest from the
+ * chord joining the ends of each range, and that distance is recorded as the point's error. A line with fewer points
+ * is then selected by walking the splits from the top down, stopping at any range whose error is small enough.
+ * <p/>
+ * The hierarchy is held in primitive arrays of three values per point, and the splits are computed without
+ * recursion, so lines of hundreds of thousands of points may be processed.
+ *
+ * @version $Id$
+ */
+public class DouglasPeuckerTree
+{
+    /** Decides which ranges of the line to refine when selecting points from a {@link DouglasPeuckerTree}. */
+    public interface Refinement
+    {
+        /**
+         * Indicates whether a range of the line must be refined by including its split point.
+         *
+         * @param start the index of the range's first point.
+         * @param split the index of the range's split point.
+         * @param end   the index of the range's last point.
+         * @param error the greatest distance of a point in the range from the chord joining its first and last points.
+         *
+         * @return true to include the split point and visit the ranges on either side of it, or false to join the
+         *         range's first and last points directly.
+         */
+        boolean mustRefine(int start, int split, int end, double error);
+    }
+
+    protected final int count;
+    protected final float[] errors;
+    protected final int[] leftSplits; // Split of the range to the left of each split point, or -1.
+    protected final int[] rightSplits; // Split of the range to the right of each split point, or -1.
+    protected int rootSplit = -1;
+    protected int[] stack = new int[48];
+
+    /**
+     * Creates a hierarchy over a line of points in a Cartesian coordinate system. Errors are measured in the units of
+     * the coordinates.
+     *
+     * @param coords the points' coordinates, three per point.
+     * @param count  the number of points.
+     *
+     * @throws IllegalArgumentException if the coordinates are null or hold fewer than <code>count</code> points.
+     */
+    public DouglasPeuckerTree(double[] coords, int count)
+    {
+        if (coords == null)
+        {
+            String msg = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (count < 0 || coords.length < 3 * count)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", count);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.count = count;
+        this.errors = new float[count];
+        this.leftSplits = new int[count];
+        this.rightSplits = new int[count];
+        this.build(coords);
+    }
+
+    /**
+     * Creates a hierarchy over a line of geographic positions. The positions are placed on a sphere of the specified
+     * radius, raised by their elevations, so errors are measured in meters.
+     *
+     * @param positions the positions.
+     * @param radius    the radius of the sphere, in meters.
+     *
+     * @return a new hierarchy over the positions.
+     *
+     * @throws IllegalArgumentException if the positions are null.
+     */
+    public static DouglasPeuckerTree fromPositions(List<? extends Position> positions, double radius)
+    {
+        if (positions == null)
+        {
+            String msg = Logging.getMessage("nullValue.PositionsListIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int count = positions.size();
+        double[] coords = new double[3 * count];
+        for (int i = 0, k = 0; i < count; i++)
+        {
+            Position pos = positions.get(i);
+            double lat = pos.latitude.radians;
+            double lon = pos.longitude.radians;
+            double r = radius + pos.elevation;
+            double cosLat = Math.cos(lat);
+            coords[k++] = r * cosLat * Math.sin(lon);
+            coords[k++] = r * Math.sin(lat);
+            coords[k++] = r * cosLat * Math.cos(lon);
+        }
+
+        return new DouglasPeuckerTree(coords, count);
+    }
+
+    /**
+     * Returns the number of points in the line.
+     *
+     * @return the number of points.
+     */
+    public int getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * Returns a point's error: its distance from the chord of the range it splits. The line's first and last points
+     * have infinite error, and points that split no range have an error of 0.
+     *
+     * @param index the point's index.
+     *
+     * @return the point's error.
+     */
+    public double getError(int index)
+    {
+        return this.errors[index];
+    }
+
+    /**
+     * Selects the points of a simplified line. The first and last points are always selected. Each range, starting
+     * with the whole line, is refined if the refinement says it must be, in which case its split point is selected and
+     * the ranges on either side of it are considered in turn. Points are selected in order.
+     * <p/>
+     * This method is not safe for use by multiple threads at once.
+     *
+     * @param refinement decides which ranges to refine.
+     * @param result     an array to receive the indices of the selected points. It must be able to hold every point.
+     *
+     * @return the number of points selected.
+     *
+     * @throws IllegalArgumentException if either argument is null, or the result is too short.
+     */
+    public int select(Refinement refinement, int[] result)
+    {
+        if (refinement == null)
+        {
+            String msg = Logging.getMessage("nullValue.ObjectIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (result == null || result.length < this.count)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", result != null ? result.length : null);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (this.count == 0)
+            return 0;
+
+        int n = 0;
+        result[n++] = 0;
+        if (this.count == 1)
+            return n;
+
+        // Visit the ranges depth first, the left range before the right, so that each range selects its last point
+        // after every point before it. Each stack entry is a range's start, split and end.
+        int top = this.push(0, 0, this.rootSplit, this.count - 1);
+        while (top > 0)
+        {
+            top -= 3;
+            int start = this.stack[top];
+            int split = this.stack[top + 1];
+            int end = this.stack[top + 2];
+
+            if (split < 0 || !refinement.mustRefine(start, split, end, this.errors[split]))
+            {
+                result[n++] = end;
+                continue;
+            }
+
+            top = this.push(top, split, this.rightSplits[split], end);
+            top = this.push(top, start, this.leftSplits[split], split);
+        }
+
+        return n;
+    }
+
+    protected void build(double[] coords)
+    {
+        Arrays.fill(this.leftSplits, -1);
+        Arrays.fill(this.rightSplits, -1);
+        if (this.count == 0)
+            return;
+
+        this.errors[0] = Float.POSITIVE_INFINITY;
+        this.errors[this.count - 1] = Float.POSITIVE_INFINITY;
+
+        // Each stack entry is a range's start and end, and the split point whose left or right range it is: 2 * split
+        // for the left range, 2 * split + 1 for the right range, or -1 for the whole line.
+        int top = this.push(0, 0, -1, this.count - 1);
+        while (top > 0)
+        {
+            top -= 3;
+            int start = this.stack[top];
+            int parent = this.stack[top + 1];
+            int end = this.stack[top + 2];
+            if (end - start < 2)
+                continue;
+
+            int split = start + 1;
+            double maxDistance = -1;
+            for (int i = start + 1; i < end; i++)
+            {
+                double d = distanceToSegment(coords, i, start, end);
+                if (d > maxDistance)
+                {
+                    maxDistance = d;
+                    split = i;
+                }
+            }
+
+            this.errors[split] = (float) maxDistance;
+            if (parent < 0)
+                this.rootSplit = split;
+            else if ((parent & 1) == 0)
+                this.leftSplits[parent >> 1] = split;
+            else
+                this.rightSplits[parent >> 1] = split;
+
+            top = this.push(top, start, 2 * split, split);
+            top = this.push(top, split, 2 * split + 1, end);
+        }
+
+        this.stack = new int[48]; // Release the space used by a deep build.
+    }
+
+    protected int push(int top, int a, int b, int c)
+    {
+        if (top + 3 > this.stack.length)
+        {
+            int[] newStack = new int[2 * this.stack.length];
+            System.arraycopy(this.stack, 0, newStack, 0, top);
+            this.stack = newStack;
+        }
+
+        this.stack[top] = a;
+        this.stack[top + 1] = b;
+        this.stack[top + 2] = c;
+        return top + 3;
+    }
+
+    protected static double distanceToSegment(double[] coords, int index, int start, int end)
+    {
+        int p = 3 * index, a = 3 * start, b = 3 * end;
+        double dx = coords[b] - coords[a];
+        double dy = coords[b + 1] - coords[a + 1];
+        double dz = coords[b + 2] - coords[a + 2];
+        double px = coords[p] - coords[a];
+        double py = coords[p + 1] - coords[a + 1];
+        double pz = coords[p + 2] - coords[a + 2];
+
+        double lengthSquared = dx * dx + dy * dy + dz * dz;
+        double t = lengthSquared > 0 ? (px * dx + py * dy + pz * dz) / lengthSquared : 0;
+        t = t < 0 ? 0 : (t > 1 ? 1 : t);
+
+        double x = px - t * dx;
+        double y = py - t * dy;
+        double z = pz - t * dz;
+        return Math.sqrt(x * x + y * y + z * z);
+    }
+}
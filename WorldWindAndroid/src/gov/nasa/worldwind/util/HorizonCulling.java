@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.Globe;
+
+/**
+ * Determines whether extents are hidden behind the horizon of a globe's ellipsoid. The test is performed in a space
+ * scaled so that the ellipsoid is a unit sphere, where an extent is hidden if its bounding sphere lies inside the cone
+ * of the sphere's silhouette as seen from the eye point, and farther from the eye than the horizon. Extents are
+ * expected to include their maximum elevation, as tile extents do, so an extent is only considered hidden if its
+ * highest point is below the horizon.
+ * <p/>
+ * The test is conservative: the occluding sphere is lowered by the globe's minimum elevation, and each extent's
+ * bounding sphere is enlarged to bound its scaled shape. An extent reported as hidden cannot be visible.
+ *
+ * @version $Id$
+ */
+public class HorizonCulling
+{
+    protected boolean enabled = true;
+    protected Globe globe;
+    protected Vec4 eyePoint;
+    protected double verticalExaggeration;
+    // The state below is computed from the globe, eye point and vertical exaggeration, in the globe's scaled space.
+    protected boolean canCull;
+    protected double scaleXZ;
+    protected double scaleY;
+    protected double eyeX;
+    protected double eyeY;
+    protected double eyeZ;
+    protected double eyeDistance;
+    protected double horizonDistance;
+    protected double coneAngle;
+    protected double radiusScale;
+    protected int culledCount;
+
+    public HorizonCulling()
+    {
+    }
+
+    /**
+     * Indicates whether extents are tested against the horizon. If not, {@link #isBelowHorizon(Extent)} always returns
+     * false.
+     *
+     * @return true if horizon culling is enabled, otherwise false.
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * Specifies whether extents are tested against the horizon. Disabling horizon culling makes it possible to compare
+     * the number of tiles selected with and without it.
+     *
+     * @param enabled true to enable horizon culling, otherwise false.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the number of extents found to be below the horizon since the count was last reset.
+     *
+     * @return the number of culled extents.
+     */
+    public int getCulledCount()
+    {
+        return this.culledCount;
+    }
+
+    /** Resets the number of culled extents to zero. Called at the beginning of each frame. */
+    public void resetCulledCount()
+    {
+        this.culledCount = 0;
+    }
+
+    /**
+     * Specifies the globe and eye point that subsequent tests are performed for. The horizon is only recomputed when
+     * one of the arguments has changed.
+     *
+     * @param globe                the globe whose ellipsoid occludes extents.
+     * @param eyePoint             the eye point in model coordinates.
+     * @param verticalExaggeration the vertical exaggeration applied to the globe's elevations.
+     */
+    public void update(Globe globe, Vec4 eyePoint, double verticalExaggeration)
+    {
+        if (globe == this.globe && eyePoint != null && eyePoint.equals(this.eyePoint)
+            && verticalExaggeration == this.verticalExaggeration)
+            return;
+
+        this.globe = globe;
+        // Copy the eye point, since the view may modify the instance it returns.
+        this.eyePoint = eyePoint != null ? new Vec4(eyePoint.x, eyePoint.y, eyePoint.z) : null;
+        this.verticalExaggeration = verticalExaggeration;
+        this.canCull = false;
+
+        if (globe == null || eyePoint == null)
+            return;
+
+        double a = globe.getEquatorialRadius();
+        double b = globe.getPolarRadius();
+        if (a <= 0 || b <= 0)
+            return;
+
+        // The Y axis is the polar axis. Scaling by the inverse radii maps the ellipsoid to the unit sphere, and any
+        // sphere of radius r to an ellipsoid bounded by a sphere of radius r / min(a, b).
+        this.scaleXZ = 1 / a;
+        this.scaleY = 1 / b;
+        this.radiusScale = 1 / Math.min(a, b);
+
+        // Terrain below the ellipsoid can reveal what the ellipsoid hides, so lower the occluder to the lowest terrain.
+        double minElevation = Math.min(globe.getMinElevation() * verticalExaggeration, 0);
+        double occluderRadius = 1 + minElevation * this.radiusScale;
+        if (occluderRadius <= 0)
+            return;
+
+        this.eyeX = eyePoint.x * this.scaleXZ;
+        this.eyeY = eyePoint.y * this.scaleY;
+        this.eyeZ = eyePoint.z * this.scaleXZ;
+        this.eyeDistance = Math.sqrt(this.eyeX * this.eyeX + this.eyeY * this.eyeY + this.eyeZ * this.eyeZ);
+        if (this.eyeDistance <= occluderRadius)
+            return; // The eye is inside the occluder; the horizon is undefined.
+
+        this.horizonDistance = Math.sqrt(this.eyeDistance * this.eyeDistance - occluderRadius * occluderRadius);
+        this.coneAngle = Math.asin(occluderRadius / this.eyeDistance);
+        this.canCull = true;
+    }
+
+    /**
+     * Indicates whether an extent is entirely hidden behind the horizon for the globe and eye point last specified in
+     * {@link #update(Globe, Vec4, double)}. Increments the culled count if it is.
+     *
+     * @param extent the extent to test.
+     *
+     * @return true if the extent cannot be seen from the eye point, otherwise false.
+     *
+     * @throws IllegalArgumentException if the extent is null.
+     */
+    public boolean isBelowHorizon(Extent extent)
+    {
+        if (extent == null)
+        {
+            String msg = Logging.getMessage("nullValue.ExtentIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (!this.enabled || !this.canCull)
+            return false;
+
+        Vec4 center = extent.getCenter();
+        double radius = extent.getRadius() * this.radiusScale;
+        double vx = center.x * this.scaleXZ - this.eyeX;
+        double vy = center.y * this.scaleY - this.eyeY;
+        double vz = center.z * this.scaleXZ - this.eyeZ;
+        double distance = Math.sqrt(vx * vx + vy * vy + vz * vz);
+
+        // Any part of the extent nearer than the horizon may be in front of the occluder.
+        if (distance - radius <= this.horizonDistance)
+            return false;
+
+        // The extent is hidden if it lies within the occluder's silhouette cone: the angle between the direction to the
+        // extent and the direction to the globe's center, plus the extent's angular radius, is within the cone.
+        double cosAngle = -(vx * this.eyeX + vy * this.eyeY + vz * this.eyeZ) / (distance * this.eyeDistance);
+        double angle = Math.acos(WWMath.clamp(cosAngle, -1, 1));
+        if (angle + Math.asin(radius / distance) > this.coneAngle)
+            return false;
+
+        this.culledCount++;
+        return true;
+    }
+}
@@ -26,6 +26,7 @@ public class Level extends AVListImpl implements Comparable<Level> {
 	protected int tileWidth;
 	protected int tileHeight;
 	protected String cacheName;
+	protected int cacheNameId = -1;
 	protected String service;
 	protected String dataset;
 	protected String formatSuffix;
@@ -38,7 +39,7 @@ public class Level extends AVListImpl implements Comparable<Level> {
 	// Absent tiles: A tile is deemed absent if a specified maximum number of attempts have been made to retrieve it.
 	// Retrieval attempts are governed by a minimum time interval between successive attempts. If an attempt is made
 	// within this interval, the tile is still deemed to be absent until the interval expires.
-	protected AbsentResourceList absentTiles;
+	protected AbsentTileIndex absentTiles;
 	int DEFAULT_MAX_ABSENT_TILE_ATTEMPTS = 2;
 	int DEFAULT_MIN_ABSENT_TILE_CHECK_INTERVAL = 10000; // milliseconds
 
@@ -81,7 +82,7 @@ public class Level extends AVListImpl implements Comparable<Level> {
 		Integer minAbsentTileCheckInterval = (Integer) this.params.getValue(AVKey.MIN_ABSENT_TILE_CHECK_INTERVAL);
 		if (minAbsentTileCheckInterval == null) minAbsentTileCheckInterval = DEFAULT_MIN_ABSENT_TILE_CHECK_INTERVAL;
 
-		this.absentTiles = new AbsentResourceList(maxAbsentTileAttempts, minAbsentTileCheckInterval);
+		this.absentTiles = new AbsentTileIndex(maxAbsentTileAttempts, minAbsentTileCheckInterval);
 	}
 
 	/**
@@ -177,6 +178,18 @@ public class Level extends AVListImpl implements Comparable<Level> {
 		return this.cacheName;
 	}
 
+	/**
+	 * Returns the process-wide id of this level's cache name, as assigned by {@link TileKey#getCacheNameId(String)}.
+	 * The id is used to build packed tile keys without allocating a {@link TileKey}.
+	 * 
+	 * @return this level's cache name id.
+	 */
+	public int getCacheNameId() {
+		if (this.cacheNameId < 0) this.cacheNameId = TileKey.getCacheNameId(this.cacheName);
+
+		return this.cacheNameId;
+	}
+
 	public double getTexelSize() {
 		return this.texelSize;
 	}
@@ -186,15 +199,25 @@ public class Level extends AVListImpl implements Comparable<Level> {
 	}
 
 	public void markResourceAbsent(long tileNumber) {
-		if (tileNumber >= 0) this.absentTiles.markResourceAbsent(tileNumber);
+		this.absentTiles.markAbsent(tileNumber);
+	}
+
+	/**
+	 * Marks a tile as not found by its server. The tile is considered absent for much longer than a tile marked by
+	 * {@link #markResourceAbsent(long)}, and the mark is saved with the level set's absent tiles.
+	 *
+	 * @param tileNumber the tile's number within this level.
+	 */
+	public void markResourceNotFound(long tileNumber) {
+		this.absentTiles.markNotFound(tileNumber);
 	}
 
 	public boolean isResourceAbsent(long tileNumber) {
-		return this.absentTiles.isResourceAbsent(tileNumber);
+		return this.absentTiles.isAbsent(tileNumber);
 	}
 
 	public void unmarkResourceAbsent(long tileNumber) {
-		if (tileNumber >= 0) this.absentTiles.unmarkResourceAbsent(tileNumber);
+		this.absentTiles.unmarkAbsent(tileNumber);
 	}
 
 	public long getExpiryTime() {
@@ -203,6 +226,7 @@ public class Level extends AVListImpl implements Comparable<Level> {
 
 	public void setExpiryTime(long expTime) {
 		this.expiryTime = expTime;
+		this.absentTiles.expireNotFound(expTime);
 	}
 
 	public boolean isActive() {
@@ -213,7 +237,7 @@ public class Level extends AVListImpl implements Comparable<Level> {
 		this.active = active;
 	}
 
-	public AbsentResourceList getAbsentTiles() {
+	public AbsentTileIndex getAbsentTiles() {
 		return absentTiles;
 	}
 
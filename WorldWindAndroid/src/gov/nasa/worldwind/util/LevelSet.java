@@ -7,12 +7,16 @@ package gov.nasa.worldwind.util;
 
 import gov.nasa.worldwind.WWObjectImpl;
 import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.cache.FileStore;
 import gov.nasa.worldwind.geom.*;
 import org.w3c.dom.Element;
 
 import javax.xml.xpath.XPath;
+import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author dcollins
@@ -48,6 +52,11 @@ public class LevelSet extends WWObjectImpl
     protected final int numLevelZeroColumns;
     protected final java.util.ArrayList<Level> levels = new java.util.ArrayList<Level>();
     protected final SectorResolution[] sectorLevelLimits;
+    protected final AtomicBoolean absentTilesWritePending = new AtomicBoolean();
+
+    protected static final String ABSENT_TILES_FILE_NAME = "absent_tiles.bin";
+    protected static final int ABSENT_TILES_MAGIC = 0x57574154; // "WWAT"
+    protected static final int ABSENT_TILES_VERSION = 1;
 
     public LevelSet(AVList params)
     {
@@ -388,13 +397,15 @@ public class LevelSet extends WWObjectImpl
 
     protected long getTileNumber(Tile tile)
     {
-        return tile.getRow() < 0 ? -1 : tile.getRow() * this.numColumnsInLevel(tile.getLevel()) + tile.getColumn();
+        return tile.getRow() < 0 ? -1
+            : (long) tile.getRow() * this.numColumnsInLevel(tile.getLevel()) + tile.getColumn();
     }
 
     protected long getTileNumber(TileKey tileKey)
     {
         return tileKey.getRow() < 0 ? -1 :
-            tileKey.getRow() * this.numColumnsInLevel(this.getLevel(tileKey.getLevelNumber())) + tileKey.getColumn();
+            (long) tileKey.getRow() * this.numColumnsInLevel(this.getLevel(tileKey.getLevelNumber()))
+                + tileKey.getColumn();
     }
 
     /**
@@ -416,6 +427,27 @@ public class LevelSet extends WWObjectImpl
         tile.getLevel().markResourceAbsent(this.getTileNumber(tile));
     }
 
+    /**
+     * Instructs the level set that a tile's server reported that the tile does not exist. The tile is considered absent
+     * until its level's not-found retry interval elapses, and the mark is saved by {@link
+     * #writeAbsentTiles(gov.nasa.worldwind.cache.FileStore)}.
+     *
+     * @param tile The tile to mark as not found.
+     *
+     * @throws IllegalArgumentException if <code>tile</code> is null
+     */
+    public final void markResourceNotFound(Tile tile)
+    {
+        if (tile == null)
+        {
+            String msg = Logging.getMessage("nullValue.TileIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        tile.getLevel().markResourceNotFound(this.getTileNumber(tile));
+    }
+
     /**
      * Indicates whether a tile has been marked as absent.
      *
@@ -535,4 +567,147 @@ public class LevelSet extends WWObjectImpl
             level.setExpiryTime(expiryTime);
         }
     }
+
+    protected String getAbsentTilesPath()
+    {
+        String cacheName = this.levels.isEmpty() ? null : this.getFirstLevel().getCacheName();
+        return cacheName != null ? cacheName + "/" + ABSENT_TILES_FILE_NAME : null;
+    }
+
+    /**
+     * Restores the not-found tile marks saved by {@link #writeAbsentTiles(gov.nasa.worldwind.cache.FileStore)} in a
+     * file store. Marks older than a level's expiry time or not-found retry interval are not restored. Does nothing if
+     * the file store holds no saved marks for this level set.
+     *
+     * @param fileStore the file store holding this level set's tiles.
+     *
+     * @throws IllegalArgumentException if the file store is null.
+     */
+    public void readAbsentTiles(FileStore fileStore)
+    {
+        if (fileStore == null)
+        {
+            String msg = Logging.getMessage("nullValue.FileStoreIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        String path = this.getAbsentTilesPath();
+        URL url = path != null ? fileStore.findFile(path, false) : null;
+        File file = url != null ? WWIO.convertURLToFile(url) : null;
+        if (file == null)
+            return;
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != ABSENT_TILES_MAGIC || in.readInt() != ABSENT_TILES_VERSION)
+            {
+                Logging.warning(Logging.getMessage("generic.FormatIsInvalid", file));
+                return;
+            }
+
+            for (int levelNumber = in.readInt(); levelNumber >= 0; levelNumber = in.readInt())
+            {
+                Level level = this.getLevel(levelNumber);
+                if (level != null)
+                    level.getAbsentTiles().readNotFound(in, level.getExpiryTime());
+                else
+                    new AbsentTileIndex().readNotFound(in); // Skip the marks of a level this set no longer has.
+            }
+        }
+        catch (IOException e)
+        {
+            Logging.warning(Logging.getMessage("generic.ExceptionReadingStream", file), e);
+        }
+        finally
+        {
+            WWIO.closeStream(in, file.getPath());
+        }
+    }
+
+    /**
+     * Saves this level set's not-found tile marks in a file store, so that a later session can restore them with
+     * {@link #readAbsentTiles(gov.nasa.worldwind.cache.FileStore)} rather than requesting the tiles again. Tiles merely
+     * marked absent are not saved, as their absence may be due to a transient network failure.
+     *
+     * @param fileStore the file store holding this level set's tiles.
+     *
+     * @return true if the marks were saved, otherwise false.
+     *
+     * @throws IllegalArgumentException if the file store is null.
+     */
+    public boolean writeAbsentTiles(FileStore fileStore)
+    {
+        if (fileStore == null)
+        {
+            String msg = Logging.getMessage("nullValue.FileStoreIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        String path = this.getAbsentTilesPath();
+        File file = path != null ? fileStore.newFile(path) : null;
+        if (file == null)
+            return false;
+
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(ABSENT_TILES_MAGIC);
+            out.writeInt(ABSENT_TILES_VERSION);
+
+            for (Level level : this.levels)
+            {
+                if (level.getAbsentTiles().getNotFoundCount() == 0)
+                    continue;
+
+                out.writeInt(level.getLevelNumber());
+                level.getAbsentTiles().writeNotFound(out);
+            }
+
+            out.writeInt(-1);
+            out.flush();
+
+            return WriteBehindWriter.replaceFile(ByteBuffer.wrap(bytes.toByteArray()), file, this, false);
+        }
+        catch (IOException e)
+        {
+            Logging.error(Logging.getMessage("generic.ExceptionWritingFile", file), e);
+            return false;
+        }
+    }
+
+    /**
+     * Schedules {@link #writeAbsentTiles(gov.nasa.worldwind.cache.FileStore)} to run on the shared {@link
+     * WriteBehindWriter} after its pending writes. Marks made before the scheduled write runs are saved by that write,
+     * so a burst of marks results in one write.
+     *
+     * @param fileStore the file store holding this level set's tiles.
+     *
+     * @throws IllegalArgumentException if the file store is null.
+     */
+    public void scheduleAbsentTilesWrite(final FileStore fileStore)
+    {
+        if (fileStore == null)
+        {
+            String msg = Logging.getMessage("nullValue.FileStoreIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (!this.absentTilesWritePending.compareAndSet(false, true))
+            return;
+
+        WriteBehindWriter.getDefault().runAfterPendingWrites(new Runnable()
+        {
+            public void run()
+            {
+                absentTilesWritePending.set(false);
+                writeAbsentTiles(fileStore);
+            }
+        });
+    }
 }
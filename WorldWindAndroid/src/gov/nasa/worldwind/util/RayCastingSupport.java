@@ -10,6 +10,11 @@ import gov.nasa.worldwind.geom.Line;
 import gov.nasa.worldwind.geom.Position;
 import gov.nasa.worldwind.geom.Vec4;
 import gov.nasa.worldwind.globes.Globe;
+import gov.nasa.worldwind.terrain.ElevationModel;
+import gov.nasa.worldwind.terrain.ElevationPyramid;
+
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * Contains methods to resolve ray intersections with the terrain.
@@ -21,6 +26,8 @@ public class RayCastingSupport
 {
     private static double defaultSampleLength = 100; // meters
     private static double defaultPrecision = 10;     // meters
+    private static final Map<ElevationModel, ElevationPyramid> pyramids =
+        new WeakHashMap<ElevationModel, ElevationPyramid>();
 
     /**
      * Compute the intersection <code>Position</code> of the globe terrain with the ray starting 
@@ -113,12 +120,16 @@ public class RayCastingSupport
             }
 
             // Sample between p1 and p2
-			Vec4 point = new Vec4();
-            intersectSegmentWithTerrain(globe, p1, p2, sampleLength, precision, point);
-            if (point != null)
-                pos = globe.computePositionFromPoint(point);
+            Vec4 point = intersectSegmentWithTerrain(globe, p1, p2, sampleLength, precision, null);
+            if (point == null)
+                return null;
+
+            if (pos == null)
+                pos = new Position();
+            globe.computePositionFromPoint(point, pos);
+            return pos;
         }
-        return pos;
+        return null;
     }
 
     /**
@@ -172,33 +183,175 @@ public class RayCastingSupport
             throw new IllegalArgumentException(msg);
         }
 
-        // Sample between p1 and p2
-        Line ray = new Line(p1, p2.subtract3(p1).normalize3());
-        double rayLength = p1.distanceTo3(p2);
-        double sampledDistance = 0;
-        Vec4 sample = p1;
-        Vec4 lastSample = null;
-        while (sampledDistance <= rayLength)
+        ElevationPyramid pyramid = getElevationPyramid(globe);
+        Vec4 result = intersectSegmentWithTerrain(globe, pyramid, p1, p2, sampleLength, precision, new Line(),
+            new Position(), new Vec4(), new Vec4());
+
+        return result != null ? (point != null ? point.set(result) : result) : null;
+    }
+
+    /**
+     * Compute the intersections of the globe terrain with many line segments. The segments are intersected in turn,
+     * sharing the work of finding the regions of the globe that terrain cannot reach. This is suited to line of sight
+     * and viewshed computations, which intersect many segments with the same terrain.
+     *
+     * @param globe the globe to intersect with.
+     * @param starts the start points of the segments.
+     * @param ends the end points of the segments, in the same order as the start points.
+     * @param sampleLength the sampling step length in meters.
+     * @param precision the maximum sampling error in meters.
+     * @param result an array in which to return the intersection points. May be null, in which case a new array is
+     *               created. Segments that do not intersect the terrain have a <code>null</code> entry.
+     * @return the array of intersection points.
+     */
+    public static Vec4[] intersectSegmentsWithTerrain(Globe globe, Vec4[] starts, Vec4[] ends,
+                                                      double sampleLength, double precision, Vec4[] result)
+    {
+        if (globe == null)
+        {
+            String msg = Logging.getMessage("nullValue.GlobeIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        if (starts == null || ends == null)
+        {
+            String msg = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        if (starts.length != ends.length)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", ends.length);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        if (result != null && result.length < starts.length)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", result.length);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        if (sampleLength < 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", sampleLength);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        if (precision < 0)
         {
-            Position samplePos = globe.computePositionFromPoint(sample);
-            if (samplePos.elevation <= globe.getElevation(samplePos.getLatitude(), samplePos.getLongitude()))
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", precision);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (result == null)
+            result = new Vec4[starts.length];
+
+        ElevationPyramid pyramid = getElevationPyramid(globe);
+        Line ray = new Line();
+        Position samplePos = new Position();
+        Vec4 sample = new Vec4();
+        Vec4 lastSample = new Vec4();
+
+        for (int i = 0; i < starts.length; i++)
+        {
+            if (starts[i] == null || ends[i] == null)
+            {
+                String msg = Logging.getMessage("nullValue.Vec4IsNull");
+                Logging.error(msg);
+                throw new IllegalArgumentException(msg);
+            }
+
+            Vec4 point = intersectSegmentWithTerrain(globe, pyramid, starts[i], ends[i], sampleLength, precision, ray,
+                samplePos, sample, lastSample);
+            result[i] = point != null ? new Vec4().set(point) : null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the pyramid of extreme elevations for a globe's elevation model, building it the first time it's needed
+     * and again when the model's components change.
+     *
+     * @param globe the globe whose elevation model is used.
+     * @return the elevation model's pyramid, or null if the globe has no elevation model.
+     */
+    protected static ElevationPyramid getElevationPyramid(Globe globe)
+    {
+        ElevationModel model = globe.getElevationModel();
+        if (model == null)
+            return null;
+
+        synchronized (pyramids)
+        {
+            ElevationPyramid pyramid = pyramids.get(model);
+            if (pyramid == null || !pyramid.isCurrent())
             {
-                // Below ground, intersection found
-                point = sample;
-                break;
+                pyramid = new ElevationPyramid(model);
+                pyramids.put(model, pyramid);
             }
-            if (sampledDistance >= rayLength)
-                break;    // break after last sample
-            // Keep sampling
-            lastSample = sample;
-            sampledDistance = Math.min(sampledDistance + sampleLength, rayLength);
-            ray.getPointAt(sampledDistance, sample);
+
+            return pyramid;
         }
+    }
+
+    /**
+     * Samples a segment for its first point below the terrain. Samples are taken every <code>sampleLength</code>
+     * meters, except where the pyramid shows that the terrain cannot reach the segment, which is stepped over
+     * without looking up elevations. The interval before the first point found is then sampled again with a tenth of
+     * the sample length, until the sample length is within the precision.
+     *
+     * @return the intersection point, which is <code>sample</code>, or null if the segment does not intersect the
+     *         terrain.
+     */
+    protected static Vec4 intersectSegmentWithTerrain(Globe globe, ElevationPyramid pyramid, Vec4 p1, Vec4 p2,
+        double sampleLength, double precision, Line ray, Position samplePos, Vec4 sample, Vec4 lastSample)
+    {
+        double rayLength = p1.distanceTo3(p2);
+        ray.set(p1, rayLength > 0 ? p2.subtract3(p1).normalize3() : Vec4.UNIT_X);
+        sample.set(p1);
 
-        // Recurse for more precision if needed
-        if (point != null && sampleLength > precision && lastSample != null)
-            intersectSegmentWithTerrain(globe, lastSample, point, sampleLength / 10, precision, point);
+        while (true)
+        {
+            double sampledDistance = 0;
+            boolean found = false;
+            boolean sampled = false;
 
-        return point;
+            while (true)
+            {
+                globe.computePositionFromPoint(sample, samplePos);
+
+                // A sample with clearance is above the terrain; only the others need their elevation looked up.
+                double clearance = pyramid != null ? pyramid.computeClearance(globe, samplePos.latitude,
+                    samplePos.longitude, samplePos.elevation) : 0;
+                if (clearance <= 0
+                    && samplePos.elevation <= globe.getElevation(samplePos.latitude, samplePos.longitude))
+                {
+                    // Below ground, intersection found
+                    found = true;
+                    break;
+                }
+                if (sampledDistance >= rayLength)
+                    break;    // break after last sample
+                // Keep sampling, stepping over the distance the terrain is known not to reach
+                lastSample.set(sample);
+                sampled = true;
+                sampledDistance = Math.min(sampledDistance + Math.max(sampleLength, clearance), rayLength);
+                ray.getPointAt(sampledDistance, sample);
+            }
+
+            if (!found)
+                return null;
+
+            // Refine for more precision if needed
+            if (sampleLength <= precision || !sampled)
+                return sample;
+
+            rayLength = lastSample.distanceTo3(sample);
+            ray.set(lastSample, ray.getDirection());
+            sample.set(lastSample);
+            sampleLength /= 10;
+        }
     }
 }
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.render.DrawContext;
+
+import java.util.*;
+
+/**
+ * Selects the tiles of a tile hierarchy by their screen-space error, within a budget on the number of tiles selected.
+ * A tile's screen-space error is the size in pixels of one of its texels where the tile is nearest the eye, as computed
+ * by {@link Tile#computeScreenSpaceError(DrawContext)}. A tile is refined into its children while its error exceeds
+ * {@link #getMaxPixelError()}.
+ * <p/>
+ * Refinement proceeds from the tile with the largest error to the tile with the smallest, so when the budget is
+ * reached the tiles left unrefined are the ones whose error matters least. A tile is only refined if replacing it with
+ * its visible children keeps the number of selected tiles within the budget.
+ * <p/>
+ * {@link #select(DrawContext, Object, List, TileTree)} computes the set of tiles to refine once per frame, and the
+ * caller's own traversal then asks {@link #isRefined(Tile)} instead of applying a distance heuristic. One instance may
+ * be shared by several layers to give them a common budget: within a frame, each caller's selection is limited to the
+ * budget left by the others, in the order they select.
+ *
+ * @version $Id$
+ */
+public class ScreenSpaceErrorLod
+{
+    /**
+     * The tile hierarchy a selection is made from.
+     *
+     * @param <T> the tile type.
+     */
+    public interface TileTree<T extends Tile>
+    {
+        /**
+         * Indicates whether a tile is visible. Invisible tiles are neither selected nor refined.
+         *
+         * @param dc   the current draw context.
+         * @param tile the tile to test.
+         *
+         * @return true if the tile is visible, otherwise false.
+         */
+        boolean isTileVisible(DrawContext dc, T tile);
+
+        /**
+         * Indicates whether a tile has children that can be displayed in its place.
+         *
+         * @param dc   the current draw context.
+         * @param tile the tile to test.
+         *
+         * @return true if the tile can be refined, otherwise false.
+         */
+        boolean canRefine(DrawContext dc, T tile);
+
+        /**
+         * Adds a tile's children to a list. The children must be the instances the caller's traversal uses when it
+         * refines the tile, for example by placing them in the tile cache.
+         *
+         * @param dc     the current draw context.
+         * @param tile   the tile to subdivide.
+         * @param result the list to add the children to.
+         */
+        void subdivide(DrawContext dc, T tile, List<T> result);
+    }
+
+    /** The default maximum screen-space error, in pixels. */
+    public static final double DEFAULT_MAX_PIXEL_ERROR = 1.5;
+    /** The default maximum number of tiles selected in a frame. */
+    public static final int DEFAULT_MAX_TILE_COUNT = 150;
+
+    protected double maxPixelError = DEFAULT_MAX_PIXEL_ERROR;
+    protected int maxTileCount = DEFAULT_MAX_TILE_COUNT;
+    protected long frameTimestamp = -1;
+    protected Map<Object, Set<TileKey>> refinedTiles = new HashMap<Object, Set<TileKey>>();
+    protected Map<Object, Integer> tileCounts = new HashMap<Object, Integer>();
+    protected Set<TileKey> allRefinedTiles = new HashSet<TileKey>();
+    protected boolean budgetExceeded;
+
+    public ScreenSpaceErrorLod()
+    {
+    }
+
+    /**
+     * Creates a selection with a specified maximum error and tile budget.
+     *
+     * @param maxPixelError the maximum screen-space error, in pixels.
+     * @param maxTileCount  the maximum number of tiles selected in a frame.
+     *
+     * @throws IllegalArgumentException if the maximum error is not positive or the tile count is less than one.
+     */
+    public ScreenSpaceErrorLod(double maxPixelError, int maxTileCount)
+    {
+        this.setMaxPixelError(maxPixelError);
+        this.setMaxTileCount(maxTileCount);
+    }
+
+    /**
+     * Returns the maximum screen-space error of a selected tile, unless the tile budget prevents refining it.
+     *
+     * @return the maximum error in pixels.
+     */
+    public double getMaxPixelError()
+    {
+        return this.maxPixelError;
+    }
+
+    /**
+     * Specifies the maximum screen-space error of a selected tile. Larger values select coarser tiles. On high density
+     * displays a value scaled by the display density keeps the tile count comparable to lower density displays.
+     *
+     * @param maxPixelError the maximum error in pixels.
+     *
+     * @throws IllegalArgumentException if the maximum error is not positive.
+     */
+    public void setMaxPixelError(double maxPixelError)
+    {
+        if (maxPixelError <= 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", maxPixelError);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.maxPixelError = maxPixelError;
+    }
+
+    /**
+     * Returns the maximum number of tiles selected in a frame, shared by all callers of this instance.
+     *
+     * @return the tile budget.
+     */
+    public int getMaxTileCount()
+    {
+        return this.maxTileCount;
+    }
+
+    /**
+     * Specifies the maximum number of tiles selected in a frame, shared by all callers of this instance. The visible
+     * top level tiles are always selected, even if they exceed the budget.
+     *
+     * @param maxTileCount the tile budget.
+     *
+     * @throws IllegalArgumentException if the tile count is less than one.
+     */
+    public void setMaxTileCount(int maxTileCount)
+    {
+        if (maxTileCount < 1)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", maxTileCount);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.maxTileCount = maxTileCount;
+    }
+
+    /**
+     * Returns the number of tiles selected in the current frame by all callers.
+     *
+     * @return the number of selected tiles.
+     */
+    public int getTileCount()
+    {
+        int count = 0;
+        for (Integer n : this.tileCounts.values())
+        {
+            count += n;
+        }
+
+        return count;
+    }
+
+    /**
+     * Indicates whether the tile budget prevented a tile from being refined in the current frame.
+     *
+     * @return true if the selection was limited by the budget, otherwise false.
+     */
+    public boolean isBudgetExceeded()
+    {
+        return this.budgetExceeded;
+    }
+
+    /**
+     * Indicates whether a tile was chosen to be refined by the most recent selection.
+     *
+     * @param tile the tile to test.
+     *
+     * @return true if the tile should be replaced by its children, otherwise false.
+     */
+    public boolean isRefined(Tile tile)
+    {
+        return tile != null && this.allRefinedTiles.contains(tile.getTileKey());
+    }
+
+    /**
+     * Computes the tiles of a hierarchy to refine in the current frame. Selecting again for the same owner in the same
+     * frame, as when picking, replaces the owner's previous selection.
+     *
+     * @param dc             the current draw context.
+     * @param owner          the object making the selection, typically the layer or tessellator.
+     * @param topLevelTiles  the hierarchy's top level tiles.
+     * @param tree           the hierarchy.
+     * @param <T>            the tile type.
+     *
+     * @throws IllegalArgumentException if any argument is null.
+     */
+    public <T extends Tile> void select(DrawContext dc, Object owner, List<T> topLevelTiles, TileTree<T> tree)
+    {
+        if (dc == null)
+        {
+            String msg = Logging.getMessage("nullValue.DrawContextIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (topLevelTiles == null)
+        {
+            String msg = Logging.getMessage("nullValue.TileListIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (owner == null || tree == null)
+        {
+            String msg = Logging.getMessage("nullValue.ObjectIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (this.frameTimestamp != dc.getFrameTimeStamp())
+        {
+            this.frameTimestamp = dc.getFrameTimeStamp();
+            this.refinedTiles.clear();
+            this.tileCounts.clear();
+            this.allRefinedTiles.clear();
+            this.budgetExceeded = false;
+        }
+
+        Set<TileKey> refined = this.refinedTiles.get(owner);
+        if (refined != null)
+            this.allRefinedTiles.removeAll(refined);
+        else
+            this.refinedTiles.put(owner, refined = new HashSet<TileKey>());
+        refined.clear();
+        this.tileCounts.remove(owner);
+
+        int budget = this.maxTileCount - this.getTileCount();
+        int count = 0;
+
+        PriorityQueue<Candidate<T>> queue = new PriorityQueue<Candidate<T>>();
+        for (T tile : topLevelTiles)
+        {
+            if (tree.isTileVisible(dc, tile))
+            {
+                queue.add(new Candidate<T>(tile, tile.computeScreenSpaceError(dc)));
+                count++;
+            }
+        }
+
+        List<T> children = new ArrayList<T>(4);
+        List<T> visibleChildren = new ArrayList<T>(4);
+        while (!queue.isEmpty())
+        {
+            Candidate<T> candidate = queue.poll();
+            if (candidate.error <= this.maxPixelError)
+                break; // No remaining tile needs refinement.
+
+            if (!tree.canRefine(dc, candidate.tile))
+                continue;
+
+            children.clear();
+            visibleChildren.clear();
+            tree.subdivide(dc, candidate.tile, children);
+            for (T child : children)
+            {
+                if (tree.isTileVisible(dc, child))
+                    visibleChildren.add(child);
+            }
+
+            // Refining replaces the tile with its visible children. Tiles with smaller errors may still fit the
+            // budget if they have fewer visible children, so continue rather than stopping here.
+            if (count - 1 + visibleChildren.size() > budget)
+            {
+                this.budgetExceeded = true;
+                continue;
+            }
+
+            refined.add(candidate.tile.getTileKey());
+            count += visibleChildren.size() - 1;
+            for (T child : visibleChildren)
+            {
+                queue.add(new Candidate<T>(child, child.computeScreenSpaceError(dc)));
+            }
+        }
+
+        this.allRefinedTiles.addAll(refined);
+        this.tileCounts.put(owner, count);
+    }
+
+    protected static class Candidate<T extends Tile> implements Comparable<Candidate<T>>
+    {
+        protected final T tile;
+        protected final double error;
+
+        public Candidate(T tile, double error)
+        {
+            this.tile = tile;
+            this.error = error;
+        }
+
+        public int compareTo(Candidate<T> that)
+        {
+            return Double.compare(that.error, this.error); // Largest error first.
+        }
+    }
+}
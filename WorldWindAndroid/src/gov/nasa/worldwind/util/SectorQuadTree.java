@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.geom.Sector;
+
+import java.util.*;
+
+/**
+ * A quadtree of items keyed by geographic sector, for finding the items that intersect a region without visiting every
+ * item. Each item is held by the smallest node that contains its sector, down to a maximum depth, so items may be
+ * added, moved and removed one at a time without rebuilding the tree. Nodes are created as items are added and removed
+ * once they and their descendants are empty.
+ * <p/>
+ * An item may also be added with no sector, in which case it is considered to intersect every region. Queries return
+ * items in the order they were first added, so the tree may stand in for an ordered collection whose order matters.
+ * <p/>
+ * Items are compared by identity. Instances are safe for use by multiple threads.
+ *
+ * @version $Id$
+ */
+public class SectorQuadTree<T>
+{
+    /** The default maximum depth of the tree. Nodes at this depth span 180/256 degrees of latitude. */
+    public static final int DEFAULT_MAX_DEPTH = 8;
+
+    protected static class Entry<T>
+    {
+        protected final T item;
+        protected final long ordinal;
+        protected boolean bounded;
+        protected double minLat;
+        protected double maxLat;
+        protected double minLon;
+        protected double maxLon;
+        protected Node<T> node;
+        protected int index; // Position in the node's entries.
+
+        public Entry(T item, long ordinal)
+        {
+            this.item = item;
+            this.ordinal = ordinal;
+        }
+
+        public boolean intersects(double minLat, double maxLat, double minLon, double maxLon)
+        {
+            return !this.bounded || (this.maxLat >= minLat && this.minLat <= maxLat
+                && this.maxLon >= minLon && this.minLon <= maxLon);
+        }
+    }
+
+    protected static class Node<T>
+    {
+        protected final Node<T> parent;
+        protected final double minLat;
+        protected final double maxLat;
+        protected final double minLon;
+        protected final double maxLon;
+        protected final int depth;
+        // Unordered, so that an entry is removed by swapping the last entry into its place.
+        protected final ArrayList<Entry<T>> entries = new ArrayList<Entry<T>>(0);
+        protected Node<T>[] children;
+        protected int count; // Number of entries held by this node and its descendants.
+
+        public Node(Node<T> parent, double minLat, double maxLat, double minLon, double maxLon, int depth)
+        {
+            this.parent = parent;
+            this.minLat = minLat;
+            this.maxLat = maxLat;
+            this.minLon = minLon;
+            this.maxLon = maxLon;
+            this.depth = depth;
+        }
+
+        public boolean contains(double minLat, double maxLat, double minLon, double maxLon)
+        {
+            return minLat >= this.minLat && maxLat <= this.maxLat && minLon >= this.minLon && maxLon <= this.maxLon;
+        }
+
+        public boolean intersects(double minLat, double maxLat, double minLon, double maxLon)
+        {
+            return this.maxLat >= minLat && this.minLat <= maxLat && this.maxLon >= minLon && this.minLon <= maxLon;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        public Node<T> getChild(int index)
+        {
+            if (this.children == null)
+                this.children = (Node<T>[]) new Node<?>[4];
+
+            if (this.children[index] == null)
+            {
+                double midLat = 0.5 * (this.minLat + this.maxLat);
+                double midLon = 0.5 * (this.minLon + this.maxLon);
+                boolean north = (index & 2) != 0;
+                boolean east = (index & 1) != 0;
+                this.children[index] = new Node<T>(this,
+                    north ? midLat : this.minLat, north ? this.maxLat : midLat,
+                    east ? midLon : this.minLon, east ? this.maxLon : midLon, this.depth + 1);
+            }
+
+            return this.children[index];
+        }
+    }
+
+    protected static final Comparator<Entry<?>> ORDINAL_ORDER = new Comparator<Entry<?>>()
+    {
+        public int compare(Entry<?> a, Entry<?> b)
+        {
+            return a.ordinal < b.ordinal ? -1 : (a.ordinal == b.ordinal ? 0 : 1);
+        }
+    };
+
+    protected final int maxDepth;
+    protected final Node<T> root = new Node<T>(null, -90, 90, -180, 180, 0);
+    protected final Map<T, Entry<T>> entries = new IdentityHashMap<T, Entry<T>>();
+    protected final ArrayList<Entry<T>> queryEntries = new ArrayList<Entry<T>>();
+    protected long nextOrdinal;
+
+    /** Creates an empty tree with the default maximum depth. */
+    public SectorQuadTree()
+    {
+        this(DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Creates an empty tree with a specified maximum depth.
+     *
+     * @param maxDepth the maximum depth of the tree's nodes. The root is at depth 0.
+     *
+     * @throws IllegalArgumentException if the depth is less than 0.
+     */
+    public SectorQuadTree(int maxDepth)
+    {
+        if (maxDepth < 0)
+        {
+            String msg = Logging.getMessage("generic.DepthOutOfRange", maxDepth);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxDepth()
+    {
+        return this.maxDepth;
+    }
+
+    /**
+     * Returns the number of items in the tree.
+     *
+     * @return the number of items.
+     */
+    public synchronized int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Indicates whether an item is in the tree.
+     *
+     * @param item the item in question.
+     *
+     * @return true if the item is in the tree, otherwise false.
+     */
+    public synchronized boolean contains(T item)
+    {
+        return item != null && this.entries.containsKey(item);
+    }
+
+    /**
+     * Adds an item to the tree, or moves it if it is already in the tree. A moved item keeps its place in the order
+     * items are returned.
+     *
+     * @param item   the item to add.
+     * @param sector the item's sector, or null if the item intersects every region. The sector is copied.
+     *
+     * @throws IllegalArgumentException if the item is null.
+     */
+    public void put(T item, Sector sector)
+    {
+        if (sector != null)
+        {
+            this.put(item, sector.minLatitude.degrees, sector.maxLatitude.degrees, sector.minLongitude.degrees,
+                sector.maxLongitude.degrees);
+        }
+        else
+        {
+            this.putUnbounded(item);
+        }
+    }
+
+    /**
+     * Adds an item to the tree, or moves it if it is already in the tree. A moved item keeps its place in the order
+     * items are returned.
+     *
+     * @param item   the item to add.
+     * @param minLat the item's minimum latitude, in degrees.
+     * @param maxLat the item's maximum latitude, in degrees.
+     * @param minLon the item's minimum longitude, in degrees.
+     * @param maxLon the item's maximum longitude, in degrees.
+     *
+     * @throws IllegalArgumentException if the item is null.
+     */
+    public synchronized void put(T item, double minLat, double maxLat, double minLon, double maxLon)
+    {
+        Entry<T> entry = this.detach(item);
+        entry.bounded = true;
+        entry.minLat = minLat;
+        entry.maxLat = maxLat;
+        entry.minLon = minLon;
+        entry.maxLon = maxLon;
+
+        Node<T> node = this.root;
+        while (node.depth < this.maxDepth)
+        {
+            double midLat = 0.5 * (node.minLat + node.maxLat);
+            double midLon = 0.5 * (node.minLon + node.maxLon);
+            int index;
+            if (minLat >= midLat)
+                index = 2;
+            else if (maxLat <= midLat)
+                index = 0;
+            else
+                break; // Spans the node's latitude midline.
+
+            if (minLon >= midLon)
+                index |= 1;
+            else if (maxLon > midLon)
+                break; // Spans the node's longitude midline.
+
+            node = node.getChild(index);
+        }
+
+        this.attach(entry, node);
+    }
+
+    /**
+     * Adds an item that intersects every region to the tree, or makes an item already in the tree intersect every
+     * region.
+     *
+     * @param item the item to add.
+     *
+     * @throws IllegalArgumentException if the item is null.
+     */
+    public synchronized void putUnbounded(T item)
+    {
+        Entry<T> entry = this.detach(item);
+        entry.bounded = false;
+        this.attach(entry, this.root);
+    }
+
+    /**
+     * Removes an item from the tree.
+     *
+     * @param item the item to remove.
+     *
+     * @return true if the item was in the tree, otherwise false.
+     */
+    public synchronized boolean remove(T item)
+    {
+        Entry<T> entry = item != null ? this.entries.remove(item) : null;
+        if (entry == null)
+            return false;
+
+        this.unlink(entry);
+        return true;
+    }
+
+    /** Removes all items from the tree. */
+    public synchronized void clear()
+    {
+        this.entries.clear();
+        this.root.entries.clear();
+        this.root.children = null;
+        this.root.count = 0;
+    }
+
+    /**
+     * Adds the items intersecting a region to a collection, in the order the items were first added to the tree.
+     *
+     * @param sector the region of interest. If null, every item is added.
+     * @param result the collection to add the items to.
+     *
+     * @return the collection passed in as the result.
+     *
+     * @throws IllegalArgumentException if the result is null.
+     */
+    public synchronized <C extends Collection<? super T>> C getItemsInRegion(Sector sector, C result)
+    {
+        if (result == null)
+        {
+            String msg = Logging.getMessage("nullValue.CollectionIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        Sector s = sector != null ? sector : Sector.FULL_SPHERE;
+        try
+        {
+            this.collect(this.root, s.minLatitude.degrees, s.maxLatitude.degrees, s.minLongitude.degrees,
+                s.maxLongitude.degrees, this.queryEntries);
+
+            Collections.sort(this.queryEntries, ORDINAL_ORDER);
+            for (Entry<T> entry : this.queryEntries)
+            {
+                result.add(entry.item);
+            }
+        }
+        finally
+        {
+            this.queryEntries.clear();
+        }
+
+        return result;
+    }
+
+    protected void collect(Node<T> node, double minLat, double maxLat, double minLon, double maxLon,
+        List<Entry<T>> result)
+    {
+        for (Entry<T> entry : node.entries)
+        {
+            if (entry.intersects(minLat, maxLat, minLon, maxLon))
+                result.add(entry);
+        }
+
+        if (node.children == null)
+            return;
+
+        for (Node<T> child : node.children)
+        {
+            if (child != null && child.count > 0 && child.intersects(minLat, maxLat, minLon, maxLon))
+                this.collect(child, minLat, maxLat, minLon, maxLon, result);
+        }
+    }
+
+    // Returns the item's entry, removed from its node, or a new entry if the item is not in the tree.
+    protected Entry<T> detach(T item)
+    {
+        if (item == null)
+        {
+            String msg = Logging.getMessage("nullValue.ObjectIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        Entry<T> entry = this.entries.get(item);
+        if (entry != null)
+        {
+            this.unlink(entry);
+        }
+        else
+        {
+            entry = new Entry<T>(item, this.nextOrdinal++);
+            this.entries.put(item, entry);
+        }
+
+        return entry;
+    }
+
+    protected void attach(Entry<T> entry, Node<T> node)
+    {
+        entry.node = node;
+        entry.index = node.entries.size();
+        node.entries.add(entry);
+
+        for (Node<T> n = node; n != null; n = n.parent)
+        {
+            n.count++;
+        }
+    }
+
+    protected void unlink(Entry<T> entry)
+    {
+        Node<T> node = entry.node;
+        entry.node = null;
+
+        Entry<T> last = node.entries.remove(node.entries.size() - 1);
+        if (last != entry)
+        {
+            last.index = entry.index;
+            node.entries.set(entry.index, last);
+        }
+
+        for (Node<T> n = node; n != null; n = n.parent)
+        {
+            n.count--;
+        }
+
+        // Prune the empty nodes left behind, so that a moving item does not leave a trail of nodes.
+        while (node.parent != null && node.count == 0)
+        {
+            Node<T> parent = node.parent;
+            for (int i = 0; i < 4; i++)
+            {
+                if (parent.children[i] == node)
+                    parent.children[i] = null;
+            }
+
+            node = parent;
+        }
+    }
+}
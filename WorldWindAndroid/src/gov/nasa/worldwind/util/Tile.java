@@ -374,6 +374,51 @@ public class Tile implements Cacheable {
 		return cellHeight > Math.sqrt(minDistanceSq) * Math.pow(10, -detailFactor);
 	}
 
+	/**
+	 * Computes the size in pixels of one of this tile's texels where the tile is nearest the eye point. This is the
+	 * screen-space error of displaying this tile instead of its descendants: the number of pixels one texel covers
+	 * on screen. The tile's reference points are used when they are available; otherwise its corners and centroid are
+	 * computed.
+	 * 
+	 * @param dc
+	 *            the current draw context.
+	 * @return the tile's screen-space error in pixels, or positive infinity if the eye point is on the tile.
+	 * @throws IllegalArgumentException
+	 *             if the draw context is null.
+	 */
+	public double computeScreenSpaceError(DrawContext dc) {
+		if (dc == null) {
+			String msg = Logging.getMessage("nullValue.DrawContextIsNull");
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
+		Vec4[] points = this.referencePoints;
+		if (points == null) {
+			points = new Vec4[] { new Vec4(), new Vec4(), new Vec4(), new Vec4(), new Vec4() };
+			this.sector.computeCornerPoints(dc.getGlobe(), dc.getVerticalExaggeration(), points);
+			this.sector.computeCentroidPoint(dc.getGlobe(), dc.getVerticalExaggeration(), points[4]);
+		}
+
+		View view = dc.getView();
+		Vec4 eyePoint = view.getEyePoint();
+		Vec4 nearestPoint = points[0];
+		double minDistanceSq = eyePoint.distanceToSquared3(points[0]);
+		for (int i = 1; i < points.length; i++) {
+			double d = eyePoint.distanceToSquared3(points[i]);
+			if (d < minDistanceSq) {
+				minDistanceSq = d;
+				nearestPoint = points[i];
+			}
+		}
+
+		// Cell height is radius * radian texel size, as in mustSubdivide.
+		double cellHeight = nearestPoint.getLength3() * this.level.getTexelSize();
+		double pixelSize = view.computePixelSizeAtDistance(Math.sqrt(minDistanceSq));
+
+		return pixelSize > 0 ? cellHeight / pixelSize : Double.POSITIVE_INFINITY;
+	}
+
 	/**
 	 * Replaces entries in this tile's child list with nulls. This is necessary to prevent persistence of references
 	 * to children when they're not needed. Call this method after using the array of children returned by
@@ -7,17 +7,32 @@ package gov.nasa.worldwind.util;
 
 import gov.nasa.worldwind.geom.Angle;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author dcollins
  * @version $Id: TileKey.java 733 2012-09-02 17:15:09Z dcollins $
  */
 public class TileKey implements Comparable<TileKey>
 {
+    /** The number of bits used for each component of a packed tile key. */
+    protected static final int CACHE_ID_BITS = 9;
+    protected static final int LEVEL_BITS = 5;
+    protected static final int ROW_BITS = 24;
+    protected static final int COLUMN_BITS = 25;
+    /** Returned by {@link #pack(int, int, int, int)} when a tile address does not fit in a packed key. */
+    public static final long INVALID_PACKED_KEY = -1L;
+
+    protected static final ConcurrentHashMap<String, Integer> cacheNameIds = new ConcurrentHashMap<String, Integer>();
+    protected static final AtomicInteger nextCacheNameId = new AtomicInteger();
+
     protected int level;
     protected int row;
     protected int col;
     protected String cacheName;
     protected int hash;
+    protected long packedKey;
 
     /**
      * @param level
@@ -116,6 +131,79 @@ public class TileKey implements Comparable<TileKey>
         return cacheName;
     }
 
+    /**
+     * Returns this key packed into a single <code>long</code> by {@link #pack(int, int, int, int)}, or {@link
+     * #INVALID_PACKED_KEY} if this key's components do not fit.
+     *
+     * @return this key as a <code>long</code>.
+     */
+    public long getPackedKey()
+    {
+        if (this.packedKey == 0L) // Zero is a valid packed key, so this recomputes level zero tiles of the first cache.
+            this.packedKey = pack(getCacheNameId(this.cacheName), this.level, this.row, this.col);
+
+        return this.packedKey;
+    }
+
+    /**
+     * Returns a small integer that uniquely identifies a tile cache name for the lifetime of the process. Ids are
+     * assigned in order of first use. Looking up an existing id does not allocate.
+     *
+     * @param cacheName the tile cache name.
+     *
+     * @return the id for <code>cacheName</code>.
+     *
+     * @throws IllegalArgumentException if <code>cacheName</code> is null.
+     */
+    public static int getCacheNameId(String cacheName)
+    {
+        if (cacheName == null)
+        {
+            String msg = Logging.getMessage("nullValue.StringIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        Integer id = cacheNameIds.get(cacheName);
+        if (id == null)
+        {
+            Integer newId = nextCacheNameId.getAndIncrement();
+            id = cacheNameIds.putIfAbsent(cacheName, newId);
+            if (id == null)
+                id = newId;
+        }
+
+        return id;
+    }
+
+    /**
+     * Packs a tile address into a single <code>long</code>, suitable for use as a primitive hash key. The cache name id
+     * occupies 9 bits below the sign bit, followed by 5 bits of level number, 24 bits of row and 25 bits of column. Tile
+     * addresses whose components do not fit return {@link #INVALID_PACKED_KEY}; callers must then use a
+     * <code>TileKey</code> object instead.
+     *
+     * @param cacheNameId the id returned by {@link #getCacheNameId(String)}.
+     * @param level       the tile's level number.
+     * @param row         the tile's row.
+     * @param col         the tile's column.
+     *
+     * @return the packed key, or {@link #INVALID_PACKED_KEY}.
+     */
+    public static long pack(int cacheNameId, int level, int row, int col)
+    {
+        if (cacheNameId < 0 || cacheNameId >= (1 << CACHE_ID_BITS) || level < 0 || level >= (1 << LEVEL_BITS)
+            || row < 0 || row >= (1 << ROW_BITS) || col < 0 || col >= (1 << COLUMN_BITS))
+        {
+            return INVALID_PACKED_KEY;
+        }
+
+        // The cache name id never uses the sign bit, so a valid packed key is never negative.
+        return ((long) cacheNameId << (LEVEL_BITS + ROW_BITS + COLUMN_BITS))
+            | ((long) level << (ROW_BITS + COLUMN_BITS))
+            | ((long) row << COLUMN_BITS)
+            | (long) col;
+    }
+
     protected int computeHash()
     {
         int result;
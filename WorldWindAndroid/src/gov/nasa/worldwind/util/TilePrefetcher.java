@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.BasicView;
+import gov.nasa.worldwind.View;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.render.DrawContext;
+import gov.nasa.worldwind.view.ViewMotionPredictor;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses tiles to request ahead of need while the view is moving. The view's look-at position and range are
+ * predicted a short time ahead by the view's {@link ViewMotionPredictor}, and the tiles of a level set around the
+ * predicted position, at the level the predicted range needs, are proposed for prefetch nearest first.
+ * <p/>
+ * Prefetch is limited to {@link #getMaxRequestsPerSecond()} requests, which bounds the bandwidth it uses. Requests
+ * carry the prefetcher's generation; {@link #cancel()} starts a new generation so requests issued before it can be
+ * skipped. The prefetcher cancels itself when the predicted region moves away from the region it last prefetched.
+ * <p/>
+ * A prefetch is a hit when its tile is later used. The hit rate of each prefetcher and of all prefetchers together
+ * measure how well prediction anticipates the tiles the view needs.
+ *
+ * @version $Id$
+ */
+public class TilePrefetcher
+{
+    /** The default time ahead the view is predicted, in milliseconds. */
+    public static final long DEFAULT_LOOK_AHEAD = 1000;
+    /** The default maximum number of prefetch requests per second. */
+    public static final double DEFAULT_MAX_REQUESTS_PER_SECOND = 8;
+    /** The retrieval priority of prefetched tiles, which are retrieved after every tile the view needs now. */
+    public static final double PREFETCH_PRIORITY = Double.MAX_VALUE;
+    /** The maximum number of tiles proposed for prefetch in a frame. */
+    protected static final int MAX_TILES_PER_FRAME = 16;
+    /** The maximum number of prefetched tiles remembered for measuring hits. */
+    protected static final int MAX_PENDING_TILES = 512;
+    /** The radius of the prefetched region as a multiple of the predicted view's half width. */
+    protected static final double REGION_SCALE = 1.5;
+
+    protected static final AtomicLong totalIssuedCount = new AtomicLong();
+    protected static final AtomicLong totalHitCount = new AtomicLong();
+
+    protected boolean enabled = true;
+    protected long lookAhead = DEFAULT_LOOK_AHEAD;
+    protected double maxRequestsPerSecond = DEFAULT_MAX_REQUESTS_PER_SECOND;
+    protected double tokens;
+    protected long lastTokenTime = -1;
+    protected volatile int generation;
+    protected Sector lastRegion;
+    protected long issuedCount;
+    protected long hitCount;
+    protected Map<TileKey, Boolean> pendingTiles = new LinkedHashMap<TileKey, Boolean>()
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TileKey, Boolean> eldest)
+        {
+            return this.size() > MAX_PENDING_TILES;
+        }
+    };
+
+    public TilePrefetcher()
+    {
+    }
+
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * Specifies whether tiles are prefetched. Disabling the prefetcher cancels its outstanding requests.
+     *
+     * @param enabled true to prefetch tiles, otherwise false.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        if (this.enabled && !enabled)
+            this.cancel();
+
+        this.enabled = enabled;
+    }
+
+    public long getLookAhead()
+    {
+        return this.lookAhead;
+    }
+
+    /**
+     * Specifies how far ahead the view is predicted.
+     *
+     * @param lookAhead the prediction time in milliseconds.
+     *
+     * @throws IllegalArgumentException if the time is negative.
+     */
+    public void setLookAhead(long lookAhead)
+    {
+        if (lookAhead < 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", lookAhead);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.lookAhead = lookAhead;
+    }
+
+    public double getMaxRequestsPerSecond()
+    {
+        return this.maxRequestsPerSecond;
+    }
+
+    /**
+     * Specifies the maximum rate of prefetch requests. Up to one second's worth of unused requests may be issued at
+     * once.
+     *
+     * @param maxRequestsPerSecond the maximum number of requests per second.
+     *
+     * @throws IllegalArgumentException if the rate is not positive.
+     */
+    public void setMaxRequestsPerSecond(double maxRequestsPerSecond)
+    {
+        if (maxRequestsPerSecond <= 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", maxRequestsPerSecond);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+    }
+
+    /**
+     * Returns the current generation. Requests issued in an earlier generation have been cancelled.
+     *
+     * @return the current generation.
+     */
+    public int getGeneration()
+    {
+        return this.generation;
+    }
+
+    /**
+     * Indicates whether a request issued in a specified generation is still wanted.
+     *
+     * @param generation the generation the request was issued in.
+     *
+     * @return true if the request has not been cancelled, otherwise false.
+     */
+    public boolean isCurrent(int generation)
+    {
+        return this.enabled && generation == this.generation;
+    }
+
+    /** Cancels the outstanding prefetch requests. Requests check {@link #isCurrent(int)} before running. */
+    public synchronized void cancel()
+    {
+        this.generation++;
+        this.pendingTiles.clear();
+        this.lastRegion = null;
+    }
+
+    public synchronized long getIssuedCount()
+    {
+        return this.issuedCount;
+    }
+
+    public synchronized long getHitCount()
+    {
+        return this.hitCount;
+    }
+
+    /**
+     * Returns the fraction of this prefetcher's requests whose tiles were later used.
+     *
+     * @return the hit rate, between 0 and 1.
+     */
+    public synchronized double getHitRate()
+    {
+        return this.issuedCount > 0 ? (double) this.hitCount / this.issuedCount : 0;
+    }
+
+    /**
+     * Returns the fraction of the requests of all prefetchers whose tiles were later used.
+     *
+     * @return the hit rate, between 0 and 1.
+     */
+    public static double getTotalHitRate()
+    {
+        long issued = totalIssuedCount.get();
+        return issued > 0 ? (double) totalHitCount.get() / issued : 0;
+    }
+
+    /**
+     * Proposes tiles of a level set to prefetch for the current frame, nearest the predicted look-at position first.
+     * Tiles already prefetched and tiles marked absent are not proposed. The caller requests the proposed tiles it
+     * does not already have, calling {@link #tryAcquire(DrawContext, TileKey)} before each request.
+     *
+     * @param dc           the current draw context.
+     * @param levels       the level set to choose tiles from.
+     * @param detailFactor the detail factor the level set's tiles are selected with, as described in {@link
+     *                     Tile#mustSubdivide(DrawContext, double)}.
+     *
+     * @return the keys of the tiles to prefetch. Empty if the view is not moving or prefetch is disabled.
+     *
+     * @throws IllegalArgumentException if the draw context or level set is null.
+     */
+    public List<TileKey> selectTiles(DrawContext dc, LevelSet levels, double detailFactor)
+    {
+        if (dc == null)
+        {
+            String msg = Logging.getMessage("nullValue.DrawContextIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (levels == null)
+        {
+            String msg = Logging.getMessage("nullValue.LevelSetIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        View view = dc.getView();
+        if (!this.enabled || !(view instanceof BasicView) || dc.getGlobe() == null)
+            return Collections.emptyList();
+
+        ViewMotionPredictor predictor = ((BasicView) view).getMotionPredictor();
+        if (!predictor.isMoving())
+            return Collections.emptyList();
+
+        LatLon center = predictor.predictLookAt(this.lookAhead);
+        double range = predictor.predictRange(this.lookAhead);
+        if (center == null || range <= 0)
+            return Collections.emptyList();
+
+        double radius = dc.getGlobe().getEquatorialRadius();
+        Sector region = this.computeRegion(center, range * view.getFieldOfView().tanHalfAngle() / radius);
+        if (!region.intersects(levels.getSector()))
+            return Collections.emptyList();
+        region.intersection(levels.getSector());
+
+        synchronized (this)
+        {
+            // The view has turned away from the previous prediction; its requests are no longer useful.
+            if (this.lastRegion != null && !this.lastRegion.intersects(region))
+                this.cancel();
+            this.lastRegion = region;
+        }
+
+        Level level = this.selectLevel(levels, radius, range * Math.pow(10, -detailFactor));
+        if (level == null)
+            return Collections.emptyList();
+
+        return this.selectTiles(levels, level, region, center);
+    }
+
+    protected Sector computeRegion(LatLon center, double halfWidthRadians)
+    {
+        double halfHeight = Math.min(Math.toDegrees(halfWidthRadians * REGION_SCALE), 90);
+        double cosLat = Math.max(Math.cos(center.getLatitude().radians), 0.01);
+        double halfWidth = Math.min(halfHeight / cosLat, 180);
+
+        return Sector.fromDegrees(
+            Math.max(center.getLatitude().degrees - halfHeight, -90),
+            Math.min(center.getLatitude().degrees + halfHeight, 90),
+            Math.max(center.getLongitude().degrees - halfWidth, -180),
+            Math.min(center.getLongitude().degrees + halfWidth, 180));
+    }
+
+    /**
+     * Selects the level whose cells are no larger than a specified size, which is the level the view would refine
+     * tiles to at the predicted range.
+     *
+     * @param levels     the level set.
+     * @param radius     the globe's radius, in meters.
+     * @param cellHeight the largest acceptable cell size, in meters.
+     *
+     * @return the selected level, or the last non-empty level if none is fine enough.
+     */
+    protected Level selectLevel(LevelSet levels, double radius, double cellHeight)
+    {
+        Level selected = null;
+        for (Level level : levels.getLevels())
+        {
+            if (level.isEmpty())
+                continue;
+
+            selected = level;
+            if (radius * level.getTexelSize() <= cellHeight)
+                break;
+        }
+
+        return selected;
+    }
+
+    protected List<TileKey> selectTiles(LevelSet levels, Level level, Sector region, final LatLon center)
+    {
+        LatLon delta = level.getTileDelta();
+        LatLon origin = levels.getTileOrigin();
+        int minRow = Tile.computeRow(delta.getLatitude(), region.minLatitude, origin.getLatitude());
+        int maxRow = Tile.computeRow(delta.getLatitude(), region.maxLatitude, origin.getLatitude());
+        int minCol = Tile.computeColumn(delta.getLongitude(), region.minLongitude, origin.getLongitude());
+        int maxCol = Tile.computeColumn(delta.getLongitude(), region.maxLongitude, origin.getLongitude());
+
+        // Consider only the tiles nearest the predicted center when the region spans many tiles.
+        int centerRow = Tile.computeRow(delta.getLatitude(), center.getLatitude(), origin.getLatitude());
+        int centerCol = Tile.computeColumn(delta.getLongitude(), center.getLongitude(), origin.getLongitude());
+        minRow = Math.max(minRow, centerRow - MAX_TILES_PER_FRAME);
+        maxRow = Math.min(maxRow, centerRow + MAX_TILES_PER_FRAME);
+        minCol = Math.max(minCol, centerCol - MAX_TILES_PER_FRAME);
+        maxCol = Math.min(maxCol, centerCol + MAX_TILES_PER_FRAME);
+
+        final double rowLat = delta.getLatitude().degrees;
+        final double colLon = delta.getLongitude().degrees;
+        final double centerRowF = (center.getLatitude().degrees - origin.getLatitude().degrees) / rowLat - 0.5;
+        final double centerColF = (center.getLongitude().degrees - origin.getLongitude().degrees) / colLon - 0.5;
+
+        List<TileKey> keys = new ArrayList<TileKey>();
+        synchronized (this)
+        {
+            for (int row = minRow; row <= maxRow; row++)
+            {
+                for (int col = minCol; col <= maxCol; col++)
+                {
+                    TileKey key = new TileKey(level.getLevelNumber(), row, col, level.getCacheName());
+                    if (!this.pendingTiles.containsKey(key) && !levels.isResourceAbsent(key))
+                        keys.add(key);
+                }
+            }
+        }
+
+        Collections.sort(keys, new Comparator<TileKey>()
+        {
+            public int compare(TileKey a, TileKey b)
+            {
+                return Double.compare(distanceSquared(a), distanceSquared(b));
+            }
+
+            protected double distanceSquared(TileKey key)
+            {
+                double dr = key.getRow() - centerRowF;
+                double dc = key.getColumn() - centerColF;
+                return dr * dr + dc * dc;
+            }
+        });
+
+        return keys.size() > MAX_TILES_PER_FRAME ? keys.subList(0, MAX_TILES_PER_FRAME) : keys;
+    }
+
+    /**
+     * Reserves a request for a tile within the rate limit, and records the tile as prefetched.
+     *
+     * @param dc  the current draw context.
+     * @param key the tile's key.
+     *
+     * @return true if the tile may be requested, false if the rate limit has been reached for now.
+     */
+    public synchronized boolean tryAcquire(DrawContext dc, TileKey key)
+    {
+        long time = dc.getFrameTimeStamp();
+        if (this.lastTokenTime < 0 || time < this.lastTokenTime)
+            this.tokens = this.maxRequestsPerSecond;
+        else
+            this.tokens = Math.min(this.tokens + (time - this.lastTokenTime) * this.maxRequestsPerSecond / 1000,
+                this.maxRequestsPerSecond);
+        this.lastTokenTime = time;
+
+        if (this.tokens < 1)
+            return false;
+
+        this.tokens--;
+        this.pendingTiles.put(key, Boolean.TRUE);
+        this.issuedCount++;
+        totalIssuedCount.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * Returns a reservation made by {@link #tryAcquire(gov.nasa.worldwind.render.DrawContext, TileKey)} for a tile
+     * whose request was not issued, such as when the task service is full. The tile is no longer recorded as
+     * prefetched, and the request does not count against the rate limit.
+     *
+     * @param key the tile's key.
+     */
+    public synchronized void release(TileKey key)
+    {
+        if (this.pendingTiles.remove(key) == null)
+            return;
+
+        this.tokens = Math.min(this.tokens + 1, this.maxRequestsPerSecond);
+        this.issuedCount--;
+        totalIssuedCount.decrementAndGet();
+    }
+
+    /**
+     * Indicates whether a tile has been prefetched and not yet used. Requests for such a tile are submitted once by the
+     * prefetcher rather than every frame by the view.
+     *
+     * @param key the tile's key.
+     *
+     * @return true if the tile is prefetched and has not been used, otherwise false.
+     */
+    public synchronized boolean isPending(TileKey key)
+    {
+        return this.pendingTiles.containsKey(key);
+    }
+
+    /**
+     * Records that a tile has been used. Counts a hit if the tile was prefetched.
+     *
+     * @param key the tile's key.
+     */
+    public synchronized void tileUsed(TileKey key)
+    {
+        if (this.pendingTiles.isEmpty() || this.pendingTiles.remove(key) == null)
+            return;
+
+        this.hitCount++;
+        totalHitCount.incrementAndGet();
+    }
+}
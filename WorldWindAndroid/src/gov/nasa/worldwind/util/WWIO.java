@@ -9,6 +9,7 @@ import android.content.Context;
 import gov.nasa.worldwind.Configuration;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.cache.GpuResourceCache;
+import gov.nasa.worldwind.cache.PackedDataFileStore;
 import gov.nasa.worldwind.exception.WWRuntimeException;
 import gov.nasa.worldwind.render.GpuProgram;
 
@@ -22,6 +23,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
@@ -582,22 +584,61 @@ public class WWIO {
 			throw new IllegalArgumentException(msg);
 		}
 
+		// Read into pooled buffers while the length is unknown, then copy the content into a buffer of its exact size.
+		ByteBuffer pooledBuffer = readStreamToPooledBuffer(stream);
+		try {
+			ByteBuffer buffer = allocateDirect ? ByteBuffer.allocateDirect(pooledBuffer.remaining()) : ByteBuffer.allocate(pooledBuffer.remaining());
+			buffer.put(pooledBuffer);
+			buffer.flip();
+			return buffer;
+		} finally {
+			ByteBufferPool.getDefault().release(pooledBuffer);
+		}
+	}
+
+	/**
+	 * Reads all the bytes from a stream into a direct buffer borrowed from the shared {@link ByteBufferPool}. The
+	 * buffer's position is zero and its limit is the number of bytes read. The caller owns the buffer, and must release
+	 * it to the pool once neither it nor any view of it is used.
+	 * 
+	 * @param stream
+	 *            the stream to read. The stream is not closed.
+	 * @return a pooled buffer holding the stream's content.
+	 * @throws IllegalArgumentException
+	 *             if the stream is null.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public static ByteBuffer readStreamToPooledBuffer(InputStream stream) throws IOException {
+		if (stream == null) {
+			String msg = Logging.getMessage("nullValue.InputStreamIsNull");
+			Logging.error(msg);
+			throw new IllegalArgumentException(msg);
+		}
+
 		// Create a channel that redirects reads to the specified stream. We do not close this channel because doing so
 		// would close the stream, which the caller owns.
 		ReadableByteChannel channel = Channels.newChannel(stream);
-		ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_PAGE_SIZE);
+		ByteBufferPool pool = ByteBufferPool.getDefault();
+		ByteBuffer buffer = pool.acquire(DEFAULT_PAGE_SIZE);
+		buffer.limit(buffer.capacity());
 
-		int count = 0;
-		while (count >= 0) {
-			count = channel.read(buffer);
-			if (count > 0 && !buffer.hasRemaining()) {
-				ByteBuffer biggerBuffer = allocateDirect ? ByteBuffer.allocateDirect(buffer.limit() + DEFAULT_PAGE_SIZE) : ByteBuffer.allocate(buffer.limit() + DEFAULT_PAGE_SIZE);
-				biggerBuffer.put((ByteBuffer) buffer.rewind());
-				buffer = biggerBuffer;
+		boolean success = false;
+		try {
+			int count = 0;
+			while (count >= 0) {
+				count = channel.read(buffer);
+				if (count > 0 && !buffer.hasRemaining()) {
+					buffer = pool.grow(buffer, 2 * buffer.capacity());
+					buffer.limit(buffer.capacity());
+				}
 			}
+			success = true;
+		} finally {
+			if (!success) pool.release(buffer);
 		}
 
-		if (buffer != null) buffer.flip();
+		buffer.flip();
 
 		return buffer;
 	}
@@ -681,6 +722,34 @@ public class WWIO {
 		}
 	}
 
+	/**
+	 * Maps the contents of a file into memory as a read-only buffer. The content is not read into the Java heap, and
+	 * the mapping remains valid after the file is closed, deleted or replaced.
+	 * 
+	 * @param file
+	 *            the file to map.
+	 * @return a buffer containing the file's content.
+	 * @throws IllegalArgumentException
+	 *             if the file is null.
+	 * @throws IOException
+	 *             if the file cannot be opened or mapped.
+	 */
+	public static MappedByteBuffer mapFile(File file) throws IOException {
+		if (file == null) {
+			String message = Logging.getMessage("nullValue.FileIsNull");
+			Logging.error(message);
+			throw new IllegalArgumentException(message);
+		}
+
+		FileInputStream is = new FileInputStream(file);
+		try {
+			FileChannel channel = is.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			WWIO.closeStream(is, file.getPath());
+		}
+	}
+
 	/**
 	 * Converts a specified URL as to a path in the local file system. If the URL cannot be converted to a file path for
 	 * any reason, this returns null.
@@ -823,12 +892,21 @@ public class WWIO {
 			URI uri = url.toURI();
 			if (uri.isOpaque()) return false; // TODO: Determine how to check the date of non-Files
 
+			// Tiles packed by the file store report their modification time through their connection.
+			if (PackedDataFileStore.PROTOCOL.equals(url.getProtocol())) {
+				long lastModified = url.openConnection().getLastModified();
+				return lastModified != 0 && lastModified < expiryTime;
+			}
+
 			File file = new File(uri);
 
 			return file.exists() && file.lastModified() < expiryTime;
 		} catch (URISyntaxException e) {
 			Logging.error(Logging.getMessage("WWIO.ExceptionValidatingFileExpiration", url));
 			return false;
+		} catch (IOException e) {
+			Logging.error(Logging.getMessage("WWIO.ExceptionValidatingFileExpiration", url));
+			return false;
 		}
 	}
 
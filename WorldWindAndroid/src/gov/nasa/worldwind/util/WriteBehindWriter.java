@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.*;
+
+/**
+ * Writes buffers to files on a background thread, so that the thread producing the data can go on using it without
+ * waiting for the storage device. Writes run in the order they are submitted. Each buffer is written to a temporary
+ * file that is then renamed over the destination, so readers never see a partially written file.
+ * <p/>
+ * At most a fixed number of writes may be pending. When that many are pending, the submitting thread waits for one to
+ * complete, which bounds the memory held by pending buffers and slows producers to the speed of the device.
+ *
+ * @version $Id$
+ */
+public class WriteBehindWriter
+{
+    /** The default maximum number of pending writes. */
+    public static final int DEFAULT_MAX_PENDING_WRITES = 32;
+
+    protected static WriteBehindWriter defaultWriter;
+
+    protected final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a writer with a specified limit on pending writes.
+     *
+     * @param maxPendingWrites the maximum number of writes waiting to run.
+     *
+     * @throws IllegalArgumentException if the limit is less than one.
+     */
+    public WriteBehindWriter(int maxPendingWrites)
+    {
+        if (maxPendingWrites < 1)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", maxPendingWrites);
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(maxPendingWrites), new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "World Wind Write Behind");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        }, new RejectedExecutionHandler()
+        {
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor)
+            {
+                waitToQueue(runnable, executor);
+            }
+        });
+        this.executor.prestartCoreThread(); // The queue is only drained by a running thread.
+    }
+
+    protected static void waitToQueue(Runnable runnable, ThreadPoolExecutor executor)
+    {
+        try
+        {
+            executor.getQueue().put(runnable);
+        }
+        catch (InterruptedException e)
+        {
+            // Retrieval threads are interrupted when their retrieval is cancelled. The data is already retrieved, so
+            // complete the task here rather than losing it.
+            Thread.currentThread().interrupt();
+            runnable.run();
+        }
+    }
+
+    /**
+     * Returns the writer shared by the retrieval post processors.
+     *
+     * @return the shared writer.
+     */
+    public static synchronized WriteBehindWriter getDefault()
+    {
+        if (defaultWriter == null)
+            defaultWriter = new WriteBehindWriter(DEFAULT_MAX_PENDING_WRITES);
+
+        return defaultWriter;
+    }
+
+    /**
+     * Returns the number of writes waiting to run.
+     *
+     * @return the number of pending writes.
+     */
+    public int getPendingCount()
+    {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * Schedules a buffer to be written to a file. The buffer's content from zero to its limit is written, and the
+     * buffer must not be modified until the write has run. The buffer's position is not changed.
+     *
+     * @param buffer the buffer to write.
+     * @param file   the destination file.
+     * @param lock   an object to synchronize on while replacing the file, shared with readers of the file. May be
+     *               null.
+     * @param force  true to force the file's content to the storage device, false if the file can be recreated and
+     *               need not survive a crash.
+     *
+     * @throws IllegalArgumentException if the buffer or file is null.
+     */
+    public void write(ByteBuffer buffer, final File file, final Object lock, final boolean force)
+    {
+        if (buffer == null)
+        {
+            String msg = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (file == null)
+        {
+            String msg = Logging.getMessage("nullValue.FileIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        final ByteBuffer content = buffer.duplicate(); // Writing rewinds the buffer.
+        this.executor.execute(new Runnable()
+        {
+            public void run()
+            {
+                writeFile(content, file, lock != null ? lock : file, force);
+            }
+        });
+    }
+
+    /**
+     * Schedules a task to run after every write scheduled before it has completed, successfully or not.
+     *
+     * @param task the task to run.
+     *
+     * @throws IllegalArgumentException if the task is null.
+     */
+    public void runAfterPendingWrites(Runnable task)
+    {
+        if (task == null)
+        {
+            String msg = Logging.getMessage("nullValue.TaskIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.executor.execute(task);
+    }
+
+    protected boolean writeFile(ByteBuffer buffer, File file, Object lock, boolean force)
+    {
+        return replaceFile(buffer, file, lock, force);
+    }
+
+    /**
+     * Writes a buffer to a temporary file on the calling thread, then renames the temporary file over the
+     * destination. Tasks scheduled with {@link #runAfterPendingWrites(Runnable)} use this rather than {@link
+     * #write(java.nio.ByteBuffer, java.io.File, Object, boolean)}, which could wait on the writer's own queue.
+     *
+     * @param buffer the buffer to write.
+     * @param file   the destination file.
+     * @param lock   an object to synchronize on while replacing the file.
+     * @param force  true to force the file's content to the storage device.
+     *
+     * @return true if the file was written, otherwise false.
+     */
+    public static boolean replaceFile(ByteBuffer buffer, File file, Object lock, boolean force)
+    {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try
+        {
+            synchronized (lock)
+            {
+                if (!WWIO.saveBuffer(buffer, tempFile, force))
+                    return false;
+
+                if (!tempFile.renameTo(file))
+                {
+                    //noinspection ResultOfMethodCallIgnored
+                    tempFile.delete();
+                    Logging.error(Logging.getMessage("generic.CannotMoveFile", tempFile, file));
+                    return false;
+                }
+            }
+
+            return true;
+        }
+        catch (IOException e)
+        {
+            Logging.error(Logging.getMessage("generic.ExceptionWritingFile", file), e);
+            return false;
+        }
+    }
+}
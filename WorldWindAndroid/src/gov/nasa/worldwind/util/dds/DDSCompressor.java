@@ -13,6 +13,12 @@ import gov.nasa.worldwind.util.WWMath;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * DDSCompressor converts in-memory images into a DDS file encoded with one of the DXT block compression algorithms. If
  * the caller wants to encode using a certain type of DXT compression, DDSCompressor provides the appropriate methods to
@@ -46,7 +52,7 @@ public class DDSCompressor {
 	 * @throws IllegalArgumentException
 	 *             if either the <code>stream</code> or the <code>attributes</code> are null.
 	 */
-	public static java.nio.ByteBuffer compressImageStream(java.io.InputStream inputStream, DXTCompressionAttributes attributes) {
+	public static ByteBuffer compressImageStream(InputStream inputStream, DXTCompressionAttributes attributes) {
 		if (inputStream == null) {
 			String message = Logging.getMessage("nullValue.InputStreamIsNull");
 			Logging.error(message);
@@ -85,7 +91,7 @@ public class DDSCompressor {
 	 * @throws IllegalArgumentException
 	 *             if either <code>imageBuffer</code> or <code>attributes</code> are null.
 	 */
-	public static java.nio.ByteBuffer compressImageBuffer(java.nio.ByteBuffer imageBuffer, DXTCompressionAttributes attributes) {
+	public static ByteBuffer compressImageBuffer(ByteBuffer imageBuffer, DXTCompressionAttributes attributes) {
 		if (imageBuffer == null) {
 			String message = Logging.getMessage("nullValue.Image");
 			Logging.error(message);
@@ -98,7 +104,7 @@ public class DDSCompressor {
 			throw new IllegalArgumentException(message);
 		}
 
-		java.io.InputStream inputStream = WWIO.getInputStreamFromByteBuffer(imageBuffer);
+		InputStream inputStream = WWIO.getInputStreamFromByteBuffer(imageBuffer);
 		return compressImageStream(inputStream, attributes);
 	}
 
@@ -116,7 +122,7 @@ public class DDSCompressor {
 	 * @throws IllegalArgumentException
 	 *             if <code>imageBuffer</code> is null.
 	 */
-	public static java.nio.ByteBuffer compressImageBuffer(java.nio.ByteBuffer imageBuffer) {
+	public static ByteBuffer compressImageBuffer(ByteBuffer imageBuffer) {
 		if (imageBuffer == null) {
 			String message = Logging.getMessage("nullValue.Image");
 			Logging.error(message);
@@ -137,7 +143,7 @@ public class DDSCompressor {
 	 *             if <code>image</code> is null, or if <code>image</code> has non power of two
 	 *             dimensions.
 	 */
-	public static java.nio.ByteBuffer compressImage(Bitmap image) {
+	public static ByteBuffer compressImage(Bitmap image) {
 		if (image == null) {
 			String message = Logging.getMessage("nullValue.ImageIsNull");
 			Logging.error(message);
@@ -211,7 +217,7 @@ public class DDSCompressor {
 	 * @throws IllegalArgumentException
 	 *             if either <code>image</code> or <code>attributes</code> are null, or if <code>image</code> has non power of two dimensions.
 	 */
-	public java.nio.ByteBuffer compressImage(Bitmap image, DXTCompressionAttributes attributes) {
+	public ByteBuffer compressImage(Bitmap image, DXTCompressionAttributes attributes) {
 		if (image == null) {
 			String message = Logging.getMessage("nullValue.ImageIsNull");
 			Logging.error(message);
@@ -243,7 +249,7 @@ public class DDSCompressor {
 	 * @throws IllegalArgumentException
 	 *             if either <code>image</code> or <code>attributes</code> are null, or if <code>image</code> has non power of two dimensions.
 	 */
-	public java.nio.ByteBuffer compressImageDXT1(Bitmap image, DXTCompressionAttributes attributes) {
+	public ByteBuffer compressImageDXT1(Bitmap image, DXTCompressionAttributes attributes) {
 		if (image == null) {
 			String message = Logging.getMessage("nullValue.ImageIsNull");
 			Logging.error(message);
@@ -275,7 +281,7 @@ public class DDSCompressor {
 	 * @throws IllegalArgumentException
 	 *             if either <code>image</code> or <code>attributes</code> are null, or if <code>image</code> has non power of two dimensions.
 	 */
-	public java.nio.ByteBuffer compressImageDXT3(Bitmap image, DXTCompressionAttributes attributes) {
+	public ByteBuffer compressImageDXT3(Bitmap image, DXTCompressionAttributes attributes) {
 		if (image == null) {
 			String message = Logging.getMessage("nullValue.ImageIsNull");
 			Logging.error(message);
@@ -296,7 +302,7 @@ public class DDSCompressor {
 		return this.doCompressImage(compressor, image, attributes);
 	}
 
-	protected java.nio.ByteBuffer doCompressImage(DXTCompressor compressor, Bitmap image, DXTCompressionAttributes attributes) {
+	protected ByteBuffer doCompressImage(DXTCompressor compressor, Bitmap image, DXTCompressionAttributes attributes) {
 		// Create the DDS header structure that describes the specified image, compressor, and compression attributes.
 		DDSHeader header = this.createDDSHeader(compressor, image, attributes);
 
@@ -320,8 +326,8 @@ public class DDSCompressor {
 		}
 
 		// Create a little endian buffer that holds the bytes of the DDS file.
-		java.nio.ByteBuffer buffer = this.createBuffer(fileSize);
-		buffer.order(java.nio.ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer buffer = this.createBuffer(fileSize);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
 
 		// Write the DDS magic number and DDS header to the file.
 		buffer.putInt(DDSConstants.MAGIC);
@@ -330,11 +336,12 @@ public class DDSCompressor {
 		// Write the compressed DXT blocks to the DDS file. If the attributes specify to build mip maps, then we write
 		// each mip map level to the DDS file, starting with level 0 and ending with level N. Otherwise, we write a
 		// single image to the DDS file.
-		if (mipMapLevels == null) {
-			compressor.compressImage(image, attributes, buffer);
+		Bitmap[] images = mipMapLevels != null ? mipMapLevels : new Bitmap[] { image };
+		if (this.canUseBlockEncoder(compressor)) {
+			this.encodeImages(compressor, images, attributes, buffer);
 		} else {
-			for (Bitmap mipMapImage : mipMapLevels) {
-				compressor.compressImage(mipMapImage, attributes, buffer);
+			for (Bitmap levelImage : images) {
+				compressor.compressImage(levelImage, attributes, buffer);
 			}
 		}
 
@@ -342,6 +349,45 @@ public class DDSCompressor {
 		return buffer;
 	}
 
+	/**
+	 * Indicates whether images for the specified compressor can be encoded by a {@link DXTBlockEncoder}, which produces
+	 * the same blocks as the built in DXT1 and DXT3 compressors. Subclasses of those compressors may customize how
+	 * blocks are extracted or compressed, so they are always used directly.
+	 * 
+	 * @param compressor
+	 *            the compressor chosen for the image.
+	 * @return true if the image can be encoded by a DXTBlockEncoder, otherwise false.
+	 */
+	protected boolean canUseBlockEncoder(DXTCompressor compressor) {
+		return compressor.getClass() == DXT1Compressor.class || compressor.getClass() == DXT3Compressor.class;
+	}
+
+	/**
+	 * Encodes an image and its mipmap levels in parallel with a {@link DXTBlockEncoder}. Each image's pixels are read
+	 * into an array once, so the encoder does not call into the Bitmap for every block.
+	 * 
+	 * @param compressor
+	 *            the compressor whose DXT format to encode.
+	 * @param images
+	 *            the image and its mipmap levels.
+	 * @param attributes
+	 *            attributes that control the compression.
+	 * @param buffer
+	 *            buffer that receives the encoded blocks.
+	 */
+	protected void encodeImages(DXTCompressor compressor, Bitmap[] images, DXTCompressionAttributes attributes, ByteBuffer buffer) {
+		List<DXTBlockEncoder.Image> encoderImages = new ArrayList<DXTBlockEncoder.Image>(images.length);
+		for (Bitmap image : images) {
+			int width = image.getWidth();
+			int height = image.getHeight();
+			int[] pixels = new int[width * height];
+			image.getPixels(pixels, 0, width, 0, 0, width, height);
+			encoderImages.add(new DXTBlockEncoder.Image(pixels, width, height, image.hasAlpha()));
+		}
+
+		DXTBlockEncoder.encode(compressor.getDXTFormat(), encoderImages, attributes, buffer);
+	}
+
 	protected DXTCompressor getDXTCompressor(Bitmap image, DXTCompressionAttributes attributes) {
 		// If the caller specified a DXT format in the attributes, then we return a compressor matching that format.
 		// Otherwise, we choose one automatically from the image type. If no choice can be made from the image type,
@@ -358,8 +404,8 @@ public class DDSCompressor {
 		}
 	}
 
-	protected java.nio.ByteBuffer createBuffer(int size) {
-		return java.nio.ByteBuffer.allocateDirect(size);
+	protected ByteBuffer createBuffer(int size) {
+		return ByteBuffer.allocateDirect(size);
 	}
 
 	protected Bitmap[] buildMipMaps(Bitmap image, DXTCompressionAttributes attributes) {
@@ -406,7 +452,7 @@ public class DDSCompressor {
 	 * @param buffer
 	 *            buffer that receives the header structure bytes.
 	 */
-	protected void writeDDSHeader(DDSHeader header, java.nio.ByteBuffer buffer) {
+	protected void writeDDSHeader(DDSHeader header, ByteBuffer buffer) {
 		int pos = buffer.position();
 
 		buffer.putInt(header.getSize()); // dwSize
@@ -436,7 +482,7 @@ public class DDSCompressor {
 	 * @param buffer
 	 *            buffer that receives the pixel format structure bytes.
 	 */
-	protected void writeDDSPixelFormat(DDSPixelFormat pixelFormat, java.nio.ByteBuffer buffer) {
+	protected void writeDDSPixelFormat(DDSPixelFormat pixelFormat, ByteBuffer buffer) {
 		int pos = buffer.position();
 
 		buffer.putInt(pixelFormat.getSize()); // dwSize
@@ -77,26 +77,40 @@ public class DDSTextureReader
         int mipmapCount = header.getMipMapCount();
         long estimatedMemorySize = 0;
 
-        ByteBuffer buffer = WWIO.readStreamToBuffer(stream);
-        GpuTextureData.MipmapData[] levelData = new GpuTextureData.MipmapData[mipmapCount];
-
-        for (int i = 0; i < mipmapCount; i++)
+        // The levels are views of a pooled buffer, which the texture data releases once the texture is created.
+        ByteBuffer buffer = WWIO.readStreamToPooledBuffer(stream);
+        GpuTextureData data = null;
+        try
         {
-            int size = this.getImageSize(header, width, height);
-            int limit = buffer.position() + size;
-            buffer.limit(limit);
+            int end = buffer.limit();
+            GpuTextureData.MipmapData[] levelData = new GpuTextureData.MipmapData[mipmapCount];
+
+            for (int i = 0; i < mipmapCount; i++)
+            {
+                int size = this.getImageSize(header, width, height);
+                int limit = buffer.position() + size;
+                buffer.limit(limit);
 
-            levelData[i] = new GpuTextureData.MipmapData(width, height, buffer.slice());
-            estimatedMemorySize += size;
+                levelData[i] = new GpuTextureData.MipmapData(width, height, buffer.slice());
+                estimatedMemorySize += size;
 
-            buffer.limit(buffer.capacity());
-            buffer.position(limit);
+                buffer.limit(end);
+                buffer.position(limit);
 
-            width = Math.max(width / 2, 1);
-            height = Math.max(height / 2, 1);
+                width = Math.max(width / 2, 1);
+                height = Math.max(height / 2, 1);
+            }
+
+            data = new GpuTextureData(format, levelData, estimatedMemorySize);
+            data.addPooledBuffer(buffer);
+        }
+        finally
+        {
+            if (data == null)
+                ByteBufferPool.getDefault().release(buffer);
         }
 
-        return new GpuTextureData(format, levelData, estimatedMemorySize);
+        return data;
     }
 
     protected int getFormat(DDSHeader header)
@@ -0,0 +1,677 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.util.dds;
+
+import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.util.Logging;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * DXTBlockEncoder encodes images held in primitive ARGB pixel arrays into DXT1 or DXT3 blocks. It produces exactly the
+ * same blocks as {@link DXT1Compressor} and {@link DXT3Compressor}, but keeps each 4x4 block and its color palette in
+ * reusable int arrays rather than {@link ColorBlock4x4} and {@link Color32} objects, and reads pixels from an array
+ * rather than calling into the Bitmap for every block.
+ * <p/>
+ * The static {@link #encode(int, List, DXTCompressionAttributes, ByteBuffer)} method splits a chain of mipmap levels
+ * into bands of block rows and encodes the bands in parallel on a shared pool of daemon threads sized to the number of
+ * available processors. An encoder instance holds per-thread scratch state and must not be shared between threads.
+ */
+public class DXTBlockEncoder
+{
+    /** An image to encode, as packed 8888 ARGB pixels in row major order. */
+    public static class Image
+    {
+        protected final int[] pixels;
+        protected final int width;
+        protected final int height;
+        protected final boolean hasAlpha;
+
+        /**
+         * Creates an image from an array of pixels.
+         *
+         * @param pixels   the image pixels as packed 8888 ARGB integers, in row major order starting at the upper left
+         *                 corner. The pixels are not premultiplied.
+         * @param width    the image width.
+         * @param height   the image height.
+         * @param hasAlpha true if the image may contain pixels that are not opaque.
+         */
+        public Image(int[] pixels, int width, int height, boolean hasAlpha)
+        {
+            if (pixels == null)
+            {
+                String message = Logging.getMessage("nullValue.ArrayIsNull");
+                Logging.error(message);
+                throw new IllegalArgumentException(message);
+            }
+            if (pixels.length < width * height)
+            {
+                String message = Logging.getMessage("generic.ArrayInvalidLength", pixels.length);
+                Logging.error(message);
+                throw new IllegalArgumentException(message);
+            }
+
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.hasAlpha = hasAlpha;
+        }
+    }
+
+    /** The number of blocks encoded by each parallel task, unless an image has fewer blocks per row. */
+    protected static final int BLOCKS_PER_BAND = 256;
+
+    protected static final int[] remainder =
+    {
+        0, 0, 0, 0,
+        0, 1, 0, 1,
+        0, 1, 2, 0,
+        0, 1, 2, 3,
+    };
+
+    protected static ExecutorService executor;
+
+    protected final int format;
+    protected final DXTCompressionAttributes attributes;
+    // The current block's color components, one value per pixel.
+    protected final int[] a = new int[16];
+    protected final int[] r = new int[16];
+    protected final int[] g = new int[16];
+    protected final int[] b = new int[16];
+    // The current block's color palette.
+    protected final int[] pr = new int[4];
+    protected final int[] pg = new int[4];
+    protected final int[] pb = new int[4];
+    // The current block's endpoint colors.
+    protected int minR, minG, minB;
+    protected int maxR, maxG, maxB;
+
+    /**
+     * Creates an encoder for the specified DXT format.
+     *
+     * @param format     the DXT format, either {@link DDSConstants#D3DFMT_DXT1} or {@link DDSConstants#D3DFMT_DXT3}.
+     * @param attributes the attributes that control the compression.
+     *
+     * @throws IllegalArgumentException if the attributes are null, or the format is not supported.
+     */
+    public DXTBlockEncoder(int format, DXTCompressionAttributes attributes)
+    {
+        if (format != DDSConstants.D3DFMT_DXT1 && format != DDSConstants.D3DFMT_DXT3)
+        {
+            String message = Logging.getMessage("generic.FormatIsInvalid", format);
+            Logging.error(message);
+            throw new IllegalArgumentException(message);
+        }
+        if (attributes == null)
+        {
+            String message = Logging.getMessage("nullValue.AttributesIsNull");
+            Logging.error(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.format = format;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Returns the number of bytes in each encoded block of the specified DXT format.
+     *
+     * @param format the DXT format, either {@link DDSConstants#D3DFMT_DXT1} or {@link DDSConstants#D3DFMT_DXT3}.
+     *
+     * @return the block size in bytes.
+     */
+    public static int getBlockSize(int format)
+    {
+        return format == DDSConstants.D3DFMT_DXT1 ? 8 : 16;
+    }
+
+    /**
+     * Encodes a chain of images, typically an image and its mipmap levels, and writes the encoded blocks of each image
+     * in turn to the buffer, starting at the buffer's position. The buffer's position is advanced past the encoded
+     * blocks. The images are split into bands of block rows that are encoded in parallel; the calling thread encodes
+     * one of the bands and waits for the rest to complete.
+     *
+     * @param format     the DXT format, either {@link DDSConstants#D3DFMT_DXT1} or {@link DDSConstants#D3DFMT_DXT3}.
+     * @param images     the images to encode.
+     * @param attributes the attributes that control the compression.
+     * @param buffer     the buffer that receives the encoded blocks. Must be little endian ordered and have room for
+     *                   every image's blocks.
+     *
+     * @throws IllegalArgumentException if any argument is null, or the format is not supported.
+     * @throws WWRuntimeException       if a band cannot be encoded.
+     */
+    public static void encode(final int format, List<Image> images, final DXTCompressionAttributes attributes,
+        ByteBuffer buffer)
+    {
+        if (images == null)
+        {
+            String message = Logging.getMessage("nullValue.ListIsNull");
+            Logging.error(message);
+            throw new IllegalArgumentException(message);
+        }
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.error(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        // Validate the format and attributes before any work is submitted.
+        new DXTBlockEncoder(format, attributes);
+
+        int blockSize = getBlockSize(format);
+        int offset = buffer.position();
+        final ByteBuffer target = buffer;
+        List<Callable<Void>> bands = new ArrayList<Callable<Void>>();
+
+        for (final Image image : images)
+        {
+            int blocksPerRow = (image.width + 3) / 4;
+            int blockRows = (image.height + 3) / 4;
+            int rowsPerBand = Math.max(1, BLOCKS_PER_BAND / blocksPerRow);
+
+            for (int row = 0; row < blockRows; row += rowsPerBand)
+            {
+                final int firstRow = row;
+                final int lastRow = Math.min(row + rowsPerBand, blockRows);
+                final int bandOffset = offset + row * blocksPerRow * blockSize;
+
+                bands.add(new Callable<Void>()
+                {
+                    public Void call() throws Exception
+                    {
+                        // Each band writes to its own region of the buffer through its own view, so bands can be
+                        // written concurrently without changing the position of the caller's buffer.
+                        ByteBuffer view = target.duplicate();
+                        view.order(ByteOrder.LITTLE_ENDIAN);
+                        view.position(bandOffset);
+                        new DXTBlockEncoder(format, attributes).encodeRows(image, firstRow, lastRow, view);
+                        return null;
+                    }
+                });
+            }
+
+            offset += blocksPerRow * blockRows * blockSize;
+        }
+
+        runBands(bands);
+        buffer.position(offset);
+    }
+
+    protected static void runBands(List<Callable<Void>> bands)
+    {
+        if (bands.isEmpty())
+            return;
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(bands.size());
+        try
+        {
+            ExecutorService service = getExecutor();
+            for (int i = 1; i < bands.size(); i++)
+            {
+                futures.add(service.submit(bands.get(i)));
+            }
+
+            bands.get(0).call();
+
+            for (Future<Void> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new WWRuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new WWRuntimeException(e.getCause());
+        }
+        catch (Exception e)
+        {
+            throw new WWRuntimeException(e);
+        }
+        finally
+        {
+            // If a band failed, don't leave the others writing into a buffer the caller is about to discard.
+            for (Future<Void> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+    }
+
+    protected static synchronized ExecutorService getExecutor()
+    {
+        if (executor == null)
+        {
+            int poolSize = Math.max(1, Runtime.getRuntime().availableProcessors());
+            executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "DXT Encoder");
+                    thread.setDaemon(true); // Daemon threads don't prevent the JVM from shutting down.
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+
+        return executor;
+    }
+
+    /**
+     * Encodes a range of block rows of an image and writes the encoded blocks to the buffer at its position.
+     *
+     * @param image    the image to encode.
+     * @param firstRow the first row of blocks to encode.
+     * @param lastRow  the row of blocks after the last row to encode.
+     * @param buffer   the little endian ordered buffer that receives the encoded blocks.
+     */
+    public void encodeRows(Image image, int firstRow, int lastRow, ByteBuffer buffer)
+    {
+        boolean dxt1Alpha = this.format == DDSConstants.D3DFMT_DXT1 && this.attributes.isEnableDXT1Alpha()
+            && image.hasAlpha;
+        int alphaThreshold = this.attributes.getDXT1AlphaThreshold();
+
+        for (int y = 4 * firstRow; y < 4 * lastRow; y += 4)
+        {
+            for (int x = 0; x < image.width; x += 4)
+            {
+                this.extractBlock(image, x, y);
+
+                if (this.format == DDSConstants.D3DFMT_DXT3)
+                {
+                    buffer.putLong(this.computeAlphaValueMask());
+                    this.encodeColorBlock4(buffer);
+                }
+                else if (dxt1Alpha && this.blockHasDXT1Alpha(alphaThreshold))
+                {
+                    this.encodeColorBlock3(alphaThreshold, buffer);
+                }
+                else
+                {
+                    this.encodeColorBlock4(buffer);
+                }
+            }
+        }
+    }
+
+    protected void extractBlock(Image image, int x, int y)
+    {
+        // Image blocks that are smaller than 4x4 are handled by repeating the image pixels that intersect the
+        // requested block range, exactly as BasicColorBlockExtractor does.
+
+        int bxOffset = 4 * (Math.min(image.width - x, 4) - 1);
+        int byOffset = 4 * (Math.min(image.height - y, 4) - 1);
+        boolean premultiply = this.attributes.isPremultiplyAlpha();
+        int[] pixels = image.pixels;
+
+        for (int j = 0, i = 0; j < 4; j++)
+        {
+            int rowStart = (y + remainder[byOffset + j]) * image.width + x;
+
+            for (int k = 0; k < 4; k++, i++)
+            {
+                int pixel = pixels[rowStart + remainder[bxOffset + k]];
+                int pa = 0xFF & (pixel >> 24);
+                int pr = 0xFF & (pixel >> 16);
+                int pg = 0xFF & (pixel >> 8);
+                int pb = 0xFF & pixel;
+
+                if (premultiply)
+                {
+                    pr = div255(pr * pa);
+                    pg = div255(pg * pa);
+                    pb = div255(pb * pa);
+                }
+
+                this.a[i] = pa;
+                this.r[i] = pr;
+                this.g[i] = pg;
+                this.b[i] = pb;
+            }
+        }
+    }
+
+    protected boolean blockHasDXT1Alpha(int alphaThreshold)
+    {
+        for (int i = 0; i < 16; i++)
+        {
+            if (this.a[i] < alphaThreshold)
+                return true;
+        }
+
+        return false;
+    }
+
+    //**************************************************************//
+    //********************  Color Block Encoding  ******************//
+    //**************************************************************//
+
+    protected void encodeColorBlock4(ByteBuffer buffer)
+    {
+        this.chooseMinMaxColors();
+        int color0 = short565(this.maxR, this.maxG, this.maxB);
+        int color1 = short565(this.minR, this.minG, this.minB);
+
+        if (color0 < color1)
+        {
+            int tmp = color0;
+            color0 = color1;
+            color1 = tmp;
+        }
+
+        // To get a four color palette with no alpha, the first color must be greater than the second color.
+        this.setPaletteColor(0, color0);
+        this.setPaletteColor(1, color1);
+        for (int c = 2; c < 4; c++)
+        {
+            // The third color is 1/3 of the way from the first color to the second, the fourth 2/3 of the way.
+            int w0 = c == 2 ? 2 : 1;
+            int w1 = 3 - w0;
+            this.pr[c] = (w0 * this.pr[0] + w1 * this.pr[1]) / 3;
+            this.pg[c] = (w0 * this.pg[0] + w1 * this.pg[1]) / 3;
+            this.pb[c] = (w0 * this.pb[0] + w1 * this.pb[1]) / 3;
+        }
+
+        buffer.putShort((short) color0);
+        buffer.putShort((short) color1);
+        buffer.putInt((int) this.computePaletteIndices4());
+    }
+
+    protected void encodeColorBlock3(int alphaThreshold, ByteBuffer buffer)
+    {
+        this.chooseMinMaxColors();
+        int color0 = short565(this.maxR, this.maxG, this.maxB);
+        int color1 = short565(this.minR, this.minG, this.minB);
+
+        if (color0 < color1)
+        {
+            int tmp = color0;
+            color0 = color1;
+            color1 = tmp;
+        }
+
+        // To get a three color palette with alpha, the first color must be less than the second color. The fourth
+        // color is transparent black.
+        this.setPaletteColor(0, color1);
+        this.setPaletteColor(1, color0);
+        this.pr[2] = (this.pr[0] + this.pr[1]) / 2;
+        this.pg[2] = (this.pg[0] + this.pg[1]) / 2;
+        this.pb[2] = (this.pb[0] + this.pb[1]) / 2;
+
+        buffer.putShort((short) color1);
+        buffer.putShort((short) color0);
+        buffer.putInt((int) this.computePaletteIndices3(alphaThreshold));
+    }
+
+    protected void setPaletteColor(int index, int color16)
+    {
+        int r5 = (color16 & 0xf800) >> 11;
+        int g6 = (color16 & 0x07e0) >> 5;
+        int b5 = (color16 & 0x001f);
+
+        this.pr[index] = (r5 << 3) | (r5 >> 2);
+        this.pg[index] = (g6 << 2) | (g6 >> 4);
+        this.pb[index] = (b5 << 3) | (b5 >> 2);
+    }
+
+    protected long computePaletteIndices4()
+    {
+        // Derive each 2-bit index directly from the distance comparisons, as BlockDXT1Compressor does, to avoid
+        // branching on the nearest color.
+
+        long mask = 0L;
+
+        for (int i = 0; i < 16; i++)
+        {
+            int d0 = this.paletteDistanceSquared(0, i);
+            int d1 = this.paletteDistanceSquared(1, i);
+            int d2 = this.paletteDistanceSquared(2, i);
+            int d3 = this.paletteDistanceSquared(3, i);
+
+            int b0 = (d3 - d0) >>> 31;
+            int b1 = (d2 - d1) >>> 31;
+            int b2 = (d2 - d0) >>> 31;
+            int b3 = (d3 - d1) >>> 31;
+            int b4 = (d3 - d2) >>> 31;
+
+            long index = (b0 & b4) | (((b1 & b2) | (b0 & b3)) << 1);
+            mask |= (index << (i << 1));
+        }
+
+        return mask;
+    }
+
+    protected long computePaletteIndices3(int alphaThreshold)
+    {
+        long mask = 0L;
+        long index;
+
+        for (int i = 0; i < 16; i++)
+        {
+            int d0 = this.paletteDistanceSquared(0, i);
+            int d1 = this.paletteDistanceSquared(1, i);
+            int d2 = this.paletteDistanceSquared(2, i);
+
+            if (this.a[i] < alphaThreshold)
+                index = 3;
+            else if (d0 < d1 && d0 < d2)
+                index = 0;
+            else if (d1 < d2)
+                index = 1;
+            else
+                index = 2;
+
+            mask |= (index << (i << 1));
+        }
+
+        return mask;
+    }
+
+    protected int paletteDistanceSquared(int p, int i)
+    {
+        int dr = this.pr[p] - this.r[i];
+        int dg = this.pg[p] - this.g[i];
+        int db = this.pb[p] - this.b[i];
+        return dr * dr + dg * dg + db * db;
+    }
+
+    //**************************************************************//
+    //********************  Endpoint Selection  ********************//
+    //**************************************************************//
+
+    protected void chooseMinMaxColors()
+    {
+        //noinspection StringEquality
+        String type = this.attributes.getColorBlockCompressionType();
+        if (type == DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_BBOX)
+        {
+            this.findMinMaxColorsBox();
+            this.selectDiagonal();
+            this.insetBox();
+        }
+        else //noinspection StringEquality
+            if (type == DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE)
+        {
+            this.findMinMaxColorsEuclideanDistance();
+        }
+        else //noinspection StringEquality
+                if (type == DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_LUMINANCE_DISTANCE)
+        {
+            this.findMinMaxColorsLuminanceDistance();
+        }
+    }
+
+    protected void findMinMaxColorsBox()
+    {
+        this.minR = this.minG = this.minB = 255;
+        this.maxR = this.maxG = this.maxB = 0;
+
+        for (int i = 0; i < 16; i++)
+        {
+            this.minR = Math.min(this.minR, this.r[i]);
+            this.minG = Math.min(this.minG, this.g[i]);
+            this.minB = Math.min(this.minB, this.b[i]);
+            this.maxR = Math.max(this.maxR, this.r[i]);
+            this.maxG = Math.max(this.maxG, this.g[i]);
+            this.maxB = Math.max(this.maxB, this.b[i]);
+        }
+    }
+
+    protected void selectDiagonal()
+    {
+        int centerR = (this.minR + this.maxR) / 2;
+        int centerG = (this.minG + this.maxG) / 2;
+        int centerB = (this.minB + this.maxB) / 2;
+
+        int cvx = 0;
+        int cvy = 0;
+        for (int i = 0; i < 16; i++)
+        {
+            int tz = this.b[i] - centerB;
+            cvx += (this.r[i] - centerR) * tz;
+            cvy += (this.g[i] - centerG) * tz;
+        }
+
+        if (cvx < 0)
+        {
+            int tmp = this.minR;
+            this.minR = this.maxR;
+            this.maxR = tmp;
+        }
+
+        if (cvy < 0)
+        {
+            int tmp = this.minG;
+            this.minG = this.maxG;
+            this.maxG = tmp;
+        }
+    }
+
+    protected void insetBox()
+    {
+        int insetR = (this.maxR - this.minR) >> 4;
+        int insetG = (this.maxG - this.minG) >> 4;
+        int insetB = (this.maxB - this.minB) >> 4;
+
+        this.minR = (this.minR + insetR < 255) ? (this.minR + insetR) : 255;
+        this.minG = (this.minG + insetG < 255) ? (this.minG + insetG) : 255;
+        this.minB = (this.minB + insetB < 255) ? (this.minB + insetB) : 255;
+
+        this.maxR = (this.maxR > insetR) ? (this.maxR - insetR) : 0;
+        this.maxG = (this.maxG > insetG) ? (this.maxG - insetG) : 0;
+        this.maxB = (this.maxB > insetB) ? (this.maxB - insetB) : 0;
+    }
+
+    protected void findMinMaxColorsEuclideanDistance()
+    {
+        int maxDistance = -1;
+        int minIndex = 0;
+        int maxIndex = 0;
+
+        for (int i = 0; i < 15; i++)
+        {
+            for (int j = i + 1; j < 16; j++)
+            {
+                int dr = this.r[i] - this.r[j];
+                int dg = this.g[i] - this.g[j];
+                int db = this.b[i] - this.b[j];
+                int d = dr * dr + dg * dg + db * db;
+                if (d > maxDistance)
+                {
+                    minIndex = i;
+                    maxIndex = j;
+                    maxDistance = d;
+                }
+            }
+        }
+
+        this.setMinMaxColors(minIndex, maxIndex);
+    }
+
+    protected void findMinMaxColorsLuminanceDistance()
+    {
+        int minLuminance = Integer.MAX_VALUE;
+        int maxLuminance = -1;
+        int minIndex = 0;
+        int maxIndex = 0;
+
+        for (int i = 0; i < 16; i++)
+        {
+            int luminance = this.r[i] + this.g[i] + 2 * this.b[i];
+            if (luminance < minLuminance)
+            {
+                minIndex = i;
+                minLuminance = luminance;
+            }
+            if (luminance > maxLuminance)
+            {
+                maxIndex = i;
+                maxLuminance = luminance;
+            }
+        }
+
+        this.setMinMaxColors(minIndex, maxIndex);
+    }
+
+    protected void setMinMaxColors(int minIndex, int maxIndex)
+    {
+        this.minR = this.r[minIndex];
+        this.minG = this.g[minIndex];
+        this.minB = this.b[minIndex];
+        this.maxR = this.r[maxIndex];
+        this.maxG = this.g[maxIndex];
+        this.maxB = this.b[maxIndex];
+    }
+
+    //**************************************************************//
+    //********************  Alpha Block Encoding  ******************//
+    //**************************************************************//
+
+    protected long computeAlphaValueMask()
+    {
+        // Alpha is encoded as 4 bit values, two per byte, in the same layout as BlockDXT3Compressor.
+
+        long bitmask = 0L;
+
+        for (int i = 0; i < 8; i++)
+        {
+            int a0 = 0xF & BlockDXT3Compressor.alpha4FromAlpha8(this.a[2 * i]);
+            int a1 = 0xF & BlockDXT3Compressor.alpha4FromAlpha8(this.a[2 * i + 1]);
+            long mask10 = (a1 << 4) | a0;
+            bitmask |= (mask10 << (8 * i));
+        }
+
+        return bitmask;
+    }
+
+    //**************************************************************//
+    //********************  Color Arithmetic  **********************//
+    //**************************************************************//
+
+    protected static int short565(int r, int g, int b)
+    {
+        return (mul8bit(r, 31) << 11) + (mul8bit(g, 63) << 5) + (mul8bit(b, 31));
+    }
+
+    private static int mul8bit(int a, int b)
+    {
+        int t = a * b + 128;
+        return (t + (t >> 8)) >> 8;
+    }
+
+    private static int div255(int a)
+    {
+        return (a + (a >> 8) + 128) >> 8;
+    }
+}
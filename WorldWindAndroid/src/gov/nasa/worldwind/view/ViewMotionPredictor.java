@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.view;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.Logging;
+
+/**
+ * Predicts where an orbit view will look next from how its look-at position and range have recently changed. The
+ * predictor is updated once per frame with the view's state, and estimates the view's rate of change by exponential
+ * smoothing of the changes between frames. Range changes are tracked on a logarithmic scale, so a steady zoom is
+ * extrapolated as a steady change in scale.
+ * <p/>
+ * When an animation moving the view is in progress, its destination is a better prediction than extrapolation, so the
+ * animation's target position and range are returned instead.
+ *
+ * @version $Id$
+ */
+public class ViewMotionPredictor
+{
+    /** Samples further apart than this many milliseconds are treated as the start of a new motion. */
+    protected static final long MAX_SAMPLE_INTERVAL = 500;
+    /** The weight of the newest sample in the smoothed rates. */
+    protected static final double SMOOTHING = 0.5;
+
+    protected long lastTime = -1;
+    protected double lastLatitude;
+    protected double lastLongitude;
+    protected double lastLogRange;
+    // Rates of change per millisecond. Latitude and longitude are in degrees.
+    protected double latitudeRate;
+    protected double longitudeRate;
+    protected double logRangeRate;
+    // Animation targets are set on the thread running the animation and read on the rendering thread.
+    protected volatile Position targetPosition;
+    protected volatile double targetRange = -1;
+
+    public ViewMotionPredictor()
+    {
+    }
+
+    /**
+     * Records the view's state at a specified time.
+     *
+     * @param timeMillis the time of the sample, in milliseconds.
+     * @param lookAt     the view's look-at position.
+     * @param range      the distance from the look-at position to the eye point, in meters.
+     *
+     * @throws IllegalArgumentException if the position is null.
+     */
+    public void update(long timeMillis, Position lookAt, double range)
+    {
+        if (lookAt == null)
+        {
+            String msg = Logging.getMessage("nullValue.PositionIsNull");
+            Logging.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        double latitude = lookAt.latitude.degrees;
+        double longitude = lookAt.longitude.degrees;
+        double logRange = Math.log(Math.max(range, 1));
+        long dt = timeMillis - this.lastTime;
+
+        boolean stopped = latitude == this.lastLatitude && longitude == this.lastLongitude
+            && logRange == this.lastLogRange;
+
+        if (this.lastTime < 0 || dt > MAX_SAMPLE_INTERVAL || dt < 0 || (dt > 0 && stopped))
+        {
+            this.latitudeRate = 0;
+            this.longitudeRate = 0;
+            this.logRangeRate = 0;
+        }
+        else if (dt > 0)
+        {
+            double dLon = longitude - this.lastLongitude;
+            if (dLon > 180) // Take the short way across the antimeridian.
+                dLon -= 360;
+            else if (dLon < -180)
+                dLon += 360;
+
+            this.latitudeRate = smooth(this.latitudeRate, (latitude - this.lastLatitude) / dt);
+            this.longitudeRate = smooth(this.longitudeRate, dLon / dt);
+            this.logRangeRate = smooth(this.logRangeRate, (logRange - this.lastLogRange) / dt);
+        }
+        else
+        {
+            return; // Another sample in the same frame.
+        }
+
+        this.lastTime = timeMillis;
+        this.lastLatitude = latitude;
+        this.lastLongitude = longitude;
+        this.lastLogRange = logRange;
+    }
+
+    protected static double smooth(double rate, double sample)
+    {
+        return SMOOTHING * sample + (1 - SMOOTHING) * rate;
+    }
+
+    /**
+     * Specifies the look-at position an animation is moving the view to.
+     *
+     * @param position the animation's target position, or null if no animation is moving the look-at position.
+     */
+    public void setTargetPosition(Position position)
+    {
+        this.targetPosition = position;
+    }
+
+    /**
+     * Specifies the range an animation is moving the view to.
+     *
+     * @param range the animation's target range, or a negative value if no animation is changing the range.
+     */
+    public void setTargetRange(double range)
+    {
+        this.targetRange = range;
+    }
+
+    /** Forgets any animation targets, as when the animations end or are cancelled. */
+    public void clearTargets()
+    {
+        this.targetPosition = null;
+        this.targetRange = -1;
+    }
+
+    /**
+     * Indicates whether the view is moving, either because an animation is in progress or because it changed in
+     * recent samples.
+     *
+     * @return true if the view is moving, otherwise false.
+     */
+    public boolean isMoving()
+    {
+        return this.targetPosition != null || this.targetRange >= 0
+            || this.latitudeRate != 0 || this.longitudeRate != 0 || this.logRangeRate != 0;
+    }
+
+    /**
+     * Predicts the view's look-at position a specified time after the last sample.
+     *
+     * @param aheadMillis the time after the last sample, in milliseconds.
+     *
+     * @return the predicted look-at position, or null if no sample has been recorded.
+     */
+    public LatLon predictLookAt(long aheadMillis)
+    {
+        if (this.targetPosition != null)
+            return this.targetPosition;
+
+        if (this.lastTime < 0)
+            return null;
+
+        double latitude = this.lastLatitude + this.latitudeRate * aheadMillis;
+        double longitude = this.lastLongitude + this.longitudeRate * aheadMillis;
+
+        return LatLon.fromDegrees(Angle.normalizedDegreesLatitude(latitude),
+            Angle.normalizedDegreesLongitude(longitude));
+    }
+
+    /**
+     * Predicts the view's range a specified time after the last sample.
+     *
+     * @param aheadMillis the time after the last sample, in milliseconds.
+     *
+     * @return the predicted range in meters, or a negative value if no sample has been recorded.
+     */
+    public double predictRange(long aheadMillis)
+    {
+        if (this.targetRange >= 0)
+            return this.targetRange;
+
+        if (this.lastTime < 0)
+            return -1;
+
+        return Math.exp(this.lastLogRange + this.logRangeRate * aheadMillis);
+    }
+}
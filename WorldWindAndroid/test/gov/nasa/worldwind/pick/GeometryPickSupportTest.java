@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.pick;
+
+import gov.nasa.worldwind.geom.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the terrain distance and containment tests of {@link GeometryPickSupport}. The pick state that {@link
+ * GeometryPickSupport#beginPicking} computes from a draw context is set directly, with a pixel size of one meter.
+ *
+ * @version $Id$
+ */
+public class GeometryPickSupportTest
+{
+    protected static final double EARTH_RADIUS = 6378137;
+
+    /** An unclosed square, 2 degrees on a side, centered on (0, 0). Its fourth edge lies along latitude -1. */
+    protected static final List<LatLon> SQUARE = Arrays.asList(
+        LatLon.fromDegrees(-1, 1),
+        LatLon.fromDegrees(1, 1),
+        LatLon.fromDegrees(1, -1),
+        LatLon.fromDegrees(-1, -1));
+
+    protected static GeometryPickSupport createPickSupport(double latitude, double longitude)
+    {
+        GeometryPickSupport pickSupport = new GeometryPickSupport();
+        pickSupport.terrainPosition = Position.fromDegrees(latitude, longitude, 0);
+        pickSupport.terrainPixelSize = 1;
+        pickSupport.globeRadius = EARTH_RADIUS;
+        return pickSupport;
+    }
+
+    protected static List<List<LatLon>> lines(List<LatLon> line)
+    {
+        return Collections.singletonList(line);
+    }
+
+    @Test
+    public void testSurfaceDistanceHitsLine()
+    {
+        GeometryPickSupport pickSupport = createPickSupport(1, 0);
+
+        double distance = pickSupport.computeSurfaceDistance(lines(SQUARE), false);
+
+        assertEquals(0, distance, 1e-6);
+    }
+
+    @Test
+    public void testSurfaceDistanceNearLine()
+    {
+        // 5 meters north of the square's top edge.
+        double offset = Math.toDegrees(5 / EARTH_RADIUS);
+        GeometryPickSupport pickSupport = createPickSupport(1 + offset, 0);
+
+        double distance = pickSupport.computeSurfaceDistance(lines(SQUARE), false);
+
+        assertEquals(5, distance, 1e-3);
+        assertTrue(distance <= pickSupport.getTolerance());
+    }
+
+    @Test
+    public void testSurfaceDistanceMissesLine()
+    {
+        GeometryPickSupport pickSupport = createPickSupport(5, 5);
+
+        double distance = pickSupport.computeSurfaceDistance(lines(SQUARE), true);
+
+        assertTrue(distance > pickSupport.getTolerance());
+    }
+
+    @Test
+    public void testSurfaceDistanceIncludesClosingEdgeOfClosedLine()
+    {
+        GeometryPickSupport pickSupport = createPickSupport(-1, 0);
+
+        double distance = pickSupport.computeSurfaceDistance(lines(SQUARE), true);
+
+        assertEquals(0, distance, 1e-6);
+    }
+
+    @Test
+    public void testSurfaceDistanceExcludesClosingEdgeOfOpenLine()
+    {
+        GeometryPickSupport pickSupport = createPickSupport(-1, 0);
+
+        double distance = pickSupport.computeSurfaceDistance(lines(SQUARE), false);
+
+        // The nearest edges of the open line are a degree of longitude away, at latitude -1.
+        assertEquals(Math.toRadians(1) * Math.cos(Math.toRadians(1)) * EARTH_RADIUS, distance, 1);
+    }
+
+    @Test
+    public void testSurfaceDistanceWithoutTerrainPosition()
+    {
+        GeometryPickSupport pickSupport = new GeometryPickSupport();
+
+        assertEquals(Double.POSITIVE_INFINITY, pickSupport.computeSurfaceDistance(lines(SQUARE), true), 0);
+    }
+
+    @Test
+    public void testTerrainPositionInside()
+    {
+        GeometryPickSupport pickSupport = createPickSupport(0.5, -0.5);
+
+        assertTrue(pickSupport.isTerrainPositionInside(lines(SQUARE)));
+    }
+
+    @Test
+    public void testTerrainPositionOutside()
+    {
+        GeometryPickSupport pickSupport = createPickSupport(0.5, 1.5);
+
+        assertFalse(pickSupport.isTerrainPositionInside(lines(SQUARE)));
+    }
+
+    @Test
+    public void testTerrainPositionInsideAcrossDateline()
+    {
+        List<LatLon> ring = Arrays.asList(
+            LatLon.fromDegrees(-1, 179),
+            LatLon.fromDegrees(-1, 181),
+            LatLon.fromDegrees(1, 181),
+            LatLon.fromDegrees(1, 179));
+        GeometryPickSupport pickSupport = createPickSupport(0, -179.5);
+
+        assertTrue(pickSupport.isTerrainPositionInside(lines(ring)));
+    }
+
+    @Test
+    public void testSectorNearTerrainPosition()
+    {
+        GeometryPickSupport pickSupport = createPickSupport(1, 0);
+        // 5 meters north of the pick point, within the margin.
+        double offset = Math.toDegrees(5 / EARTH_RADIUS);
+        Sector near = Sector.fromDegrees(1 + offset, 2, -1, 1);
+        Sector far = Sector.fromDegrees(2, 3, -1, 1);
+
+        assertTrue(pickSupport.isSectorNearTerrainPosition(near, 8));
+        assertFalse(pickSupport.isSectorNearTerrainPosition(far, 8));
+    }
+}
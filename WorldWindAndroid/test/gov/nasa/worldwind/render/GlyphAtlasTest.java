@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.render;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests glyph packing, clearing, layout and overflow in {@link GlyphAtlas}. The atlas is 32 by 32 pixels with one
+ * pixel of padding, so three 9 pixel wide glyphs fill a shelf.
+ *
+ * @version $Id$
+ */
+public class GlyphAtlasTest
+{
+    protected GlyphAtlas atlas;
+
+    @Before
+    public void setUp()
+    {
+        this.atlas = new GlyphAtlas(32, 32, 1);
+    }
+
+    protected GlyphAtlas.Glyph addGlyph(char c, int width, int height)
+    {
+        return this.atlas.addGlyph(c, width, height, 1, height, width + 2);
+    }
+
+    @Test
+    public void testPacksGlyphsOnShelves()
+    {
+        GlyphAtlas.Glyph a = this.addGlyph('a', 9, 8);
+        GlyphAtlas.Glyph b = this.addGlyph('b', 9, 10);
+        GlyphAtlas.Glyph c = this.addGlyph('c', 9, 6);
+        GlyphAtlas.Glyph d = this.addGlyph('d', 9, 8);
+
+        assertEquals(1, a.x);
+        assertEquals(1, a.y);
+        assertEquals(11, b.x);
+        assertEquals(1, b.y);
+        assertEquals(21, c.x);
+        assertEquals(1, c.y);
+        // The next shelf starts below the tallest glyph of the first, b, and its padding.
+        assertEquals(1, d.x);
+        assertEquals(12, d.y);
+        assertEquals(4, this.atlas.getGlyphCount());
+    }
+
+    @Test
+    public void testAddExistingGlyph()
+    {
+        GlyphAtlas.Glyph a = this.addGlyph('a', 9, 8);
+
+        assertSame(a, this.addGlyph('a', 5, 5));
+        assertEquals(1, this.atlas.getGlyphCount());
+    }
+
+    @Test
+    public void testEmptyGlyphTakesNoSpace()
+    {
+        GlyphAtlas.Glyph space = this.atlas.addGlyph(' ', 0, 0, 0, 0, 4);
+        GlyphAtlas.Glyph a = this.addGlyph('a', 9, 8);
+
+        assertEquals(0, space.width);
+        assertEquals(1, a.x);
+        assertEquals(4, this.atlas.getAdvance(" "), 0);
+    }
+
+    @Test
+    public void testOverflow()
+    {
+        // Three shelves of three 9 by 9 glyphs fill the atlas's height.
+        for (char c = 'a'; c < 'a' + 9; c++)
+        {
+            assertNotNull(this.addGlyph(c, 9, 9));
+        }
+
+        assertNull(this.addGlyph('z', 9, 9));
+        assertNull(this.atlas.getGlyph('z'));
+        assertEquals(9, this.atlas.getGlyphCount());
+    }
+
+    @Test
+    public void testGlyphLargerThanAtlas()
+    {
+        assertNull(this.addGlyph('W', 40, 8));
+        assertNull(this.addGlyph('W', 8, 40));
+        assertEquals(0, this.atlas.getGlyphCount());
+    }
+
+    @Test
+    public void testClearEvictsGlyphs()
+    {
+        for (char c = 'a'; c < 'a' + 9; c++)
+        {
+            this.addGlyph(c, 9, 9);
+        }
+
+        this.atlas.clear();
+
+        assertEquals(0, this.atlas.getGlyphCount());
+        assertNull(this.atlas.getGlyph('a'));
+        GlyphAtlas.Glyph z = this.addGlyph('z', 9, 9);
+        assertEquals(1, z.x);
+        assertEquals(1, z.y);
+    }
+
+    @Test
+    public void testLayout()
+    {
+        this.atlas.addGlyph('a', 8, 4, 1, 3, 10);
+        this.atlas.addGlyph(' ', 0, 0, 0, 0, 5);
+
+        float[] vertices = new float[3 * GlyphAtlas.FLOATS_PER_GLYPH + 2];
+        int count = this.atlas.layout("a a", 100, 200, vertices, 2);
+
+        // The space draws nothing, but moves the pen.
+        assertEquals(2 * GlyphAtlas.FLOATS_PER_GLYPH, count);
+        assertEquals(25, this.atlas.getAdvance("a a"), 0);
+
+        // The first vertex is the first glyph's lower left corner: the pen plus the glyph's left offset, and the
+        // baseline less the glyph's descent. Its texture coordinate is the bottom left of the glyph's atlas region.
+        assertEquals(101, vertices[2], 0);
+        assertEquals(199, vertices[3], 0);
+        assertEquals(1f / 32, vertices[4], 0);
+        assertEquals(5f / 32, vertices[5], 0);
+        // The third vertex is the upper right corner.
+        assertEquals(109, vertices[10], 0);
+        assertEquals(203, vertices[11], 0);
+        assertEquals(9f / 32, vertices[12], 0);
+        assertEquals(1f / 32, vertices[13], 0);
+        // The second glyph starts after the advances of the first glyph and the space.
+        assertEquals(116, vertices[2 + GlyphAtlas.FLOATS_PER_GLYPH], 0);
+    }
+
+    @Test
+    public void testLayoutSkipsMissingGlyphs()
+    {
+        this.atlas.addGlyph('a', 8, 4, 1, 3, 10);
+
+        float[] vertices = new float[2 * GlyphAtlas.FLOATS_PER_GLYPH];
+        int count = this.atlas.layout("ba", 0, 0, vertices, 0);
+
+        assertEquals(GlyphAtlas.FLOATS_PER_GLYPH, count);
+        assertEquals(1, vertices[0], 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLayoutArrayTooShort()
+    {
+        this.atlas.layout("ab", 0, 0, new float[GlyphAtlas.FLOATS_PER_GLYPH], 0);
+    }
+}
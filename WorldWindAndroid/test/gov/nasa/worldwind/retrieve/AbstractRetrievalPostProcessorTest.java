@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.retrieve;
+
+import com.sun.net.httpserver.*;
+import gov.nasa.worldwind.util.*;
+import org.junit.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link AbstractRetrievalPostProcessor} records the entity tag of a download served by a local HTTP
+ * server, including when the downloaded file is written behind.
+ *
+ * @version $Id$
+ */
+public class AbstractRetrievalPostProcessorTest
+{
+    protected static final String ENTITY_TAG = "\"tile-1\"";
+    protected static final byte[] CONTENT = new byte[] {1, 2, 3, 4};
+
+    protected static class FilePostProcessor extends AbstractRetrievalPostProcessor
+    {
+        protected File outFile;
+
+        public FilePostProcessor(File outFile, boolean writeBehind)
+        {
+            this.outFile = outFile;
+            this.setWriteBehind(writeBehind);
+        }
+
+        @Override
+        protected File doGetOutputFile()
+        {
+            return this.outFile;
+        }
+    }
+
+    protected HttpServer server;
+    protected File dir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/tile", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                exchange.getResponseHeaders().set("ETag", ENTITY_TAG);
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, CONTENT.length);
+                exchange.getResponseBody().write(CONTENT);
+                exchange.close();
+            }
+        });
+        this.server.start();
+
+        this.dir = File.createTempFile("etag", "");
+        assertTrue(this.dir.delete() && this.dir.mkdir());
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.server.stop(0);
+
+        File[] files = this.dir.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        this.dir.delete();
+    }
+
+    protected URL getTileURL() throws MalformedURLException
+    {
+        return new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + "/tile");
+    }
+
+    protected static void waitForPendingWrites() throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        WriteBehindWriter.getDefault().runAfterPendingWrites(new Runnable()
+        {
+            public void run()
+            {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDownloadSavesEntityTag() throws Exception
+    {
+        File outFile = new File(this.dir, "tile.bin");
+        FilePostProcessor postProcessor = new FilePostProcessor(outFile, false);
+
+        new HTTPRetriever(this.getTileURL(), postProcessor).call();
+
+        assertTrue(outFile.exists());
+        assertEquals(ENTITY_TAG, postProcessor.readEntityTag(outFile));
+    }
+
+    @Test
+    public void testWriteBehindDownloadSavesEntityTag() throws Exception
+    {
+        File outFile = new File(this.dir, "tile.bin");
+        FilePostProcessor postProcessor = new FilePostProcessor(outFile, true);
+
+        // Hold the writer so that the output file does not exist when the post-processor finishes.
+        final CountDownLatch release = new CountDownLatch(1);
+        WriteBehindWriter.getDefault().runAfterPendingWrites(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        try
+        {
+            new HTTPRetriever(this.getTileURL(), postProcessor).call();
+            assertFalse(outFile.exists());
+        }
+        finally
+        {
+            release.countDown();
+        }
+
+        waitForPendingWrites();
+
+        assertTrue(outFile.exists());
+        assertEquals(ENTITY_TAG, postProcessor.readEntityTag(outFile));
+    }
+
+    @Test
+    public void testWriteBehindDownloadWritesRetrievedBufferInPlace() throws Exception
+    {
+        File outFile = new File(this.dir, "tile.bin");
+        FilePostProcessor postProcessor = new FilePostProcessor(outFile, true);
+
+        HTTPRetriever retriever = new HTTPRetriever(this.getTileURL(), postProcessor);
+        retriever.call();
+        waitForPendingWrites();
+
+        // The post-processor took the retriever's pooled buffer rather than a copy of it.
+        assertNull(retriever.takePooledBuffer());
+        assertTrue(postProcessor.savedBuffer.isDirect());
+        InputStream stream = new FileInputStream(outFile);
+        try
+        {
+            assertArrayEquals(CONTENT, WWIO.readStreamToBuffer(stream).array());
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testRetrieverWithoutPostProcessorKeepsContent() throws Exception
+    {
+        HTTPRetriever retriever = new HTTPRetriever(this.getTileURL(), null);
+        retriever.call();
+
+        assertNull(retriever.takePooledBuffer());
+        assertFalse(retriever.getBuffer().isDirect());
+        assertEquals(CONTENT.length, retriever.getBuffer().remaining());
+    }
+
+    @Test
+    public void testConditionalRequestPresentsSavedEntityTag() throws Exception
+    {
+        File outFile = new File(this.dir, "tile.bin");
+        FilePostProcessor postProcessor = new FilePostProcessor(outFile, true);
+        new HTTPRetriever(this.getTileURL(), postProcessor).call();
+        waitForPendingWrites();
+
+        final BlockingQueue<String> ifNoneMatch = new LinkedBlockingQueue<String>();
+        this.server.removeContext("/tile");
+        this.server.createContext("/tile", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String tag = exchange.getRequestHeaders().getFirst("If-None-Match");
+                ifNoneMatch.add(tag != null ? tag : "");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                exchange.close();
+            }
+        });
+
+        HTTPRetriever retriever = new HTTPRetriever(this.getTileURL(), null);
+        new FilePostProcessor(outFile, true).configureConditionalRequest(retriever);
+        retriever.call();
+
+        assertEquals(ENTITY_TAG, ifNoneMatch.poll(10, TimeUnit.SECONDS));
+        assertTrue(retriever.isNotModified());
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.retrieve;
+
+import com.sun.net.httpserver.*;
+import org.junit.*;
+
+import java.io.IOException;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the per-host request limit and conditional requests of {@link BasicRetrievalService} against a local HTTP
+ * server.
+ *
+ * @version $Id$
+ */
+public class BasicRetrievalServiceTest
+{
+    protected static final String ENTITY_TAG = "\"tile-1\"";
+
+    protected HttpServer server;
+    protected BasicRetrievalService service;
+    protected CountDownLatch release = new CountDownLatch(1);
+    protected AtomicInteger connections = new AtomicInteger();
+    protected AtomicInteger maxConnections = new AtomicInteger();
+    protected AtomicInteger requestCount = new AtomicInteger();
+    protected BlockingQueue<String> ifNoneMatch = new LinkedBlockingQueue<String>();
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.createContext("/tile", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                handleTileRequest(exchange);
+            }
+        });
+        this.server.start();
+
+        this.service = new BasicRetrievalService();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.release.countDown();
+        this.service.shutdown(true);
+        this.server.stop(0);
+    }
+
+    protected void handleTileRequest(HttpExchange exchange) throws IOException
+    {
+        int count = this.connections.incrementAndGet();
+        synchronized (this.maxConnections)
+        {
+            this.maxConnections.set(Math.max(this.maxConnections.get(), count));
+        }
+
+        try
+        {
+            this.release.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        this.connections.decrementAndGet();
+        this.requestCount.incrementAndGet();
+
+        String tag = exchange.getRequestHeaders().getFirst("If-None-Match");
+        this.ifNoneMatch.add(tag != null ? tag : "");
+
+        exchange.getResponseHeaders().set("ETag", ENTITY_TAG);
+        if (ENTITY_TAG.equals(tag))
+        {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+        }
+        else
+        {
+            byte[] content = new byte[] {1, 2, 3, 4};
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, content.length);
+            exchange.getResponseBody().write(content);
+        }
+        exchange.close();
+    }
+
+    protected HTTPRetriever createRetriever(int tile) throws MalformedURLException
+    {
+        return new HTTPRetriever(new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + "/tile?n=" + tile),
+            null);
+    }
+
+    protected List<RetrievalFuture> runRetrievers(int count) throws MalformedURLException
+    {
+        List<RetrievalFuture> futures = new ArrayList<RetrievalFuture>();
+        for (int i = 0; i < count; i++)
+        {
+            RetrievalFuture future = this.service.runRetriever(this.createRetriever(i), i + 1);
+            assertNotNull(future);
+            futures.add(future);
+        }
+        return futures;
+    }
+
+    protected void waitForConnections(int count) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 10000;
+        while (this.connections.get() < count && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(count, this.connections.get());
+    }
+
+    protected static void waitForRetrievers(List<RetrievalFuture> futures) throws Exception
+    {
+        for (RetrievalFuture future : futures)
+        {
+            ((Future<?>) future).get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testNoHostLimitByDefault() throws Exception
+    {
+        int poolSize = this.service.getRetrieverPoolSize();
+        List<RetrievalFuture> futures = this.runRetrievers(poolSize + 2);
+
+        // Every thread in the pool connects to the one host.
+        this.waitForConnections(poolSize);
+        this.release.countDown();
+        waitForRetrievers(futures);
+
+        assertEquals(poolSize, this.maxConnections.get());
+        assertEquals(poolSize + 2, this.requestCount.get());
+    }
+    @Test
+    public void testHostConnectionLimit() throws Exception
+    {
+        this.service.setHostConnectionLimit(2);
+        List<RetrievalFuture> futures = this.runRetrievers(6);
+
+        this.waitForConnections(2);
+        Thread.sleep(200); // Give a thread that ignores the limit time to connect.
+        assertEquals(2, this.connections.get());
+        assertEquals(6, this.service.getNumRetrieversPending());
+
+        this.release.countDown();
+        waitForRetrievers(futures);
+
+        assertEquals(2, this.maxConnections.get());
+        assertEquals(6, this.requestCount.get());
+    }
+
+    @Test
+    public void testDeferredRequestsCountAgainstQueueSize() throws Exception
+    {
+        this.service.setHostConnectionLimit(1);
+        this.service.queueSize = 3;
+
+        this.runRetrievers(4); // one running and three held back
+        this.waitForConnections(1);
+
+        assertFalse(this.service.isAvailable());
+        assertNull(this.service.runRetriever(this.createRetriever(4), 5));
+    }
+
+    @Test
+    public void testNotModified() throws Exception
+    {
+        this.release.countDown();
+
+        HTTPRetriever retriever = this.createRetriever(0);
+        retriever.setIfNoneMatch(ENTITY_TAG);
+        RetrievalFuture future = this.service.runRetriever(retriever, 1);
+        waitForRetrievers(Collections.singletonList(future));
+
+        assertEquals(ENTITY_TAG, this.ifNoneMatch.poll(10, TimeUnit.SECONDS));
+        assertTrue(retriever.isNotModified());
+        assertNull(retriever.getBuffer());
+    }
+}
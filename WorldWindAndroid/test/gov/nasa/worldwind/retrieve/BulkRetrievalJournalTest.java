@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.retrieve;
+
+import org.junit.*;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link BulkRetrievalJournal} persists completed items and stops recording them once closed.
+ *
+ * @version $Id$
+ */
+public class BulkRetrievalJournalTest
+{
+    protected File file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.file = File.createTempFile("BulkRetrievalJournalTest", ".txt");
+        assertTrue(this.file.delete());
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.file.delete();
+    }
+
+    @Test
+    public void testReopenedJournalHoldsItems()
+    {
+        BulkRetrievalJournal journal = new BulkRetrievalJournal(this.file, "id");
+        journal.add("a", 10);
+        journal.add("b", 20);
+        journal.close();
+
+        BulkRetrievalJournal reopened = new BulkRetrievalJournal(this.file, "id");
+
+        assertEquals(2, reopened.getCount());
+        assertEquals(30, reopened.getSize());
+        assertTrue(reopened.contains("a"));
+    }
+
+    @Test
+    public void testAddAfterCloseIsIgnored()
+    {
+        BulkRetrievalJournal journal = new BulkRetrievalJournal(this.file, "id");
+        journal.add("a", 10);
+        journal.close();
+        journal.add("b", 20);
+
+        assertNull(journal.writer);
+        assertFalse(journal.contains("b"));
+        assertEquals(1, new BulkRetrievalJournal(this.file, "id").getCount());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.geom.*;
+import org.junit.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the dirty rectangle that {@link DirtyRegionTracker} computes as objects in a tile are added, removed, changed
+ * and reordered. The tile spans 10 degrees on each side over 100 pixels, so each degree covers 10 pixels, and objects
+ * are not widened by a margin unless a test says so.
+ *
+ * @version $Id$
+ */
+public class DirtyRegionTrackerTest
+{
+    protected static final Sector TILE_SECTOR = Sector.fromDegrees(0, 10, 0, 10);
+    protected static final int TILE_SIZE = 100;
+
+    protected DirtyRegionTracker tracker;
+
+    @Before
+    public void setUp()
+    {
+        this.tracker = new DirtyRegionTracker(TILE_SECTOR, TILE_SIZE, TILE_SIZE);
+        this.tracker.setMargin(0);
+
+        // The first update draws the whole tile.
+        this.update("a", box(1, 1), "b", box(5, 5));
+        assertTrue(this.tracker.isFullRedraw());
+    }
+
+    /** Returns the sectors of a one degree box whose lower left corner is at the specified latitude and longitude. */
+    protected static List<Sector> box(double lat, double lon)
+    {
+        return Collections.singletonList(Sector.fromDegrees(lat, lat + 1, lon, lon + 1));
+    }
+
+    /** Runs an update with alternating state keys and sectors, and returns the result of ending the update. */
+    @SuppressWarnings({"unchecked"})
+    protected boolean update(Object... keysAndSectors)
+    {
+        this.tracker.beginUpdate();
+        for (int i = 0; i < keysAndSectors.length; i += 2)
+        {
+            this.tracker.addObject(keysAndSectors[i], (List<Sector>) keysAndSectors[i + 1]);
+        }
+        return this.tracker.endUpdate();
+    }
+
+    protected void assertDirtyRect(double x, double y, double width, double height)
+    {
+        Rect rect = this.tracker.getDirtyRect();
+        assertEquals(x, rect.x, 0);
+        assertEquals(y, rect.y, 0);
+        assertEquals(width, rect.width, 0);
+        assertEquals(height, rect.height, 0);
+    }
+
+    @Test
+    public void testUnchangedObjects()
+    {
+        assertFalse(this.update("a", box(1, 1), "b", box(5, 5)));
+        assertFalse(this.tracker.isDirty());
+        assertFalse(this.tracker.intersectsDirtyRegion(box(1, 1)));
+        assertDirtyRect(0, 0, 0, 0);
+    }
+
+    @Test
+    public void testAddedObject()
+    {
+        assertTrue(this.update("a", box(1, 1), "b", box(5, 5), "c", box(2, 7)));
+
+        assertFalse(this.tracker.isFullRedraw());
+        assertDirtyRect(70, 20, 10, 10);
+        assertTrue(this.tracker.intersectsDirtyRegion(box(2, 7)));
+        assertFalse(this.tracker.intersectsDirtyRegion(box(1, 1)));
+    }
+
+    @Test
+    public void testRemovedObject()
+    {
+        assertTrue(this.update("b", box(5, 5)));
+
+        assertFalse(this.tracker.isFullRedraw());
+        assertDirtyRect(10, 10, 10, 10);
+    }
+
+    @Test
+    public void testChangedObjectCoversPreviousAndCurrentBounds()
+    {
+        // Object a moves from (1, 1) to (1, 3), and its state key changes.
+        assertTrue(this.update("a2", box(1, 3), "b", box(5, 5)));
+
+        assertFalse(this.tracker.isFullRedraw());
+        assertDirtyRect(10, 10, 30, 10);
+    }
+
+    @Test
+    public void testMargin()
+    {
+        this.tracker.setMargin(2);
+        assertTrue(this.update("a", box(1, 1), "b", box(5, 5), "c", box(2, 7)));
+
+        assertDirtyRect(68, 18, 14, 14);
+    }
+
+    @Test
+    public void testObjectOutsideTile()
+    {
+        assertFalse(this.update("a", box(1, 1), "b", box(5, 5), "c", box(20, 20)));
+        assertFalse(this.tracker.isDirty());
+    }
+
+    @Test
+    public void testDrawOrderChangeRedrawsWholeTile()
+    {
+        assertTrue(this.update("b", box(5, 5), "a", box(1, 1)));
+
+        assertTrue(this.tracker.isFullRedraw());
+        assertDirtyRect(0, 0, TILE_SIZE, TILE_SIZE);
+    }
+
+    @Test
+    public void testDirtyAreaAboveThresholdRedrawsWholeTile()
+    {
+        // A changed object covering 8 by 8 degrees dirties 64% of the tile, above the default threshold of 50%.
+        assertTrue(this.update("a", box(1, 1), "b", box(5, 5),
+            "c", Collections.singletonList(Sector.fromDegrees(1, 9, 1, 9))));
+
+        assertTrue(this.tracker.isFullRedraw());
+        assertDirtyRect(0, 0, TILE_SIZE, TILE_SIZE);
+    }
+
+    @Test
+    public void testDirtyAreaBelowThresholdRedrawsRegion()
+    {
+        this.tracker.setFullRedrawFraction(0.7);
+        assertTrue(this.update("a", box(1, 1), "b", box(5, 5),
+            "c", Collections.singletonList(Sector.fromDegrees(1, 9, 1, 9))));
+
+        assertFalse(this.tracker.isFullRedraw());
+        assertDirtyRect(10, 10, 80, 80);
+    }
+
+    @Test
+    public void testUnknownExtentRedrawsWholeTile()
+    {
+        assertTrue(this.update("a", box(1, 1), "b", box(5, 5), "c", null));
+
+        assertTrue(this.tracker.isFullRedraw());
+    }
+
+    @Test
+    public void testInvalidateRedrawsWholeTile()
+    {
+        this.tracker.invalidate();
+
+        assertTrue(this.update("a", box(1, 1), "b", box(5, 5)));
+        assertTrue(this.tracker.isFullRedraw());
+        assertFalse(this.update("a", box(1, 1), "b", box(5, 5)));
+    }
+}